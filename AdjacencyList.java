@@ -0,0 +1,182 @@
+import java.util.Arrays;
+
+/** The links of a single user in a social network, kept as parallel arrays of the linked users' indices and the links to them.
+  * Small lists are searched directly. Once a user has enough links, an open addressed table of positions is kept so lookups stay constant time.
+  * Links are added one at a time, under the owner's lock in the network. Lookups take no lock: a link is written before the size that takes it in,
+  * so a lookup sees every link up to the size it reads, and none past it. Links added under a version are kept in a version log
+  * until every reader sees them, so a reader pinned to an earlier version can leave them out. See VersionClock.
+  * @author Billy Barbaro
+  */
+public class AdjacencyList {
+
+   /** The number of links that are searched one by one before a lookup table is built */
+   private static final int SCAN_LIMIT = 8;
+
+   /** The number of slots the lists start with */
+   private static final int INITIAL_CAPACITY = 4;
+
+   /** The indices of the users linked to this one */
+   private volatile int[] neighbors;
+
+   /** The links to the users in neighbors, at the same positions */
+   private volatile Link[] links;
+
+   /** The number of links in use */
+   private volatile int size;
+
+   /** Maps a neighbor's index to its position in neighbors plus one. 0 marks an empty slot. Null until the list passes SCAN_LIMIT */
+   private volatile int[] table;
+
+   /** The versions of links added lately and the size before each, for readers pinned to an earlier version. Null if every reader sees every link */
+   private volatile long[] versions;
+
+   /** Creates an empty list of links */
+   public AdjacencyList() {
+      super();
+      neighbors = new int[INITIAL_CAPACITY];
+      links = new Link[INITIAL_CAPACITY];
+      size = 0;
+   }
+
+   /** Gives the number of users linked to this one
+     * @return int  the number of links in the list
+     */
+   public int size() {
+      return size;
+   }
+
+   /** Gives the number of users linked to this one as of a version
+     * @param version   the version a reader is pinned to. VersionClock.LATEST for every link
+     * @return int  the number of links in the list before the first link added after the version
+     */
+   public int size(long version) {
+      // The size is read before the log, so any link it takes in that is newer than the version is in the log read
+      int count = size;
+      return VersionClock.visible(versions, count, version);
+   }
+
+   /** Gives the index of the user at a position in the list
+     * @param position   a position between 0 and size() - 1
+     * @return int  the index of the linked user
+     */
+   public int neighbor(int position) {
+      return neighbors[position];
+   }
+
+   /** Gives the link at a position in the list
+     * @param position   a position between 0 and size() - 1
+     * @return Link  the link to the user at that position
+     */
+   public Link link(int position) {
+      return links[position];
+   }
+
+   /** Spreads the bits of an index so neighboring indices don't cluster in the table
+     * @param index   the index to be hashed
+     * @return int  the hash of the index
+     */
+   private static int hash(int index) {
+      int h = index * 0x9E3779B9;
+      return h ^ (h >>> 16);
+   }
+
+   /** Finds the position of a neighbor in the list
+     * @param neighbor  the index of the linked user
+     * @return int  the position of the neighbor. -1 if they are not linked
+     */
+   private int positionOf(int neighbor) {
+      // The size is read first, so the arrays read after it hold at least that many links
+      int count = size;
+      int[] current = neighbors;
+      int[] lookup = table;
+      if (lookup == null) {
+         for (int i = 0; i < count; i++) {
+            if (current[i] == neighbor)
+               return i;
+         }
+         return -1;
+      }
+
+      // Probes the table until we hit the neighbor or an empty slot. Slots for links past the size read are passed over
+      int mask = lookup.length - 1;
+      for (int slot = hash(neighbor) & mask; lookup[slot] != 0; slot = (slot + 1) & mask) {
+         int position = lookup[slot] - 1;
+         if (position < count && current[position] == neighbor)
+            return position;
+      }
+      return -1;
+   }
+
+   /** Gives the link to the given user
+     * @param neighbor  the index of the linked user
+     * @return Link  the link between the two users. Null if there is none
+     */
+   public Link get(int neighbor) {
+      int position = positionOf(neighbor);
+      if (position < 0)
+         return null;
+      return links[position];
+   }
+
+   /** Places a position in the lookup table
+     * @param position  the position in neighbors to be placed
+     */
+   private void addToTable(int[] lookup, int position) {
+      int mask = lookup.length - 1;
+      int slot = hash(neighbors[position]) & mask;
+      while (lookup[slot] != 0)
+         slot = (slot + 1) & mask;
+      lookup[slot] = position + 1;
+   }
+
+   /** Rebuilds the lookup table with room for the current size, keeping it under half full. The new table is filled before it replaces the old one */
+   private void rebuildTable() {
+      int capacity = Integer.highestOneBit(size * 4 - 1);
+      int[] lookup = new int[Math.max(capacity, 2 * SCAN_LIMIT)];
+      for (int i = 0; i < size; i++)
+         addToTable(lookup, i);
+      table = lookup;
+   }
+
+   /** Adds or replaces the link to the given user. Must not be called by more than one thread at a time
+     * @param neighbor  the index of the linked user
+     * @param link  the link between the two users
+     */
+   public void put(int neighbor, Link link) {
+      put(neighbor, link, 0, 0);
+   }
+
+   /** Adds or replaces the link to the given user as part of a version of the network. Must not be called by more than one thread at a time
+     * @param neighbor  the index of the linked user
+     * @param link  the link between the two users
+     * @param version   the version adding the link. 0 if every reader may see it at once
+     * @param settled   the version every reader sees past, so older entries in the version log can be dropped
+     */
+   public void put(int neighbor, Link link, long version, long settled) {
+      int position = positionOf(neighbor);
+      if (position >= 0) {
+         links[position] = link;
+         return;
+      }
+
+      // The arrays grow by half again whenever they fill up
+      int count = size;
+      if (count == neighbors.length) {
+         int capacity = count + (count >> 1) + 1;
+         neighbors = Arrays.copyOf(neighbors, capacity);
+         links = Arrays.copyOf(links, capacity);
+      }
+      neighbors[count] = neighbor;
+      links[count] = link;
+      if (version > 0 || versions != null)
+         versions = VersionClock.record(versions, version, count, settled);
+      size = count + 1;
+
+      if (count + 1 > SCAN_LIMIT) {
+         if (table == null || (count + 1) * 2 > table.length)
+            rebuildTable();
+         else
+            addToTable(table, count);
+      }
+   }
+}
@@ -0,0 +1,77 @@
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/** Times link changes made by growing numbers of threads, each changing links between its own users, to show how writes scale with cores.
+  * Run with optional arguments giving the number of users each thread owns and the number of changes each thread makes.
+  * @author Billy Barbaro
+  */
+public class ConcurrentWriteBenchmark {
+
+   /** Makes changes between one thread's users
+     * @param net   the network
+     * @param thread   the number of the thread, which names its users
+     * @param userCount   the number of users the thread owns
+     * @param changes   the number of changes to make
+     */
+   private static void change(SocialNetwork net, int thread, int userCount, int changes) {
+      Random random = new Random(thread);
+      SocialNetworkStatus status = new SocialNetworkStatus();
+      for (int c = 0; c < changes; c++) {
+         Set<String> ids = new HashSet<String>();
+         ids.add("t" + thread + "u" + random.nextInt(userCount));
+         ids.add("t" + thread + "u" + random.nextInt(userCount));
+         if (random.nextBoolean())
+            net.establishLink(ids, new Date(c), status);
+         else
+            net.tearDownLink(ids, new Date(c), status);
+      }
+   }
+
+   /** Times the changes of the given number of threads on a fresh network
+     * @param threads   the number of threads
+     * @param userCount   the number of users each thread owns
+     * @param changes   the number of changes each thread makes
+     * @return double   the changes made per second
+     */
+   private static double run(int threads, final int userCount, final int changes) throws InterruptedException {
+      final SocialNetwork net = new SocialNetwork();
+      for (int t = 0; t < threads; t++) {
+         for (int u = 0; u < userCount; u++) {
+            User user = new User();
+            user.setID("t" + t + "u" + u);
+            net.addUser(user);
+         }
+      }
+
+      Thread[] writers = new Thread[threads];
+      for (int t = 0; t < threads; t++) {
+         final int thread = t;
+         writers[t] = new Thread(() -> change(net, thread, userCount, changes));
+      }
+      long start = System.nanoTime();
+      for (Thread writer : writers)
+         writer.start();
+      for (Thread writer : writers)
+         writer.join();
+      return threads * (double)changes / ((System.nanoTime() - start) / 1e9);
+   }
+
+   /** Runs the benchmark and prints the rate of changes for each number of threads
+     * @param args  the number of users each thread owns and the number of changes each thread makes
+     */
+   public static void main(String[] args) throws InterruptedException {
+      int userCount = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+      int changes = args.length > 1 ? Integer.parseInt(args[1]) : 500000;
+      int cores = Runtime.getRuntime().availableProcessors();
+
+      run(1, userCount, changes); // Warms up the JIT
+      double single = run(1, userCount, changes);
+      System.out.printf("%d cores%n%8s %16s %10s%n", cores, "threads", "changes/s", "scaling");
+      for (int threads = 1; threads <= Math.max(2, 2 * cores); threads *= 2) {
+         double rate = threads == 1 ? single : run(threads, userCount, changes);
+         System.out.printf("%8d %16.0f %9.2fx%n", threads, rate, rate / single);
+      }
+   }
+}
@@ -0,0 +1,82 @@
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/** Times unbounded neighborhood searches on a power law network with and without switching to scanning unreached users.
+  * The network is grown by preferential attachment, so a few users have most of the links, as in a real social network.
+  * Run with optional arguments giving the number of users and the number of links each new user makes.
+  * @author Billy Barbaro
+  */
+public class DirectionOptimizingBenchmark {
+
+   /** The number of searches timed for each kind of search */
+   private static final int SEARCHES = 50;
+
+   /** Grows a network by preferential attachment. Each new user links to users picked in proportion to the links they already have
+     * @param userCount   the number of users in the network
+     * @param linksPerUser   the number of links each new user makes
+     * @param random   the source of the links
+     * @return SocialNetwork    the network, with every link established at time 0
+     */
+   private static SocialNetwork buildNetwork(int userCount, int linksPerUser, Random random) {
+      SocialNetwork net = new SocialNetwork();
+      SocialNetworkStatus status = new SocialNetworkStatus();
+      int[] ends = new int[2 * userCount * linksPerUser];
+      int endCount = 0;
+
+      for (int i = 0; i < userCount; i++) {
+         User user = new User();
+         user.setID("user" + i);
+         net.addUser(user);
+
+         for (int l = 0; l < linksPerUser && i > 0; l++) {
+            // Picking a random link end picks a user in proportion to their links
+            int target = endCount == 0 ? 0 : ends[random.nextInt(endCount)];
+            if (target == i)
+               continue;
+            Set<String> ids = new HashSet<String>();
+            ids.add("user" + i);
+            ids.add("user" + target);
+            net.establishLink(ids, new Date(0), status);
+            ends[endCount++] = i;
+            ends[endCount++] = target;
+         }
+      }
+      return net;
+   }
+
+   /** Runs the benchmark and prints the time per search each way
+     * @param args  the number of users and the number of links each new user makes
+     */
+   public static void main(String[] args) {
+      int userCount = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+      int linksPerUser = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+      Random random = new Random(42);
+
+      FrozenSocialNetwork frozen = buildNetwork(userCount, linksPerUser, random).freeze();
+      NeighborhoodSearch adaptive = new NeighborhoodSearch(frozen);
+      NeighborhoodSearch topDown = new NeighborhoodSearch(frozen);
+      topDown.setDirectionOptimizing(false);
+      System.out.printf("%d users, %d links per new user%n", userCount, linksPerUser);
+
+      int[] starts = new int[SEARCHES];
+      for (int i = 0; i < SEARCHES; i++)
+         starts[i] = random.nextInt(userCount);
+
+      for (int round = 0; round < 3; round++) { // The early rounds warm up the JIT
+         long reached = 0;
+         long start = System.nanoTime();
+         for (int s : starts)
+            reached += topDown.search(s, 1, Integer.MAX_VALUE).size();
+         double links = (System.nanoTime() - start) / 1e6 / SEARCHES;
+
+         start = System.nanoTime();
+         for (int s : starts)
+            reached -= adaptive.search(s, 1, Integer.MAX_VALUE).size();
+         double switching = (System.nanoTime() - start) / 1e6 / SEARCHES;
+
+         System.out.printf("round %d: top down %.2f ms/search, direction optimizing %.2f ms/search, %.1fx%s%n", round, links, switching, links / switching, reached == 0 ? "" : " MISMATCH");
+      }
+   }
+}
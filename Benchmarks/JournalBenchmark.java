@@ -0,0 +1,142 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/** Times link changes with and without a journal, and the rate of commits from many threads sharing a journal.
+  * Run with optional arguments giving the number of users and the number of changes per batch.
+  * @author Billy Barbaro
+  */
+public class JournalBenchmark {
+
+   /** The number of batches timed */
+   private static final int BATCHES = 50;
+
+   /** The number of single changes timed, each synced on its own */
+   private static final int SINGLES = 2000;
+
+   /** The number of commits each thread makes */
+   private static final int COMMITS = 2000;
+
+   /** Fills a batch with random changes dated after the given time
+     * @param userCount   the number of users in the network
+     * @param size   the number of changes
+     * @param start   the date of the first change
+     * @param random   the source of the changes
+     * @return LinkEventBatch   the batch
+     */
+   private static LinkEventBatch buildBatch(int userCount, int size, long start, Random random) {
+      LinkEventBatch batch = new LinkEventBatch();
+      for (int i = 0; i < size; i++) {
+         String first = "user" + random.nextInt(userCount);
+         String second = "user" + random.nextInt(userCount);
+         if (random.nextBoolean())
+            batch.establish(first, second, start + i);
+         else
+            batch.tearDown(first, second, start + i);
+      }
+      return batch;
+   }
+
+   /** Adds users to a network
+     * @param net   the network
+     * @param userCount   the number of users
+     */
+   private static void addUsers(SocialNetwork net, int userCount) {
+      for (int i = 0; i < userCount; i++) {
+         User user = new User();
+         user.setID("user" + i);
+         net.addUser(user);
+      }
+   }
+
+   /** Applies the batches to a network and gives the changes applied per second
+     * @param net   the network
+     * @param batches   the batches
+     * @return double   the number of records applied per second
+     */
+   private static double applyAll(SocialNetwork net, LinkEventBatch[] batches) {
+      long records = 0;
+      long start = System.nanoTime();
+      for (LinkEventBatch batch : batches) {
+         net.applyEvents(batch);
+         records += batch.size();
+      }
+      return records / ((System.nanoTime() - start) / 1e9);
+   }
+
+   /** Runs the benchmark and prints the rates
+     * @param args  the number of users and the number of changes per batch
+     */
+   public static void main(String[] args) throws IOException, InterruptedException {
+      int userCount = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+      int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+      Path folder = Files.createTempDirectory("journal");
+      Random random = new Random(42);
+
+      LinkEventBatch[] batches = new LinkEventBatch[BATCHES];
+      for (int b = 0; b < BATCHES; b++)
+         batches[b] = buildBatch(userCount, batchSize, (long)b * batchSize, random);
+
+      SocialNetwork plain = new SocialNetwork();
+      addUsers(plain, userCount);
+      applyAll(plain, batches); // Warms up the JIT
+      plain = new SocialNetwork();
+      addUsers(plain, userCount);
+      double unjournaled = applyAll(plain, batches);
+
+      SocialNetwork journaled = SocialNetwork.recover(folder.resolve("bench.snapshot"), folder.resolve("bench.journal"));
+      addUsers(journaled, userCount);
+      double withJournal = applyAll(journaled, batches);
+      System.out.printf("batches of %d: %.0f changes/s without a journal, %.0f with one%n", batchSize, unjournaled, withJournal);
+
+      // Single changes each wait for their own sync when only one thread writes
+      SocialNetworkStatus status = new SocialNetworkStatus();
+      long start = System.nanoTime();
+      for (int i = 0; i < SINGLES; i++) {
+         Set<String> ids = new HashSet<String>();
+         ids.add("user" + random.nextInt(userCount));
+         ids.add("user" + random.nextInt(userCount));
+         journaled.establishLink(ids, new Date(BATCHES * (long)batchSize + i), status);
+      }
+      System.out.printf("single changes: %.0f changes/s%n", SINGLES / ((System.nanoTime() - start) / 1e9));
+
+      // Only the recovered network is kept, so the heap holds one network at a time
+      journaled.closeJournal();
+      journaled = null;
+      plain = null;
+      batches = null;
+      start = System.nanoTime();
+      SocialNetwork recovered = SocialNetwork.recover(folder.resolve("bench.snapshot"), folder.resolve("bench.journal"));
+      System.out.printf("recovery: %.1f ms%n", (System.nanoTime() - start) / 1e6);
+      recovered.closeJournal();
+
+      // Threads committing at once share syncs
+      for (int threads = 1; threads <= 16; threads *= 4) {
+         final NetworkJournal journal = new NetworkJournal(folder.resolve("threads" + threads + ".journal"), 0);
+         Thread[] writers = new Thread[threads];
+         start = System.nanoTime();
+         for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            writers[t] = new Thread(() -> {
+               try {
+                  for (int c = 0; c < COMMITS; c++)
+                     journal.commit(journal.logLink(thread, thread + 1, c, true));
+               }
+               catch (IOException e) {
+                  throw new RuntimeException(e);
+               }
+            });
+            writers[t].start();
+         }
+         for (Thread writer : writers)
+            writer.join();
+         double rate = threads * (double)COMMITS / ((System.nanoTime() - start) / 1e9);
+         journal.close();
+         System.out.printf("%2d threads committing: %.0f commits/s%n", threads, rate);
+      }
+   }
+}
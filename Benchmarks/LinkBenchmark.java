@@ -0,0 +1,122 @@
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/** Times the event lookups of a Link as the length of its history grows.
+  * Each lookup is run against the Link itself and against a straight walk of the same events, so the speedup can be read off directly.
+  * @author Billy Barbaro
+  */
+public class LinkBenchmark {
+
+   /** The history lengths to be measured */
+   private static final int[] HISTORY_LENGTHS = {16, 256, 4096, 65536};
+
+   /** How many lookups are timed for each history length */
+   private static final int LOOKUPS = 200000;
+
+   /** Builds a link that has been established and torn down the given number of times
+     * @param length   the number of events in the link's history
+     * @param dates    a list to be filled with the dates of the events, in order
+     * @return Link    the link with its history
+     */
+   private static Link buildLink(int length, ArrayList<Date> dates) throws UninitializedObjectException {
+      Link link = new Link();
+      SocialNetworkStatus status = new SocialNetworkStatus();
+
+      User user1 = new User();
+      User user2 = new User();
+      user1.setID("user1");
+      user2.setID("user2");
+      Set<User> users = new HashSet<User>();
+      users.add(user1);
+      users.add(user2);
+      link.setUsers(users, status);
+
+      for (int i = 0; i < length; i++) {
+         Date date = new Date(i * 10L);
+         if (i % 2 == 0)
+            link.establish(date, status);
+         else
+            link.tearDown(date, status);
+         dates.add(date);
+      }
+      return link;
+   }
+
+   /** Walks the events in order the way the link used to, to give a baseline
+     * @param dates   the events of the link
+     * @param date    the date to be checked
+     * @return boolean    tells if the link was active on the date
+     */
+   private static boolean scanIsActive(ArrayList<Date> dates, Date date) {
+      int active = 0;
+      for (Date event : dates) {
+         if (event.after(date))
+            break;
+         active++;
+      }
+      return active % 2 == 1;
+   }
+
+   /** Runs the benchmark and prints the time per lookup for each history length
+     * @param args  not used
+     */
+   public static void main(String[] args) throws UninitializedObjectException {
+      System.out.printf("%10s %14s %14s %14s %14s %10s%n", "events", "scan ns/op", "isActive", "nextEvent", "previousEvent", "speedup");
+
+      for (int length : HISTORY_LENGTHS) {
+         ArrayList<Date> dates = new ArrayList<Date>();
+         Link link = buildLink(length, dates);
+
+         // The same random dates are used for every lookup so the runs are comparable
+         Random random = new Random(length);
+         Date[] probes = new Date[1024];
+         for (int i = 0; i < probes.length; i++)
+            probes[i] = new Date((long)(random.nextDouble() * length * 10));
+
+         // Warms up the JIT before anything is timed
+         int sink = 0;
+         for (int i = 0; i < LOOKUPS; i++) {
+            if (link.isActive(probes[i % probes.length]))
+               sink++;
+            if (scanIsActive(dates, probes[i % probes.length]))
+               sink++;
+         }
+
+         int lookups = Math.max(1000, LOOKUPS / Math.max(1, length / 256));
+         long start = System.nanoTime();
+         for (int i = 0; i < lookups; i++) {
+            if (scanIsActive(dates, probes[i % probes.length]))
+               sink++;
+         }
+         double scan = (System.nanoTime() - start) / (double)lookups;
+
+         start = System.nanoTime();
+         for (int i = 0; i < LOOKUPS; i++) {
+            if (link.isActive(probes[i % probes.length]))
+               sink++;
+         }
+         double isActive = (System.nanoTime() - start) / (double)LOOKUPS;
+
+         start = System.nanoTime();
+         for (int i = 0; i < LOOKUPS; i++) {
+            if (link.nextEvent(probes[i % probes.length]) != null)
+               sink++;
+         }
+         double nextEvent = (System.nanoTime() - start) / (double)LOOKUPS;
+
+         start = System.nanoTime();
+         for (int i = 0; i < LOOKUPS; i++) {
+            if (link.previousEvent(probes[i % probes.length]) != null)
+               sink++;
+         }
+         double previousEvent = (System.nanoTime() - start) / (double)LOOKUPS;
+
+         System.out.printf("%10d %14.1f %14.1f %14.1f %14.1f %9.1fx%n", length, scan, isActive, nextEvent, previousEvent, scan / isActive);
+         if (sink == 42)
+            System.out.println();
+      }
+   }
+}
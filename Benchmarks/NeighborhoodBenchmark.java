@@ -0,0 +1,77 @@
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/** Times neighborhood searches on a live SocialNetwork against the same searches on its frozen snapshot.
+  * Run with optional arguments giving the number of users and the average number of links per user.
+  * @author Billy Barbaro
+  */
+public class NeighborhoodBenchmark {
+
+   /** The number of searches timed for each kind of network */
+   private static final int SEARCHES = 200;
+
+   /** Builds a network of users linked at random, each link established once and torn down half the time
+     * @param userCount   the number of users in the network
+     * @param degree   the average number of links per user
+     * @param random   the source of the links
+     * @return SocialNetwork    the network
+     */
+   private static SocialNetwork buildNetwork(int userCount, int degree, Random random) {
+      SocialNetwork net = new SocialNetwork();
+      SocialNetworkStatus status = new SocialNetworkStatus();
+
+      for (int i = 0; i < userCount; i++) {
+         User user = new User();
+         user.setID("user" + i);
+         net.addUser(user);
+      }
+
+      long linkCount = (long)userCount * degree / 2;
+      for (long i = 0; i < linkCount; i++) {
+         Set<String> ids = new HashSet<String>();
+         ids.add("user" + random.nextInt(userCount));
+         ids.add("user" + random.nextInt(userCount));
+         net.establishLink(ids, new Date(random.nextInt(1000)), status);
+         if (random.nextBoolean())
+            net.tearDownLink(ids, new Date(1000 + random.nextInt(1000)), status);
+      }
+      return net;
+   }
+
+   /** Runs the benchmark and prints the time per search on each kind of network
+     * @param args  the number of users and the average number of links per user
+     */
+   public static void main(String[] args) {
+      int userCount = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+      int degree = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+      Random random = new Random(42);
+
+      SocialNetwork net = buildNetwork(userCount, degree, random);
+      long start = System.nanoTime();
+      FrozenSocialNetwork frozen = net.freeze();
+      System.out.printf("%d users, %d links per user, froze in %.1f ms%n", userCount, degree, (System.nanoTime() - start) / 1e6);
+
+      Date date = new Date(1500);
+      SocialNetworkStatus status = new SocialNetworkStatus();
+      String[] ids = new String[SEARCHES];
+      for (int i = 0; i < SEARCHES; i++)
+         ids[i] = "user" + random.nextInt(userCount);
+
+      for (int round = 0; round < 3; round++) { // The early rounds warm up the JIT
+         int sink = 0;
+         start = System.nanoTime();
+         for (String id : ids)
+            sink += net.neighborhood(id, date, status).size();
+         double live = (System.nanoTime() - start) / 1e6 / SEARCHES;
+
+         start = System.nanoTime();
+         for (String id : ids)
+            sink -= frozen.neighborhood(id, date, status).size();
+         double snapshot = (System.nanoTime() - start) / 1e6 / SEARCHES;
+
+         System.out.printf("round %d: live %.2f ms/search, frozen %.2f ms/search, %.1fx%s%n", round, live, snapshot, live / snapshot, sink == 0 ? "" : " MISMATCH");
+      }
+   }
+}
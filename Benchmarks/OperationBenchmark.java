@@ -0,0 +1,294 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/** Times every public operation of a SocialNetwork, as the baseline other performance changes are measured against.
+  * Each operation runs a few warmup iterations and then timed ones, in the manner of JMH, and reports the mean time per operation with its spread,
+  * the bytes the operation allocated, and the garbage collections that ran while it was timed.
+  * Run with optional arguments giving comma separated lists of user counts, average links per user and events per link. Every combination is measured.
+  * @author Billy Barbaro
+  */
+public class OperationBenchmark {
+
+   /** The iterations run before timing, to warm up the JIT */
+   private static final int WARMUP_ITERATIONS = 3;
+
+   /** The iterations timed */
+   private static final int MEASURED_ITERATIONS = 5;
+
+   /** How long each iteration runs for, at least one operation */
+   private static final long ITERATION_NANOS = 200000000L;
+
+   /** The dates of the links' events fall below this time, unless a link has too many events to fit */
+   private static final long HORIZON = 1000;
+
+   /** An operation run over and over by the benchmark */
+   private interface Operation {
+
+      /** Runs the operation once
+        * @param i   the number of the run, counting across every iteration, for picking inputs
+        * @return int   a value drawn from the result, so the JIT can't drop the call
+        */
+      public int run(int i);
+   }
+
+   /** Reads the allocations of the current thread */
+   private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+   /** Keeps the results of the operations live */
+   private static int sink;
+
+   /** Parses a comma separated list of numbers
+     * @param arg   the list
+     * @return int[]    the numbers
+     */
+   private static int[] parse(String arg) {
+      String[] parts = arg.split(",");
+      int[] values = new int[parts.length];
+      for (int i = 0; i < parts.length; i++)
+         values[i] = Integer.parseInt(parts[i].trim());
+      return values;
+   }
+
+   /** Makes the set of IDs naming a link
+     * @param first   the number of one user
+     * @param second  the number of the other user
+     * @return Set<String>   the IDs of the two users
+     */
+   private static Set<String> pair(int first, int second) {
+      Set<String> ids = new HashSet<String>();
+      ids.add("user" + first);
+      ids.add("user" + second);
+      return ids;
+   }
+
+   /** Draws two different users whose link hasn't been drawn before. There must be links left to draw
+     * @param userCount   the number of users in the network
+     * @param random   the source of the users
+     * @param drawn   the links drawn so far, each as its lower user's number and then its higher one's packed in a long. The new link is added
+     * @return int[]   the numbers of the two users
+     */
+   private static int[] drawLink(int userCount, Random random, Set<Long> drawn) {
+      while (true) {
+         int first = random.nextInt(userCount);
+         int second = random.nextInt(userCount);
+         if (first != second && drawn.add(((long)Math.min(first, second) << 32) | Math.max(first, second)))
+            return new int[] {first, second};
+      }
+   }
+
+   /** Gives the time the links' events fall below, leaving at least two milliseconds between a link's events
+     * @param events   the number of events on each link
+     * @return long   the time in milliseconds
+     */
+   private static long horizon(int events) {
+      return Math.max(HORIZON, 2L * (events + 1));
+   }
+
+   /** Builds a network of users linked at random, each link between two different users and with the given number of events spread below the horizon.
+     * No two links join the same users, and at most half the links the users could have are made
+     * @param userCount   the number of users in the network
+     * @param degree   the average number of links per user
+     * @param events   the number of events on each link
+     * @param random   the source of the links
+     * @param drawn   the links drawn so far, to which the network's links are added
+     * @return SocialNetwork    the network
+     */
+   private static SocialNetwork buildNetwork(int userCount, int degree, int events, Random random, Set<Long> drawn) {
+      SocialNetwork net = new SocialNetwork();
+      SocialNetworkStatus status = new SocialNetworkStatus();
+
+      for (int i = 0; i < userCount; i++) {
+         User user = new User();
+         user.setID("user" + i);
+         net.addUser(user);
+      }
+
+      long linkCount = Math.min((long)userCount * degree / 2, (long)userCount * (userCount - 1) / 4);
+      long step = horizon(events) / (events + 1);
+      for (long i = 0; i < linkCount; i++) {
+         int[] users = drawLink(userCount, random, drawn);
+         Set<String> ids = pair(users[0], users[1]);
+         long date = random.nextInt((int)step);
+         for (int event = 0; event < events; event++) {
+            if (event % 2 == 0)
+               net.establishLink(ids, new Date(date), status);
+            else
+               net.tearDownLink(ids, new Date(date), status);
+            date += 1 + random.nextInt((int)step);
+         }
+      }
+      return net;
+   }
+
+   /** Gives the number of garbage collections run so far, and the milliseconds they took
+     * @return long[]   the count and the time, summed over every collector
+     */
+   private static long[] collections() {
+      long[] totals = new long[2];
+      for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+         totals[0] += Math.max(0, collector.getCollectionCount());
+         totals[1] += Math.max(0, collector.getCollectionTime());
+      }
+      return totals;
+   }
+
+   /** Runs an operation over and over until the iteration's time is up or the cap is reached. The clock is read between batches that double in size,
+     * so reading it costs little next to fast operations
+     * @param operation   the operation
+     * @param first   the number of the first run
+     * @param cap   the most runs in the iteration
+     * @return int   the number of runs made
+     */
+   private static int iterate(Operation operation, int first, int cap) {
+      long start = System.nanoTime();
+      int runs = 0;
+      for (int batch = 1; runs < cap && System.nanoTime() - start < ITERATION_NANOS; batch *= 2) {
+         int end = first + Math.min(cap, runs + batch);
+         for (int i = first + runs; i < end; i++)
+            sink += operation.run(i);
+         runs = end - first;
+      }
+      return runs;
+   }
+
+   /** Runs an operation through its warmup and timed iterations and prints the results
+     * @param name   the name of the operation
+     * @param params   the network's parameters, as printed
+     * @param cap   the most runs in each iteration, for operations that use up their inputs
+     * @param operation   the operation
+     * @return int   the number of runs made across every iteration, numbered from 0
+     */
+   private static int measure(String name, String params, int cap, Operation operation) {
+      int run = 0;
+      for (int iteration = 0; iteration < WARMUP_ITERATIONS; iteration++)
+         run += iterate(operation, run, cap);
+
+      double[] times = new double[MEASURED_ITERATIONS];
+      int timed = 0;
+      long thread = Thread.currentThread().getId();
+      long allocatedBefore = THREADS.getThreadAllocatedBytes(thread);
+      long[] collectionsBefore = collections();
+      for (int iteration = 0; iteration < MEASURED_ITERATIONS; iteration++) {
+         long start = System.nanoTime();
+         int runs = iterate(operation, run, cap);
+         times[iteration] = (System.nanoTime() - start) / (double)runs;
+         run += runs;
+         timed += runs;
+      }
+      long allocated = THREADS.getThreadAllocatedBytes(thread) - allocatedBefore;
+      long[] collectionsAfter = collections();
+
+      double mean = 0;
+      for (double time : times)
+         mean += time / MEASURED_ITERATIONS;
+      double variance = 0;
+      for (double time : times)
+         variance += (time - mean) * (time - mean) / (MEASURED_ITERATIONS - 1);
+
+      System.out.printf("%-22s %24s %14.1f %10.1f %12.1f %6d %8d%n", name, params, mean, Math.sqrt(variance), allocated / (double)timed,
+                        collectionsAfter[0] - collectionsBefore[0], collectionsAfter[1] - collectionsBefore[1]);
+      return run;
+   }
+
+   /** Measures every operation on a network with the given parameters
+     * @param userCount   the number of users in the network
+     * @param degree   the average number of links per user
+     * @param events   the number of events on each link
+     */
+   private static void measureAll(final int userCount, int degree, int events) {
+      final Random random = new Random(42);
+      Set<Long> drawn = new HashSet<Long>();
+      final SocialNetwork net = buildNetwork(userCount, degree, events, random, drawn);
+      long horizon = horizon(events);
+      final SocialNetworkStatus status = new SocialNetworkStatus();
+      String params = userCount + "/" + degree + "/" + events;
+      int iterations = WARMUP_ITERATIONS + MEASURED_ITERATIONS;
+
+      // Inputs are made before timing, so only the operations' own allocations are counted
+      final int probes = 1024;
+      final String[] ids = new String[probes];
+      final Set<String>[] links = newSetArray(probes);
+      final String[][] linkIDs = new String[probes][];
+      final Date[] dates = new Date[probes];
+      for (int i = 0; i < probes; i++) {
+         ids[i] = "user" + random.nextInt(userCount);
+         int first = random.nextInt(userCount);
+         int second = (first + 1 + random.nextInt(userCount - 1)) % userCount;
+         links[i] = pair(first, second);
+         linkIDs[i] = new String[] {"user" + first, "user" + second};
+         dates[i] = new Date((long)(random.nextDouble() * horizon));
+      }
+
+      measure("isActive", params, Integer.MAX_VALUE, i -> net.isActive(links[i % probes], dates[i % probes]) ? 1 : 0);
+      measure("isActive(id, id)", params, Integer.MAX_VALUE, i -> net.isActive(linkIDs[i % probes][0], linkIDs[i % probes][1], dates[i % probes].getTime()) ? 1 : 0);
+      measure("neighborhood(d=2)", params, Integer.MAX_VALUE, i -> net.neighborhood(ids[i % probes], dates[i % probes], 2, status).size());
+      measure("neighborhood", params, Integer.MAX_VALUE, i -> net.neighborhood(ids[i % probes], dates[i % probes], status).size());
+      measure("neighborhoodTrend", params, Integer.MAX_VALUE, i -> net.neighborhoodTrend(ids[i % probes], status).size());
+
+      // Operations that change the network run after the reads, so the reads see the network as built, and are capped by the inputs made for them
+      final int adds = 20000;
+      final User[] users = new User[adds * iterations];
+      for (int i = 0; i < users.length; i++) {
+         users[i] = new User();
+         users[i].setID("added" + i);
+      }
+      measure("addUser", params, adds, i -> net.addUser(users[i]) ? 1 : 0);
+
+      // Each new link joins users not yet linked, and is established after every event so far. At most half the links left are drawn
+      long left = (long)userCount * (userCount - 1) / 2 - drawn.size();
+      final int changes = (int)Math.min(20000, left / 2 / iterations);
+      if (changes == 0)
+         return;
+      final Set<String>[] changed = newSetArray(changes * iterations);
+      for (int i = 0; i < changed.length; i++) {
+         int[] link = drawLink(userCount, random, drawn);
+         changed[i] = pair(link[0], link[1]);
+      }
+      final Date established = new Date(horizon);
+      final Date tornDown = new Date(horizon + 1);
+      int establishedRuns = measure("establishLink", params, changes, i -> {
+         net.establishLink(changed[i], established, status);
+         return status.getStatus().ordinal();
+      });
+
+      // Tear downs are capped so every run takes down a link the establish runs made, rather than finding none
+      measure("tearDownLink", params, establishedRuns / iterations, i -> {
+         net.tearDownLink(changed[i], tornDown, status);
+         return status.getStatus().ordinal();
+      });
+
+   }
+
+   /** Makes an array of sets of IDs
+     * @param length   the length of the array
+     * @return Set<String>[]   the array
+     */
+   @SuppressWarnings("unchecked")
+   private static Set<String>[] newSetArray(int length) {
+      return (Set<String>[])new Set[length];
+   }
+
+   /** Runs the benchmark for every combination of the parameters
+     * @param args  comma separated lists of the user counts, average links per user, and events per link
+     */
+   public static void main(String[] args) {
+      int[] userCounts = parse(args.length > 0 ? args[0] : "10000");
+      int[] degrees = parse(args.length > 1 ? args[1] : "4,16");
+      int[] events = parse(args.length > 2 ? args[2] : "2,8");
+
+      System.out.printf("%d warmup and %d timed iterations per operation%n", WARMUP_ITERATIONS, MEASURED_ITERATIONS);
+      System.out.printf("%-22s %24s %14s %10s %12s %6s %8s%n", "operation", "users/degree/events", "ns/op", "+-", "B/op", "gcs", "gc ms");
+      for (int userCount : userCounts) {
+         for (int degree : degrees) {
+            for (int eventCount : events)
+               measureAll(userCount, degree, eventCount);
+         }
+      }
+      if (sink == 42)
+         System.out.println();
+   }
+}
@@ -0,0 +1,77 @@
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/** Times unbounded neighborhood searches on a large random network with one thread and with every available core.
+  * Run with optional arguments giving the number of users and the number of links each user makes.
+  * @author Billy Barbaro
+  */
+public class ParallelSearchBenchmark {
+
+   /** The number of searches timed for each setting */
+   private static final int SEARCHES = 20;
+
+   /** Links users at random
+     * @param userCount   the number of users in the network
+     * @param linksPerUser   the number of links each user makes
+     * @param random   the source of the links
+     * @return SocialNetwork    the network, with every link established at time 0
+     */
+   private static SocialNetwork buildNetwork(int userCount, int linksPerUser, Random random) {
+      SocialNetwork net = new SocialNetwork();
+      SocialNetworkStatus status = new SocialNetworkStatus();
+
+      for (int i = 0; i < userCount; i++) {
+         User user = new User();
+         user.setID("user" + i);
+         net.addUser(user);
+      }
+
+      for (int i = 0; i < userCount; i++) {
+         for (int l = 0; l < linksPerUser; l++) {
+            Set<String> ids = new HashSet<String>();
+            ids.add("user" + i);
+            ids.add("user" + random.nextInt(userCount));
+            net.establishLink(ids, new Date(0), status);
+         }
+      }
+      return net;
+   }
+
+   /** Runs the benchmark and prints the time per search each way
+     * @param args  the number of users and the number of links each user makes
+     */
+   public static void main(String[] args) {
+      int userCount = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+      int linksPerUser = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+      int cores = Runtime.getRuntime().availableProcessors();
+      Random random = new Random(42);
+
+      FrozenSocialNetwork frozen = buildNetwork(userCount, linksPerUser, random).freeze();
+      NeighborhoodSearch sequential = new NeighborhoodSearch(frozen);
+      NeighborhoodSearch parallel = new NeighborhoodSearch(frozen);
+      parallel.setParallelism(cores);
+      System.out.printf("%d users, %d links per user, %d threads%n", userCount, linksPerUser, cores);
+
+      int[] starts = new int[SEARCHES];
+      for (int i = 0; i < SEARCHES; i++)
+         starts[i] = random.nextInt(userCount);
+
+      for (int round = 0; round < 3; round++) { // The early rounds warm up the JIT
+         long reached = 0;
+         long start = System.nanoTime();
+         for (int s : starts)
+            reached += sequential.search(s, 1, Integer.MAX_VALUE).size();
+         double single = (System.nanoTime() - start) / 1e6 / SEARCHES;
+
+         start = System.nanoTime();
+         for (int s : starts)
+            reached -= parallel.search(s, 1, Integer.MAX_VALUE).size();
+         double shared = (System.nanoTime() - start) / 1e6 / SEARCHES;
+
+         System.out.printf("round %d: one thread %.2f ms/search, %d threads %.2f ms/search, %.1fx%s%n", round, single, cores, shared, single / shared, reached == 0 ? "" : " MISMATCH");
+      }
+      parallel.setParallelism(1);
+   }
+}
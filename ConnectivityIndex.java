@@ -0,0 +1,426 @@
+import java.util.Arrays;
+import java.util.Date;
+
+/** An index over every link's history that answers how many users a user can reach, and whether two users are connected, at any date without a search.
+  * Built offline from a snapshot of the network. The distinct event times split time into slots, and each link is active over a run of slots.
+  * Those runs are spread over a segment tree of slots, and a union find that can undo its unions is walked over the tree,
+  * so the unions in effect at a slot are exactly the ones made at the tree nodes above it.
+  * Each union holds over a whole node's run of slots, so recording the runs gives the parent and size of every user at every slot,
+  * and a query follows parents by binary searching those runs, in time polylogarithmic in the size of the network.
+  * @author Billy Barbaro
+  */
+public class ConnectivityIndex {
+
+   /** The network the index was built from, used to look up users by ID */
+   private NetworkGraph graph;
+
+   /** The number of users when the index was built. Users added later are treated as having no links */
+   private int userCount;
+
+   /** The distinct event times in order. Slot i runs from times[i] up to times[i + 1] */
+   private long[] times;
+
+   /** Where each user's runs with a parent start in the parent arrays. Has one more entry than there are users */
+   private int[] parentOffsets;
+
+   /** The first slot of each run with a parent. A user's runs don't overlap and are in time order */
+   private int[] parentStarts;
+
+   /** The slot just past each run with a parent */
+   private int[] parentEnds;
+
+   /** The user's parent during each run */
+   private int[] parents;
+
+   /** Where each user's size changes start in the size arrays. Has one more entry than there are users */
+   private int[] sizeOffsets;
+
+   /** The slot each size change takes effect at, in order for each user */
+   private int[] sizeSlots;
+
+   /** The number of users under each user in addition to themselves, from the slot of the change on */
+   private int[] sizes;
+
+   /** The union find while the index is being built. Dropped once it's built */
+   private int[] parent, size;
+
+   /** The users made children by unions not yet undone, most recent last */
+   private int[] unions;
+
+   /** The number of entries in unions */
+   private int unionDepth;
+
+   /** Every union made while building, by the child, the parent, the run of slots it held over, and the child's size */
+   private int[] unionChild, unionParent, unionStart, unionEnd, unionSize;
+
+   /** The number of unions made while building */
+   private int unionCount;
+
+   /** Builds the index over a network's links as they stand
+     * @param graph   the users and links to be indexed
+     * @throws NullPointerException  if the graph is null
+     */
+   public ConnectivityIndex(NetworkGraph graph) {
+      super();
+      SocialNetworkUtility.checkNull(graph, "Graph");
+      this.graph = graph;
+      this.userCount = graph.userCount();
+
+      // Each link is kept once, from the end with the lower index
+      long[] ends = new long[16];
+      int linkCount = 0;
+      int eventCount = 0;
+      for (int u = 0; u < userCount; u++) {
+         for (int p = 0; p < graph.degree(u); p++) {
+            if (u < graph.neighbor(u, p)) {
+               if (linkCount == ends.length)
+                  ends = Arrays.copyOf(ends, linkCount * 2);
+               ends[linkCount++] = ((long)u << 32) | p;
+               eventCount += graph.eventCount(u, p);
+            }
+         }
+      }
+
+      // Gathers the distinct event times, which are where slots start
+      times = new long[eventCount];
+      int filled = 0;
+      for (int l = 0; l < linkCount; l++) {
+         for (int e = 0; e < graph.eventCount((int)(ends[l] >>> 32), (int)ends[l]); e++)
+            times[filled++] = graph.event((int)(ends[l] >>> 32), (int)ends[l], e);
+      }
+      Arrays.sort(times);
+      int slotCount = 0;
+      for (int i = 0; i < eventCount; i++) {
+         if (slotCount == 0 || times[i] != times[slotCount - 1])
+            times[slotCount++] = times[i];
+      }
+      times = Arrays.copyOf(times, slotCount);
+
+      buildUnions(Arrays.copyOf(ends, linkCount), slotCount);
+      buildRuns();
+   }
+
+   /** Gives the slot holding a time
+     * @param date   the time in milliseconds
+     * @return int   the slot, -1 if the time is before every event
+     */
+   private int slotOf(long date) {
+      int position = Arrays.binarySearch(times, date);
+      if (position >= 0)
+         return position;
+      return -position - 2;
+   }
+
+   /** Finds the root of a user in the union find being built. Unions are by size, so no path is longer than the log of the number of users
+     * @param index   the index of the user
+     * @return int   the index of the user's root
+     */
+   private int find(int index) {
+      while (parent[index] != index)
+         index = parent[index];
+      return index;
+   }
+
+   /** Places a link's active runs in the segment tree nodes that exactly cover them, counting the entries or filling them in
+     * @param node   the number of the tree node
+     * @param low   the first slot the node covers
+     * @param high   the slot just past the node's
+     * @param start   the first slot the link is active in
+     * @param end   the slot just past the last one the link is active in
+     * @param link   the number of the link
+     * @param nodeStart   where each node's entries start
+     * @param nodeLinks   the entries of every node, or null when only counting
+     */
+   private static void cover(int node, int low, int high, int start, int end, int link, int[] nodeStart, int[] nodeLinks) {
+      if (end <= low || high <= start)
+         return;
+      if (start <= low && high <= end) {
+         if (nodeLinks == null)
+            nodeStart[node + 1]++;
+         else
+            nodeLinks[nodeStart[node]++] = link;
+         return;
+      }
+      int middle = (low + high) >>> 1;
+      cover(2 * node, low, middle, start, end, link, nodeStart, nodeLinks);
+      cover(2 * node + 1, middle, high, start, end, link, nodeStart, nodeLinks);
+   }
+
+   /** Places every active run of every link in the segment tree
+     * @param ends   the links, each as the index of its lower user in the high half and the link's position in the low half
+     * @param slotCount   the number of slots
+     * @param nodeStart   where each node's entries start, filled in here
+     * @param nodeLinks   the entries of every node, or null when only counting
+     */
+   private void coverLinks(long[] ends, int slotCount, int[] nodeStart, int[] nodeLinks) {
+      for (int l = 0; l < ends.length; l++) {
+         int u = (int)(ends[l] >>> 32), p = (int)ends[l];
+         int count = graph.eventCount(u, p);
+
+         // Even events establish the link and odd ones tear it down, so the link is active from each even event up to the next
+         for (int e = 0; e < count; e += 2) {
+            int start = slotOf(graph.event(u, p, e));
+            int end = e + 1 < count ? slotOf(graph.event(u, p, e + 1)) : slotCount;
+            cover(1, 0, slotCount, start, end, l, nodeStart, nodeLinks);
+         }
+      }
+   }
+
+   /** Walks the segment tree with the union find, recording every union and the slots it holds over
+     * @param ends   the links, as given to coverLinks
+     * @param slotCount   the number of slots
+     */
+   private void buildUnions(long[] ends, int slotCount) {
+      parent = new int[userCount];
+      size = new int[userCount];
+      for (int u = 0; u < userCount; u++) {
+         parent[u] = u;
+         size[u] = 1;
+      }
+      unions = new int[userCount];
+      unionDepth = 0;
+      unionChild = new int[16];
+      unionParent = new int[16];
+      unionStart = new int[16];
+      unionEnd = new int[16];
+      unionSize = new int[16];
+      unionCount = 0;
+      if (slotCount == 0)
+         return;
+
+      // The tree's entries are counted, then filled in, so each node's links sit side by side
+      int[] nodeStart = new int[4 * slotCount + 1];
+      coverLinks(ends, slotCount, nodeStart, null);
+      for (int n = 0; n < 4 * slotCount; n++)
+         nodeStart[n + 1] += nodeStart[n];
+      int[] nodeLinks = new int[nodeStart[4 * slotCount]];
+      int[] next = Arrays.copyOf(nodeStart, nodeStart.length);
+      coverLinks(ends, slotCount, next, nodeLinks);
+
+      walk(1, 0, slotCount, ends, nodeStart, nodeLinks);
+      parent = null;
+      size = null;
+      unions = null;
+   }
+
+   /** Makes the unions for a tree node's links, walks the node's children, then undoes them
+     * @param node   the number of the tree node
+     * @param low   the first slot the node covers
+     * @param high   the slot just past the node's
+     * @param ends   the links, as given to coverLinks
+     * @param nodeStart   where each node's entries start
+     * @param nodeLinks   the entries of every node
+     */
+   private void walk(int node, int low, int high, long[] ends, int[] nodeStart, int[] nodeLinks) {
+      int depth = unionDepth;
+      for (int i = nodeStart[node]; i < nodeStart[node + 1]; i++) {
+         int u = (int)(ends[nodeLinks[i]] >>> 32), p = (int)ends[nodeLinks[i]];
+         int first = find(u);
+         int second = find(graph.neighbor(u, p));
+         if (first == second)
+            continue;
+
+         // The smaller tree goes under the larger one
+         if (size[first] < size[second]) {
+            int swap = first;
+            first = second;
+            second = swap;
+         }
+         recordUnion(second, first, low, high, size[second]);
+         parent[second] = first;
+         size[first] += size[second];
+         unions[unionDepth++] = second;
+      }
+
+      if (high - low > 1) {
+         int middle = (low + high) >>> 1;
+         walk(2 * node, low, middle, ends, nodeStart, nodeLinks);
+         walk(2 * node + 1, middle, high, ends, nodeStart, nodeLinks);
+      }
+
+      // Undoes this node's unions, most recent first
+      while (unionDepth > depth) {
+         int child = unions[--unionDepth];
+         size[parent[child]] -= size[child];
+         parent[child] = child;
+      }
+   }
+
+   /** Saves a union made while building
+     * @param child   the root placed under another
+     * @param root   the root it was placed under
+     * @param start   the first slot the union holds over
+     * @param end   the slot just past the last one it holds over
+     * @param childSize   the number of users under the child, including the child
+     */
+   private void recordUnion(int child, int root, int start, int end, int childSize) {
+      if (unionCount == unionChild.length) {
+         int capacity = unionCount * 2;
+         unionChild = Arrays.copyOf(unionChild, capacity);
+         unionParent = Arrays.copyOf(unionParent, capacity);
+         unionStart = Arrays.copyOf(unionStart, capacity);
+         unionEnd = Arrays.copyOf(unionEnd, capacity);
+         unionSize = Arrays.copyOf(unionSize, capacity);
+      }
+      unionChild[unionCount] = child;
+      unionParent[unionCount] = root;
+      unionStart[unionCount] = start;
+      unionEnd[unionCount] = end;
+      unionSize[unionCount] = childSize;
+      unionCount++;
+   }
+
+   /** Groups the recorded unions by user into the runs the queries search */
+   private void buildRuns() {
+      // A user only gets a parent while they're a root, so their runs come out of the walk in time order and don't overlap
+      parentOffsets = new int[userCount + 1];
+      for (int i = 0; i < unionCount; i++)
+         parentOffsets[unionChild[i] + 1]++;
+      for (int u = 0; u < userCount; u++)
+         parentOffsets[u + 1] += parentOffsets[u];
+      parentStarts = new int[unionCount];
+      parentEnds = new int[unionCount];
+      parents = new int[unionCount];
+      int[] next = Arrays.copyOf(parentOffsets, userCount);
+      for (int i = 0; i < unionCount; i++) {
+         int slot = next[unionChild[i]]++;
+         parentStarts[slot] = unionStart[i];
+         parentEnds[slot] = unionEnd[i];
+         parents[slot] = unionParent[i];
+      }
+
+      // A root's size grows when a union starts and shrinks when it ends. The changes are sorted by slot and added up
+      sizeOffsets = new int[userCount + 1];
+      for (int i = 0; i < unionCount; i++)
+         sizeOffsets[unionParent[i] + 1] += 2;
+      for (int u = 0; u < userCount; u++)
+         sizeOffsets[u + 1] += sizeOffsets[u];
+      long[] changes = new long[2 * unionCount];
+      next = Arrays.copyOf(sizeOffsets, userCount);
+      for (int i = 0; i < unionCount; i++) {
+         changes[next[unionParent[i]]++] = ((long)unionStart[i] << 32) | (unionSize[i] & 0xFFFFFFFFL);
+         changes[next[unionParent[i]]++] = ((long)unionEnd[i] << 32) | (-unionSize[i] & 0xFFFFFFFFL);
+      }
+      sizeSlots = new int[2 * unionCount];
+      sizes = new int[2 * unionCount];
+      for (int u = 0; u < userCount; u++) {
+         Arrays.sort(changes, sizeOffsets[u], sizeOffsets[u + 1]);
+         int total = 0;
+         for (int i = sizeOffsets[u]; i < sizeOffsets[u + 1]; i++) {
+            total += (int)changes[i];
+            sizeSlots[i] = (int)(changes[i] >>> 32);
+            sizes[i] = total;
+         }
+      }
+      unionChild = unionParent = unionStart = unionEnd = unionSize = null;
+   }
+
+   /** Finds the last entry of a sorted range at or before a slot
+     * @param slots   the sorted slots
+     * @param from   the first entry of the range
+     * @param to   the entry just past the range
+     * @param slot   the slot searched for
+     * @return int   the position of the entry. from - 1 if every entry is after the slot
+     */
+   private static int lastAtOrBefore(int[] slots, int from, int to, int slot) {
+      int low = from, high = to;
+      while (low < high) {
+         int middle = (low + high) >>> 1;
+         if (slots[middle] <= slot)
+            low = middle + 1;
+         else
+            high = middle;
+      }
+      return low - 1;
+   }
+
+   /** Finds the root of a user's component during a slot
+     * @param index   the index of the user
+     * @param slot   the slot
+     * @return int   the index of the root
+     */
+   private int rootAt(int index, int slot) {
+      while (true) {
+         int run = lastAtOrBefore(parentStarts, parentOffsets[index], parentOffsets[index + 1], slot);
+         if (run < parentOffsets[index] || slot >= parentEnds[run])
+            return index;
+         index = parents[run];
+      }
+   }
+
+   /** Counts the users a user can reach on a date, including themselves
+     * @param index   the index of the user
+     * @param date    the time in milliseconds for which to check the links
+     * @return int   the number of users in the user's unbounded neighborhood
+     */
+   public int neighborhoodSize(int index, long date) {
+      int slot = slotOf(date);
+      if (slot < 0 || index >= userCount)
+         return 1;
+      int root = rootAt(index, slot);
+      int change = lastAtOrBefore(sizeSlots, sizeOffsets[root], sizeOffsets[root + 1], slot);
+      if (change < sizeOffsets[root])
+         return 1;
+      return 1 + sizes[change];
+   }
+
+   /** Tells if two users are connected by a path of links active on a date
+     * @param first   the index of one user
+     * @param second   the index of the other user
+     * @param date    the time in milliseconds for which to check the links
+     * @return boolean   true if either user can reach the other
+     */
+   public boolean isConnected(int first, int second, long date) {
+      if (first == second)
+         return true;
+      int slot = slotOf(date);
+      if (slot < 0 || first >= userCount || second >= userCount)
+         return false;
+      return rootAt(first, slot) == rootAt(second, slot);
+   }
+
+   /** Counts the users to which the user with the given ID is directly and indirectly linked, as neighborhood(id, date, status).size() would
+     * @param id   the user whose neighborhood is counted
+     * @param date    the date for which to check the links
+     * @param status   the exit status of the method
+     * @return int    the number of users in the neighborhood, including the user. -1 if the user is not in the network
+     * @throws NullPointerException  if any of the parameters are null
+     */
+   public int neighborhoodSize(String id, Date date, SocialNetworkStatus status) {
+      SocialNetworkUtility.checkNull(id, "ID");
+      SocialNetworkUtility.checkNull(date, "Date");
+      SocialNetworkUtility.checkNull(status, "Status");
+
+      int index = graph.indexOf(id);
+      if (index < 0) {
+         status.setStatus(SocialNetworkStatus.Status.INVALID_USERS);
+         return -1;
+      }
+      status.setStatus(SocialNetworkStatus.Status.SUCCESS);
+      return neighborhoodSize(index, date.getTime());
+   }
+
+   /** Tells if two users are connected by a path of links active on the given date
+     * @param first   the ID of one user
+     * @param second   the ID of the other user
+     * @param date    the date for which to check the links
+     * @param status   the exit status of the method
+     * @return boolean    true if the users are connected. False if not, or if either is not in the network
+     * @throws NullPointerException  if any of the parameters are null
+     */
+   public boolean isConnected(String first, String second, Date date, SocialNetworkStatus status) {
+      SocialNetworkUtility.checkNull(first, "ID");
+      SocialNetworkUtility.checkNull(second, "ID");
+      SocialNetworkUtility.checkNull(date, "Date");
+      SocialNetworkUtility.checkNull(status, "Status");
+
+      int firstIndex = graph.indexOf(first);
+      int secondIndex = graph.indexOf(second);
+      if (firstIndex < 0 || secondIndex < 0) {
+         status.setStatus(SocialNetworkStatus.Status.INVALID_USERS);
+         return false;
+      }
+      status.setStatus(SocialNetworkStatus.Status.SUCCESS);
+      return isConnected(firstIndex, secondIndex, date.getTime());
+   }
+}
@@ -0,0 +1,370 @@
+import java.util.Set;
+import java.util.HashMap;
+import java.util.Date;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/** An immutable snapshot of a social network laid out for fast reads, made by SocialNetwork.freeze().
+  * Links are kept in compressed sparse row form: the links of the user at index u are at positions offsets[u] to offsets[u + 1] - 1
+  * of the neighbors array, sorted by neighbor. Each of those positions names a link whose events are packed side by side in one array.
+  * @author Billy Barbaro
+  */
+public class FrozenSocialNetwork implements NetworkGraph {
+
+   /** A hash map mapping IDs to the index of each user */
+   private HashMap<String, Integer> indices;
+
+   /** The users in the network by index */
+   private User[] users;
+
+   /** Where each user's links start in neighbors. Has one more entry than there are users so the last user's links end at the final entry */
+   private int[] offsets;
+
+   /** The index of the user on the other end of each link, grouped by user */
+   private int[] neighbors;
+
+   /** The number of the link at each position in neighbors. Both ends of a link share its number */
+   private int[] edgeLinks;
+
+   /** Where each link's events start in events. Has one more entry than there are links */
+   private int[] eventOffsets;
+
+   /** The events of every link, each link's in time order, in milliseconds since the epoch */
+   private long[] events;
+
+   /** Runs the neighborhood searches over the snapshot */
+   private NeighborhoodSearch search;
+
+   /** Compiles a snapshot of the given graph
+     * @param graph   the users and links to be copied into the snapshot
+     * @throws NullPointerException  if the graph is null
+     * @throws IllegalArgumentException  if the graph has more link ends or events than an array can hold
+     */
+   public FrozenSocialNetwork(NetworkGraph graph) {
+      super();
+      SocialNetworkUtility.checkNull(graph, "Graph");
+
+      int userCount = graph.userCount();
+      indices = new HashMap<String, Integer>();
+      users = new User[userCount];
+      offsets = new int[userCount + 1];
+
+      // Copies the users and counts the links so every user's share of the arrays is known up front
+      for (int u = 0; u < userCount; u++) {
+         users[u] = graph.user(u);
+         indices.put(users[u].getID(), u);
+         long end = (long)offsets[u] + graph.degree(u);
+         if (end > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Too many links for a snapshot.");
+         offsets[u + 1] = (int)end;
+      }
+
+      neighbors = new int[offsets[userCount]];
+      edgeLinks = new int[offsets[userCount]];
+      copyLinks(graph);
+      search = new NeighborhoodSearch(this);
+   }
+
+   /** Fills in the neighbor, link and event arrays from the graph. Each link is given its number and has its events packed the first time it's seen
+     * @param graph   the users and links to be copied
+     * @throws IllegalArgumentException  if the links have more events than an array can hold
+     */
+   private void copyLinks(NetworkGraph graph) {
+      int linkCount = neighbors.length / 2;
+      eventOffsets = new int[linkCount + 1];
+      events = new long[countEvents(graph)];
+      int nextLink = 0;
+
+      for (int u = 0; u < users.length; u++) {
+         int degree = offsets[u + 1] - offsets[u];
+
+         // Sorts the user's links by neighbor, remembering where each came from, so links can be found with a binary search
+         long[] keys = new long[degree];
+         for (int i = 0; i < degree; i++)
+            keys[i] = ((long)graph.neighbor(u, i) << 32) | i;
+         Arrays.sort(keys);
+
+         for (int i = 0; i < degree; i++) {
+            int edge = offsets[u] + i;
+            int neighbor = (int)(keys[i] >>> 32);
+            int position = (int)keys[i];
+            neighbors[edge] = neighbor;
+
+            if (neighbor < u) { // The link was numbered when the neighbor's links were copied
+               edgeLinks[edge] = edgeLinks[findEdge(neighbor, u)];
+               continue;
+            }
+
+            // The first time we see the link, its events are packed onto the end of the event array
+            int count = graph.eventCount(u, position);
+            int start = eventOffsets[nextLink];
+            for (int e = 0; e < count; e++)
+               events[start + e] = graph.event(u, position, e);
+
+            edgeLinks[edge] = nextLink;
+            eventOffsets[nextLink + 1] = start + count;
+            nextLink++;
+         }
+      }
+   }
+
+   /** Helper method counting the events of every link, each once from the end with the lower index, so the event array can be made at its size
+     * @param graph   the users and links to be copied
+     * @return int   the number of events
+     * @throws IllegalArgumentException  if the links have more events than an array can hold
+     */
+   private int countEvents(NetworkGraph graph) {
+      long total = 0;
+      for (int u = 0; u < users.length; u++) {
+         for (int i = 0; i < offsets[u + 1] - offsets[u]; i++) {
+            if (graph.neighbor(u, i) > u)
+               total += graph.eventCount(u, i);
+         }
+      }
+      if (total > Integer.MAX_VALUE)
+         throw new IllegalArgumentException("Too many events for a snapshot.");
+      return (int)total;
+   }
+
+   /** Finds the position in neighbors of the link between two users
+     * @param index   the index of one of the users
+     * @param neighbor   the index of the other user
+     * @return int  the position of the link in the first user's share of neighbors. -1 if they aren't linked
+     */
+   private int findEdge(int index, int neighbor) {
+      int position = Arrays.binarySearch(neighbors, offsets[index], offsets[index + 1], neighbor);
+      if (position < 0)
+         return -1;
+      return position;
+   }
+
+   /** Checks if a User is a member of the social network
+    * @param id  the id of the user to be checked on
+    * @return boolean  tells if the id matches the of a user in the network
+    */
+   public boolean isMember(String id) {
+      return indices.containsKey(id);
+   }
+
+   /** Returns the user from the network matching the id
+    * @param id  the id of the user to be queried
+    * @return User  the user matching the id.  Null if not present
+    */
+   public User getUser(String id) {
+      Integer index = indices.get(id);
+      if (index == null)
+         return null;
+      return users[index];
+   }
+
+   /** Checks if a link between two users in the social network was active on a given date
+    * @param ids  a Set<Strings> of two Users' Ids to have a link checked
+    * @param date  the date to check the link
+    * @return boolean  tells is the link was active at the given date
+    */
+   public boolean isActive(Set<String> ids, Date date) {
+      // A link is exclusive between 2 users, both of whom must be in the network
+      if (ids.size() != 2)
+         return false;
+      Iterator<String> iter = ids.iterator();
+      int first = indexOf(iter.next());
+      int second = indexOf(iter.next());
+      if (first < 0 || second < 0)
+         return false;
+
+      int edge = findEdge(first, second);
+      if (edge < 0)
+         return false;
+      int link = edgeLinks[edge];
+      return SocialNetworkUtility.isActive(events, eventOffsets[link], eventOffsets[link + 1], date.getTime());
+   }
+
+   /** Finds all the users to which the user with the given ID is directly and indirectly linked
+     * @param id   the user to find friends of
+     * @param date    the date for which to check the links
+     * @param status   the exit status of the method
+     * @return Set<Friend>    a set of Friends of the user
+     */
+   public Set<Friend> neighborhood(String id, Date date, SocialNetworkStatus status) {
+      return neighborhood(id, date, Integer.MAX_VALUE, status);
+   }
+
+   /** Finds all the users to which the user with the given ID which are less than or equal to the maximum distance links away specified
+     * @param id   the user to find friends of
+     * @param date    the date for which to check the links
+     * @param distance_max    the farthest number of links a friend included in this set is away from the user
+     * @param status   the exit status of the method
+     * @return Set<Friend>    a set of Friends of the user within distance_max
+     */
+   public Set<Friend> neighborhood(String id, Date date, int distance_max, SocialNetworkStatus status) {
+      if (!search.checkNeighborhoodParams(id, date, distance_max, status))
+         return null;
+      return search.neighborhood(indexOf(id), date.getTime(), distance_max);
+   }
+
+   /** Finds the users within the maximum distance of the user with the given ID, counting the work the search does into stats
+     * @param id   the user to find friends of
+     * @param date    the date for which to check the links
+     * @param distance_max    the farthest number of links a friend included in this set is away from the user
+     * @param status   the exit status of the method
+     * @param stats   the stats the search is counted into. Null to count nothing
+     * @return Set<Friend>    a set of Friends of the user within distance_max
+     */
+   public Set<Friend> neighborhood(String id, Date date, int distance_max, SocialNetworkStatus status, QueryStats stats) {
+      if (!search.checkNeighborhoodParams(id, date, distance_max, status))
+         return null;
+      return search.neighborhood(indexOf(id), date.getTime(), distance_max, stats);
+   }
+
+   /** Streams the users within the maximum distance of the user with the given ID, nearest first.
+     * Links are only checked as the stream is read, so a caller that needs the first few friends doesn't pay for the whole neighborhood
+     * @param id   the user to find friends of
+     * @param date    the date for which to check the links
+     * @param distance_max    the farthest number of links a friend in the stream is away from the user
+     * @param status   the exit status of the method
+     * @return Stream<Friend>    the Friends of the user in order of distance, the user first. Null if the parameters are invalid
+     */
+   public Stream<Friend> neighborhoodStream(String id, Date date, int distance_max, SocialNetworkStatus status) {
+      if (!search.checkNeighborhoodParams(id, date, distance_max, status))
+         return null;
+      return search.neighborhoodStream(indexOf(id), date.getTime(), distance_max);
+   }
+
+   /** Counts the users to which the user with the given ID is directly and indirectly linked, without building the set of Friends
+     * @param id   the user whose neighborhood is counted
+     * @param date    the date for which to check the links
+     * @param status   the exit status of the method
+     * @return int    the number of users in the neighborhood, including the user. -1 if the parameters are invalid
+     */
+   public int neighborhoodSize(String id, Date date, SocialNetworkStatus status) {
+      return neighborhoodSize(id, date, Integer.MAX_VALUE, status);
+   }
+
+   /** Counts the users within the maximum distance of the user with the given ID, without building the set of Friends
+     * @param id   the user whose neighborhood is counted
+     * @param date    the date for which to check the links
+     * @param distance_max    the farthest number of links a counted user is away from the user
+     * @param status   the exit status of the method
+     * @return int    the number of users in the neighborhood, including the user. -1 if the parameters are invalid
+     */
+   public int neighborhoodSize(String id, Date date, int distance_max, SocialNetworkStatus status) {
+      if (!search.checkNeighborhoodParams(id, date, distance_max, status))
+         return -1;
+      return search.neighborhoodSize(indexOf(id), date.getTime(), distance_max);
+   }
+
+   /** Counts the users at each distance from the user with the given ID
+     * @param id   the user whose neighborhood is counted
+     * @param date    the date for which to check the links
+     * @param distance_max    the farthest number of links a counted user is away from the user
+     * @param status   the exit status of the method
+     * @return int[]    the number of users at each distance, with the user at distance 0. Null if the parameters are invalid
+     */
+   public int[] distanceHistogram(String id, Date date, int distance_max, SocialNetworkStatus status) {
+      if (!search.checkNeighborhoodParams(id, date, distance_max, status))
+         return null;
+      return search.distanceHistogram(indexOf(id), date.getTime(), distance_max);
+   }
+
+   /** Finds the number of links on the shortest path between two users, over the links active on the given date
+     * @param from   the ID of the first user
+     * @param to   the ID of the second user
+     * @param date    the date for which to check the links
+     * @param status   the exit status of the method
+     * @return int    the number of links between the users. 0 if they're the same user, -1 if they aren't connected or either is not in the network
+     */
+   public int distance(String from, String to, Date date, SocialNetworkStatus status) {
+      if (!search.checkDistanceParams(from, to, date, status))
+         return -1;
+      status.setStatus(SocialNetworkStatus.Status.SUCCESS);
+      return search.distance(indexOf(from), indexOf(to), date.getTime());
+   }
+
+   /** Builds an index over every link's history that answers unbounded neighborhood sizes and connectivity at any date without a search
+     * @return ConnectivityIndex   the index of the snapshot
+     */
+   public ConnectivityIndex connectivityIndex() {
+      return new ConnectivityIndex(this);
+   }
+
+   /** Sets how many threads share the work of large neighborhood searches. Results are the same for any setting
+     * @param parallelism   the number of threads to use. 1 or less searches on the calling thread only, which is the default
+     */
+   public void setParallelism(int parallelism) {
+      search.setParallelism(parallelism);
+   }
+
+   /** Returns a map with the dates at which the size of a user's neighborhood changed and the size at those dates
+     * @param id  the ID of the user whose neighborhood we wanna look at
+     * @param status   the exit status of the method
+     * @return Map<Date, Integer> the map of dates to neighborhood sizes. Null if the user is not in the network
+     */
+   public Map<Date, Integer> neighborhoodTrend(String id, SocialNetworkStatus status) {
+      return neighborhoodTrend(id, status, null);
+   }
+
+   /** Returns a map with the dates at which the size of a user's neighborhood changed and the size at those dates, counting the work the sweep does into stats
+     * @param id  the ID of the user whose neighborhood we wanna look at
+     * @param status   the exit status of the method
+     * @param stats   the stats the sweep is counted into. Null to count nothing
+     * @return Map<Date, Integer> the map of dates to neighborhood sizes. Null if the user is not in the network
+     */
+   public Map<Date, Integer> neighborhoodTrend(String id, SocialNetworkStatus status, QueryStats stats) {
+      if (!search.checkTrendParams(id, status))
+         return null;
+      return search.neighborhoodTrend(indexOf(id), stats);
+   }
+
+   public int indexOf(String id) {
+      Integer index = indices.get(id);
+      if (index == null)
+         return -1;
+      return index;
+   }
+
+   public User user(int index) {
+      return users[index];
+   }
+
+   public int userCount() {
+      return users.length;
+   }
+
+   public long totalDegree() {
+      return neighbors.length;
+   }
+
+   public int degree(int index) {
+      return offsets[index + 1] - offsets[index];
+   }
+
+   public int neighbor(int index, int position) {
+      return neighbors[offsets[index] + position];
+   }
+
+   public boolean isActive(int index, int position, long date) {
+      int link = edgeLinks[offsets[index] + position];
+      return SocialNetworkUtility.isActive(events, eventOffsets[link], eventOffsets[link + 1], date);
+   }
+
+   public long nextEvent(int index, int position, long date) {
+      int link = edgeLinks[offsets[index] + position];
+      return SocialNetworkUtility.nextEvent(events, eventOffsets[link], eventOffsets[link + 1], date);
+   }
+
+   public long previousEvent(int index, int position, long date) {
+      int link = edgeLinks[offsets[index] + position];
+      return SocialNetworkUtility.previousEvent(events, eventOffsets[link], eventOffsets[link + 1], date);
+   }
+
+   public int eventCount(int index, int position) {
+      int link = edgeLinks[offsets[index] + position];
+      return eventOffsets[link + 1] - eventOffsets[link];
+   }
+
+   public long event(int index, int position, int event) {
+      return events[eventOffsets[edgeLinks[offsets[index] + position]] + event];
+   }
+}
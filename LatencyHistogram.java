@@ -0,0 +1,129 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Counts latencies in nanoseconds in buckets that grow with the latency, so any latency is kept to within an eighth of its value in a fixed array.
+  * Latencies below 16 have a bucket each. Above that each power of two is split into 8 buckets, so there are 8 buckets per doubling out to the largest long.
+  * Recording a latency is an increment of its bucket and of the total, so threads can record at once without locking
+  * @author Billy Barbaro
+  */
+public class LatencyHistogram {
+
+   /** The bits of a latency below its highest one that pick its bucket within its power of two */
+   private static final int SUB_BITS = 3;
+
+   /** The number of buckets per power of two */
+   private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+   /** The number of buckets, enough for the largest long */
+   private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+   /** The number of latencies recorded in each bucket */
+   private AtomicLongArray counts;
+
+   /** The sum of the latencies recorded */
+   private LongAdder total;
+
+   /** The largest latency recorded */
+   private AtomicLong max;
+
+   /** Creates an empty histogram */
+   public LatencyHistogram() {
+      super();
+      counts = new AtomicLongArray(BUCKETS);
+      total = new LongAdder();
+      max = new AtomicLong();
+   }
+
+   /** Gives the bucket of a latency
+     * @param nanos   the latency, at least 0
+     * @return int   the bucket
+     */
+   private static int bucket(long nanos) {
+      if (nanos < 2 * SUB_BUCKETS)
+         return (int)nanos;
+      int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+      return (exponent - SUB_BITS) * SUB_BUCKETS + (int)(nanos >>> (exponent - SUB_BITS));
+   }
+
+   /** Gives the largest latency counted in a bucket
+     * @param bucket   the bucket
+     * @return long   the largest latency in the bucket
+     */
+   private static long highest(int bucket) {
+      if (bucket < 2 * SUB_BUCKETS)
+         return bucket;
+      int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+      long mantissa = SUB_BUCKETS + bucket % SUB_BUCKETS;
+      return ((mantissa + 1) << (exponent - SUB_BITS)) - 1;
+   }
+
+   /** Records a latency
+     * @param nanos   the latency in nanoseconds. Negative latencies, as a clock stepping back gives, are counted as 0
+     */
+   public void record(long nanos) {
+      nanos = Math.max(nanos, 0);
+      counts.incrementAndGet(bucket(nanos));
+      total.add(nanos);
+      long largest = max.get();
+      while (nanos > largest && !max.compareAndSet(largest, nanos))
+         largest = max.get();
+   }
+
+   /** Gives the number of latencies recorded
+     * @return long   the number of latencies
+     */
+   public long count() {
+      long count = 0;
+      for (int i = 0; i < BUCKETS; i++)
+         count += counts.get(i);
+      return count;
+   }
+
+   /** Gives the mean of the latencies recorded
+     * @return long   the mean latency in nanoseconds. 0 if none were recorded
+     */
+   public long mean() {
+      long count = count();
+      return count == 0 ? 0 : total.sum() / count;
+   }
+
+   /** Gives the largest latency recorded
+     * @return long   the largest latency in nanoseconds. 0 if none were recorded
+     */
+   public long max() {
+      return max.get();
+   }
+
+   /** Gives the latency a fraction of the latencies recorded are at or below, to within an eighth of its value, rounded up
+     * @param fraction   the fraction, from 0 to 1
+     * @return long   the latency in nanoseconds, no more than the largest recorded. 0 if none were recorded
+     */
+   public long percentile(double fraction) {
+      long[] snapshot = new long[BUCKETS];
+      long count = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+         snapshot[i] = counts.get(i);
+         count += snapshot[i];
+      }
+      if (count == 0)
+         return 0;
+
+      long rank = Math.max(1, (long)Math.ceil(fraction * count));
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+         seen += snapshot[i];
+         if (seen >= rank)
+            return Math.min(highest(i), max.get());
+      }
+      return max.get();
+   }
+
+   /** Forgets every latency recorded. Latencies recorded while it runs may be partly kept */
+   public void reset() {
+      for (int i = 0; i < BUCKETS; i++)
+         counts.set(i, 0);
+      total.reset();
+      max.set(0);
+   }
+}
@@ -1,30 +1,49 @@
 import java.util.Set;
+import java.util.HashSet;
 import java.util.Date;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.lang.StringBuilder;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Iterator;
 
 /** Class representing a link between two users in a social network with the ability to establish, tear down, and re-establish the link by date.
+  * Changes to a link are made one at a time. Lookups take no lock: an event is written before the count that takes it in, so a lookup sees a whole history, if not the latest.
+  * Events added under a version are kept in a version log until every reader sees them, so a reader pinned to an earlier version can leave them out. See VersionClock.
   * @author Billy Barbaro
   */
 
 public class Link implements SocialNetworkObject {
 
-   /** A set of 2 users whom the link is between */
-   private Set<User> users;
+   /** Returned by the millisecond lookups when there is no event to give back */
+   public static final long NO_EVENT = Long.MIN_VALUE;
+
+   /** The number of events a new link has room for before its history has to grow */
+   private static final int INITIAL_CAPACITY = 2;
+
+   /** The first of the 2 users whom the link is between */
+   private User first;
+
+   /** The second of the 2 users whom the link is between */
+   private User second;
    
-   /** A time ordered list of events between the users.
+   /** A time ordered array of events between the users, in milliseconds since the epoch. Only the first eventCount slots are in use.
     *  We can assume each event at an even index is an establish and each event at an odd index is a tear down, 
     *  because a link must first be established to be torn down.
     */
-   private ArrayList<Date> events;
+   private volatile long[] events;
+
+   /** The number of events recorded in the events array */
+   private volatile int eventCount;
+
+   /** The versions of events added lately and the count before each, for readers pinned to an earlier version. Null if every reader sees every event */
+   private volatile long[] versions;
 
    /** Creates a new invalid link */
    public Link() {
       super();
-      events = new ArrayList<Date>();
+      events = new long[INITIAL_CAPACITY];
+      eventCount = 0;
    }
 
    /** Takes a set of Users to be added to the link and checks for errors
@@ -70,7 +89,36 @@ public class Link implements SocialNetworkObject {
       if (!checkUsers(users, status))
          return;
 
-      this.users = users;
+      Iterator<User> iter = users.iterator();
+      this.first = iter.next();
+      this.second = iter.next();
+      status.setStatus(SocialNetworkStatus.Status.SUCCESS);
+   }
+
+   /** Specifies the two users which the link is between without needing a set to hold them
+    * @param first  one of the 2 valid users the link connects
+    * @param second the other of the 2 valid users the link connects. Must not be equal to first
+    * @param status a status variable to notify the method calling this of the state after completion
+    * @throws NullPointerException  occurs when any variable is null
+    */
+   public void setUsers(User first, User second, SocialNetworkStatus status) {
+
+      SocialNetworkUtility.checkNull(first, "Users");
+      SocialNetworkUtility.checkNull(second, "Users");
+      SocialNetworkUtility.checkNull(status, "Status");
+
+      // Same rules as a set of users. The link can only be set once and must be between 2 different valid users
+      if (this.isValid()) {
+         status.setStatus(SocialNetworkStatus.Status.ALREADY_VALID);
+         return;
+      }
+      if (!first.isValid() || !second.isValid() || first.equals(second)) {
+         status.setStatus(SocialNetworkStatus.Status.INVALID_USERS);
+         return;
+      }
+
+      this.first = first;
+      this.second = second;
       status.setStatus(SocialNetworkStatus.Status.SUCCESS);
    }
 
@@ -78,7 +126,7 @@ public class Link implements SocialNetworkObject {
     * @return boolean  shows if the link is valid
     */
    public boolean isValid() {
-      return users != null;
+      return first != null;
    }
 
    /** Gives the users associated with the link
@@ -87,50 +135,67 @@ public class Link implements SocialNetworkObject {
     */
    public Set<User> getUsers() throws UninitializedObjectException{
       SocialNetworkUtility.checkValid(this, "Link", "Users");
+
+      Set<User> users = new HashSet<User>();
+      users.add(first);
+      users.add(second);
       return users;
    }
 
+   /** Appends an event to the end of the history, growing the array if it is full
+     * @param date   the event to be added, in milliseconds since the epoch
+     * @param version   the version adding the event. 0 if every reader may see it at once
+     * @param settled   the version every reader sees past
+     */
+   private void addEvent(long date, long version, long settled) {
+      int count = eventCount;
+      if (count == events.length)
+         events = Arrays.copyOf(events, count + (count >> 1) + 1);
+      events[count] = date;
+      if (version > 0 || versions != null)
+         versions = VersionClock.record(versions, version, count, settled);
+      eventCount = count + 1;
+   }
+
    /** Handles the different actions for establish/tearDown if the events list is empty
      * @param date   the date to be set
-     * @param status    records the exit statue of the method
+     * @param version   the version making the change
+     * @param settled   the version every reader sees past
      * @param call   specifies the caller of the helper method
+     * @return SocialNetworkStatus.Status   the exit status of the change
      */
-   private void manipulateEmptyLink(Date date, SocialNetworkStatus status, SocialNetworkUtility.Caller call) {
+   private SocialNetworkStatus.Status manipulateEmptyLink(long date, long version, long settled, SocialNetworkUtility.Caller call) {
       if (call.equals(SocialNetworkUtility.Caller.ESTABLISH)) { // In the case establish called it, we go ahead and add the date
-         events.add(date);
-         status.setStatus(SocialNetworkStatus.Status.SUCCESS);
+         addEvent(date, version, settled);
+         return SocialNetworkStatus.Status.SUCCESS;
       }
       else { // We can't tear down a link before it's active
-         status.setStatus(SocialNetworkStatus.Status.ALREADY_INACTIVE);
+         return SocialNetworkStatus.Status.ALREADY_INACTIVE;
       }
    }
 
-   /** Sets the status variable to the correct state if the link is in the incorrect state
-     * @param status    the status variable to be set
+   /** Gives the status of a change made when the link is already in the state the change would leave it in
      * @param call   specifies the caller of the helper method
+     * @return SocialNetworkStatus.Status   the exit status of the change
      */
-   private void alreadySet(SocialNetworkStatus status, SocialNetworkUtility.Caller call) {
+   private SocialNetworkStatus.Status alreadySet(SocialNetworkUtility.Caller call) {
       if (call.equals(SocialNetworkUtility.Caller.ESTABLISH))
-         status.setStatus(SocialNetworkStatus.Status.ALREADY_ACTIVE);
+         return SocialNetworkStatus.Status.ALREADY_ACTIVE;
       else
-         status.setStatus(SocialNetworkStatus.Status.ALREADY_INACTIVE);
+         return SocialNetworkStatus.Status.ALREADY_INACTIVE;
    }
 
    /** Helper method for establish/tearDown.
-     * @param date   the Date for which the action is to take place
-     * @param status    a status variable to notify the caller of the exit status
+     * @param date   the time in milliseconds for which the action is to take place
+     * @param version   the version making the change. 0 if every reader may see it at once
+     * @param settled   the version every reader sees past
      * @param call   specifies the caller of the helper method
+     * @return SocialNetworkStatus.Status   the exit status of the change
      * @throws UninitializedObjectException  if the current link is not valid
      */
-   private void manipulateLink(Date date, SocialNetworkStatus status, SocialNetworkUtility.Caller call) throws UninitializedObjectException {
+   private synchronized SocialNetworkStatus.Status manipulateLink(long date, long version, long settled, SocialNetworkUtility.Caller call) throws UninitializedObjectException {
       SocialNetworkUtility.checkValid(this, "Link", "a new event");
 
-      // If either argument is null, throws exception
-      SocialNetworkUtility.checkNull(date, "Date");
-      SocialNetworkUtility.checkNull(status, "Status");
-
-      int size = events.size();
-
       // Here the call flag is used to determine the Link's current status using the even/odd trick.
       int targetIndicies;
       if (call.equals(SocialNetworkUtility.Caller.ESTABLISH))
@@ -139,20 +204,49 @@ public class Link implements SocialNetworkObject {
          targetIndicies = 1;
 
       // If the list is empty, we take appropriate action depending on the caller
-      if (size == 0) {
-         manipulateEmptyLink(date, status, call);
-      }
-      else { // Otherwise, we check the last element of the list to make sure the date come after that so it can be added
-         Date lastEvent = events.get(size - 1);
-         if (date.before(lastEvent))
-            status.setStatus(SocialNetworkStatus.Status.INVALID_DATE);
-         else if (size % 2 != targetIndicies)
-            alreadySet(status, call);
-         else { // If the link is in the wrong state, we take appropriate action
-            events.add(date);
-            status.setStatus(SocialNetworkStatus.Status.SUCCESS);
-         }
-      }
+      if (eventCount == 0)
+         return manipulateEmptyLink(date, version, settled, call);
+
+      // Otherwise, we check the last element of the list to make sure the date come after that so it can be added
+      if (date < events[eventCount - 1])
+         return SocialNetworkStatus.Status.INVALID_DATE;
+      if (eventCount % 2 != targetIndicies)
+         return alreadySet(call);
+      addEvent(date, version, settled);
+      return SocialNetworkStatus.Status.SUCCESS;
+   }
+
+   /** Helper method for the versions of establish/tearDown that report through a status variable
+     * @param date   the time in milliseconds for which the action is to take place
+     * @param version   the version making the change. 0 if every reader may see it at once
+     * @param settled   the version every reader sees past
+     * @param status    a status variable to notify the caller of the exit status
+     * @param call   specifies the caller of the helper method
+     * @throws UninitializedObjectException  if the current link is not valid
+     */
+   private void manipulateLink(long date, long version, long settled, SocialNetworkStatus status, SocialNetworkUtility.Caller call) throws UninitializedObjectException {
+      SocialNetworkUtility.checkValid(this, "Link", "a new event");
+
+      // If the status is null, throws exception
+      SocialNetworkUtility.checkNull(status, "Status");
+
+      status.setStatus(manipulateLink(date, version, settled, call));
+   }
+
+   /** Helper method for the Date versions of establish/tearDown. Checks the arguments before handing off the date in milliseconds
+     * @param date   the Date for which the action is to take place
+     * @param status    a status variable to notify the caller of the exit status
+     * @param call   specifies the caller of the helper method
+     * @throws UninitializedObjectException  if the current link is not valid
+     */
+   private void manipulateLink(Date date, SocialNetworkStatus status, SocialNetworkUtility.Caller call) throws UninitializedObjectException {
+      SocialNetworkUtility.checkValid(this, "Link", "a new event");
+
+      // If either argument is null, throws exception
+      SocialNetworkUtility.checkNull(date, "Date");
+      SocialNetworkUtility.checkNull(status, "Status");
+
+      manipulateLink(date.getTime(), 0, 0, status, call);
    }
 
    /** Establishes the link between two users on the given date
@@ -165,6 +259,39 @@ public class Link implements SocialNetworkObject {
       manipulateLink(date, status, SocialNetworkUtility.Caller.ESTABLISH);
    }
 
+   /** Establishes the link between two users at the given time
+    * @param date  the time in milliseconds since the epoch at which the link is to be established
+    * @param status a status variable to notify the method calling this of the state after completion
+    * @throws UninitializedObjectException  occurs when the method is called on an invalid link
+    * @throws NullPointerException occurs if the status is null
+    */
+   public void establish(long date, SocialNetworkStatus status) throws UninitializedObjectException{
+      manipulateLink(date, 0, 0, status, SocialNetworkUtility.Caller.ESTABLISH);
+   }
+
+   /** Establishes the link between two users at the given time, as part of a version of the network
+    * @param date  the time in milliseconds since the epoch at which the link is to be established
+    * @param version  the version making the change. Readers pinned to an earlier version don't see it
+    * @param settled  the version every reader sees past, so older entries in the version log can be dropped
+    * @param status a status variable to notify the method calling this of the state after completion
+    * @throws UninitializedObjectException  occurs when the method is called on an invalid link
+    * @throws NullPointerException occurs if the status is null
+    */
+   public void establish(long date, long version, long settled, SocialNetworkStatus status) throws UninitializedObjectException{
+      manipulateLink(date, version, settled, status, SocialNetworkUtility.Caller.ESTABLISH);
+   }
+
+   /** Establishes the link between two users at the given time, as part of a version of the network, without a status variable to fill in
+    * @param date  the time in milliseconds since the epoch at which the link is to be established
+    * @param version  the version making the change. Readers pinned to an earlier version don't see it
+    * @param settled  the version every reader sees past, so older entries in the version log can be dropped
+    * @return SocialNetworkStatus.Status   the state after completion
+    * @throws UninitializedObjectException  occurs when the method is called on an invalid link
+    */
+   public SocialNetworkStatus.Status establish(long date, long version, long settled) throws UninitializedObjectException{
+      return manipulateLink(date, version, settled, SocialNetworkUtility.Caller.ESTABLISH);
+   }
+
    /** Tears down the link between two users on the given date
     * @param date  the date on which the link is to be torn down
     * @param status a status variable to notify the method calling this of the state after completion
@@ -175,48 +302,47 @@ public class Link implements SocialNetworkObject {
       manipulateLink(date, status, SocialNetworkUtility.Caller.TEARDOWN);
    }
 
-   /** A method to determine if a date is between the current and next date
-     * @param date   The date to be checked
-     * @param current The current date we're looking at
-     * @param next   The next event in the list
-     * @return boolean  Tells if date lies between current and next
-     */
-   private boolean isCorrectIndex(Date date, Date current, Date next) {
-      return (!date.before(current) && next != null && next.after(date));
+   /** Tears down the link between two users at the given time
+    * @param date  the time in milliseconds since the epoch at which the link is to be torn down
+    * @param status a status variable to notify the method calling this of the state after completion
+    * @throws UninitializedObjectException  occurs when the method is called on an invalid link
+    * @throws NullPointerException occurs if the status is null
+    */
+   public void tearDown(long date, SocialNetworkStatus status) throws UninitializedObjectException{
+      manipulateLink(date, 0, 0, status, SocialNetworkUtility.Caller.TEARDOWN);
    }
 
-   /** A helper method that loops through the events and finds the date before the given one
-     * @param date   the date we're looking for
-     * @throws UninitializedObjectException  thrown if the link is invalid
-     * @return Integer  the index of the event right before our date. -1 the date is after all events. -2 if the date preceeds all events
-     */
-   private Integer loopEvents(Date date) throws UninitializedObjectException {
-      SocialNetworkUtility.checkValid(this, "Link", "checking events");
-
-      // If the date comes before everything, there's no sense in checking it
-      if (this.firstEvent() != null && date.before(this.firstEvent())) {
-         return -2;
-      }
-
-      // Set up for iterator
-      Iterator<Date> iter = events.iterator();
-      Date current = null;
-      Date next = iter.next();
-      int index = 0;
-
-       // Moves through pairs of dates in events, looking for 2 that surround the given date
-      while (iter.hasNext()) {
-         current = next;
-         next = iter.next();
+   /** Tears down the link between two users at the given time, as part of a version of the network
+    * @param date  the time in milliseconds since the epoch at which the link is to be torn down
+    * @param version  the version making the change. Readers pinned to an earlier version don't see it
+    * @param settled  the version every reader sees past, so older entries in the version log can be dropped
+    * @param status a status variable to notify the method calling this of the state after completion
+    * @throws UninitializedObjectException  occurs when the method is called on an invalid link
+    * @throws NullPointerException occurs if the status is null
+    */
+   public void tearDown(long date, long version, long settled, SocialNetworkStatus status) throws UninitializedObjectException{
+      manipulateLink(date, version, settled, status, SocialNetworkUtility.Caller.TEARDOWN);
+   }
 
-         // If we are in the proper spot for the date, check the index to see if active or inactive
-         if (isCorrectIndex(date, current, next))
-            return index;
+   /** Tears down the link between two users at the given time, as part of a version of the network, without a status variable to fill in
+    * @param date  the time in milliseconds since the epoch at which the link is to be torn down
+    * @param version  the version making the change. Readers pinned to an earlier version don't see it
+    * @param settled  the version every reader sees past, so older entries in the version log can be dropped
+    * @return SocialNetworkStatus.Status   the state after completion
+    * @throws UninitializedObjectException  occurs when the method is called on an invalid link
+    */
+   public SocialNetworkStatus.Status tearDown(long date, long version, long settled) throws UninitializedObjectException{
+      return manipulateLink(date, version, settled, SocialNetworkUtility.Caller.TEARDOWN);
+   }
 
-         index++;
-      }
-      // The date must be after all events in the list
-      return -1; 
+   /** Converts a time from the millisecond lookups back into a Date
+     * @param date  the time in milliseconds, or NO_EVENT
+     * @return Date   the matching Date. Null if there was no event
+     */
+   private static Date toDate(long date) {
+      if (date == NO_EVENT)
+         return null;
+      return new Date(date);
    }
 
  /** Tells if the link was active on the given date
@@ -225,16 +351,28 @@ public class Link implements SocialNetworkObject {
     * @return boolean  tells if the link was active
     */
  public boolean isActive(Date date) throws UninitializedObjectException {
+      return isActive(date.getTime());
+   }
 
-      Integer index = loopEvents(date);
+ /** Tells if the link was active at the given time
+    * @param date  the time in milliseconds since the epoch at which the link is to be inspected
+    * @throws UninitializedObjectException  occurs when the method is called on an invalid link
+    * @return boolean  tells if the link was active
+    */
+ public boolean isActive(long date) throws UninitializedObjectException {
+      return isActive(date, VersionClock.LATEST);
+   }
 
-      // Here we've found the proper spot for the date so we check its activity
-      if (index >= 0)
-         return index % 2 == 0;
-      else if (index == -1) //In this case the event must be after all events
-         return events.size() % 2 == 1;
-      else
-         return false;
+ /** Tells if the link was active at the given time, as of a version
+    * @param date  the time in milliseconds since the epoch at which the link is to be inspected
+    * @param version  the version a reader is pinned to. Events added after it are left out
+    * @throws UninitializedObjectException  occurs when the method is called on an invalid link
+    * @return boolean  tells if the link was active
+    */
+ public boolean isActive(long date, long version) throws UninitializedObjectException {
+      SocialNetworkUtility.checkValid(this, "Link", "checking events");
+      int count = eventCount(version); // Read before the events, so every event counted is in the array read
+      return SocialNetworkUtility.isActive(events, 0, count, date);
    }
 
    /** Tells the first event recorded with the link
@@ -244,10 +382,10 @@ public class Link implements SocialNetworkObject {
    public Date firstEvent() throws UninitializedObjectException{
       SocialNetworkUtility.checkValid(this, "Link", "First Event");
 
-      if (events.size() == 0)
+      if (eventCount == 0)
          return null;
 
-      return events.get(0);
+      return new Date(events[0]);
    }
 
    /** Tells the last event recorded with the link
@@ -257,21 +395,11 @@ public class Link implements SocialNetworkObject {
    public Date lastEvent() throws UninitializedObjectException{
       SocialNetworkUtility.checkValid(this, "Link", "Last Event");
 
-      if (events.size() == 0)
+      int count = eventCount;
+      if (count == 0)
          return null;
 
-      return events.get(events.size() - 1);
-   }
-
-   /** A little helper method to get the next date in the list of events
-     * @param index  specifies the index before the date wanted
-     * @return Date  the date of the event after index
-     */
-   private Date getNextEvent(int index) {
-      if (index + 1 < events.size())
-         return events.get(index + 1);
-      else
-         return null;
+      return new Date(events[count - 1]);
    }
 
    /** Gives the next event after the given date.
@@ -280,35 +408,28 @@ public class Link implements SocialNetworkObject {
    * @return Date  the date of the next action.  Null if there is none
    */
    public Date nextEvent(Date date) throws UninitializedObjectException {
+      return toDate(nextEvent(date.getTime()));
+   }
 
-      // Gets the index of the in the event list right before the date given
-      Integer index = loopEvents(date);
-
-      // If we found the proper spot for the date, return it
-      if (index >= 0)
-         return getNextEvent(index);
-      else if (index == -2) // The date is before any given date.
-         return this.firstEvent();
-      else
-         return null;
+   /** Gives the next event after the given time.
+   * @param date  the time in milliseconds since the epoch at which the inspection begins
+   * @throws UninitializedObjectException  occurs when the method is called on an invalid link
+   * @return long  the time of the next action.  NO_EVENT if there is none
+   */
+   public long nextEvent(long date) throws UninitializedObjectException {
+      return nextEvent(date, VersionClock.LATEST);
    }
 
-   /** Helper method to check that when we ask for the previous event, we aren't given the current event
-     * @param date  the user's date. We assure the event we return is not on this date
-     * @param index the index at which we are check.
-     * @throws UninitializedObjectException  occurs when the method is called on an invalid link
-     * @return Date  the previousDate, adjusted so it's not the same as the date requested.
-     */
-   private Date getPreviousEvent(Date date, int index) throws UninitializedObjectException {
-      int currentPlace = index;
-      while (true) {
-         if (currentPlace - 1 < 0)
-            return this.firstEvent();
-         if (events.get(currentPlace).equals(date))
-            currentPlace -= 1;
-         else
-            return events.get(currentPlace);
-      }
+   /** Gives the next event after the given time, as of a version
+   * @param date  the time in milliseconds since the epoch at which the inspection begins
+   * @param version  the version a reader is pinned to. Events added after it are left out
+   * @throws UninitializedObjectException  occurs when the method is called on an invalid link
+   * @return long  the time of the next action.  NO_EVENT if there is none
+   */
+   public long nextEvent(long date, long version) throws UninitializedObjectException {
+      SocialNetworkUtility.checkValid(this, "Link", "checking events");
+      int count = eventCount(version);
+      return SocialNetworkUtility.nextEvent(events, 0, count, date);
    }
 
    /** Gives the event right before the given date.
@@ -317,16 +438,84 @@ public class Link implements SocialNetworkObject {
    * @return Date  the last date of action.  Null if there is none
    */
    public Date previousEvent(Date date) throws UninitializedObjectException {
+      return toDate(previousEvent(date.getTime()));
+   }
 
-      Integer index = loopEvents(date);
+   /** Gives the event right before the given time.
+   * @param date  the time in milliseconds since the epoch at which the inspection begins
+   * @throws UninitializedObjectException  occurs when the method is called on an invalid link
+   * @return long  the time of the last action.  NO_EVENT if there is none
+   */
+   public long previousEvent(long date) throws UninitializedObjectException {
+      return previousEvent(date, VersionClock.LATEST);
+   }
 
-      // If we've found the proper spot, confirm there's nothing before it
-      if (index >= 0)
-         return getPreviousEvent(date, index);
-      else if (index == -2) // The date is before the link is established, so there's nothing before it
-         return null;
-      else // The given date is after all listed events, so we get the last event and verify we don't land on it
-         return getPreviousEvent(date, events.size() - 1);
+   /** Gives the event right before the given time, as of a version
+   * @param date  the time in milliseconds since the epoch at which the inspection begins
+   * @param version  the version a reader is pinned to. Events added after it are left out
+   * @throws UninitializedObjectException  occurs when the method is called on an invalid link
+   * @return long  the time of the last action.  NO_EVENT if there is none
+   */
+   public long previousEvent(long date, long version) throws UninitializedObjectException {
+      SocialNetworkUtility.checkValid(this, "Link", "checking events");
+      int count = eventCount(version);
+      return SocialNetworkUtility.previousEvent(events, 0, count, date);
+   }
+
+   /** Gives the number of events recorded with the link
+   * @return int  the number of times the link has been established or torn down. 0 if the link is invalid
+   */
+   public int eventCount() {
+      return eventCount;
+   }
+
+   /** Gives the number of events recorded with the link as of a version
+   * @param version  the version a reader is pinned to. VersionClock.LATEST for every event
+   * @return int  the number of events before the first one added after the version
+   */
+   public int eventCount(long version) {
+      // The count is read before the log, so any event it takes in that is newer than the version is in the log read
+      int count = eventCount;
+      return VersionClock.visible(versions, count, version);
+   }
+
+   /** Gives one of the link's events
+   * @param position  the number of the event, between 0 and eventCount() - 1. Even numbered events are establishes, odd are tear downs
+   * @return long  the time of the event in milliseconds since the epoch
+   */
+   public long eventAt(int position) {
+      return events[position];
+   }
+
+   /** Copies the link's events, in milliseconds since the epoch, into an array
+   * @param destination  the array to copy the events into. Must have room for eventCount() events past offset
+   * @param offset   the position in destination of the first event
+   */
+   public void copyEvents(long[] destination, int offset) {
+      int count = eventCount;
+      System.arraycopy(events, 0, destination, offset, count);
+   }
+
+   /** Gives a link with no events its whole history at once, as when a saved network is restored
+   * @param history  the events in time order, in milliseconds since the epoch. Even numbered events are establishes, odd are tear downs.
+   *   The link keeps the array rather than copying it, so the caller must not change it afterwards
+   * @throws UninitializedObjectException  occurs when the method is called on an invalid link
+   * @throws NullPointerException occurs if the history is null
+   * @return boolean  true if the events were set. False if the link already has events or the events are out of order
+   */
+   public synchronized boolean setEvents(long[] history) throws UninitializedObjectException {
+      SocialNetworkUtility.checkValid(this, "Link", "events");
+      SocialNetworkUtility.checkNull(history, "Events");
+
+      if (eventCount != 0)
+         return false;
+      for (int i = 1; i < history.length; i++) {
+         if (history[i] < history[i - 1])
+            return false;
+      }
+      events = history;
+      eventCount = history.length;
+      return true;
    }
 
    /** Gvies the link in a readable form
@@ -337,15 +526,17 @@ public class Link implements SocialNetworkObject {
          StringBuilder linkDescription = new StringBuilder("The link between ");
 
          // Uses an iterator to get the first two users and put 'and' between them
-         Iterator<User> iter = users.iterator();
+         Iterator<User> iter = new HashSet<User>(Arrays.asList(first, second)).iterator();
          linkDescription.append(iter.next().getID());
          linkDescription.append(" and ");
          linkDescription.append(iter.next().getID());
 
          DateFormat formatDate = new SimpleDateFormat("yyyy.MM.dd");
 
-         for (int i = 0; i < events.size(); i++) {
-            Date event = (Date)(events.get(i).clone());
+         int count = eventCount;
+         long[] history = events;
+         for (int i = 0; i < count; i++) {
+            Date event = new Date(history[i]);
 
             // Corrections for the deprecated Date class
             event.setYear(event.getYear() - 1900);
@@ -377,23 +568,13 @@ public class Link implements SocialNetworkObject {
          return false;
       // Cast the object to a link so we can user the appropriate methods
       Link testEqual = (Link)o;
-      Set<User> testUsers;
 
       // Only valid links can be equal
-      try {
-         testUsers = testEqual.getUsers();
-      }
-      catch (UninitializedObjectException uoe) {
+      if (!this.isValid() || !testEqual.isValid())
          return false;
-      }
 
-      // Only valid links can be equal
-      try {
-         return testUsers.equals(this.getUsers());
-      }
-      catch (UninitializedObjectException uoe) {
-         return false;
-      }
+      // The users may be held in either order
+      return (first.equals(testEqual.first) && second.equals(testEqual.second)) || (first.equals(testEqual.second) && second.equals(testEqual.first));
    }
 
   /** Generates a hash for the link based off the users
@@ -401,11 +582,9 @@ public class Link implements SocialNetworkObject {
   */
   @Override
   public int hashCode() {
-    try {
-      return this.getUsers().hashCode();
-    }
-    catch (UninitializedObjectException uoe) {
+    if (!this.isValid())
       return 0;
-    }
+    // Matches the hash of the set of both users
+    return first.hashCode() + second.hashCode();
   }
 }
\ No newline at end of file
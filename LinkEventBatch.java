@@ -0,0 +1,149 @@
+import java.util.Arrays;
+
+/** A batch of link events to be applied to a social network at once with SocialNetwork.applyEvents.
+  * Each record names two users, a date, and whether the link between them is established or torn down on that date.
+  * Records are kept in parallel arrays, so a batch of millions costs a few arrays rather than an object per record.
+  * @author Billy Barbaro
+  */
+public class LinkEventBatch {
+
+   /** The number of records the arrays start with */
+   private static final int INITIAL_CAPACITY = 16;
+
+   /** The ID of the first user of each record */
+   private String[] firsts;
+
+   /** The ID of the second user of each record */
+   private String[] seconds;
+
+   /** The date of each record in milliseconds since the epoch */
+   private long[] dates;
+
+   /** Tells for each record if the link is established, rather than torn down */
+   private boolean[] establishes;
+
+   /** The number of records in the batch */
+   private int size;
+
+   /** Creates an empty batch */
+   public LinkEventBatch() {
+      this(INITIAL_CAPACITY);
+   }
+
+   /** Creates an empty batch with room for a number of records before it has to grow
+     * @param capacity   the number of records expected
+     */
+   public LinkEventBatch(int capacity) {
+      super();
+      capacity = Math.max(capacity, 1);
+      firsts = new String[capacity];
+      seconds = new String[capacity];
+      dates = new long[capacity];
+      establishes = new boolean[capacity];
+      size = 0;
+   }
+
+   /** Adds a record to the end of the batch, growing the arrays if they are full
+     * @param first   the ID of one of the users
+     * @param second   the ID of the other user
+     * @param date   the time in milliseconds since the epoch
+     * @param establish   true to establish the link, false to tear it down
+     * @throws NullPointerException  if either ID is null
+     */
+   private void add(String first, String second, long date, boolean establish) {
+      SocialNetworkUtility.checkNull(first, "ID");
+      SocialNetworkUtility.checkNull(second, "ID");
+
+      if (size == dates.length) {
+         int capacity = size + (size >> 1) + 1;
+         firsts = Arrays.copyOf(firsts, capacity);
+         seconds = Arrays.copyOf(seconds, capacity);
+         dates = Arrays.copyOf(dates, capacity);
+         establishes = Arrays.copyOf(establishes, capacity);
+      }
+      firsts[size] = first;
+      seconds[size] = second;
+      dates[size] = date;
+      establishes[size] = establish;
+      size++;
+   }
+
+   /** Adds a record establishing the link between two users
+     * @param first   the ID of one of the users
+     * @param second   the ID of the other user
+     * @param date   the time in milliseconds since the epoch at which the link is established
+     * @throws NullPointerException  if either ID is null
+     */
+   public void establish(String first, String second, long date) {
+      add(first, second, date, true);
+   }
+
+   /** Adds a record tearing down the link between two users
+     * @param first   the ID of one of the users
+     * @param second   the ID of the other user
+     * @param date   the time in milliseconds since the epoch at which the link is torn down
+     * @throws NullPointerException  if either ID is null
+     */
+   public void tearDown(String first, String second, long date) {
+      add(first, second, date, false);
+   }
+
+   /** Adds every record of another batch to the end of this one, in their order
+     * @param other   the batch whose records are added
+     * @throws NullPointerException  if the other batch is null
+     */
+   public void addAll(LinkEventBatch other) {
+      SocialNetworkUtility.checkNull(other, "Batch");
+      int needed = size + other.size;
+      if (needed > dates.length) {
+         firsts = Arrays.copyOf(firsts, needed);
+         seconds = Arrays.copyOf(seconds, needed);
+         dates = Arrays.copyOf(dates, needed);
+         establishes = Arrays.copyOf(establishes, needed);
+      }
+      System.arraycopy(other.firsts, 0, firsts, size, other.size);
+      System.arraycopy(other.seconds, 0, seconds, size, other.size);
+      System.arraycopy(other.dates, 0, dates, size, other.size);
+      System.arraycopy(other.establishes, 0, establishes, size, other.size);
+      size = needed;
+   }
+
+   /** Gives the number of records in the batch
+     * @return int   the number of records
+     */
+   public int size() {
+      return size;
+   }
+
+   /** Gives the ID of the first user of a record
+     * @param record   the number of the record, in the order they were added
+     * @return String   the ID of the first user
+     */
+   public String first(int record) {
+      return firsts[record];
+   }
+
+   /** Gives the ID of the second user of a record
+     * @param record   the number of the record
+     * @return String   the ID of the second user
+     */
+   public String second(int record) {
+      return seconds[record];
+   }
+
+   /** Gives the date of a record
+     * @param record   the number of the record
+     * @return long   the time in milliseconds since the epoch
+     */
+   public long date(int record) {
+      return dates[record];
+   }
+
+   /** Tells if a record establishes its link
+     * @param record   the number of the record
+     * @return boolean   true if the link is established, false if it is torn down
+     */
+   public boolean isEstablish(int record) {
+      return establishes[record];
+   }
+}
@@ -0,0 +1,302 @@
+import java.util.Set;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** A bounded cache of neighborhood results, keyed by user, date and distance, which drops the least recently used result once full.
+  * Each result remembers the users it reached. A link only changes a neighborhood on or after the date of its change, and only if one of its users was reached,
+  * so a change to a link drops exactly the results from those dates that reached one of its users. Results are indexed by the users they reached,
+  * so a change only looks at the results reaching its own users.
+  * Writers don't take the cache's lock: each change is noted in a ring by the version it was made under, and readers drop what the changes up to their own version
+  * could have changed before they look. A search's result is only turned away if a change it didn't see could have reached it
+  * @author Billy Barbaro
+  */
+public class NeighborhoodCache {
+
+   /** The user, date and distance a neighborhood was found for */
+   private static class Key {
+
+      /** The index of the user */
+      private int index;
+
+      /** The time in milliseconds the links were checked at */
+      private long date;
+
+      /** The farthest distance searched */
+      private int distance;
+
+      public Key(int index, long date, int distance) {
+         this.index = index;
+         this.date = date;
+         this.distance = distance;
+      }
+
+      @Override
+      public boolean equals(Object o) {
+         if (!(o instanceof Key))
+            return false;
+         Key other = (Key)o;
+         return index == other.index && date == other.date && distance == other.distance;
+      }
+
+      @Override
+      public int hashCode() {
+         return 31 * (31 * index + Long.hashCode(date)) + distance;
+      }
+   }
+
+   /** A cached neighborhood and the users it reached */
+   private static class Entry {
+
+      /** The Friends handed to callers */
+      private Set<Friend> friends;
+
+      /** The indices of the users reached, sorted so they can be searched */
+      private int[] reached;
+
+      public Entry(Set<Friend> friends, int[] reached) {
+         this.friends = friends;
+         this.reached = reached;
+      }
+   }
+
+   /** The cached neighborhoods, from least to most recently used */
+   private LinkedHashMap<Key, Entry> entries;
+
+   /** The keys of the cached neighborhoods that reached each user, by the user's index */
+   private HashMap<Integer, Set<Key>> reaching;
+
+   /** The number of lookups answered from the cache */
+   private long hits;
+
+   /** The number of lookups that had to search */
+   private long misses;
+
+   /** The number of versions whose changes the ring holds. A power of two, and at least as many as may be handed out and not yet published */
+   private static final int CHANGES = 4096;
+
+   /** The version each slot of the ring holds the change of, or its negation while the change is written. A slot below its version holds no change for it */
+   private AtomicLongArray stamps;
+
+   /** The indices of the users of each slot's change, the lower one in the high half */
+   private AtomicLongArray changedUsers;
+
+   /** The date of each slot's change */
+   private AtomicLongArray changedDates;
+
+   /** The latest version whose change has been applied to the cached neighborhoods */
+   private long applied;
+
+   /** Creates an empty cache
+     * @param capacity   the most neighborhoods kept at once. Must be positive
+     * @param version    the version of the network when caching is turned on. Changes up to it are in every search
+     * @throws IllegalArgumentException  if the capacity is not positive
+     */
+   public NeighborhoodCache(final int capacity, long version) {
+      super();
+      if (capacity <= 0)
+         throw new IllegalArgumentException("Capacity must be positive.");
+
+      // Ordering by access makes the eldest entry the least recently used
+      entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+         @Override
+         protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+            if (size() <= capacity)
+               return false;
+            unindex(eldest.getKey(), eldest.getValue());
+            return true;
+         }
+      };
+      reaching = new HashMap<Integer, Set<Key>>();
+      stamps = new AtomicLongArray(CHANGES);
+      changedUsers = new AtomicLongArray(CHANGES);
+      changedDates = new AtomicLongArray(CHANGES);
+      applied = version;
+      hits = 0;
+      misses = 0;
+   }
+
+   /** Gives the neighborhood of a user from the cache, searching for it and caching it if it isn't there
+     * @param search   the search to run on a miss
+     * @param version   the version of the network the search sees, which is published. Must stay pinned while the search runs
+     * @param start   the index of the user to find friends of
+     * @param date    the time in milliseconds for which to check the links
+     * @param distance    the farthest number of links a friend included in this set is away from the user
+     * @return Set<Friend>    a read only set of Friends of the user within distance, including the user at distance 0
+     */
+   public Set<Friend> neighborhood(NeighborhoodSearch search, long version, int start, long date, int distance) {
+      Key key = new Key(start, date, distance);
+      synchronized (this) {
+         // The changes the reader can see are applied first, so it never finds a neighborhood one of them changed
+         applyChanges(version);
+         Entry entry = entries.get(key);
+         if (entry != null) {
+            hits++;
+            return entry.friends;
+         }
+         misses++;
+      }
+
+      // The search runs outside the lock so other users' hits aren't held up behind it
+      TraversalWorkspace workspace = search.search(start, date, distance);
+      int[] reached = new int[workspace.size()];
+      for (int i = 0; i < reached.length; i++)
+         reached[i] = workspace.reached(i);
+      Arrays.sort(reached);
+      Set<Friend> friends = Collections.unmodifiableSet(search.toFriends(workspace));
+
+      // Changes after the search's version that are applied later drop the result through the index, so only the ones applied already are checked
+      synchronized (this) {
+         if (!entries.containsKey(key) && !missedChange(version, date, reached)) {
+            Entry entry = new Entry(friends, reached);
+            for (int index : reached)
+               reaching.computeIfAbsent(index, i -> new HashSet<Key>()).add(key);
+            entries.put(key, entry);
+         }
+      }
+      return friends;
+   }
+
+   /** Helper method telling if a change applied already, but made after the version a search saw, could have changed its result
+     * @param version   the version the search saw
+     * @param date    the time in milliseconds the search checked the links at
+     * @param reached   the indices of the users the search reached, sorted
+     * @return boolean   true if such a change reached one of the users on or before the date, or if the ring no longer holds every change applied after the version
+     */
+   private boolean missedChange(long version, long date, int[] reached) {
+      if (applied - version > CHANGES)
+         return true;
+      long[] change = new long[2];
+      for (long v = version + 1; v <= applied; v++) {
+         int found = readChange(v, change);
+         if (found < 0)
+            return true;
+         if (found > 0 && date >= change[1]
+             && (Arrays.binarySearch(reached, (int)(change[0] >>> 32)) >= 0 || Arrays.binarySearch(reached, (int)change[0]) >= 0))
+            return true;
+      }
+      return false;
+   }
+
+   /** Helper method dropping the neighborhoods that the changes made up to a version could have changed, from the last version applied on.
+     * If the ring no longer holds one of the changes, every neighborhood is dropped
+     * @param version   the version seen by the reader
+     */
+   private void applyChanges(long version) {
+      if (version <= applied)
+         return;
+      long[] change = new long[2];
+      for (long v = applied + 1; v <= version && version - applied <= CHANGES; v++) {
+         int found = readChange(v, change);
+         if (found < 0)
+            break;
+         // Neighborhoods from before the change never saw it, and ones reaching neither user can't be reached through the link
+         if (found > 0) {
+            dropReaching((int)(change[0] >>> 32), change[1]);
+            dropReaching((int)change[0], change[1]);
+         }
+         applied = v;
+      }
+      if (applied < version) {
+         entries.clear();
+         reaching.clear();
+         applied = version;
+      }
+   }
+
+   /** Helper method reading the change made under a published version from the ring
+     * @param version   the version, which must be published
+     * @param change   filled in with the change's users, the lower in the high half, and its date
+     * @return int   1 if the version changed a link, 0 if it didn't, and -1 if its slot has been taken by a later version
+     */
+   private int readChange(long version, long[] change) {
+      int slot = (int)version & (CHANGES - 1);
+      long stamp = stamps.get(slot);
+      if (stamp >= 0 && stamp < version) // A published version that changed a link stamped its slot before publishing
+         return 0;
+      if (stamp != version)
+         return -1;
+      change[0] = changedUsers.get(slot);
+      change[1] = changedDates.get(slot);
+      return stamps.get(slot) == version ? 1 : -1;
+   }
+
+   /** Helper method taking a neighborhood out of the index of the users it reached
+     * @param key   the user, date and distance of the neighborhood
+     * @param entry   the neighborhood being dropped
+     */
+   private void unindex(Key key, Entry entry) {
+      for (int index : entry.reached) {
+         Set<Key> keys = reaching.get(index);
+         keys.remove(key);
+         if (keys.isEmpty())
+            reaching.remove(index);
+      }
+   }
+
+   /** Notes a change to a link, so readers drop the neighborhoods it could have changed once they see its version. Must be called before the change's version is published.
+     * Takes no lock, so writers to different links don't wait on each other here
+     * @param first   the index of one of the users linked
+     * @param second   the index of the other user linked
+     * @param date    the time in milliseconds of the change
+     * @param version   the version of the network making the change
+     */
+   public void linkChanged(int first, int second, long date, long version) {
+      // No other writer has the slot: the version CHANGES before has been published, since fewer versions than that are ever unpublished at once
+      int slot = (int)version & (CHANGES - 1);
+      stamps.set(slot, -version);
+      changedUsers.set(slot, ((long)Math.min(first, second) << 32) | Math.max(first, second));
+      changedDates.set(slot, date);
+      stamps.set(slot, version);
+   }
+
+   /** Helper method dropping the neighborhoods from on or after a date that reached a user
+     * @param index   the index of the user
+     * @param date    the time in milliseconds of the change
+     */
+   private void dropReaching(int index, long date) {
+      Set<Key> keys = reaching.get(index);
+      if (keys == null)
+         return;
+
+      // The keys are copied first, since dropping an entry takes it out of this set
+      ArrayList<Key> dropped = new ArrayList<Key>();
+      for (Key key : keys)
+         if (key.date >= date)
+            dropped.add(key);
+      for (Key key : dropped)
+         unindex(key, entries.remove(key));
+   }
+
+   /** Drops every cached neighborhood */
+   public synchronized void clear() {
+      entries.clear();
+      reaching.clear();
+   }
+
+   /** Gives the number of neighborhoods cached
+     * @return int   the number of entries in the cache
+     */
+   public synchronized int size() {
+      return entries.size();
+   }
+
+   /** Gives the number of lookups answered from the cache
+     * @return long   the number of hits since the cache was made
+     */
+   public synchronized long getHits() {
+      return hits;
+   }
+
+   /** Gives the number of lookups that had to search
+     * @return long   the number of misses since the cache was made
+     */
+   public synchronized long getMisses() {
+      return misses;
+   }
+}
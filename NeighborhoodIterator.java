@@ -0,0 +1,200 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/** Walks the neighborhood of a user one Friend at a time, in order of distance, doing only as much of the breadth first search as has been asked for.
+  * Each user's links are checked only once a Friend past the ones found so far is wanted, so a caller that stops early leaves the rest of the network untouched.
+  * Users added to the network after the iterator was made are not reached.
+  * The users reached are kept in a hash set that grows with them, so an iterator costs memory for the users it reaches, not for the size of the network
+  * @author Billy Barbaro
+  */
+public class NeighborhoodIterator implements Iterator<Friend> {
+
+   /** The initial number of users the iterator has room for before it has to grow */
+   private static final int INITIAL_CAPACITY = 16;
+
+   /** The graph being searched */
+   private NetworkGraph graph;
+
+   /** The time in milliseconds to check the links at */
+   private long date;
+
+   /** The farthest distance a friend can be from the user */
+   private int distance;
+
+   /** The number of users in the network when the iterator was made */
+   private int userCount;
+
+   /** The indices of the users reached so far, in the order they were reached, which also serves as the queue of users whose links are yet to be checked */
+   private int[] order;
+
+   /** The distance of each user reached, at the user's position in order */
+   private int[] distances;
+
+   /** The number of users reached */
+   private int size;
+
+   /** An open addressed hash table of the users reached, each slot holding a user's index plus one, or 0 if empty. Kept under half full */
+   private int[] table;
+
+   /** The position in order of the next user to be handed out */
+   private int returned;
+
+   /** The position in order of the next user to have their links checked */
+   private int expanded;
+
+   /** Run once every friend has been found. Null if there's nothing to run */
+   private Runnable whenExhausted;
+
+   /** Creates an iterator over the users within a number of links of the user at start
+     * @param graph   the users and links to be searched
+     * @param start   the index of the user whose neighborhood is walked
+     * @param date    the time in milliseconds for which to check the links
+     * @param distance    the farthest number of links a friend is away from the user
+     * @throws NullPointerException  if the graph is null
+     */
+   public NeighborhoodIterator(NetworkGraph graph, int start, long date, int distance) {
+      super();
+      SocialNetworkUtility.checkNull(graph, "Graph");
+      this.graph = graph;
+      this.date = date;
+      this.distance = distance;
+      this.userCount = graph.userCount();
+
+      // Each iterator has its own users reached, since it outlives any one call and can't share the thread's workspace
+      order = new int[INITIAL_CAPACITY];
+      distances = new int[INITIAL_CAPACITY];
+      table = new int[2 * INITIAL_CAPACITY];
+      size = 0;
+      visit(start, 0);
+      returned = 0;
+      expanded = 0;
+   }
+
+   /** Spreads the bits of a user's index, so indices close together land in different slots
+     * @param index   the index of the user
+     * @return int   the hash of the index
+     */
+   private static int hash(int index) {
+      int h = index * 0x9E3779B9;
+      return h ^ (h >>> 16);
+   }
+
+   /** Places a user in the hash table. The user must not be in it already
+     * @param lookup   the table
+     * @param index   the index of the user
+     */
+   private static void addToTable(int[] lookup, int index) {
+      int mask = lookup.length - 1;
+      int slot = hash(index) & mask;
+      while (lookup[slot] != 0)
+         slot = (slot + 1) & mask;
+      lookup[slot] = index + 1;
+   }
+
+   /** Marks a user as reached at the given distance and places them at the back of the queue, unless they have already been reached
+     * @param index   the index of the user
+     * @param depth   the number of links between the start and the user
+     */
+   private void visit(int index, int depth) {
+      int mask = table.length - 1;
+      int slot = hash(index) & mask;
+      for (; table[slot] != 0; slot = (slot + 1) & mask) {
+         if (table[slot] == index + 1)
+            return;
+      }
+      table[slot] = index + 1;
+
+      if (size == order.length) {
+         order = Arrays.copyOf(order, 2 * size);
+         distances = Arrays.copyOf(distances, 2 * size);
+      }
+      order[size] = index;
+      distances[size++] = depth;
+
+      // Rebuilds the table twice as large once it's half full
+      if (2 * size > table.length) {
+         int[] lookup = new int[2 * table.length];
+         for (int i = 0; i < size; i++)
+            addToTable(lookup, order[i]);
+         table = lookup;
+      }
+   }
+
+   /** Tells if a user has been reached
+     * @param index   the index of the user
+     * @return boolean   true if the user has been reached by this iterator
+     */
+   private boolean isVisited(int index) {
+      int mask = table.length - 1;
+      for (int slot = hash(index) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+         if (table[slot] == index + 1)
+            return true;
+      }
+      return false;
+   }
+
+   /** Checks the links of the next user in the queue, adding the users they reach */
+   private void expandNext() {
+      int index = order[expanded];
+      int depth = distances[expanded++] + 1;
+      if (depth > distance)
+         return;
+
+      int degree = graph.degree(index);
+      for (int i = 0; i < degree; i++) {
+         int friendIndex = graph.neighbor(index, i);
+         if (friendIndex < userCount && !isVisited(friendIndex) && graph.isActive(index, i, date))
+            visit(friendIndex, depth);
+      }
+   }
+
+   /** Tells if there are more friends in the neighborhood, checking links only until one is found
+     * @return boolean   true if next will return a friend
+     */
+   public boolean hasNext() {
+      while (returned == size && expanded < size)
+         expandNext();
+      if (returned < size)
+         return true;
+
+      Runnable action = whenExhausted;
+      whenExhausted = null;
+      if (action != null)
+         action.run();
+      return false;
+   }
+
+   /** Gives an action to run once every friend has been found, such as letting go of the version of the network being read
+     * @param action   the action, run at most once. Null for none
+     */
+   public void whenExhausted(Runnable action) {
+      whenExhausted = action;
+   }
+
+   /** Gives a stream of the friends the iterator has yet to hand out
+     * @return Stream<Friend>   the friends, in order of distance
+     */
+   public Stream<Friend> stream() {
+      Spliterator<Friend> friends = Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL);
+      return StreamSupport.stream(friends, false);
+   }
+
+   /** Gives the next closest friend in the neighborhood. Friends at the same distance come in no particular order
+     * @return Friend   the next friend, the user themselves at distance 0 first
+     * @throws NoSuchElementException  if every friend has been returned
+     */
+   public Friend next() {
+      if (!hasNext())
+         throw new NoSuchElementException("No friends left in the neighborhood.");
+
+      Friend friend = new Friend();
+      friend.set(graph.user(order[returned]), distances[returned]);
+      returned++;
+      return friend;
+   }
+}
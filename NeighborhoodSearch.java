@@ -0,0 +1,712 @@
+import java.util.Set;
+import java.util.HashSet;
+import java.util.HashMap;
+import java.util.Date;
+import java.util.Map;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+import java.util.stream.Stream;
+
+/** Runs the neighborhood and neighborhood trend searches of a social network over any NetworkGraph,
+  * so the same searches serve both a live SocialNetwork and a FrozenSocialNetwork.
+  * @author Billy Barbaro
+  */
+public class NeighborhoodSearch {
+
+   /** The workspace each thread reuses for its searches */
+   private static final ThreadLocal<TraversalWorkspace> WORKSPACES = ThreadLocal.withInitial(TraversalWorkspace::new);
+
+   /** The second workspace each thread reuses, for the target's side of a distance search and for finding the links a trend can depend on */
+   private static final ThreadLocal<TraversalWorkspace> OTHER_WORKSPACES = ThreadLocal.withInitial(TraversalWorkspace::new);
+
+   /** The search scans unreached users once the links out of a depth are more than 1 / ALPHA of the unexplored links */
+   private static final int ALPHA = 14;
+
+   /** The search goes back to checking links once a depth holds fewer than 1 / BETA of the users */
+   private static final int BETA = 24;
+
+   /** Frontiers and ranges of users are split into chunks of this many users for parallel searches. Smaller depths are searched on the calling thread */
+   private static final int GRAIN = 2048;
+
+   /** The graph the searches run over */
+   private NetworkGraph graph;
+
+   /** Tells if the search may switch to scanning unreached users */
+   private boolean directionOptimizing;
+
+   /** The threads that share the work of large depths. Null when searches run on the calling thread only */
+   private volatile ForkJoinPool pool;
+
+   /** Creates a search over the given graph
+     * @param graph   the users and links to be searched
+     * @throws NullPointerException  if the graph is null
+     */
+   public NeighborhoodSearch(NetworkGraph graph) {
+      super();
+      SocialNetworkUtility.checkNull(graph, "Graph");
+      this.graph = graph;
+      this.directionOptimizing = true;
+   }
+
+   /** Verifies that the parameters passed to the neighborhood method are valid
+     * @param id   the user's ID. Must be a member of the network
+     * @param date    must not be null
+     * @param distance     must be positive or 0
+     * @param status   saves the exit status of the operation
+     * @return boolean    true if the params are all valid. False if not.
+     */
+   public boolean checkNeighborhoodParams(String id, Date date, int distance, SocialNetworkStatus status) {
+      SocialNetworkUtility.checkNull(id, "ID");
+      SocialNetworkUtility.checkNull(date, "Date");
+      SocialNetworkUtility.checkNull(status, "Status");
+
+      if (graph.indexOf(id) < 0) { // Make sure the user is in the network
+         status.setStatus(SocialNetworkStatus.Status.INVALID_USERS);
+         return false;
+      }
+      if (distance < 0) { // Make sure the distance is a valid number
+         status.setStatus(SocialNetworkStatus.Status.INVALID_DISTANCE);
+         return false;
+      }
+      return true;
+   }
+
+   /** Verifies that the parameters passed to the neighborhoodTrend method are valid
+     * @param id   the user's ID. Must be a member of the network
+     * @param status   saves the exit status of the operation
+     * @return boolean    true if the params are all valid. False if not.
+     */
+   public boolean checkTrendParams(String id, SocialNetworkStatus status) {
+      SocialNetworkUtility.checkNull(id, "ID");
+      SocialNetworkUtility.checkNull(status, "Status");
+
+      if (graph.indexOf(id) < 0) { // Make sure the user is in the network
+         status.setStatus(SocialNetworkStatus.Status.INVALID_USERS);
+         return false;
+      }
+      return true;
+   }
+
+   /** Verifies that the parameters passed to the distance method are valid
+     * @param from   the first user's ID. Must be a member of the network
+     * @param to   the second user's ID. Must be a member of the network
+     * @param date    must not be null
+     * @param status   saves the exit status of the operation
+     * @return boolean    true if the params are all valid. False if not.
+     */
+   public boolean checkDistanceParams(String from, String to, Date date, SocialNetworkStatus status) {
+      SocialNetworkUtility.checkNull(from, "ID");
+      SocialNetworkUtility.checkNull(to, "ID");
+      SocialNetworkUtility.checkNull(date, "Date");
+      SocialNetworkUtility.checkNull(status, "Status");
+
+      if (graph.indexOf(from) < 0 || graph.indexOf(to) < 0) { // Make sure both users are in the network
+         status.setStatus(SocialNetworkStatus.Status.INVALID_USERS);
+         return false;
+      }
+      return true;
+   }
+
+   /** Adds the users linked to the user at index to the workspace if they haven't been reached and the link is active
+     * @param index  the index of the user to perform the method on
+     * @param workspace   the scratch space of the current search
+     * @param date    the time in milliseconds to search the links at
+     * @param depth   the current level of depth we're searching
+     */
+   private void checkFriends(int index, TraversalWorkspace workspace, long date, int depth) {
+      int degree = graph.degree(index);
+      for (int i = 0; i < degree; i++) {
+         int friendIndex = graph.neighbor(index, i);
+         if (!workspace.isVisited(friendIndex) && graph.isActive(index, i, date))
+            workspace.visit(friendIndex, depth);
+      }
+   }
+
+   /** Tells if a user not yet reached has an active link to a user at the previous depth
+     * @param index  the index of the user
+     * @param workspace   the scratch space of the current search
+     * @param date    the time in milliseconds to search the links at
+     * @param depth   the current level of depth we're searching
+     * @return boolean   true if the user belongs at this depth
+     */
+   private boolean linkedToPreviousDepth(int index, TraversalWorkspace workspace, long date, int depth) {
+      int degree = graph.degree(index);
+      for (int i = 0; i < degree; i++) {
+         int friendIndex = graph.neighbor(index, i);
+         if (workspace.isVisited(friendIndex) && workspace.distance(friendIndex) == depth - 1 && graph.isActive(index, i, date))
+            return true;
+      }
+      return false;
+   }
+
+   /** Finds the users at the given depth by scanning every user not yet reached for a link to the previous depth.
+     * Used when the previous depth is so large that checking its links would touch more of the network than this does.
+     * @param workspace   the scratch space of the current search
+     * @param date    the time in milliseconds to search the links at
+     * @param depth   the current level of depth we're searching
+     */
+   private void checkUnreached(TraversalWorkspace workspace, long date, int depth) {
+      int userCount = graph.userCount();
+      for (int index = 0; index < userCount; index++) {
+         // Users placed at this depth are skipped by later users, since their distance is not the previous depth's
+         if (!workspace.isVisited(index) && linkedToPreviousDepth(index, workspace, date, depth))
+            workspace.visit(index, depth);
+      }
+   }
+
+   /** Splits a range of chunks across the pool's threads */
+   private static class ChunkTask extends RecursiveAction {
+
+      private static final long serialVersionUID = 1L;
+
+      /** The first chunk of the range */
+      private int from;
+
+      /** One past the last chunk of the range */
+      private int to;
+
+      /** The work to be done for each chunk */
+      private IntConsumer step;
+
+      /** Creates a task covering a range of chunks
+        * @param from   the first chunk
+        * @param to   one past the last chunk
+        * @param step   the work to be done for each chunk
+        */
+      public ChunkTask(int from, int to, IntConsumer step) {
+         this.from = from;
+         this.to = to;
+         this.step = step;
+      }
+
+      @Override
+      protected void compute() {
+         if (to - from == 1) {
+            step.accept(from);
+         }
+         else {
+            int middle = (from + to) >>> 1;
+            invokeAll(new ChunkTask(from, middle, step), new ChunkTask(middle, to, step));
+         }
+      }
+   }
+
+   /** Checks the links of the previous depth in chunks spread over the pool. Each user is claimed atomically, so only one thread adds them.
+     * A chunk that fails keeps the users it claimed, and every chunk runs to its end before the failure is thrown, so each claimed user is queued and cleared by the next reset
+     * @param pool   the threads to share the work
+     * @param workspace   the scratch space of the current search
+     * @param levelStart   the position in the workspace of the first user at the previous depth
+     * @param levelEnd   the position in the workspace just past the last user at the previous depth
+     * @param date    the time in milliseconds to search the links at
+     * @param depth   the current level of depth we're searching
+     */
+   private void checkFriendsInParallel(ForkJoinPool pool, TraversalWorkspace workspace, int levelStart, int levelEnd, long date, int depth) {
+      int chunks = (levelEnd - levelStart + GRAIN - 1) / GRAIN;
+      int[][] found = new int[chunks][];
+      int[] counts = new int[chunks];
+      AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+      pool.invoke(new ChunkTask(0, chunks, chunk -> {
+         int[] buffer = new int[GRAIN];
+         int count = 0;
+         int end = Math.min(levelStart + (chunk + 1) * GRAIN, levelEnd);
+
+         try {
+            for (int position = levelStart + chunk * GRAIN; position < end; position++) {
+               int index = workspace.reached(position);
+               int degree = graph.degree(index);
+               for (int i = 0; i < degree; i++) {
+                  // The buffer has room before the claim, so a claimed user is always kept
+                  if (count == buffer.length)
+                     buffer = Arrays.copyOf(buffer, count * 2);
+                  int friendIndex = graph.neighbor(index, i);
+                  if (!workspace.isVisited(friendIndex) && graph.isActive(index, i, date) && workspace.claim(friendIndex, depth))
+                     buffer[count++] = friendIndex;
+               }
+            }
+         }
+         catch (RuntimeException | Error e) {
+            failure.compareAndSet(null, e);
+         }
+         finally {
+            found[chunk] = buffer;
+            counts[chunk] = count;
+         }
+      }));
+
+      // Once every thread is done, the users each one claimed are queued
+      for (int chunk = 0; chunk < chunks; chunk++)
+         workspace.append(found[chunk], counts[chunk]);
+
+      Throwable failed = failure.get();
+      if (failed instanceof RuntimeException)
+         throw (RuntimeException)failed;
+      if (failed instanceof Error)
+         throw (Error)failed;
+   }
+
+   /** Scans the unreached users in chunks spread over the pool. Nothing is marked until every thread is done, so the previous depth stays as it was while they read it
+     * @param pool   the threads to share the work
+     * @param workspace   the scratch space of the current search
+     * @param date    the time in milliseconds to search the links at
+     * @param depth   the current level of depth we're searching
+     */
+   private void checkUnreachedInParallel(ForkJoinPool pool, TraversalWorkspace workspace, long date, int depth) {
+      int userCount = graph.userCount();
+      int chunks = (userCount + GRAIN - 1) / GRAIN;
+      int[][] found = new int[chunks][];
+      int[] counts = new int[chunks];
+
+      pool.invoke(new ChunkTask(0, chunks, chunk -> {
+         int[] buffer = new int[GRAIN];
+         int count = 0;
+         int end = Math.min((chunk + 1) * GRAIN, userCount);
+
+         for (int index = chunk * GRAIN; index < end; index++) {
+            if (!workspace.isVisited(index) && linkedToPreviousDepth(index, workspace, date, depth))
+               buffer[count++] = index;
+         }
+         found[chunk] = buffer;
+         counts[chunk] = count;
+      }));
+
+      for (int chunk = 0; chunk < chunks; chunk++) {
+         for (int i = 0; i < counts[chunk]; i++)
+            workspace.visit(found[chunk][i], depth);
+      }
+   }
+
+   /** Sets how many threads share the work of large searches. Depths with few users are always searched on the calling thread.
+     * Either way the search finds the same users at the same distances.
+     * @param parallelism   the number of threads to use. 1 or less searches on the calling thread only
+     */
+   public void setParallelism(int parallelism) {
+      ForkJoinPool old = pool;
+      if (parallelism > 1)
+         pool = new ForkJoinPool(parallelism);
+      else
+         pool = null;
+
+      if (old != null)
+         old.shutdown();
+   }
+
+   /** Gives a search over another graph that shares this one's settings and threads, as for a view of a network pinned to one version
+     * @param other   the users and links to be searched
+     * @return NeighborhoodSearch  the search over the other graph
+     * @throws NullPointerException  if the graph is null
+     */
+   public NeighborhoodSearch over(NetworkGraph other) {
+      NeighborhoodSearch search = new NeighborhoodSearch(other);
+      search.directionOptimizing = directionOptimizing;
+      search.pool = pool;
+      return search;
+   }
+
+   /** Turns the switching between checking the links of each depth and scanning the unreached users on or off. On by default
+     * @param enabled   true to let the search scan unreached users when that's cheaper, false to always check links depth by depth
+     */
+   public void setDirectionOptimizing(boolean enabled) {
+      directionOptimizing = enabled;
+   }
+
+   /** Runs a breadth first search from the user at start, leaving the users reached and their distances in this thread's workspace.
+     * The workspace is reused by the thread's next search, so it should be read before searching again.
+     * While the links out of the current depth are a small share of the links left unexplored, each depth is found by checking those links.
+     * Once they're a large share, as in the middle depths of a search over a large connected network, it's cheaper to scan the unreached users instead,
+     * until the depth shrinks back down.
+     * @param start   the index of the user to search from
+     * @param date    the time in milliseconds for which to check the links
+     * @param distance    the farthest number of links a user reached may be from the start
+     * @return TraversalWorkspace    the workspace holding the users reached, including the start at distance 0
+     */
+   public TraversalWorkspace search(int start, long date, int distance) {
+      TraversalWorkspace workspace = WORKSPACES.get();
+      int userCount = graph.userCount();
+      workspace.reset(userCount);
+      workspace.visit(start, 0);
+
+      int levelStart = 0; // The users reached at the previous depth are those from levelStart to the end of the workspace
+      int currentDepth = 1; // The current number of links from the original user
+      long levelDegree = graph.degree(start); // The number of links out of the previous depth
+      long unexploredDegree = graph.totalDegree() - levelDegree; // The number of link ends belonging to users not yet reached
+      boolean scanUnreached = false;
+      ForkJoinPool parallel = pool;
+
+      // This loop checks that we have users left to search and that we have not exceeded the distance.
+      while (levelStart < workspace.size() && currentDepth <= distance) {
+         int levelEnd = workspace.size();
+
+         if (directionOptimizing && !scanUnreached)
+            scanUnreached = levelDegree > unexploredDegree / ALPHA;
+         else if (scanUnreached)
+            scanUnreached = (levelEnd - levelStart) >= userCount / BETA;
+
+         if (scanUnreached) {
+            if (parallel != null && userCount > GRAIN)
+               checkUnreachedInParallel(parallel, workspace, date, currentDepth);
+            else
+               checkUnreached(workspace, date, currentDepth);
+         }
+         else {
+            if (parallel != null && levelEnd - levelStart > GRAIN) {
+               checkFriendsInParallel(parallel, workspace, levelStart, levelEnd, date, currentDepth);
+            }
+            else {
+               for (int i = levelStart; i < levelEnd; i++)
+                  checkFriends(workspace.reached(i), workspace, date, currentDepth);
+            }
+         }
+
+         // Tallies the links of the users just reached for the next depth's choice
+         levelDegree = 0;
+         for (int i = levelEnd; i < workspace.size(); i++)
+            levelDegree += graph.degree(workspace.reached(i));
+         unexploredDegree -= levelDegree;
+
+         levelStart = levelEnd;
+         currentDepth++;
+      }
+      return workspace;
+   }
+
+   /** Streams the users within a number of links of the user at start on the given date, nearest first.
+     * The search runs only as far as the stream is read, so reading the first few friends of a large neighborhood is cheap
+     * @param start   the index of the user to find friends of
+     * @param date    the time in milliseconds for which to check the links
+     * @param distance    the farthest number of links a friend in the stream is away from the user
+     * @return Stream<Friend>    the Friends of the user within distance in order of distance, starting with the user at distance 0
+     */
+   public Stream<Friend> neighborhoodStream(int start, long date, int distance) {
+      return new NeighborhoodIterator(graph, start, date, distance).stream();
+   }
+
+   /** Counts the users within a number of links of the user at start on the given date, without creating a Friend for each
+     * @param start   the index of the user
+     * @param date    the time in milliseconds for which to check the links
+     * @param distance    the farthest number of links a counted user is away from the user
+     * @return int    the number of users in the neighborhood, including the user
+     */
+   public int neighborhoodSize(int start, long date, int distance) {
+      return search(start, date, distance).size();
+   }
+
+   /** Counts the users at each distance from the user at start on the given date
+     * @param start   the index of the user
+     * @param date    the time in milliseconds for which to check the links
+     * @param distance    the farthest number of links a counted user is away from the user
+     * @return int[]    the number of users at each distance, by distance. Entry 0 is the user, and the last entry is the farthest distance reached
+     */
+   public int[] distanceHistogram(int start, long date, int distance) {
+      TraversalWorkspace workspace = search(start, date, distance);
+
+      // Users are reached in order of distance, so the last one reached is the farthest
+      int[] counts = new int[workspace.distance(workspace.reached(workspace.size() - 1)) + 1];
+      for (int i = 0; i < workspace.size(); i++)
+         counts[workspace.distance(workspace.reached(i))]++;
+      return counts;
+   }
+
+   /** Reaches the next depth of one side of a distance search, looking for users the other side has already reached
+     * @param side   the workspace of the side being grown
+     * @param other   the workspace of the other side
+     * @param levelStart   the position in side of the first user at its last depth
+     * @param date    the time in milliseconds to search the links at
+     * @param depth   the depth being reached
+     * @return int   the length of the shortest path through a user reached by both sides. -1 if the sides haven't met
+     */
+   private int growSide(TraversalWorkspace side, TraversalWorkspace other, int levelStart, long date, int depth) {
+      int levelEnd = side.size();
+      int shortest = -1;
+
+      // The whole depth is reached before stopping, since the first meeting found isn't always the shortest
+      for (int i = levelStart; i < levelEnd; i++) {
+         int index = side.reached(i);
+         int degree = graph.degree(index);
+         for (int p = 0; p < degree; p++) {
+            int friendIndex = graph.neighbor(index, p);
+            if (!side.isVisited(friendIndex) && graph.isActive(index, p, date)) {
+               side.visit(friendIndex, depth);
+               if (other.isVisited(friendIndex) && (shortest < 0 || depth + other.distance(friendIndex) < shortest))
+                  shortest = depth + other.distance(friendIndex);
+            }
+         }
+      }
+      return shortest;
+   }
+
+   /** Finds the number of links on the shortest path between two users on the given date.
+     * Searches out from both users at once, always growing the side with fewer links to check, and stops as soon as the two sides meet.
+     * @param from   the index of the first user
+     * @param to   the index of the second user
+     * @param date    the time in milliseconds for which to check the links
+     * @return int   the number of links between the users. -1 if they aren't connected
+     */
+   public int distance(int from, int to, long date) {
+      if (from == to)
+         return 0;
+
+      int userCount = graph.userCount();
+      TraversalWorkspace forward = WORKSPACES.get();
+      TraversalWorkspace backward = OTHER_WORKSPACES.get();
+      forward.reset(userCount);
+      backward.reset(userCount);
+      forward.visit(from, 0);
+      backward.visit(to, 0);
+
+      int forwardStart = 0, forwardDepth = 0, forwardDegree = graph.degree(from);
+      int backwardStart = 0, backwardDepth = 0, backwardDegree = graph.degree(to);
+
+      // Each pass grows one side by a depth, until they meet or one side runs out of users
+      while (forwardStart < forward.size() && backwardStart < backward.size()) {
+         int shortest;
+         if (forwardDegree <= backwardDegree) {
+            int levelEnd = forward.size();
+            shortest = growSide(forward, backward, forwardStart, date, ++forwardDepth);
+            forwardStart = levelEnd;
+            forwardDegree = 0;
+            for (int i = levelEnd; i < forward.size(); i++)
+               forwardDegree += graph.degree(forward.reached(i));
+         }
+         else {
+            int levelEnd = backward.size();
+            shortest = growSide(backward, forward, backwardStart, date, ++backwardDepth);
+            backwardStart = levelEnd;
+            backwardDegree = 0;
+            for (int i = levelEnd; i < backward.size(); i++)
+               backwardDegree += graph.degree(backward.reached(i));
+         }
+
+         if (shortest >= 0)
+            return shortest;
+      }
+      return -1;
+   }
+
+   /** Creates a Friend for every user reached by a search
+     * @param workspace   the workspace holding the users reached
+     * @return Set<Friend>   a set of Friends, one per user reached, at the distance they were reached
+     */
+   public Set<Friend> toFriends(TraversalWorkspace workspace) {
+      HashSet<Friend> friends = new HashSet<Friend>(workspace.size() * 4 / 3 + 1);
+      for (int i = 0; i < workspace.size(); i++) {
+         int index = workspace.reached(i);
+         Friend friend = new Friend();
+         friend.set(graph.user(index), workspace.distance(index));
+         friends.add(friend);
+      }
+      return friends;
+   }
+
+   /** Finds the users within a number of links of the user at start on the given date
+     * @param start   the index of the user to find friends of
+     * @param date    the time in milliseconds for which to check the links
+     * @param distance    the farthest number of links a friend included in this set is away from the user
+     * @return Set<Friend>    a set of Friends of the user within distance, including the user at distance 0
+     */
+   public Set<Friend> neighborhood(int start, long date, int distance) {
+      return toFriends(search(start, date, distance));
+   }
+
+   /** Finds the users within a number of links of the user at start on the given date, counting the work done into stats
+     * @param start   the index of the user to find friends of
+     * @param date    the time in milliseconds for which to check the links
+     * @param distance    the farthest number of links a friend included in this set is away from the user
+     * @param stats   the stats the search and the making of Friends are counted into. Null to count nothing
+     * @return Set<Friend>    a set of Friends of the user within distance, including the user at distance 0
+     */
+   public Set<Friend> neighborhood(int start, long date, int distance, QueryStats stats) {
+      if (stats == null)
+         return neighborhood(start, date, distance);
+
+      NeighborhoodSearch watched = over(stats.watch(graph));
+      long began = System.nanoTime();
+      TraversalWorkspace workspace = watched.search(start, date, distance);
+      began = stats.lap("search", began);
+      stats.recordSearch(workspace);
+      Set<Friend> friends = watched.toFriends(workspace);
+      stats.lap("friends", began);
+      stats.recordFriends(friends.size());
+      return friends;
+   }
+
+   /** Finds every link the user at start could ever reach, whether or not the links were active at the same time
+     * @param start   the index of the user
+     * @return long[]   each link once, as the index of its user with the lower index in the high half and the link's position in the low half
+     */
+   private long[] linksInComponent(int start) {
+      TraversalWorkspace component = OTHER_WORKSPACES.get();
+      component.reset(graph.userCount());
+      component.visit(start, 0);
+
+      long[] ends = new long[16];
+      int count = 0;
+      for (int i = 0; i < component.size(); i++) {
+         int index = component.reached(i);
+         int degree = graph.degree(index);
+         for (int position = 0; position < degree; position++) {
+            int friendIndex = graph.neighbor(index, position);
+            component.visit(friendIndex, component.distance(index) + 1);
+            if (index < friendIndex) { // Each link is seen from both ends, so it's only kept from one
+               if (count == ends.length)
+                  ends = Arrays.copyOf(ends, count * 2);
+               ends[count++] = ((long)index << 32) | position;
+            }
+         }
+      }
+      return Arrays.copyOf(ends, count);
+   }
+
+   /** Tells if any of the links changing at a time was torn down between two users already reached, which may cut users off
+     * @param ends   the links, as given by linksInComponent
+     * @param changed   the numbers of the links changing at the time, by their place in ends
+     * @param from   the first entry of changed to look at
+     * @param to   one past the last entry of changed to look at
+     * @param workspace   the users reached just before the time
+     * @param date    the time in milliseconds of the change
+     * @return boolean   true if the users reached have to be found again from scratch
+     */
+   private boolean cutsReached(long[] ends, int[] changed, int from, int to, TraversalWorkspace workspace, long date) {
+      for (int i = from; i < to; i++) {
+         int index = (int)(ends[changed[i]] >>> 32);
+         int position = (int)ends[changed[i]];
+         if (workspace.isVisited(index) && workspace.isVisited(graph.neighbor(index, position)) && !graph.isActive(index, position, date))
+            return true;
+      }
+      return false;
+   }
+
+   /** Adds the users reached through the links established at a time. The distances of users added this way are not kept shortest, only the set of users is
+     * @param ends   the links, as given by linksInComponent
+     * @param changed   the numbers of the links changing at the time, by their place in ends
+     * @param from   the first entry of changed to look at
+     * @param to   one past the last entry of changed to look at
+     * @param workspace   the users reached just before the time
+     * @param date    the time in milliseconds of the change
+     */
+   private void addReachedByNewLinks(long[] ends, int[] changed, int from, int to, TraversalWorkspace workspace, long date) {
+      int spreadFrom = workspace.size();
+      for (int i = from; i < to; i++) {
+         int index = (int)(ends[changed[i]] >>> 32);
+         int position = (int)ends[changed[i]];
+         int friendIndex = graph.neighbor(index, position);
+
+         // Only links with exactly one end reached can add users
+         if (workspace.isVisited(index) != workspace.isVisited(friendIndex) && graph.isActive(index, position, date)) {
+            if (workspace.isVisited(index))
+               workspace.visit(friendIndex, workspace.distance(index) + 1);
+            else
+               workspace.visit(index, workspace.distance(friendIndex) + 1);
+         }
+      }
+
+      // Spreads out from the newly reached users over every link active at the time
+      for (int i = spreadFrom; i < workspace.size(); i++) {
+         int index = workspace.reached(i);
+         checkFriends(index, workspace, date, workspace.distance(index) + 1);
+      }
+   }
+
+   /** Returns a map with the dates at which the size of a user's neighborhood changed and the size at those dates.
+     * The events of every link the user could ever reach are sorted once, then swept through in time order while the users reached are kept up to date.
+     * Links established only ever add users, so the search starts over only when a link between two reached users is torn down.
+     * @param start  the index of the user whose neighborhood we wanna look at
+     * @return Map<Date, Integer> the map of dates to neighborhood sizes
+     */
+   public Map<Date, Integer> neighborhoodTrend(int start) {
+      return trend(start, null);
+   }
+
+   /** Returns a map with the dates at which the size of a user's neighborhood changed and the size at those dates, counting the work done into stats
+     * @param start  the index of the user whose neighborhood we wanna look at
+     * @param stats   the stats the sweep is counted into. Null to count nothing
+     * @return Map<Date, Integer> the map of dates to neighborhood sizes
+     */
+   public Map<Date, Integer> neighborhoodTrend(int start, QueryStats stats) {
+      if (stats == null)
+         return trend(start, null);
+      return over(stats.watch(graph)).trend(start, stats);
+   }
+
+   /** Sweeps through the events of every link the user at start could ever reach, as neighborhoodTrend describes
+     * @param start  the index of the user whose neighborhood we wanna look at
+     * @param stats   the stats the phases of the sweep are timed into. Null to time nothing
+     * @return Map<Date, Integer> the map of dates to neighborhood sizes
+     */
+   private Map<Date, Integer> trend(int start, QueryStats stats) {
+      long began = stats == null ? 0 : System.nanoTime();
+      long[] ends = linksInComponent(start);
+      if (stats != null)
+         began = stats.lap("component", began);
+
+      // Gathers the times of every event on the links, sorted with the repeats dropped
+      int eventCount = 0;
+      for (long end : ends)
+         eventCount += graph.eventCount((int)(end >>> 32), (int)end);
+      long[] times = new long[eventCount];
+      int filled = 0;
+      for (long end : ends) {
+         for (int e = 0; e < graph.eventCount((int)(end >>> 32), (int)end); e++)
+            times[filled++] = graph.event((int)(end >>> 32), (int)end, e);
+      }
+      Arrays.sort(times);
+      int timeCount = 0;
+      for (int i = 0; i < eventCount; i++) {
+         if (timeCount == 0 || times[i] != times[timeCount - 1])
+            times[timeCount++] = times[i];
+      }
+
+      // Groups the links by the times they change at, so each step of the sweep only looks at the links that changed
+      int[] changedStart = new int[timeCount + 1];
+      int[] changed = new int[eventCount];
+      for (long end : ends) {
+         for (int e = 0; e < graph.eventCount((int)(end >>> 32), (int)end); e++)
+            changedStart[Arrays.binarySearch(times, 0, timeCount, graph.event((int)(end >>> 32), (int)end, e)) + 1]++;
+      }
+      for (int t = 0; t < timeCount; t++)
+         changedStart[t + 1] += changedStart[t];
+      int[] next = Arrays.copyOf(changedStart, timeCount);
+      for (int l = 0; l < ends.length; l++) {
+         for (int e = 0; e < graph.eventCount((int)(ends[l] >>> 32), (int)ends[l]); e++)
+            changed[next[Arrays.binarySearch(times, 0, timeCount, graph.event((int)(ends[l] >>> 32), (int)ends[l], e))]++] = l;
+      }
+      if (stats != null) {
+         began = stats.lap("gather", began);
+         stats.recordSweep(OTHER_WORKSPACES.get().size(), timeCount);
+      }
+
+      // The trend starts at the first event on one of the user's own links, whose date is recorded even if the size there is still 1.
+      // Before it none of the user's links are active, so the user reaches only themselves
+      long firstOwnEvent = Long.MAX_VALUE;
+      for (int p = 0; p < graph.degree(start); p++) {
+         if (graph.eventCount(start, p) > 0)
+            firstOwnEvent = Math.min(firstOwnEvent, graph.event(start, p, 0));
+      }
+      Map<Date, Integer> trends = new HashMap<Date, Integer>();
+      TraversalWorkspace workspace = WORKSPACES.get();
+      workspace.reset(graph.userCount());
+      workspace.visit(start, 0);
+      int currentSize = -1;
+
+      for (int t = 0; t < timeCount; t++) {
+         if (cutsReached(ends, changed, changedStart[t], changedStart[t + 1], workspace, times[t])) {
+            search(start, times[t], Integer.MAX_VALUE);
+            if (stats != null)
+               stats.recordRebuild();
+         }
+         else
+            addReachedByNewLinks(ends, changed, changedStart[t], changedStart[t + 1], workspace, times[t]);
+
+         if (workspace.size() != currentSize && times[t] >= firstOwnEvent) {
+            trends.put(new Date(times[t]), workspace.size());
+            currentSize = workspace.size();
+         }
+      }
+      if (stats != null)
+         stats.lap("sweep", began);
+      return trends;
+   }
+}
@@ -0,0 +1,552 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+
+/** Generates synthetic social networks with a history of link events, for load tests and benchmarks.
+  * The links are drawn from one of three models: Erdos-Renyi, where every pair of users is linked with the same chance, Barabasi-Albert,
+  * where each new user links to earlier users in proportion to their links so far, and Watts-Strogatz small worlds, a ring of users each linked
+  * to their nearest neighbors with some links rewired to users anywhere on the ring. No pair of users is linked twice.
+  * Each link then gets a history of events within the horizon: long lived links are established once and maybe torn down much later,
+  * bursty links are established and torn down a few times close together in a few bursts, and flapping links go up and down all through the horizon.
+  * A generator with the same settings and seed always gives the same network. The history of a link depends only on the seed and the link's users,
+  * and links are made one at a time, so a network of any size can be streamed to files in the formats NetworkLoader reads
+  * or put straight into a SocialNetwork, and the two give the same network.
+  * @author Billy Barbaro
+  */
+public class NetworkGenerator {
+
+   /** The models the links can be drawn from */
+   public enum Model {
+      ERDOS_RENYI,
+      BARABASI_ALBERT,
+      SMALL_WORLD
+   };
+
+   /** The most events any link is given */
+   private static final int MAX_EVENTS = 32;
+
+   /** The shortest horizon, in milliseconds, so every event of a link gets a time of its own */
+   private static final long MIN_HORIZON = 10000;
+
+   /** The number of events put into a network at once */
+   private static final int BATCH_SIZE = 1 << 20;
+
+   /** The step between the draws made for a link */
+   private static final long GAMMA = 0x9E3779B97F4A7C15L;
+
+   /** The times a rewired link is redrawn before it's left on the ring */
+   private static final int REWIRE_TRIES = 16;
+
+   /** Takes each link as it's drawn */
+   private interface EdgeVisitor {
+
+      /** Takes a link
+        * @param first   the number of one of the users, the lower
+        * @param second   the number of the other user
+        * @throws IOException  if the link can't be written
+        */
+      void edge(int first, int second) throws IOException;
+   }
+
+   /** The model the links are drawn from */
+   private Model model;
+
+   /** The number of users */
+   private int userCount;
+
+   /** The average number of links per user */
+   private int degree;
+
+   /** The seed every draw is made from */
+   private long seed;
+
+   /** The time in milliseconds the horizon starts at */
+   private long start;
+
+   /** The length of the horizon in milliseconds. Every event falls in it */
+   private long length;
+
+   /** The chance each link of a small world is rewired */
+   private double rewiring;
+
+   /** The share of links that are long lived */
+   private double longLived;
+
+   /** The share of links that are bursty. The rest flap */
+   private double bursty;
+
+   /** Creates a generator. Events fall in the year from the epoch, a tenth of a small world's links are rewired,
+     * and six in ten links are long lived, three bursty, and one flapping
+     * @param model   the model the links are drawn from
+     * @param userCount   the number of users
+     * @param degree   the average number of links per user. Barabasi-Albert and small world networks round it down to an even number
+     * @param seed   the seed every draw is made from
+     * @throws NullPointerException  if the model is null
+     * @throws IllegalArgumentException  if there are no users, the degree is negative, or a Barabasi-Albert network would be too large to draw
+     */
+   public NetworkGenerator(Model model, int userCount, int degree, long seed) {
+      super();
+      SocialNetworkUtility.checkNull(model, "Model");
+      if (userCount < 1)
+         throw new IllegalArgumentException("There must be at least one user.");
+      if (degree < 0)
+         throw new IllegalArgumentException("Degree may not be negative.");
+      // Barabasi-Albert keeps both ends of every link, to draw users in proportion to their links
+      if (model == Model.BARABASI_ALBERT && 2L * userCount * (degree / 2) > Integer.MAX_VALUE - 8)
+         throw new IllegalArgumentException("Too many links for a Barabasi-Albert network.");
+      this.model = model;
+      this.userCount = userCount;
+      this.degree = degree;
+      this.seed = seed;
+      start = 0;
+      length = 365L * 24 * 60 * 60 * 1000;
+      rewiring = 0.1;
+      longLived = 0.6;
+      bursty = 0.3;
+   }
+
+   /** Sets the span of time the events fall in
+     * @param start   the time in milliseconds since the epoch the horizon starts at
+     * @param length   the length of the horizon in milliseconds
+     * @throws IllegalArgumentException  if the horizon is shorter than ten seconds
+     */
+   public void setHorizon(long start, long length) {
+      if (length < MIN_HORIZON)
+         throw new IllegalArgumentException("Horizon must be at least " + MIN_HORIZON + " milliseconds.");
+      this.start = start;
+      this.length = length;
+   }
+
+   /** Sets the chance each link of a small world is rewired to a user anywhere on the ring
+     * @param rewiring   the chance, from 0 for a plain ring to 1 for links drawn at random
+     * @throws IllegalArgumentException  if the chance is not between 0 and 1
+     */
+   public void setRewiring(double rewiring) {
+      if (!(rewiring >= 0 && rewiring <= 1))
+         throw new IllegalArgumentException("Rewiring must be between 0 and 1.");
+      this.rewiring = rewiring;
+   }
+
+   /** Sets how the links' histories are shared out. The shares are weights, so they needn't add up to 1
+     * @param longLived   the share of links established once and maybe torn down much later
+     * @param bursty   the share of links going up and down in a few short bursts
+     * @param flapping   the share of links going up and down all through the horizon
+     * @throws IllegalArgumentException  if a share is negative or they're all 0
+     */
+   public void setChurn(double longLived, double bursty, double flapping) {
+      if (!(longLived >= 0 && bursty >= 0 && flapping >= 0) || longLived + bursty + flapping <= 0)
+         throw new IllegalArgumentException("Shares may not be negative, and one must be positive.");
+      double total = longLived + bursty + flapping;
+      this.longLived = longLived / total;
+      this.bursty = bursty / total;
+   }
+
+   /** Gives the ID of a generated user
+     * @param user   the number of the user
+     * @return String   the user's ID
+     */
+   public static String userID(int user) {
+      return "user" + user;
+   }
+
+   /** Scrambles the bits of a number, as the last step of SplitMix64
+     * @param z   the number
+     * @return long   the scrambled bits
+     */
+   private static long mix(long z) {
+      z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+      z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+      return z ^ (z >>> 31);
+   }
+
+   /** Gives the draw of a link with the given number
+     * @param base   the link's first draw
+     * @param draw   the number of the draw
+     * @return long   the bits drawn
+     */
+   private static long draw(long base, int draw) {
+      return mix(base + (draw + 1) * GAMMA);
+   }
+
+   /** Turns drawn bits into a fraction
+     * @param bits   the bits drawn
+     * @return double   a fraction from 0 up to but not including 1
+     */
+   private static double unit(long bits) {
+      return (bits >>> 11) * 0x1.0p-53;
+   }
+
+   /** Turns drawn bits into a number below a bound
+     * @param bits   the bits drawn
+     * @param bound   the bound, which must be positive
+     * @return long   a number from 0 up to but not including the bound
+     */
+   private static long below(long bits, long bound) {
+      return (bits >>> 1) % bound;
+   }
+
+   /** Draws the links of the network, handing each to the visitor once
+     * @param visitor   takes each link
+     * @throws IOException  if the visitor can't write a link
+     */
+   private void edges(EdgeVisitor visitor) throws IOException {
+      SplittableRandom random = new SplittableRandom(seed);
+      switch (model) {
+         case ERDOS_RENYI: erdosRenyi(random, visitor); break;
+         case BARABASI_ALBERT: barabasiAlbert(random, visitor); break;
+         default: smallWorld(random, visitor); break;
+      }
+   }
+
+   /** Draws every pair of users with the same chance. Rather than a draw per pair, the gap to the next pair drawn is drawn,
+     * as in Batagelj and Brandes, so the time taken goes with the links and not the pairs
+     * @param random   the source of the links
+     * @param visitor   takes each link
+     * @throws IOException  if the visitor can't write a link
+     */
+   private void erdosRenyi(SplittableRandom random, EdgeVisitor visitor) throws IOException {
+      double chance = userCount < 2 ? 0 : Math.min(1.0, degree / (double)(userCount - 1));
+      if (chance <= 0)
+         return;
+      double logMiss = Math.log(1 - chance);
+
+      // Pairs are walked as the users below each second user, second by second
+      long first = -1;
+      int second = 1;
+      while (second < userCount) {
+         double gap = Math.floor(Math.log(1 - random.nextDouble()) / logMiss);
+         first += 1 + (long)Math.min(gap, Long.MAX_VALUE / 4);
+         while (first >= second && second < userCount) {
+            first -= second;
+            second++;
+         }
+         if (second < userCount)
+            visitor.edge((int)first, second);
+      }
+   }
+
+   /** Adds users one at a time, each linking to half the degree of the users before them, drawn in proportion to their links so far.
+     * The ends of every link are kept in one array, so drawing from it draws users by their links
+     * @param random   the source of the links
+     * @param visitor   takes each link
+     * @throws IOException  if the visitor can't write a link
+     */
+   private void barabasiAlbert(SplittableRandom random, EdgeVisitor visitor) throws IOException {
+      int perUser = degree / 2;
+      if (perUser == 0)
+         return;
+      int[] ends = new int[(int)(2L * (userCount - 1) * perUser)];
+      int filled = 0;
+      int[] chosen = new int[perUser];
+      for (int user = 1; user < userCount; user++) {
+         int targets = Math.min(perUser, user);
+         int before = filled;
+         for (int t = 0; t < targets; t++) {
+            // The first users link to every user before them, since there are too few to draw from
+            int target = t;
+            if (user > perUser) {
+               boolean repeated = true;
+               while (repeated) {
+                  target = ends[random.nextInt(before)];
+                  repeated = false;
+                  for (int c = 0; c < t && !repeated; c++)
+                     repeated = chosen[c] == target;
+               }
+            }
+            chosen[t] = target;
+         }
+         for (int t = 0; t < targets; t++) {
+            ends[filled++] = user;
+            ends[filled++] = chosen[t];
+            visitor.edge(chosen[t], user);
+         }
+      }
+   }
+
+   /** Links each user on a ring to the half the degree of users after them, rewiring each link by chance to a user further along the ring
+     * than any ring link reaches. Rewired pairs are remembered, so none is drawn twice
+     * @param random   the source of the links
+     * @param visitor   takes each link
+     * @throws IOException  if the visitor can't write a link
+     */
+   private void smallWorld(SplittableRandom random, EdgeVisitor visitor) throws IOException {
+      int reach = Math.min(degree / 2, (userCount - 1) / 2);
+      boolean canRewire = userCount - 1 - 2 * reach > 0;
+      LongSet rewired = new LongSet();
+      for (int user = 0; user < userCount; user++) {
+         for (int step = 1; step <= reach; step++) {
+            int target = (user + step) % userCount;
+            if (canRewire && random.nextDouble() < rewiring) {
+               for (int tries = 0; tries < REWIRE_TRIES; tries++) {
+                  int drawn = random.nextInt(userCount);
+                  int apart = Math.abs(drawn - user);
+                  if (Math.min(apart, userCount - apart) > reach && rewired.add(pair(user, drawn))) {
+                     target = drawn;
+                     break;
+                  }
+               }
+            }
+            visitor.edge(Math.min(user, target), Math.max(user, target));
+         }
+      }
+   }
+
+   /** Packs two users into one number, the same whichever is given first
+     * @param first   the number of one of the users
+     * @param second   the number of the other user
+     * @return long   the pair
+     */
+   private static long pair(int first, int second) {
+      return ((long)Math.min(first, second) << 32) | Math.max(first, second);
+   }
+
+   /** Spreads events over a span of time, each in an equal slot of its own, so they fall in order
+     * @param dates   the dates of the link's events, filled in
+     * @param offset   the position of the first event spread
+     * @param count   the number of events spread
+     * @param from   the time the span starts at
+     * @param to   the time just past the end of the span. The span must be at least as long as the count
+     * @param base   the link's first draw
+     */
+   private static void spread(long[] dates, int offset, int count, long from, long to, long base) {
+      long slot = (to - from) / count;
+      for (int i = 0; i < count; i++)
+         dates[offset + i] = from + i * slot + below(draw(base, MAX_EVENTS + offset + i), slot);
+   }
+
+   /** Draws the history of a link. The link is established on the first date and torn down and established in turn after
+     * @param first   the number of one of the users
+     * @param second   the number of the other user
+     * @param dates   the dates of the link's events, filled in. Must hold MAX_EVENTS
+     * @return int   the number of events
+     */
+   private int history(int first, int second, long[] dates) {
+      long base = mix(seed ^ mix(pair(first, second)));
+      double kind = unit(draw(base, 0));
+
+      if (kind < longLived) { // Established once, and torn down later about half the time
+         if (unit(draw(base, 1)) < 0.5) {
+            spread(dates, 0, 1, start, start + length / 2, base);
+            return 1;
+         }
+         spread(dates, 0, 2, start, start + length, base);
+         return 2;
+      }
+
+      if (kind < longLived + bursty) { // A few bursts, each a few short sessions in a small window of its own part of the horizon
+         int bursts = 1 + (int)below(draw(base, 1), 3);
+         long segment = length / bursts;
+         long window = Math.max(segment / 100, 8);
+         int count = 0;
+         for (int b = 0; b < bursts; b++) {
+            int sessions = 1 + (int)below(draw(base, 2 + b), 4);
+            long windowStart = start + b * segment + (long)(unit(draw(base, 5 + b)) * (segment - window));
+            spread(dates, count, 2 * sessions, windowStart, windowStart + window, base);
+            count += 2 * sessions;
+         }
+         return count;
+      }
+
+      // Flapping links go up and down at roughly even steps through the whole horizon
+      int count = 8 + (int)below(draw(base, 1), MAX_EVENTS - 7);
+      spread(dates, 0, count, start, start + length, base);
+      return count;
+   }
+
+   /** Writes the users to a file in the format NetworkLoader.loadUsers reads, one ID per line
+     * @param file   the path of the users file. An existing file is replaced
+     * @return int   the number of users written
+     * @throws IOException  if the file can't be written
+     * @throws NullPointerException  if the path is null
+     */
+   public int writeUsers(Path file) throws IOException {
+      SocialNetworkUtility.checkNull(file, "Path");
+      byte[] line = new byte[32];
+      try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+         for (int user = 0; user < userCount; user++) {
+            int end = putID(line, 0, user);
+            line[end++] = '\n';
+            out.write(line, 0, end);
+         }
+      }
+      return userCount;
+   }
+
+   /** Writes the links' events to a file in the format NetworkLoader.loadEvents reads, a link's events together in date order.
+     * The file is written as the links are drawn, so nothing but the file grows with the network
+     * @param file   the path of the events file. An existing file is replaced
+     * @return long   the number of events written
+     * @throws IOException  if the file can't be written
+     * @throws NullPointerException  if the path is null
+     */
+   public long writeEvents(Path file) throws IOException {
+      SocialNetworkUtility.checkNull(file, "Path");
+      final long[] dates = new long[MAX_EVENTS];
+      final byte[] line = new byte[96];
+      final long[] written = new long[1];
+      try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+         edges((first, second) -> {
+            int count = history(first, second, dates);
+            for (int e = 0; e < count; e++) {
+               int end = putID(line, 0, first);
+               line[end++] = '\t';
+               end = putID(line, end, second);
+               line[end++] = '\t';
+               end = putNumber(line, end, dates[e]);
+               line[end++] = '\t';
+               line[end++] = (byte)(e % 2 == 0 ? 'E' : 'T');
+               line[end++] = '\n';
+               out.write(line, 0, end);
+            }
+            written[0] += count;
+         });
+      }
+      return written[0];
+   }
+
+   /** Puts the ID of a user in a line without making a String
+     * @param line   the line being built
+     * @param position   the position the ID starts at
+     * @param user   the number of the user
+     * @return int   the position just past the ID
+     */
+   private static int putID(byte[] line, int position, int user) {
+      line[position++] = 'u';
+      line[position++] = 's';
+      line[position++] = 'e';
+      line[position++] = 'r';
+      return putNumber(line, position, user);
+   }
+
+   /** Puts a number in decimal in a line without making a String
+     * @param line   the line being built
+     * @param position   the position the number starts at
+     * @param value   the number
+     * @return int   the position just past the number
+     */
+   private static int putNumber(byte[] line, int position, long value) {
+      if (value < 0)
+         line[position++] = '-';
+      int digits = 1;
+      for (long rest = value / 10; rest != 0; rest /= 10)
+         digits++;
+      for (int i = position + digits - 1; i >= position; i--) {
+         line[i] = (byte)('0' + Math.abs(value % 10));
+         value /= 10;
+      }
+      return position + digits;
+   }
+
+   /** Adds the users and the links' events to a network, giving the network the writeUsers and writeEvents files would load into it.
+     * Events are applied in batches as the links are drawn
+     * @param network   the network to be filled. Users already in it are kept
+     * @return long   the number of events that were applied
+     * @throws NullPointerException  if the network is null
+     */
+   public long populate(SocialNetwork network) {
+      SocialNetworkUtility.checkNull(network, "Network");
+      String[] ids = new String[userCount];
+      for (int user = 0; user < userCount; user++) {
+         ids[user] = userID(user);
+         User added = new User();
+         added.setID(ids[user]);
+         network.addUser(added);
+      }
+
+      // Every event of a link is in the same batch, so the network sees each link's history in one piece
+      final long[] dates = new long[MAX_EVENTS];
+      final LinkEventBatch[] batch = {new LinkEventBatch(BATCH_SIZE + MAX_EVENTS)};
+      final long[] applied = new long[1];
+      try {
+         edges((first, second) -> {
+            int count = history(first, second, dates);
+            for (int e = 0; e < count; e++) {
+               if (e % 2 == 0)
+                  batch[0].establish(ids[first], ids[second], dates[e]);
+               else
+                  batch[0].tearDown(ids[first], ids[second], dates[e]);
+            }
+            if (batch[0].size() >= BATCH_SIZE) {
+               applied[0] += apply(network, batch[0]);
+               batch[0] = new LinkEventBatch(BATCH_SIZE + MAX_EVENTS);
+            }
+         });
+      }
+      catch (IOException ioe) { // Only writing to a file throws
+         assert false;
+      }
+      return applied[0] + apply(network, batch[0]);
+   }
+
+   /** Applies a batch of events to a network
+     * @param network   the network
+     * @param batch   the events
+     * @return long   the number of events that were applied
+     */
+   private static long apply(SocialNetwork network, LinkEventBatch batch) {
+      long applied = 0;
+      for (SocialNetworkStatus.Status status : network.applyEvents(batch)) {
+         if (status == SocialNetworkStatus.Status.SUCCESS)
+            applied++;
+      }
+      return applied;
+   }
+
+   /** An open addressed set of pairs of users. The pair of user 0 with itself is never added, so 0 marks an empty slot */
+   private static class LongSet {
+
+      /** The pairs, by their hash */
+      private long[] table = new long[64];
+
+      /** The number of pairs in the set */
+      private int size;
+
+      /** Adds a pair if it's not already in the set
+        * @param key   the pair
+        * @return boolean   true if the pair was added, false if it was already in the set
+        */
+      public boolean add(long key) {
+         int mask = table.length - 1;
+         int slot = (int)mix(key) & mask;
+         while (table[slot] != 0) {
+            if (table[slot] == key)
+               return false;
+            slot = (slot + 1) & mask;
+         }
+         table[slot] = key;
+         size++;
+
+         // The table is kept under half full
+         if (size * 2 > table.length) {
+            long[] old = table;
+            table = new long[old.length * 2];
+            size = 0;
+            for (long pair : old) {
+               if (pair != 0)
+                  add(pair);
+            }
+         }
+         return true;
+      }
+   }
+
+   /** Writes a generated network to a users file and an events file
+     * @param args  the model, the number of users, the average number of links per user, the seed, and the paths of the users and events files
+     * @throws IOException  if either file can't be written
+     */
+   public static void main(String[] args) throws IOException {
+      if (args.length != 6) {
+         System.err.println("Usage: java NetworkGenerator ERDOS_RENYI|BARABASI_ALBERT|SMALL_WORLD users degree seed usersFile eventsFile");
+         System.exit(1);
+      }
+      NetworkGenerator generator = new NetworkGenerator(Model.valueOf(args[0]), Integer.parseInt(args[1]), Integer.parseInt(args[2]), Long.parseLong(args[3]));
+      long began = System.nanoTime();
+      int users = generator.writeUsers(Paths.get(args[4]));
+      long events = generator.writeEvents(Paths.get(args[5]));
+      System.out.printf("Wrote %d users and %d events in %.1f s%n", users, events, (System.nanoTime() - began) / 1e9);
+   }
+}
@@ -0,0 +1,80 @@
+/** A read only view of the users in a social network and the links between them, with users named by the index they were given in the network.
+  * A link is named by one of its users and its position in that user's list of links.
+  * @author Billy Barbaro
+  */
+public interface NetworkGraph {
+
+	/** Gives the index of the user with the given ID
+	  * @param id 	the id of the user
+	  * @return int 	the user's index. -1 if the user is not in the network
+	  */
+	public int indexOf(String id);
+
+	/** Gives the user at an index
+	  * @param index 	the index of the user
+	  * @return User 	the user at that index
+	  */
+	public User user(int index);
+
+	/** Gives the number of users in the network. Indices run from 0 to one less than this
+	  * @return int 	the number of users
+	  */
+	public int userCount();
+
+	/** Gives the number of link ends in the network, which is twice the number of links
+	  * @return long 	the sum of every user's degree
+	  */
+	public long totalDegree();
+
+	/** Gives the number of users linked to a user
+	  * @param index 	the index of the user
+	  * @return int 	the number of links the user has
+	  */
+	public int degree(int index);
+
+	/** Gives the user on the other end of one of a user's links
+	  * @param index 	the index of the user
+	  * @param position 	the position of the link, between 0 and degree(index) - 1
+	  * @return int 	the index of the linked user
+	  */
+	public int neighbor(int index, int position);
+
+	/** Tells if one of a user's links was active at the given time
+	  * @param index 	the index of the user
+	  * @param position 	the position of the link
+	  * @param date 	the time in milliseconds since the epoch
+	  * @return boolean 	tells if the link was active
+	  */
+	public boolean isActive(int index, int position, long date);
+
+	/** Gives the next event on one of a user's links after the given time
+	  * @param index 	the index of the user
+	  * @param position 	the position of the link
+	  * @param date 	the time in milliseconds since the epoch
+	  * @return long 	the time of the next event. Link.NO_EVENT if there is none
+	  */
+	public long nextEvent(int index, int position, long date);
+
+	/** Gives the event on one of a user's links right before the given time
+	  * @param index 	the index of the user
+	  * @param position 	the position of the link
+	  * @param date 	the time in milliseconds since the epoch
+	  * @return long 	the time of the previous event. Link.NO_EVENT if there is none
+	  */
+	public long previousEvent(int index, int position, long date);
+
+	/** Gives the number of events on one of a user's links
+	  * @param index 	the index of the user
+	  * @param position 	the position of the link
+	  * @return int 	the number of times the link has been established or torn down
+	  */
+	public int eventCount(int index, int position);
+
+	/** Gives one of the events on one of a user's links, in time order
+	  * @param index 	the index of the user
+	  * @param position 	the position of the link
+	  * @param event 	the number of the event, between 0 and eventCount(index, position) - 1
+	  * @return long 	the time of the event in milliseconds since the epoch
+	  */
+	public long event(int index, int position, int event);
+}
@@ -0,0 +1,541 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/** An append only log of the changes made to a social network since its last snapshot, so they survive a crash.
+  * The file starts with a header: the magic number, the format version, and the checksum of the snapshot the changes follow, 0 for none.
+  * Records follow in frames, each a payload length, a CRC32C of the payload, and the payload. A payload holds whole records: an added user,
+  * with the user's ID, names, email and phone number as a length and UTF-8 bytes, -1 marking an unset field, or an establish or tear down,
+  * with the indices of the two users and the date.
+  * Records are buffered as they're logged. A writer calling commit becomes the leader if no write is under way, and writes and syncs every
+  * record buffered so far in one frame, while writers that commit in the meantime wait and are covered by the next frame. This way a sync
+  * is shared by every writer that committed while the last one ran.
+  * Opening a journal reads back the records already in it. A frame cut short or failing its checksum, as a crash in the middle of a write leaves,
+  * ends the journal, and is cut from the file.
+  * @author Billy Barbaro
+  */
+public class NetworkJournal implements Closeable {
+
+   /** Marks a file as a journal: "BSNJ" */
+   private static final int MAGIC = 0x42534E4A;
+
+   /** The version of the format written */
+   private static final int VERSION = 1;
+
+   /** The size of the header in bytes */
+   private static final int HEADER_SIZE = 16;
+
+   /** The most bytes mapped at once when reading the journal back */
+   private static final long WINDOW = 1 << 26;
+
+   /** The size of a frame's length and checksum in bytes */
+   private static final int FRAME_HEADER_SIZE = 8;
+
+   /** The record type of an added user */
+   private static final byte USER = 0;
+
+   /** The record type of an establish */
+   private static final byte ESTABLISH = 1;
+
+   /** The record type of a tear down */
+   private static final byte TEARDOWN = 2;
+
+   /** The size of an establish or tear down record in bytes */
+   private static final int LINK_RECORD_SIZE = 17;
+
+   /** The path of the journal */
+   private Path file;
+
+   /** The open journal */
+   private FileChannel channel;
+
+   /** The records logged but not yet handed to a leader, after room for a frame header */
+   private ByteBuffer pending;
+
+   /** The buffer the leader writes from, swapped with pending when a leader takes over */
+   private ByteBuffer writing;
+
+   /** The number of record bytes logged since the journal was opened */
+   private long appended;
+
+   /** The number of record bytes logged since the journal was opened that are synced to the disk */
+   private long durable;
+
+   /** True while a leader is writing a frame */
+   private boolean flushing;
+
+   /** The error of the last failed write. Once a write fails the journal refuses further commits */
+   private IOException failure;
+
+   /** The checksum of the snapshot the journal follows */
+   private long base;
+
+   /** The users added in the records read when the journal was opened */
+   private User[] replayUsers;
+
+   /** The lower user of each establish and tear down read when the journal was opened */
+   private int[] replayLows;
+
+   /** The higher user of each establish and tear down read when the journal was opened */
+   private int[] replayHighs;
+
+   /** The date of each establish and tear down read when the journal was opened */
+   private long[] replayDates;
+
+   /** Whether each establish and tear down read when the journal was opened is an establish */
+   private boolean[] replayEstablishes;
+
+   /** The number of establishes and tear downs read when the journal was opened */
+   private int replayCount;
+
+   /** The number of users read when the journal was opened */
+   private int replayUserCount;
+
+   /** Opens a journal, creating it following the given snapshot if it doesn't exist, and reads back the records in it
+     * @param file   the path of the journal
+     * @param base   the checksum of the snapshot a new journal follows, 0 for none
+     * @throws IOException  if the file can't be read or written, or is not a journal of this version
+     * @throws NullPointerException  if the path is null
+     */
+   public NetworkJournal(Path file, long base) throws IOException {
+      super();
+      SocialNetworkUtility.checkNull(file, "Path");
+      this.file = file;
+      pending = ByteBuffer.allocate(1 << 16);
+      writing = ByteBuffer.allocate(1 << 16);
+      pending.position(FRAME_HEADER_SIZE);
+      replayUsers = new User[16];
+      replayLows = new int[64];
+      replayHighs = new int[64];
+      replayDates = new long[64];
+      replayEstablishes = new boolean[64];
+
+      if (!Files.exists(file)) {
+         createFile(base);
+         this.base = base;
+      }
+      channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      readAll();
+   }
+
+   /** Writes an empty journal following the given snapshot in place of the file, beside it first and then moved into place
+     * @param base   the checksum of the snapshot the journal follows
+     * @throws IOException  if the file can't be written
+     */
+   private void createFile(long base) throws IOException {
+      Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+      try (FileChannel created = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+         ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+         header.putInt(MAGIC).putInt(VERSION).putLong(base).flip();
+         while (header.hasRemaining())
+            created.write(header);
+         created.force(true);
+      }
+      SocialNetworkUtility.moveDurably(temporary, file);
+   }
+
+   /** Reads every whole frame in the journal into the replay arrays and cuts off anything after the last of them
+     * @throws IOException  if the file can't be read, or is not a journal of this version
+     */
+   private void readAll() throws IOException {
+      long size = channel.size();
+      if (size < HEADER_SIZE)
+         throw new IOException("File is not a journal.");
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      channel.read(header, 0);
+      header.flip();
+      if (header.getInt() != MAGIC)
+         throw new IOException("File is not a journal.");
+      int version = header.getInt();
+      if (version != VERSION)
+         throw new IOException("Unsupported journal version " + version + ".");
+      base = header.getLong();
+
+      // The frames are read through mappings of up to a window at a time, moved along whenever the next frame runs past the end of one
+      long position = HEADER_SIZE;
+      long windowStart = position;
+      ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(WINDOW, size - windowStart));
+      CRC32C checksum = new CRC32C();
+      while (position + FRAME_HEADER_SIZE <= size) {
+         if (position + FRAME_HEADER_SIZE > windowStart + window.capacity()) {
+            windowStart = position;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(WINDOW, size - windowStart));
+         }
+         int length = window.getInt((int)(position - windowStart));
+         if (length <= 0 || position + FRAME_HEADER_SIZE + length > size)
+            break;
+         if (position + FRAME_HEADER_SIZE + length > windowStart + window.capacity()) {
+            windowStart = position;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(Math.max(WINDOW, FRAME_HEADER_SIZE + length), size - windowStart));
+         }
+
+         int offset = (int)(position - windowStart);
+         int expected = window.getInt(offset + 4);
+         ByteBuffer payload = window.duplicate();
+         payload.limit(offset + FRAME_HEADER_SIZE + length).position(offset + FRAME_HEADER_SIZE);
+         checksum.reset();
+         checksum.update(payload.duplicate());
+         if ((int)checksum.getValue() != expected || !readFrame(payload))
+            break;
+         position += FRAME_HEADER_SIZE + length;
+      }
+
+      // Whatever follows the last whole frame was cut short by a crash, and is dropped so new frames follow on from good ones
+      if (position < size) {
+         channel.truncate(position);
+         channel.force(true);
+      }
+      channel.position(position);
+   }
+
+   /** Reads the records of a frame into the replay arrays. A frame is taken whole or not at all
+     * @param payload   the frame's records
+     * @return boolean   true if every record was whole
+     */
+   private boolean readFrame(ByteBuffer payload) {
+      int userCount = replayUserCount;
+      int count = replayCount;
+      if (!readRecords(payload)) {
+         replayUserCount = userCount;
+         replayCount = count;
+         return false;
+      }
+      return true;
+   }
+
+   /** Reads the records of a frame into the replay arrays
+     * @param payload   the frame's records
+     * @return boolean   true if every record was whole
+     */
+   private boolean readRecords(ByteBuffer payload) {
+      while (payload.hasRemaining()) {
+         byte type = payload.get();
+         if (type == USER) {
+            User user = readUser(payload);
+            if (user == null)
+               return false;
+            if (replayUserCount == replayUsers.length)
+               replayUsers = Arrays.copyOf(replayUsers, replayUserCount * 2);
+            replayUsers[replayUserCount++] = user;
+         }
+         else if ((type == ESTABLISH || type == TEARDOWN) && payload.remaining() >= LINK_RECORD_SIZE - 1) {
+            if (replayCount == replayLows.length) {
+               replayLows = Arrays.copyOf(replayLows, replayCount * 2);
+               replayHighs = Arrays.copyOf(replayHighs, replayCount * 2);
+               replayDates = Arrays.copyOf(replayDates, replayCount * 2);
+               replayEstablishes = Arrays.copyOf(replayEstablishes, replayCount * 2);
+            }
+            replayLows[replayCount] = payload.getInt();
+            replayHighs[replayCount] = payload.getInt();
+            replayDates[replayCount] = payload.getLong();
+            replayEstablishes[replayCount] = type == ESTABLISH;
+            replayCount++;
+         }
+         else
+            return false;
+      }
+      return true;
+   }
+
+   /** Reads a string field
+     * @param payload   the records being read
+     * @param field   a one element array to be given the field
+     * @return boolean   true if the field was whole
+     */
+   private static boolean readField(ByteBuffer payload, String[] field) {
+      if (payload.remaining() < 4)
+         return false;
+      int length = payload.getInt();
+      field[0] = null;
+      if (length < 0)
+         return true;
+      if (length > payload.remaining())
+         return false;
+      byte[] bytes = new byte[length];
+      payload.get(bytes);
+      field[0] = new String(bytes, StandardCharsets.UTF_8);
+      return true;
+   }
+
+   /** Reads an added user
+     * @param payload   the records being read
+     * @return User   the user. Null if the record is malformed
+     */
+   private static User readUser(ByteBuffer payload) {
+      String[] fields = new String[6];
+      String[] field = new String[1];
+      for (int f = 0; f < fields.length; f++) {
+         if (!readField(payload, field))
+            return null;
+         fields[f] = field[0];
+      }
+
+      User user = new User();
+      if (fields[0] == null || !user.setID(fields[0]))
+         return null;
+      try {
+         if (fields[1] != null)
+            user.setFirstName(fields[1]);
+         if (fields[2] != null)
+            user.setMiddleName(fields[2]);
+         if (fields[3] != null)
+            user.setLastName(fields[3]);
+         if (fields[4] != null)
+            user.setEmail(fields[4]);
+         if (fields[5] != null)
+            user.setPhoneNumber(fields[5]);
+      }
+      catch (UninitializedObjectException uoe) { // The user's ID was set above
+         assert false;
+      }
+      return user;
+   }
+
+   /** Gives the checksum of the snapshot the journal follows
+     * @return long   the checksum. 0 if the journal follows no snapshot
+     */
+   public long base() {
+      return base;
+   }
+
+   /** Gives the number of users added in the records read when the journal was opened
+     * @return int   the number of users
+     */
+   public int replayUserCount() {
+      return replayUserCount;
+   }
+
+   /** Gives a user added in the records read when the journal was opened, in the order they were added
+     * @param user   the number of the user
+     * @return User   the user
+     */
+   public User replayUser(int user) {
+      return replayUsers[user];
+   }
+
+   /** Gives the number of establishes and tear downs read when the journal was opened
+     * @return int   the number of records
+     */
+   public int replayCount() {
+      return replayCount;
+   }
+
+   /** Gives the lower index of the users of an establish or tear down read when the journal was opened
+     * @param record   the number of the record
+     * @return int   the index of the user
+     */
+   public int replayLow(int record) {
+      return replayLows[record];
+   }
+
+   /** Gives the higher index of the users of an establish or tear down read when the journal was opened
+     * @param record   the number of the record
+     * @return int   the index of the user
+     */
+   public int replayHigh(int record) {
+      return replayHighs[record];
+   }
+
+   /** Gives the date of an establish or tear down read when the journal was opened
+     * @param record   the number of the record
+     * @return long   the date in milliseconds since the epoch
+     */
+   public long replayDate(int record) {
+      return replayDates[record];
+   }
+
+   /** Tells if a record read when the journal was opened is an establish
+     * @param record   the number of the record
+     * @return boolean   true for an establish, false for a tear down
+     */
+   public boolean replayIsEstablish(int record) {
+      return replayEstablishes[record];
+   }
+
+   /** Lets go of the records read when the journal was opened, once they've been replayed */
+   public void clearReplay() {
+      replayUsers = new User[0];
+      replayLows = new int[0];
+      replayHighs = new int[0];
+      replayDates = new long[0];
+      replayEstablishes = new boolean[0];
+      replayUserCount = 0;
+      replayCount = 0;
+   }
+
+   /** Makes sure there's room for more bytes in pending
+     * @param bytes   the number of bytes to be logged
+     */
+   private void ensureRoom(int bytes) {
+      if (pending.remaining() < bytes) {
+         ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + bytes));
+         pending.flip();
+         larger.put(pending);
+         pending = larger;
+      }
+   }
+
+   /** Logs a string field
+     * @param field   the field
+     */
+   private void putField(String field) {
+      if (field == null) {
+         ensureRoom(4);
+         pending.putInt(-1);
+         return;
+      }
+      byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+      ensureRoom(4 + bytes.length);
+      pending.putInt(bytes.length);
+      pending.put(bytes);
+   }
+
+   /** Logs an added user. The record is not durable until commit is called with the sequence returned
+     * @param user   the user added to the network
+     * @return long   the sequence of the record, to be passed to commit
+     */
+   public synchronized long logUser(User user) {
+      int start = pending.position();
+      ensureRoom(1);
+      pending.put(USER);
+      putField(user.getID());
+      putField(user.getFirstName());
+      putField(user.getMiddleName());
+      putField(user.getLastName());
+      putField(user.getEmail());
+      putField(user.getPhoneNumber());
+      appended += pending.position() - start;
+      return appended;
+   }
+
+   /** Logs an establish or tear down. The record is not durable until commit is called with the sequence returned
+     * @param low   the lower index of the two users
+     * @param high   the higher index of the two users
+     * @param date   the date of the change in milliseconds since the epoch
+     * @param establish   true for an establish, false for a tear down
+     * @return long   the sequence of the record, to be passed to commit
+     */
+   public synchronized long logLink(int low, int high, long date, boolean establish) {
+      ensureRoom(LINK_RECORD_SIZE);
+      pending.put(establish ? ESTABLISH : TEARDOWN);
+      pending.putInt(low);
+      pending.putInt(high);
+      pending.putLong(date);
+      appended += LINK_RECORD_SIZE;
+      return appended;
+   }
+
+   /** Gives the sequence of the last record logged, so everything logged so far can be committed
+     * @return long   the sequence of the last record
+     */
+   public synchronized long sequence() {
+      return appended;
+   }
+
+   /** Waits until every record up to the given sequence is synced to the disk, writing them itself if no other writer is
+     * @param sequence   the sequence returned when the last record to be made durable was logged
+     * @throws IOException  if the journal can't be written, or a write has failed before
+     * @throws InterruptedIOException  if the thread is interrupted while waiting for another writer
+     */
+   public void commit(long sequence) throws IOException {
+      ByteBuffer frame;
+      long end;
+      synchronized (this) {
+         while (durable < sequence && flushing && failure == null) {
+            try {
+               wait();
+            }
+            catch (InterruptedException ie) {
+               Thread.currentThread().interrupt();
+               throw new InterruptedIOException("Interrupted waiting for the journal.");
+            }
+         }
+         if (failure != null)
+            throw new IOException("Journal write failed.", failure);
+         if (durable >= sequence)
+            return;
+
+         // Becomes the leader, taking every record logged so far into one frame
+         flushing = true;
+         frame = pending;
+         pending = writing;
+         writing = frame;
+         pending.clear();
+         pending.position(FRAME_HEADER_SIZE);
+         end = appended;
+      }
+
+      IOException error = null;
+      try {
+         frame.flip();
+         CRC32C checksum = new CRC32C();
+         checksum.update(frame.array(), FRAME_HEADER_SIZE, frame.limit() - FRAME_HEADER_SIZE);
+         frame.putInt(0, frame.limit() - FRAME_HEADER_SIZE);
+         frame.putInt(4, (int)checksum.getValue());
+         while (frame.hasRemaining())
+            channel.write(frame);
+         channel.force(false);
+      }
+      catch (IOException e) {
+         error = e;
+      }
+
+      synchronized (this) {
+         flushing = false;
+         if (error != null)
+            failure = error;
+         else
+            durable = end;
+         notifyAll();
+      }
+      if (error != null)
+         throw error;
+   }
+
+   /** Starts the journal over, empty and following a new snapshot. Records logged but not committed, and records read back, are dropped, as the snapshot holds them.
+     * Must not be called while other threads are logging
+     * @param base   the checksum of the snapshot the journal now follows
+     * @throws IOException  if the file can't be written
+     */
+   public synchronized void reset(long base) throws IOException {
+      while (flushing) {
+         try {
+            wait();
+         }
+         catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the journal.");
+         }
+      }
+      channel.close();
+      createFile(base);
+      channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      channel.position(HEADER_SIZE);
+      this.base = base;
+      pending.clear();
+      pending.position(FRAME_HEADER_SIZE);
+      durable = appended;
+      failure = null;
+      clearReplay();
+   }
+
+   /** Commits every record logged and closes the journal
+     * @throws IOException  if the journal can't be written
+     */
+   public void close() throws IOException {
+      try {
+         commit(sequence());
+      }
+      finally {
+         channel.close();
+      }
+   }
+}
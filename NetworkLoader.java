@@ -0,0 +1,444 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/** Loads users and link events into a social network from delimited files, which are memory mapped and parsed in chunks in parallel.
+  * A users file has one user per line: the ID, then optionally the first, middle and last names, email and phone number, separated by the delimiter.
+  * Empty fields are left unset. An events file has one event per line: the two users' IDs, the time in milliseconds since the epoch,
+  * and E to establish the link or T to tear it down. Lines end with a newline, and blank lines are skipped.
+  * IDs in the events file are matched against the loaded users straight from the mapped bytes, so no String is made per event,
+  * and the events are applied in one batch with SocialNetwork.applyEvents.
+  * @author Billy Barbaro
+  */
+public class NetworkLoader {
+
+   /** Files are split into chunks of at least this many bytes */
+   private static final long MIN_CHUNK = 1 << 20;
+
+   /** No chunk is larger than this many bytes, since a mapping holds at most 2GB */
+   private static final long MAX_CHUNK = 1 << 30;
+
+   /** Parses a mapped chunk of a file
+     * @param <T>   the type of the chunk's records
+     */
+   private interface ChunkParser<T> {
+      /** Parses the lines of a chunk
+        * @param buffer   the chunk, starting at a line
+        * @param base   the position of the chunk in the file, for error messages
+        * @return T   the records in the chunk
+        * @throws IOException  if a line is malformed
+        */
+      T parse(ByteBuffer buffer, long base) throws IOException;
+   }
+
+   /** The network being loaded */
+   private SocialNetwork network;
+
+   /** The byte separating fields on a line */
+   private byte delimiter;
+
+   /** The number of threads parsing chunks */
+   private int parallelism;
+
+   /** The UTF-8 bytes of each ID loaded, by the order they were loaded in */
+   private byte[][] idBytes;
+
+   /** The IDs loaded, at the same positions as their bytes */
+   private String[] ids;
+
+   /** The number of IDs loaded */
+   private int idCount;
+
+   /** An open addressed table of positions in ids plus one, by the hash of the ID's bytes. 0 marks an empty slot */
+   private int[] table;
+
+   /** Creates a loader for a network, with fields separated by tabs and a thread per processor
+     * @param network   the network to be loaded
+     * @throws NullPointerException  if the network is null
+     */
+   public NetworkLoader(SocialNetwork network) {
+      this(network, (byte)'\t', Runtime.getRuntime().availableProcessors());
+   }
+
+   /** Creates a loader for a network
+     * @param network   the network to be loaded
+     * @param delimiter   the byte separating the fields of a line
+     * @param parallelism   the number of threads parsing chunks. 1 or less parses on the calling thread
+     * @throws NullPointerException  if the network is null
+     */
+   public NetworkLoader(SocialNetwork network, byte delimiter, int parallelism) {
+      super();
+      SocialNetworkUtility.checkNull(network, "Network");
+      this.network = network;
+      this.delimiter = delimiter;
+      this.parallelism = Math.max(parallelism, 1);
+      idBytes = new byte[16][];
+      ids = new String[16];
+      idCount = 0;
+      table = new int[32];
+   }
+
+   /** Hashes a run of bytes
+     * @param buffer   the buffer holding the bytes
+     * @param from   the position of the first byte
+     * @param to   the position just past the last byte
+     * @return int   the hash of the bytes
+     */
+   private static int hash(ByteBuffer buffer, int from, int to) {
+      int h = 0x811C9DC5;
+      for (int i = from; i < to; i++)
+         h = (h ^ buffer.get(i)) * 0x01000193;
+      return h ^ (h >>> 16);
+   }
+
+   /** Remembers an ID so events naming it can be matched by their bytes
+     * @param id   the ID of a user in the network
+     */
+   private void remember(String id) {
+      if (idCount == ids.length) {
+         idBytes = Arrays.copyOf(idBytes, idCount * 2);
+         ids = Arrays.copyOf(ids, idCount * 2);
+      }
+      byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+      idBytes[idCount] = bytes;
+      ids[idCount] = id;
+      idCount++;
+
+      // The table is kept under half full
+      if (idCount * 2 > table.length) {
+         table = new int[table.length * 2];
+         for (int i = 0; i < idCount; i++)
+            place(i);
+      }
+      else {
+         place(idCount - 1);
+      }
+   }
+
+   /** Places a remembered ID in the table
+     * @param position   the position of the ID in ids
+     */
+   private void place(int position) {
+      int mask = table.length - 1;
+      int slot = hash(ByteBuffer.wrap(idBytes[position]), 0, idBytes[position].length) & mask;
+      while (table[slot] != 0)
+         slot = (slot + 1) & mask;
+      table[slot] = position + 1;
+   }
+
+   /** Gives the ID held in a run of bytes, reusing the String of a loaded user when there is one
+     * @param buffer   the buffer holding the bytes
+     * @param from   the position of the first byte
+     * @param to   the position just past the last byte
+     * @return String   the ID
+     */
+   private String idAt(ByteBuffer buffer, int from, int to) {
+      int mask = table.length - 1;
+      for (int slot = hash(buffer, from, to) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+         byte[] bytes = idBytes[table[slot] - 1];
+         if (bytes.length != to - from)
+            continue;
+         int i = 0;
+         while (i < bytes.length && bytes[i] == buffer.get(from + i))
+            i++;
+         if (i == bytes.length)
+            return ids[table[slot] - 1];
+      }
+      return text(buffer, from, to);
+   }
+
+   /** Decodes a run of bytes as UTF-8
+     * @param buffer   the buffer holding the bytes
+     * @param from   the position of the first byte
+     * @param to   the position just past the last byte
+     * @return String   the text of the bytes
+     */
+   private static String text(ByteBuffer buffer, int from, int to) {
+      byte[] bytes = new byte[to - from];
+      for (int i = 0; i < bytes.length; i++)
+         bytes[i] = buffer.get(from + i);
+      return new String(bytes, StandardCharsets.UTF_8);
+   }
+
+   /** Parses a decimal number from a run of bytes
+     * @param buffer   the buffer holding the bytes
+     * @param from   the position of the first byte
+     * @param to   the position just past the last byte
+     * @param base   the position of the buffer in its file, for error messages
+     * @return long   the number
+     * @throws IOException  if the bytes are not a number, or the number doesn't fit in a long
+     */
+   private static long number(ByteBuffer buffer, int from, int to, long base) throws IOException {
+      boolean negative = from < to && buffer.get(from) == '-';
+      int i = negative ? from + 1 : from;
+      if (i == to)
+         throw new IOException("Malformed date at byte " + (base + from) + ".");
+
+      long value = 0;
+      for (; i < to; i++) {
+         int digit = buffer.get(i) - '0';
+         if (digit < 0 || digit > 9)
+            throw new IOException("Malformed date at byte " + (base + from) + ".");
+         if (value > (Long.MAX_VALUE - digit) / 10)
+            throw new IOException("Date out of range at byte " + (base + from) + ".");
+         value = value * 10 + digit;
+      }
+      return negative ? -value : value;
+   }
+
+   /** Finds the end of a field
+     * @param buffer   the buffer holding the line
+     * @param from   the position the field starts at
+     * @param to   the end of the line
+     * @return int   the position of the delimiter after the field, or the end of the line if it's the last field
+     */
+   private int fieldEnd(ByteBuffer buffer, int from, int to) {
+      while (from < to && buffer.get(from) != delimiter)
+         from++;
+      return from;
+   }
+
+   /** Finds the end of a line, leaving off a carriage return
+     * @param buffer   the buffer holding the line
+     * @param from   the position the line starts at
+     * @return int   the position of the newline ending the line, or the end of the buffer
+     */
+   private static int lineEnd(ByteBuffer buffer, int from) {
+      while (from < buffer.limit() && buffer.get(from) != '\n')
+         from++;
+      return from;
+   }
+
+   /** Parses the users in a chunk of a users file
+     * @param buffer   the chunk
+     * @param base   the position of the chunk in the file
+     * @return List<User>   the users, in the order of their lines
+     */
+   private List<User> parseUsers(ByteBuffer buffer, long base) {
+      List<User> users = new ArrayList<User>();
+      for (int position = 0; position < buffer.limit(); position = lineEnd(buffer, position) + 1) {
+         int end = lineEnd(buffer, position);
+         if (end > position && buffer.get(end - 1) == '\r')
+            end--;
+         if (end == position)
+            continue;
+
+         User user = new User();
+         int fieldStart = position;
+         for (int field = 0; fieldStart <= end && field < 6; field++) {
+            int fieldStop = fieldEnd(buffer, fieldStart, end);
+            if (fieldStop > fieldStart)
+               setField(user, field, text(buffer, fieldStart, fieldStop));
+            fieldStart = fieldStop + 1;
+         }
+         users.add(user);
+      }
+      return users;
+   }
+
+   /** Sets one of a user's fields from its place on the line
+     * @param user   the user being read
+     * @param field   the number of the field: the ID, first, middle and last names, email, then phone number
+     * @param value   the text of the field
+     */
+   private static void setField(User user, int field, String value) {
+      try {
+         switch (field) {
+            case 0: user.setID(value); break;
+            case 1: user.setFirstName(value); break;
+            case 2: user.setMiddleName(value); break;
+            case 3: user.setLastName(value); break;
+            case 4: user.setEmail(value); break;
+            default: user.setPhoneNumber(value); break;
+         }
+      }
+      catch (UninitializedObjectException uoe) { // A user without an ID keeps no other fields and is turned away by the network
+      }
+   }
+
+   /** Parses the events in a chunk of an events file
+     * @param buffer   the chunk
+     * @param base   the position of the chunk in the file
+     * @return LinkEventBatch   the events, in the order of their lines
+     * @throws IOException  if a line is malformed
+     */
+   private LinkEventBatch parseEvents(ByteBuffer buffer, long base) throws IOException {
+      LinkEventBatch batch = new LinkEventBatch(buffer.limit() / 32);
+      for (int position = 0; position < buffer.limit(); position = lineEnd(buffer, position) + 1) {
+         int end = lineEnd(buffer, position);
+         if (end > position && buffer.get(end - 1) == '\r')
+            end--;
+         if (end == position)
+            continue;
+
+         int firstEnd = fieldEnd(buffer, position, end);
+         int secondEnd = fieldEnd(buffer, firstEnd + 1, end);
+         int dateEnd = fieldEnd(buffer, secondEnd + 1, end);
+         if (dateEnd + 2 != end)
+            throw new IOException("Malformed event at byte " + (base + position) + ".");
+
+         String first = idAt(buffer, position, firstEnd);
+         String second = idAt(buffer, firstEnd + 1, secondEnd);
+         long date = number(buffer, secondEnd + 1, dateEnd, base);
+         byte kind = buffer.get(dateEnd + 1);
+         if (kind == 'E')
+            batch.establish(first, second, date);
+         else if (kind == 'T')
+            batch.tearDown(first, second, date);
+         else
+            throw new IOException("Malformed event at byte " + (base + position) + ".");
+      }
+      return batch;
+   }
+
+   /** Finds where a file's chunks start, each just after a newline
+     * @param channel   the open file
+     * @return long[]   the start of each chunk, then the size of the file
+     * @throws IOException  if the file can't be read
+     */
+   private long[] chunkBounds(FileChannel channel) throws IOException {
+      long size = channel.size();
+      long chunks = Math.max(1, Math.min(parallelism * 4L, size / MIN_CHUNK));
+      chunks = Math.max(chunks, (size + MAX_CHUNK / 2 - 1) / (MAX_CHUNK / 2));
+
+      long[] bounds = new long[(int)chunks + 1];
+      ByteBuffer probe = ByteBuffer.allocate(4096);
+      for (int c = 1; c < chunks; c++) {
+         long position = Math.max(size * c / chunks, bounds[c - 1]);
+
+         // Moves forward to just past the next newline so no line is split between chunks
+         boolean found = false;
+         while (!found && position < size) {
+            probe.clear();
+            int read = channel.read(probe, position);
+            for (int i = 0; i < read && !found; i++) {
+               if (probe.get(i) == '\n')
+                  found = true;
+               position++;
+            }
+         }
+         bounds[c] = position;
+      }
+      bounds[(int)chunks] = size;
+      return bounds;
+   }
+
+   /** Maps a file's chunks and parses them, in parallel when there's more than one
+     * @param <T>   the type of the chunks' records
+     * @param file   the path of the file
+     * @param parser   parses each chunk
+     * @return List<T>   the records of each chunk, in the order of the chunks
+     * @throws IOException  if the file can't be read or a line is malformed
+     */
+   private <T> List<T> parseChunks(Path file, ChunkParser<T> parser) throws IOException {
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+         long[] bounds = chunkBounds(channel);
+         List<Callable<T>> tasks = new ArrayList<Callable<T>>();
+         for (int c = 0; c + 1 < bounds.length; c++) {
+            final long start = bounds[c];
+            final MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, bounds[c + 1] - start);
+            tasks.add(() -> parser.parse(chunk, start));
+         }
+
+         List<T> results = new ArrayList<T>();
+         if (parallelism == 1 || tasks.size() == 1) {
+            for (Callable<T> task : tasks)
+               results.add(callChunk(task));
+            return results;
+         }
+
+         ForkJoinPool pool = new ForkJoinPool(parallelism);
+         try {
+            for (Future<T> future : pool.invokeAll(tasks))
+               results.add(future.get());
+            return results;
+         }
+         catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Loading was interrupted.", ie);
+         }
+         catch (ExecutionException ee) {
+            if (ee.getCause() instanceof IOException)
+               throw (IOException)ee.getCause();
+            throw new IOException(ee.getCause());
+         }
+         finally {
+            pool.shutdown();
+         }
+      }
+   }
+
+   /** Parses a chunk on the calling thread
+     * @param <T>   the type of the chunk's records
+     * @param task   the parse of the chunk
+     * @return T   the records of the chunk
+     * @throws IOException  if a line is malformed
+     */
+   private static <T> T callChunk(Callable<T> task) throws IOException {
+      try {
+         return task.call();
+      }
+      catch (IOException ioe) {
+         throw ioe;
+      }
+      catch (Exception e) { // Parsers only throw IOExceptions
+         throw new IOException(e);
+      }
+   }
+
+   /** Loads the users in a users file into the network. Users whose IDs are already in the network are skipped
+     * @param users   the path of the users file
+     * @return int   the number of users added
+     * @throws IOException  if the file can't be read
+     * @throws NullPointerException  if the path is null
+     */
+   public int loadUsers(Path users) throws IOException {
+      SocialNetworkUtility.checkNull(users, "Path");
+      int added = 0;
+      for (List<User> chunk : parseChunks(users, this::parseUsers)) {
+         for (User user : chunk) {
+            if (network.addUser(user)) {
+               remember(user.getID());
+               added++;
+            }
+         }
+      }
+      return added;
+   }
+
+   /** Loads the link events in an events file into the network, applying them as one batch.
+     * Events are applied by date within each link, so the file does not need to be in order
+     * @param events   the path of the events file
+     * @return SocialNetworkStatus.Status[]   the exit status of each event, in the order of the file's lines
+     * @throws IOException  if the file can't be read or a line is malformed, or the file holds more events than one batch can
+     * @throws NullPointerException  if the path is null
+     */
+   public SocialNetworkStatus.Status[] loadEvents(Path events) throws IOException {
+      SocialNetworkUtility.checkNull(events, "Path");
+      List<LinkEventBatch> chunks = parseChunks(events, this::parseEvents);
+      if (chunks.size() == 1)
+         return network.applyEvents(chunks.get(0));
+
+      // The batch is sized to every chunk up front, so each record is copied once
+      long total = 0;
+      for (LinkEventBatch chunk : chunks)
+         total += chunk.size();
+      if (total > Integer.MAX_VALUE - 8)
+         throw new IOException("Events file has too many events to load as one batch.");
+      LinkEventBatch batch = new LinkEventBatch((int)total);
+      for (LinkEventBatch chunk : chunks)
+         batch.addAll(chunk);
+      return network.applyEvents(batch);
+   }
+}
@@ -0,0 +1,218 @@
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+/** Records the latency and outcome of each call to a social network's operations, and reads the size of the network when asked.
+  * The metrics can be registered with the platform MBean server, where they show up as BasicSocialNetwork:type=SocialNetwork,name=the name given.
+  * A network only records into its metrics while they are turned on, so turned off they cost a read of a field per call
+  * @author Billy Barbaro
+  */
+public class NetworkMetrics implements NetworkMetricsMXBean {
+
+   /** The operations whose calls are recorded */
+   public enum Operation {
+      ESTABLISH_LINK,
+      TEAR_DOWN_LINK,
+      IS_ACTIVE,
+      NEIGHBORHOOD,
+      NEIGHBORHOOD_TREND
+   };
+
+   /** The percentiles given for each operation, with the names they're given under */
+   private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+   private static final String[] PERCENTILE_NAMES = {"p50Nanos", "p90Nanos", "p99Nanos", "p999Nanos"};
+
+   /** The statuses an operation can end with */
+   private static final SocialNetworkStatus.Status[] STATUSES = SocialNetworkStatus.Status.values();
+
+   /** The network measured */
+   private SocialNetwork network;
+
+   /** The latencies of each operation, by its ordinal */
+   private LatencyHistogram[] latencies;
+
+   /** The number of calls to each operation ending with each status, at the operation's ordinal times the number of statuses plus the status's ordinal */
+   private AtomicLongArray outcomes;
+
+   /** The name the metrics are registered under. Null when they aren't registered */
+   private ObjectName registered;
+
+   /** Creates metrics for a network, with nothing recorded
+     * @param network   the network measured
+     * @throws NullPointerException  if the network is null
+     */
+   public NetworkMetrics(SocialNetwork network) {
+      super();
+      SocialNetworkUtility.checkNull(network, "Network");
+      this.network = network;
+      latencies = new LatencyHistogram[Operation.values().length];
+      for (int i = 0; i < latencies.length; i++)
+         latencies[i] = new LatencyHistogram();
+      outcomes = new AtomicLongArray(latencies.length * STATUSES.length);
+   }
+
+   /** Records a call to an operation
+     * @param operation   the operation called
+     * @param began   the value of System.nanoTime when the call began
+     * @param outcome   the status the call ended with. Null records the latency alone
+     */
+   public void record(Operation operation, long began, SocialNetworkStatus.Status outcome) {
+      latencies[operation.ordinal()].record(System.nanoTime() - began);
+      if (outcome != null)
+         outcomes.incrementAndGet(operation.ordinal() * STATUSES.length + outcome.ordinal());
+   }
+
+   /** Gives the latencies recorded for an operation
+     * @param operation   the operation
+     * @return LatencyHistogram   the operation's latencies
+     */
+   public LatencyHistogram latency(Operation operation) {
+      return latencies[operation.ordinal()];
+   }
+
+   /** Gives the number of calls to an operation that ended with a status
+     * @param operation   the operation
+     * @param outcome   the status
+     * @return long   the number of calls
+     */
+   public long outcomes(Operation operation, SocialNetworkStatus.Status outcome) {
+      return outcomes.get(operation.ordinal() * STATUSES.length + outcome.ordinal());
+   }
+
+   /** Registers the metrics with the platform MBean server
+     * @param name   the name of the network, told apart from other networks' by it
+     * @throws IllegalArgumentException  if metrics are already registered under the name
+     * @throws IllegalStateException  if these metrics are already registered, or the server turns them away
+     */
+   public synchronized void register(String name) {
+      SocialNetworkUtility.checkNull(name, "Name");
+      if (registered != null)
+         throw new IllegalStateException("Metrics are already registered as " + registered + ".");
+      try {
+         ObjectName objectName = new ObjectName("BasicSocialNetwork:type=SocialNetwork,name=" + ObjectName.quote(name));
+         ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+         registered = objectName;
+      }
+      catch (InstanceAlreadyExistsException iaee) {
+         throw new IllegalArgumentException("Metrics are already registered for " + name + ".", iaee);
+      }
+      catch (MalformedObjectNameException mone) { // The name is quoted, so any name makes a valid object name
+         assert false;
+      }
+      catch (JMException jme) {
+         throw new IllegalStateException(jme);
+      }
+   }
+
+   /** Takes the metrics off the platform MBean server, if they were registered */
+   public synchronized void unregister() {
+      if (registered == null)
+         return;
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      try {
+         if (server.isRegistered(registered))
+            server.unregisterMBean(registered);
+      }
+      catch (JMException jme) { // Already taken off by someone else
+      }
+      registered = null;
+   }
+
+   /** Gives the name the metrics are registered under
+     * @return ObjectName   the name. Null if they aren't registered
+     */
+   public synchronized ObjectName getObjectName() {
+      return registered;
+   }
+
+   public int getUserCount() {
+      return network.getUserCount();
+   }
+
+   public long getLinkCount() {
+      return network.getLinkCount();
+   }
+
+   public long getEventCount() {
+      return network.getEventCount();
+   }
+
+   /** Summarizes the latencies of an operation
+     * @param operation   the operation
+     * @return Map<String, Long>   the count, mean, percentiles and max, in that order
+     */
+   private Map<String, Long> latencySummary(Operation operation) {
+      LatencyHistogram histogram = latencies[operation.ordinal()];
+      Map<String, Long> summary = new LinkedHashMap<String, Long>();
+      summary.put("count", histogram.count());
+      summary.put("meanNanos", histogram.mean());
+      for (int i = 0; i < PERCENTILES.length; i++)
+         summary.put(PERCENTILE_NAMES[i], histogram.percentile(PERCENTILES[i]));
+      summary.put("maxNanos", histogram.max());
+      return summary;
+   }
+
+   /** Summarizes the outcomes of an operation
+     * @param operation   the operation
+     * @return Map<String, Long>   the number of calls ending with each status, by the status's name
+     */
+   private Map<String, Long> outcomeSummary(Operation operation) {
+      Map<String, Long> summary = new LinkedHashMap<String, Long>();
+      for (SocialNetworkStatus.Status status : STATUSES)
+         summary.put(status.name(), outcomes(operation, status));
+      return summary;
+   }
+
+   public Map<String, Long> getEstablishLinkLatency() {
+      return latencySummary(Operation.ESTABLISH_LINK);
+   }
+
+   public Map<String, Long> getTearDownLinkLatency() {
+      return latencySummary(Operation.TEAR_DOWN_LINK);
+   }
+
+   public Map<String, Long> getIsActiveLatency() {
+      return latencySummary(Operation.IS_ACTIVE);
+   }
+
+   public Map<String, Long> getNeighborhoodLatency() {
+      return latencySummary(Operation.NEIGHBORHOOD);
+   }
+
+   public Map<String, Long> getNeighborhoodTrendLatency() {
+      return latencySummary(Operation.NEIGHBORHOOD_TREND);
+   }
+
+   public Map<String, Long> getEstablishLinkOutcomes() {
+      return outcomeSummary(Operation.ESTABLISH_LINK);
+   }
+
+   public Map<String, Long> getTearDownLinkOutcomes() {
+      return outcomeSummary(Operation.TEAR_DOWN_LINK);
+   }
+
+   public Map<String, Long> getIsActiveOutcomes() {
+      return outcomeSummary(Operation.IS_ACTIVE);
+   }
+
+   public Map<String, Long> getNeighborhoodOutcomes() {
+      return outcomeSummary(Operation.NEIGHBORHOOD);
+   }
+
+   public Map<String, Long> getNeighborhoodTrendOutcomes() {
+      return outcomeSummary(Operation.NEIGHBORHOOD_TREND);
+   }
+
+   public void reset() {
+      for (LatencyHistogram histogram : latencies)
+         histogram.reset();
+      for (int i = 0; i < outcomes.length(); i++)
+         outcomes.set(i, 0);
+   }
+}
@@ -0,0 +1,56 @@
+import java.util.Map;
+
+/** The management interface of a social network's metrics, as seen over JMX.
+  * Each operation's latency is a map of its count, mean, percentiles and max in nanoseconds, and its outcomes a map of each status to the number of calls ending with it
+  * @author Billy Barbaro
+  */
+public interface NetworkMetricsMXBean {
+
+   /** Gives the number of users in the network
+     * @return int   the number of users
+     */
+   public int getUserCount();
+
+   /** Gives the number of links in the network, active or not
+     * @return long   the number of links
+     */
+   public long getLinkCount();
+
+   /** Gives the number of events on every link in the network
+     * @return long   the number of establishes and tear downs
+     */
+   public long getEventCount();
+
+   /** @return Map<String, Long>   the latencies of establishLink */
+   public Map<String, Long> getEstablishLinkLatency();
+
+   /** @return Map<String, Long>   the latencies of tearDownLink */
+   public Map<String, Long> getTearDownLinkLatency();
+
+   /** @return Map<String, Long>   the latencies of isActive */
+   public Map<String, Long> getIsActiveLatency();
+
+   /** @return Map<String, Long>   the latencies of neighborhood */
+   public Map<String, Long> getNeighborhoodLatency();
+
+   /** @return Map<String, Long>   the latencies of neighborhoodTrend */
+   public Map<String, Long> getNeighborhoodTrendLatency();
+
+   /** @return Map<String, Long>   the outcomes of establishLink */
+   public Map<String, Long> getEstablishLinkOutcomes();
+
+   /** @return Map<String, Long>   the outcomes of tearDownLink */
+   public Map<String, Long> getTearDownLinkOutcomes();
+
+   /** @return Map<String, Long>   the outcomes of isActive: SUCCESS when the link was active, ALREADY_INACTIVE when it wasn't */
+   public Map<String, Long> getIsActiveOutcomes();
+
+   /** @return Map<String, Long>   the outcomes of neighborhood */
+   public Map<String, Long> getNeighborhoodOutcomes();
+
+   /** @return Map<String, Long>   the outcomes of neighborhoodTrend */
+   public Map<String, Long> getNeighborhoodTrendOutcomes();
+
+   /** Forgets every latency and outcome recorded so far */
+   public void reset();
+}
@@ -0,0 +1,114 @@
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/** One shard of a ShardedSocialNetwork: the users whose IDs hash to it, their links, and the locks guarding them.
+  * Within the shard a user is named by their local index, the order they were added in. Their links name the user on the other end by global index,
+  * which tells the shard holding that user and their local index there. Each shard grows and locks on its own, so users added to different shards never wait on each other.
+  * @author Billy Barbaro
+  */
+public class NetworkShard {
+
+   /** The number of lock stripes a shard's users' links are spread over */
+   public static final int STRIPES = 64;
+
+   /** Maps the IDs of the shard's users to their local indices */
+   private ConcurrentHashMap<String, Integer> indices;
+
+   /** The shard's users, by local index. Only the first userCount slots are in use */
+   private volatile User[] users;
+
+   /** The links of each of the shard's users, by local index. Each list maps the global index of a linked user to the link between them */
+   private volatile AdjacencyList[] links;
+
+   /** The number of users in the shard. Written after a new user's slots are filled, so a reader that sees the count sees the users */
+   private volatile int userCount;
+
+   /** Held while adding a user */
+   private ReentrantLock registration;
+
+   /** Held while changing the links of the users whose local index falls in each stripe */
+   private ReentrantLock[] stripes;
+
+   /** Creates a shard with no users */
+   public NetworkShard() {
+      super();
+      indices = new ConcurrentHashMap<String, Integer>();
+      users = new User[16];
+      links = new AdjacencyList[16];
+      userCount = 0;
+      registration = new ReentrantLock();
+      stripes = new ReentrantLock[STRIPES];
+      for (int i = 0; i < STRIPES; i++)
+         stripes[i] = new ReentrantLock();
+   }
+
+   /** Adds a user to the shard, giving them the next local index
+     * @param user   the user to be added. Must be valid
+     * @return int   the user's local index. -1 if a user with the same ID is already in the shard
+     */
+   public int addUser(User user) {
+      registration.lock();
+      try {
+         if (indices.containsKey(user.getID()))
+            return -1;
+
+         // The ID is only found once the count takes the user in
+         int index = userCount;
+         if (index == users.length) {
+            users = Arrays.copyOf(users, index + (index >> 1));
+            links = Arrays.copyOf(links, index + (index >> 1));
+         }
+         users[index] = user;
+         links[index] = new AdjacencyList();
+         userCount = index + 1;
+         indices.put(user.getID(), index);
+         return index;
+      }
+      finally {
+         registration.unlock();
+      }
+   }
+
+   /** Gives the local index of one of the shard's users
+     * @param id   the ID of the user
+     * @return int   the user's local index. -1 if the user is not in the shard
+     */
+   public int indexOf(String id) {
+      Integer index = indices.get(id);
+      if (index == null)
+         return -1;
+      return index;
+   }
+
+   /** Gives the user at a local index
+     * @param index   a local index between 0 and userCount() - 1
+     * @return User   the user
+     */
+   public User user(int index) {
+      return users[index];
+   }
+
+   /** Gives the links of the user at a local index
+     * @param index   a local index between 0 and userCount() - 1
+     * @return AdjacencyList   the user's links, by the global index of the linked user
+     */
+   public AdjacencyList links(int index) {
+      return links[index];
+   }
+
+   /** Gives the number of users in the shard
+     * @return int   the number of users
+     */
+   public int userCount() {
+      return userCount;
+   }
+
+   /** Gives the lock guarding the links of the users in a stripe
+     * @param stripe   the stripe, between 0 and STRIPES - 1. A user's stripe is the low bits of their local index
+     * @return ReentrantLock   the stripe's lock
+     */
+   public ReentrantLock stripe(int stripe) {
+      return stripes[stripe];
+   }
+}
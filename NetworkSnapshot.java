@@ -0,0 +1,448 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/** The users and links of a social network as saved in, or read from, a binary snapshot file.
+  * The file starts with a header: the magic number, the format version, the number of users, links and events, and the size of the user table.
+  * The user table follows, with each user's ID, first, middle and last names, email and phone number as a length and UTF-8 bytes, -1 marking an unset field.
+  * Users are named everywhere else by their place in the table. Then come the lower and higher user of each link, where each link's events start
+  * in the event array, padding to a multiple of 8 bytes, and every link's events packed side by side. A CRC32C of everything before it ends the file.
+  * The arrays are read with a few bulk reads from mappings of the file, and each link's events straight into an array the link can keep.
+  * @author Billy Barbaro
+  */
+public class NetworkSnapshot {
+
+   /** Marks a file as a snapshot: "BSNS" */
+   private static final int MAGIC = 0x42534E53;
+
+   /** The version of the format written */
+   private static final int VERSION = 1;
+
+   /** The size of the header in bytes */
+   private static final int HEADER_SIZE = 32;
+
+   /** The most bytes mapped at once, since a mapping holds at most 2GB */
+   private static final long WINDOW = 1 << 30;
+
+   /** The number of fields written for each user: the ID, first, middle and last names, email and phone number */
+   private static final int USER_FIELDS = 6;
+
+   /** The users, by index */
+   private User[] users;
+
+   /** The lower index of each link's users */
+   private int[] lows;
+
+   /** The higher index of each link's users */
+   private int[] highs;
+
+   /** The events of each link, in time order, each link's in an array of its own */
+   private long[][] linkEvents;
+
+   /** Creates a snapshot from its arrays
+     * @param users   the users by index
+     * @param lows   the lower user of each link
+     * @param highs   the higher user of each link
+     * @param linkEvents   the events of each link
+     */
+   private NetworkSnapshot(User[] users, int[] lows, int[] highs, long[][] linkEvents) {
+      super();
+      this.users = users;
+      this.lows = lows;
+      this.highs = highs;
+      this.linkEvents = linkEvents;
+   }
+
+   /** Gives the number of users in the snapshot
+     * @return int   the number of users
+     */
+   public int userCount() {
+      return users.length;
+   }
+
+   /** Gives a user by index
+     * @param index   the index of the user
+     * @return User   the user
+     */
+   public User user(int index) {
+      return users[index];
+   }
+
+   /** Gives the number of links in the snapshot
+     * @return int   the number of links
+     */
+   public int linkCount() {
+      return lows.length;
+   }
+
+   /** Gives the user with the lower index of a link
+     * @param link   the number of the link
+     * @return int   the index of the user
+     */
+   public int low(int link) {
+      return lows[link];
+   }
+
+   /** Gives the user with the higher index of a link
+     * @param link   the number of the link
+     * @return int   the index of the user
+     */
+   public int high(int link) {
+      return highs[link];
+   }
+
+   /** Gives a link's events, in an array of the link's own. The array isn't copied, so a Link may be handed it to keep
+     * @param link   the number of the link
+     * @return long[]   the events, in milliseconds since the epoch
+     */
+   public long[] events(int link) {
+      return linkEvents[link];
+   }
+
+   /** Writes a string field, -1 for an unset field
+     * @param out   the stream to write to
+     * @param field   the field
+     * @return long   the number of bytes written
+     * @throws IOException  if the stream can't be written
+     */
+   private static long writeField(DataOutputStream out, String field) throws IOException {
+      if (field == null) {
+         out.writeInt(-1);
+         return 4;
+      }
+      byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+      return 4 + bytes.length;
+   }
+
+   /** Writes the users of a graph to a user table
+     * @param out   the stream to write to
+     * @param graph   the users to be written
+     * @return long   the number of bytes written
+     * @throws IOException  if the stream can't be written
+     */
+   private static long writeUsers(DataOutputStream out, NetworkGraph graph) throws IOException {
+      long written = 0;
+      for (int u = 0; u < graph.userCount(); u++) {
+         User user = graph.user(u);
+         written += writeField(out, user.getID());
+         written += writeField(out, user.getFirstName());
+         written += writeField(out, user.getMiddleName());
+         written += writeField(out, user.getLastName());
+         written += writeField(out, user.getEmail());
+         written += writeField(out, user.getPhoneNumber());
+      }
+      return written;
+   }
+
+   /** Saves the users and links of a graph to a snapshot file. The file is written beside the target and moved into place, so a failed save leaves any earlier snapshot whole.
+     * The snapshot is on disk under its name once this returns, so a journal it replaces can be reset
+     * @param graph   the users and links to be saved
+     * @param file   the path of the snapshot
+     * @return long   the checksum of the snapshot
+     * @throws IOException  if the file can't be written
+     */
+   public static long write(NetworkGraph graph, Path file) throws IOException {
+      // The user table's size goes in the header, so it's measured first
+      long tableSize = writeUsers(new DataOutputStream(OutputStream.nullOutputStream()), graph);
+
+      // Each link is counted once, from the end with the lower index
+      int linkCount = 0;
+      long eventCount = 0;
+      for (int u = 0; u < graph.userCount(); u++) {
+         for (int p = 0; p < graph.degree(u); p++) {
+            if (u < graph.neighbor(u, p)) {
+               linkCount++;
+               eventCount += graph.eventCount(u, p);
+            }
+         }
+      }
+      if (eventCount > Integer.MAX_VALUE)
+         throw new IOException("Too many events for a snapshot.");
+
+      Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+      CRC32C checksum = new CRC32C();
+      try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+         OutputStream raw = Channels.newOutputStream(channel);
+         DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(raw, 1 << 16), checksum));
+         out.writeInt(MAGIC);
+         out.writeInt(VERSION);
+         out.writeInt(graph.userCount());
+         out.writeInt(linkCount);
+         out.writeLong(eventCount);
+         out.writeLong(tableSize);
+         writeUsers(out, graph);
+
+         for (int u = 0; u < graph.userCount(); u++) {
+            for (int p = 0; p < graph.degree(u); p++) {
+               if (u < graph.neighbor(u, p))
+                  out.writeInt(u);
+            }
+         }
+         for (int u = 0; u < graph.userCount(); u++) {
+            for (int p = 0; p < graph.degree(u); p++) {
+               if (u < graph.neighbor(u, p))
+                  out.writeInt(graph.neighbor(u, p));
+            }
+         }
+         int offset = 0;
+         out.writeInt(offset);
+         for (int u = 0; u < graph.userCount(); u++) {
+            for (int p = 0; p < graph.degree(u); p++) {
+               if (u < graph.neighbor(u, p)) {
+                  offset += graph.eventCount(u, p);
+                  out.writeInt(offset);
+               }
+            }
+         }
+
+         // The events are aligned to 8 bytes so a mapping can view them as longs
+         long position = HEADER_SIZE + tableSize + 4L * (3L * linkCount + 1);
+         for (; position % 8 != 0; position++)
+            out.writeByte(0);
+         for (int u = 0; u < graph.userCount(); u++) {
+            for (int p = 0; p < graph.degree(u); p++) {
+               if (u < graph.neighbor(u, p)) {
+                  for (int e = 0; e < graph.eventCount(u, p); e++)
+                     out.writeLong(graph.event(u, p, e));
+               }
+            }
+         }
+         out.flush();
+
+         // The checksum covers everything before it, so it's written around the checked stream
+         DataOutputStream tail = new DataOutputStream(raw);
+         tail.writeLong(checksum.getValue());
+         tail.flush();
+
+         // The contents reach the disk before the name does, so a crash never leaves the snapshot's name on a file that isn't whole
+         channel.force(true);
+      }
+      SocialNetworkUtility.moveDurably(temporary, file);
+      return checksum.getValue();
+   }
+
+   /** Gives the checksum stored at the end of a snapshot file, which names the snapshot without reading it
+     * @param file   the path of the snapshot
+     * @return long   the checksum of the snapshot
+     * @throws IOException  if the file can't be read or is too short to be a snapshot
+     */
+   public static long checksum(Path file) throws IOException {
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+         if (channel.size() < HEADER_SIZE + 8)
+            throw new IOException("File is not a snapshot.");
+         return channel.map(FileChannel.MapMode.READ_ONLY, channel.size() - 8, 8).getLong();
+      }
+   }
+
+   /** Reads ints from a file with bulk reads of mappings no larger than a window
+     * @param channel   the open file
+     * @param position   the position of the first int
+     * @param target   the array to be filled
+     * @throws IOException  if the file can't be read
+     */
+   private static void readInts(FileChannel channel, long position, int[] target) throws IOException {
+      int done = 0;
+      while (done < target.length) {
+         int count = (int)Math.min(target.length - done, WINDOW / 4);
+         channel.map(FileChannel.MapMode.READ_ONLY, position + 4L * done, 4L * count).asIntBuffer().get(target, done, count);
+         done += count;
+      }
+   }
+
+   /** Reads longs from a file with bulk reads of mappings no larger than a window
+     * @param channel   the open file
+     * @param position   the position of the first long
+     * @param target   the array to be filled
+     * @throws IOException  if the file can't be read
+     */
+   private static void readLongs(FileChannel channel, long position, long[] target) throws IOException {
+      int done = 0;
+      while (done < target.length) {
+         int count = (int)Math.min(target.length - done, WINDOW / 8);
+         channel.map(FileChannel.MapMode.READ_ONLY, position + 8L * done, 8L * count).asLongBuffer().get(target, done, count);
+         done += count;
+      }
+   }
+
+   /** Reads each link's events into an array of its own, through mappings of up to a window at a time moved along whenever the next link runs past the end of one
+     * @param channel   the open file
+     * @param position   the position of the first event
+     * @param eventOffsets   where each link's events start, checked to rise from 0
+     * @return long[][]   the events of each link
+     * @throws IOException  if the file can't be read
+     */
+   private static long[][] readEvents(FileChannel channel, long position, int[] eventOffsets) throws IOException {
+      int linkCount = eventOffsets.length - 1;
+      long[][] linkEvents = new long[linkCount][];
+      long eventCount = eventOffsets[linkCount];
+      LongBuffer window = null;
+      int windowStart = 0;
+      for (int l = 0; l < linkCount; l++) {
+         long[] events = new long[eventOffsets[l + 1] - eventOffsets[l]];
+         if (events.length > WINDOW / 8) // A link too long for one window is read through several
+            readLongs(channel, position + 8L * eventOffsets[l], events);
+         else {
+            if (window == null || eventOffsets[l + 1] - windowStart > window.capacity()) {
+               windowStart = eventOffsets[l];
+               window = channel.map(FileChannel.MapMode.READ_ONLY, position + 8L * windowStart, 8 * Math.min(WINDOW / 8, eventCount - windowStart)).asLongBuffer();
+            }
+            window.get(eventOffsets[l] - windowStart, events);
+         }
+         linkEvents[l] = events;
+      }
+      return linkEvents;
+   }
+
+   /** Reads a string field
+     * @param table   the mapped user table
+     * @return String   the field. Null if it was unset
+     * @throws IOException  if the field runs past the table
+     */
+   private static String readField(ByteBuffer table) throws IOException {
+      if (table.remaining() < 4)
+         throw new IOException("Corrupt snapshot user table.");
+      int length = table.getInt();
+      if (length < 0)
+         return null;
+      if (length > table.remaining())
+         throw new IOException("Corrupt snapshot user table.");
+      byte[] bytes = new byte[length];
+      table.get(bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+   }
+
+   /** Tells if the whole of the next user in the user table is within a mapping
+     * @param table   the mapping of the user table, at the start of a user
+     * @return boolean   true if every field of the user is before the end of the mapping
+     */
+   private static boolean fitsUser(ByteBuffer table) {
+      int position = table.position();
+      for (int f = 0; f < USER_FIELDS; f++) {
+         if (table.limit() - position < 4)
+            return false;
+         int length = table.getInt(position);
+         position += 4;
+         if (length > 0) {
+            if (length > table.limit() - position)
+               return false;
+            position += length;
+         }
+      }
+      return true;
+   }
+
+   /** Reads one user from the user table
+     * @param table   the mapped user table
+     * @return User   the user
+     * @throws IOException  if the user is malformed
+     */
+   private static User readUser(ByteBuffer table) throws IOException {
+      User user = new User();
+      String id = readField(table);
+      if (id == null || !user.setID(id))
+         throw new IOException("Corrupt snapshot user table.");
+
+      String[] fields = new String[USER_FIELDS - 1];
+      for (int f = 0; f < fields.length; f++)
+         fields[f] = readField(table);
+      try {
+         if (fields[0] != null)
+            user.setFirstName(fields[0]);
+         if (fields[1] != null)
+            user.setMiddleName(fields[1]);
+         if (fields[2] != null)
+            user.setLastName(fields[2]);
+         if (fields[3] != null)
+            user.setEmail(fields[3]);
+         if (fields[4] != null)
+            user.setPhoneNumber(fields[4]);
+      }
+      catch (UninitializedObjectException uoe) { // The user's ID was set above
+         assert false;
+      }
+      return user;
+   }
+
+   /** Checks a file's checksum against the one stored at its end
+     * @param channel   the open file
+     * @throws IOException  if the checksums don't match
+     */
+   private static void verify(FileChannel channel) throws IOException {
+      long size = channel.size() - 8;
+      CRC32C checksum = new CRC32C();
+      for (long position = 0; position < size; position += WINDOW)
+         checksum.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW, size - position)));
+      if (channel.map(FileChannel.MapMode.READ_ONLY, size, 8).getLong() != checksum.getValue())
+         throw new IOException("Snapshot checksum does not match.");
+   }
+
+   /** Reads a snapshot file
+     * @param file   the path of the snapshot
+     * @return NetworkSnapshot   the users and links in the file
+     * @throws IOException  if the file can't be read, is not a snapshot, is of another version, or is corrupt
+     */
+   public static NetworkSnapshot read(Path file) throws IOException {
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+         if (channel.size() < HEADER_SIZE + 8)
+            throw new IOException("File is not a snapshot.");
+         MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+         if (header.getInt() != MAGIC)
+            throw new IOException("File is not a snapshot.");
+         int version = header.getInt();
+         if (version != VERSION)
+            throw new IOException("Unsupported snapshot version " + version + ".");
+         verify(channel);
+
+         int userCount = header.getInt();
+         int linkCount = header.getInt();
+         long eventCount = header.getLong();
+         long tableSize = header.getLong();
+         if (userCount < 0 || linkCount < 0 || eventCount < 0 || eventCount > Integer.MAX_VALUE || tableSize < 0 || HEADER_SIZE + tableSize > channel.size())
+            throw new IOException("Corrupt snapshot header.");
+
+         // The user table is read through mappings of up to a window at a time, moved along whenever the next user runs past the end of one
+         User[] users = new User[userCount];
+         long tableEnd = HEADER_SIZE + tableSize;
+         long windowStart = HEADER_SIZE;
+         MappedByteBuffer table = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(WINDOW, tableEnd - windowStart));
+         for (int u = 0; u < userCount; u++) {
+            if (!fitsUser(table)) {
+               windowStart += table.position();
+               table = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(WINDOW, tableEnd - windowStart));
+            }
+            users[u] = readUser(table);
+         }
+
+         long position = HEADER_SIZE + tableSize;
+         int[] lows = new int[linkCount];
+         int[] highs = new int[linkCount];
+         int[] eventOffsets = new int[linkCount + 1];
+         readInts(channel, position, lows);
+         readInts(channel, position + 4L * linkCount, highs);
+         readInts(channel, position + 8L * linkCount, eventOffsets);
+         if (eventOffsets[0] != 0 || eventOffsets[linkCount] != eventCount)
+            throw new IOException("Corrupt snapshot event offsets.");
+         for (int l = 0; l < linkCount; l++) {
+            if (eventOffsets[l + 1] < eventOffsets[l])
+               throw new IOException("Corrupt snapshot event offsets.");
+         }
+
+         position += 4L * (3L * linkCount + 1);
+         position = (position + 7) & ~7L;
+         return new NetworkSnapshot(users, lows, highs, readEvents(channel, position, eventOffsets));
+      }
+   }
+}
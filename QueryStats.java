@@ -0,0 +1,248 @@
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Statistics of the work done by neighborhood and neighborhood trend queries, for finding what makes a query slow.
+  * Passed to a query, the stats watch the links it reads through a counting view of the network, so queries without stats run exactly as before.
+  * Counts add up over every query the stats are passed to, until reset. The sizes of the depths are those of the last neighborhood search.
+  * Counts are kept in adders, so searches spread over several threads are counted whole
+  * @author Billy Barbaro
+  */
+public class QueryStats {
+
+   /** The number of links looked at, from either end */
+   private LongAdder linksInspected;
+
+   /** The number of checks of whether a link was active */
+   private LongAdder activeProbes;
+
+   /** The number of events a probe's search of a link's history looks at, plus the events read one by one */
+   private LongAdder eventsScanned;
+
+   /** The number of users reached by searches, or found in the components of trends */
+   private long verticesVisited;
+
+   /** The number of users found at each depth of the last neighborhood search, the start at depth 0 */
+   private int[] frontierSizes;
+
+   /** The number of distinct dates a trend swept through, each a date the neighborhood could change on */
+   private long candidateDates;
+
+   /** The number of dates at which a trend had to search again from scratch, since a link between two users reached was torn down */
+   private long rebuilds;
+
+   /** The number of Friends made for results */
+   private long friendsCreated;
+
+   /** The nanoseconds spent in each phase of the queries, by the phase's name, in the order first seen */
+   private Map<String, Long> phaseNanos;
+
+   /** Creates stats with nothing counted */
+   public QueryStats() {
+      super();
+      linksInspected = new LongAdder();
+      activeProbes = new LongAdder();
+      eventsScanned = new LongAdder();
+      reset();
+   }
+
+   /** Forgets everything counted */
+   public synchronized void reset() {
+      linksInspected.reset();
+      activeProbes.reset();
+      eventsScanned.reset();
+      verticesVisited = 0;
+      frontierSizes = new int[0];
+      candidateDates = 0;
+      rebuilds = 0;
+      friendsCreated = 0;
+      phaseNanos = new LinkedHashMap<String, Long>();
+   }
+
+   /** Gives a view of a graph that counts the links read through it into these stats
+     * @param graph   the graph watched
+     * @return NetworkGraph   the counting view
+     */
+   public NetworkGraph watch(NetworkGraph graph) {
+      return new WatchedGraph(graph);
+   }
+
+   /** Adds the time since the start of a phase to the phase
+     * @param phase   the name of the phase
+     * @param began   the value of System.nanoTime when the phase began
+     * @return long   the value of System.nanoTime now, when the next phase begins
+     */
+   public synchronized long lap(String phase, long began) {
+      long now = System.nanoTime();
+      phaseNanos.merge(phase, now - began, Long::sum);
+      return now;
+   }
+
+   /** Records the users reached by a search, by depth
+     * @param workspace   the workspace holding the users reached
+     */
+   public synchronized void recordSearch(TraversalWorkspace workspace) {
+      verticesVisited += workspace.size();
+
+      // Users are reached in order of depth, so the last one reached is the deepest
+      int deepest = workspace.size() == 0 ? -1 : workspace.distance(workspace.reached(workspace.size() - 1));
+      frontierSizes = new int[deepest + 1];
+      for (int i = 0; i < workspace.size(); i++)
+         frontierSizes[workspace.distance(workspace.reached(i))]++;
+   }
+
+   /** Records the sweep of a trend
+     * @param componentSize   the number of users the trend's user could ever reach
+     * @param dates   the number of distinct dates swept through
+     */
+   public synchronized void recordSweep(int componentSize, int dates) {
+      verticesVisited += componentSize;
+      candidateDates += dates;
+   }
+
+   /** Records that a trend searched again from scratch */
+   public synchronized void recordRebuild() {
+      rebuilds++;
+   }
+
+   /** Records Friends made for a result
+     * @param count   the number of Friends
+     */
+   public synchronized void recordFriends(int count) {
+      friendsCreated += count;
+   }
+
+   /** Gives the number of links looked at by the queries
+     * @return long   the number of links looked at, from either end
+     */
+   public long getLinksInspected() {
+      return linksInspected.sum();
+   }
+
+   /** Gives the number of checks the queries made of whether a link was active
+     * @return long   the number of checks of whether a link was active
+     */
+   public long getActiveProbes() {
+      return activeProbes.sum();
+   }
+
+   /** Gives the number of events the queries looked at
+     * @return long   the number of events the searches of the probed links' histories looked at, plus the events trends read one by one
+     */
+   public long getEventsScanned() {
+      return eventsScanned.sum();
+   }
+
+   /** Gives the number of users the queries reached
+     * @return long   the number of users reached by searches, plus the users in the components of trends
+     */
+   public synchronized long getVerticesVisited() {
+      return verticesVisited;
+   }
+
+   /** Gives the size of each depth of the last neighborhood search
+     * @return int[]   the number of users found at each depth of the last neighborhood search, with the start at depth 0
+     */
+   public synchronized int[] getFrontierSizes() {
+      return Arrays.copyOf(frontierSizes, frontierSizes.length);
+   }
+
+   /** Gives the number of dates trends swept through
+     * @return long   the number of distinct dates trends swept through
+     */
+   public synchronized long getCandidateDates() {
+      return candidateDates;
+   }
+
+   /** Gives the number of times trends searched again from scratch
+     * @return long   the number of dates at which trends searched again from scratch
+     */
+   public synchronized long getRebuilds() {
+      return rebuilds;
+   }
+
+   /** Gives the number of Friends the queries made
+     * @return long   the number of Friends made for results
+     */
+   public synchronized long getFriendsCreated() {
+      return friendsCreated;
+   }
+
+   /** Gives the time spent in each phase of the queries
+     * @return Map<String, Long>   the nanoseconds spent in each phase, by the phase's name
+     */
+   public synchronized Map<String, Long> getPhaseNanos() {
+      return new LinkedHashMap<String, Long>(phaseNanos);
+   }
+
+   /** Describes the stats on one line, for logs
+     * @return String   the stats
+     */
+   @Override
+   public synchronized String toString() {
+      return "QueryStats[visited=" + verticesVisited + ", frontiers=" + Arrays.toString(frontierSizes) + ", linksInspected=" + getLinksInspected()
+         + ", activeProbes=" + getActiveProbes() + ", eventsScanned=" + getEventsScanned() + ", candidateDates=" + candidateDates
+         + ", rebuilds=" + rebuilds + ", friendsCreated=" + friendsCreated + ", phaseNanos=" + phaseNanos + "]";
+   }
+
+   /** A view of a graph counting the links read through it */
+   private class WatchedGraph implements NetworkGraph {
+
+      /** The graph being watched */
+      private NetworkGraph graph;
+
+      public WatchedGraph(NetworkGraph graph) {
+         this.graph = graph;
+      }
+
+      public int indexOf(String id) {
+         return graph.indexOf(id);
+      }
+
+      public User user(int index) {
+         return graph.user(index);
+      }
+
+      public int userCount() {
+         return graph.userCount();
+      }
+
+      public long totalDegree() {
+         return graph.totalDegree();
+      }
+
+      public int degree(int index) {
+         return graph.degree(index);
+      }
+
+      public int neighbor(int index, int position) {
+         linksInspected.increment();
+         return graph.neighbor(index, position);
+      }
+
+      // A probe binary searches the link's history, so it looks at one event per halving of the history, not at every event
+      public boolean isActive(int index, int position, long date) {
+         activeProbes.increment();
+         eventsScanned.add(32 - Integer.numberOfLeadingZeros(graph.eventCount(index, position)));
+         return graph.isActive(index, position, date);
+      }
+
+      public long nextEvent(int index, int position, long date) {
+         return graph.nextEvent(index, position, date);
+      }
+
+      public long previousEvent(int index, int position, long date) {
+         return graph.previousEvent(index, position, date);
+      }
+
+      public int eventCount(int index, int position) {
+         return graph.eventCount(index, position);
+      }
+
+      public long event(int index, int position, int event) {
+         eventsScanned.increment();
+         return graph.event(index, position, event);
+      }
+   }
+}
@@ -0,0 +1,833 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/** A social network split into shards by a hash of each user's ID, for networks too large for one set of arrays and maps.
+  * Each shard keeps its own users, links and locks. A user's global index is their local index in their shard times the number of shards,
+  * plus the shard's number, so any index tells where its user lives. A link between users of two shards sits in both users' lists, and changing it
+  * locks one stripe in each shard, taken in a fixed order. Like a SocialNetwork, every change is given a version and queries pin the published version.
+  * A neighborhood search runs depth by depth: each shard checks the links of its own part of the frontier, and sends the users found to the shards holding them.
+  * Each shard saves to a file of its own, and the files are written and read side by side.
+  * @author Billy Barbaro
+  */
+public class ShardedSocialNetwork {
+
+   /** Each thread's workspaces for its searches, one per shard */
+   private static final ThreadLocal<TraversalWorkspace[]> WORKSPACES = ThreadLocal.withInitial(() -> new TraversalWorkspace[0]);
+
+   /** A depth is searched on the calling thread until its frontier holds this many users across the shards */
+   private static final int GRAIN = 512;
+
+   /** The shards, by number */
+   private NetworkShard[] shards;
+
+   /** The number of link ends in the network, twice the number of links */
+   private LongAdder totalDegree;
+
+   /** Versions the changes to links, so queries can read every shard as of one version */
+   private VersionClock clock;
+
+   /** Runs the trend searches over a pinned view of every shard */
+   private NeighborhoodSearch search;
+
+   /** The threads the shards' parts of large depths, saves and loads are spread over. Null when they run on the calling thread only */
+   private volatile ForkJoinPool pool;
+
+   /** Creates a network with no users
+     * @param shardCount   the number of shards the users are spread over
+     * @throws IllegalArgumentException  if the number of shards is not positive
+     */
+   public ShardedSocialNetwork(int shardCount) {
+      super();
+      if (shardCount <= 0)
+         throw new IllegalArgumentException("Shard count must be positive.");
+      shards = new NetworkShard[shardCount];
+      for (int s = 0; s < shardCount; s++)
+         shards[s] = new NetworkShard();
+      totalDegree = new LongAdder();
+      clock = new VersionClock();
+      search = new NeighborhoodSearch(new ShardedGraph(VersionClock.LATEST, null));
+   }
+
+   /** Gives the number of shards
+     * @return int   the number of shards the users are spread over
+     */
+   public int shardCount() {
+      return shards.length;
+   }
+
+   /** Gives the shard a user with the given ID belongs in
+     * @param id   the ID of the user
+     * @return int   the number of the shard
+     * @throws NullPointerException  if the ID is null
+     */
+   public int shardOf(String id) {
+      SocialNetworkUtility.checkNull(id, "ID");
+      int h = id.hashCode();
+      return Math.floorMod(h ^ (h >>> 16), shards.length);
+   }
+
+   /** Gives the number of users in a shard
+     * @param shard   the number of the shard
+     * @return int   the number of users in it
+     */
+   public int userCount(int shard) {
+      return shards[shard].userCount();
+   }
+
+   /** Gives the global index of a user
+     * @param shard   the shard holding the user
+     * @param local   the user's index in the shard
+     * @return int   the user's global index
+     */
+   private int globalIndex(int shard, int local) {
+      return local * shards.length + shard;
+   }
+
+   /** Gives the global index of a user by their ID
+     * @param id   the ID of the user
+     * @return int   the user's global index. -1 if the user is not in the network
+     */
+   private int indexOf(String id) {
+      int shard = shardOf(id);
+      int local = shards[shard].indexOf(id);
+      return local < 0 ? -1 : globalIndex(shard, local);
+   }
+
+   /** Gives the links of a user by their global index
+     * @param index   the user's global index
+     * @return AdjacencyList   the user's links, by the global index of the linked user
+     */
+   private AdjacencyList linksOf(int index) {
+      return shards[index % shards.length].links(index / shards.length);
+   }
+
+   /** Gives a user by their global index
+     * @param index   the user's global index
+     * @return User   the user
+     */
+   private User userAt(int index) {
+      return shards[index % shards.length].user(index / shards.length);
+   }
+
+   /** Adds a user to the shard their ID hashes to
+     * @param user  the user to be added to the network
+     * @return boolean  tells if the user was successfully added
+     */
+   public boolean addUser(User user) {
+      if (!user.isValid()) // User can't be added unless its valid
+         return false;
+      return shards[shardOf(user.getID())].addUser(user) >= 0;
+   }
+
+   /** Checks if a User is a member of the social network
+     * @param id  the id of the user to be checked on
+     * @return boolean  tells if the id matches the of a user in the network
+     */
+   public boolean isMember(String id) {
+      return indexOf(id) >= 0;
+   }
+
+   /** Returns the user from the network matching the id
+     * @param id  the id of the user to be queried
+     * @return User  the user matching the id.  Null if not present
+     */
+   public User getUser(String id) {
+      int index = indexOf(id);
+      return index < 0 ? null : userAt(index);
+   }
+
+   /** Gets the global indices of the two users to be linked by their ids
+     * @param ids  A set of 2 ids for the users to be linked
+     * @param pair An array of 2 to be filled with the users' indices
+     * @return boolean     Tells if the users can be linked
+     */
+   private boolean indicesFromIDs(Set<String> ids, int[] pair) {
+      if (ids.size() != 2)
+         return false;
+      int position = 0;
+      for (String id : ids) {
+         int index = indexOf(id);
+         if (index < 0)
+            return false;
+         pair[position++] = index;
+      }
+      return true;
+   }
+
+   /** Helper method giving the place of a user's stripe in the order stripes are locked in: by shard, then by stripe within the shard
+     * @param index   the user's global index
+     * @return int   the rank of the user's stripe
+     */
+   private int stripeRank(int index) {
+      int local = index / shards.length;
+      return (index % shards.length) * NetworkShard.STRIPES + (local & (NetworkShard.STRIPES - 1));
+   }
+
+   /** Helper method locking the stripes of two users, the lower ranked first so two threads can't each hold the lock the other wants
+     * @param first   the global index of one of the users
+     * @param second   the global index of the other user
+     */
+   private void lockPair(int first, int second) {
+      int firstRank = stripeRank(first);
+      int secondRank = stripeRank(second);
+      lockRank(Math.min(firstRank, secondRank));
+      if (firstRank != secondRank)
+         lockRank(Math.max(firstRank, secondRank));
+   }
+
+   /** Helper method locking a stripe by its rank
+     * @param rank   the rank of the stripe
+     */
+   private void lockRank(int rank) {
+      shards[rank / NetworkShard.STRIPES].stripe(rank % NetworkShard.STRIPES).lock();
+   }
+
+   /** Helper method unlocking the stripes of two users
+     * @param first   the global index of one of the users
+     * @param second   the global index of the other user
+     */
+   private void unlockPair(int first, int second) {
+      int firstRank = stripeRank(first);
+      int secondRank = stripeRank(second);
+      shards[firstRank / NetworkShard.STRIPES].stripe(firstRank % NetworkShard.STRIPES).unlock();
+      if (firstRank != secondRank)
+         shards[secondRank / NetworkShard.STRIPES].stripe(secondRank % NetworkShard.STRIPES).unlock();
+   }
+
+   /** Helper method to abstract away the try/catch block when changing a link as part of a version
+     * @param link     the link to be changed
+     * @param date     the time in milliseconds on which to change the link
+     * @param version  the version making the change. 0 if every reader may see it at once
+     * @param status   tracks the exit status of the method
+     * @param call   specifies the caller of the helper method
+     */
+   private void actionHelper(Link link, long date, long version, SocialNetworkStatus status, SocialNetworkUtility.Caller call) {
+      try {
+         if (call.equals(SocialNetworkUtility.Caller.ESTABLISH))
+            link.establish(date, version, clock.settled(), status);
+         else
+            link.tearDown(date, version, clock.settled(), status);
+      }
+      catch (UninitializedObjectException uoe) { // The link is assured valid whenever this method is called
+         assert false;
+      }
+   }
+
+   /** Helper method adding a link to both its users' lists, which may be in different shards
+     * @param first   the global index of one of the users linked
+     * @param second  the global index of the other user linked
+     * @param toAdd   the link to be added to the network
+     * @param version   the version adding the link. 0 if every reader may see it at once
+     */
+   private void addLinkToNetwork(int first, int second, Link toAdd, long version) {
+      long settled = clock.settled();
+      linksOf(first).put(second, toAdd, version, settled);
+      linksOf(second).put(first, toAdd, version, settled);
+      totalDegree.add(2);
+   }
+
+   /** Helper method to establish/teardown a given link, creating it if it's established for the first time
+     * @param ids  a set of the two ids identifying the Link to manipulate
+     * @param date     the date of the action
+     * @param status   tells the caller the exit status of their operation
+     * @param call   specifies the caller of the helper method
+     */
+   private void linkHelper(Set<String> ids, Date date, SocialNetworkStatus status, SocialNetworkUtility.Caller call) {
+      SocialNetworkUtility.checkNull(ids, "IDs");
+      SocialNetworkUtility.checkNull(date, "Date");
+      SocialNetworkUtility.checkNull(status, "Status");
+
+      int[] pair = new int[2];
+      if (!indicesFromIDs(ids, pair)) {
+         status.setStatus(SocialNetworkStatus.Status.INVALID_USERS);
+         return;
+      }
+
+      // The version is taken once the locks are held, and published once they're given back
+      lockPair(pair[0], pair[1]);
+      long version = clock.begin();
+      try {
+         Link fromNetwork = linksOf(pair[0]).get(pair[1]);
+         if (fromNetwork != null) // In the case that the link already exists
+            actionHelper(fromNetwork, date.getTime(), version, status, call);
+         else if (call == SocialNetworkUtility.Caller.ESTABLISH) { // If the link didn't exist, we create, establish it, and add it to the network
+            Link newLink = new Link();
+            newLink.setUsers(userAt(pair[0]), userAt(pair[1]), status);
+            actionHelper(newLink, date.getTime(), 0, status, call); // No reader sees the link until it's added under the version
+            addLinkToNetwork(pair[0], pair[1], newLink, version);
+         }
+         else
+            status.setStatus(SocialNetworkStatus.Status.ALREADY_INACTIVE);
+      }
+      finally {
+         unlockPair(pair[0], pair[1]);
+         clock.publish(version);
+      }
+   }
+
+   /** Establishes a link between two users in the social network
+     * @param ids  a Set<Strings> of two Users' Ids to have a link established between
+     * @param date  the date to establish the link
+     * @param status    a status variable to notify the method calling this of the state after completion
+     * @throws NullPointerExcpetion  occurs if any of the parameters are null
+     */
+   public void establishLink(Set<String> ids, Date date, SocialNetworkStatus status) {
+      linkHelper(ids, date, status, SocialNetworkUtility.Caller.ESTABLISH);
+   }
+
+   /** Tears down a link between two users in the social network
+     * @param ids  a Set<Strings> of two Users' Ids to have a link tron down
+     * @param date  the date to tear down the link
+     * @param status    a status variable to notify the method calling this of the state after completion
+     * @throws NullPointerExcpetion  occurs if any of the parameters are null
+     */
+   public void tearDownLink(Set<String> ids, Date date, SocialNetworkStatus status) {
+      linkHelper(ids, date, status, SocialNetworkUtility.Caller.TEARDOWN);
+   }
+
+   /** Checks if a link between two users in the social network is active on a given date
+     * @param ids  a Set<Strings> of two Users' Ids to have a link checked
+     * @param date  the date to check the link
+     * @return boolean  tells is the link was active at the given date
+     */
+   public boolean isActive(Set<String> ids, Date date) {
+      int[] pair = new int[2];
+      if (!indicesFromIDs(ids, pair))
+         return false;
+
+      Link active = linksOf(pair[0]).get(pair[1]);
+      if (active != null) {
+         try {
+            return active.isActive(date);
+         }
+         catch (UninitializedObjectException uoe) { // At this point in code the link is assured to be valid
+            assert false;
+         }
+      }
+      return false;
+   }
+
+   /** Sets how many threads the shards' parts of large searches, saves and loads are spread over. Results are the same for any setting
+     * @param parallelism   the number of threads to use. 1 or less runs everything on the calling thread, which is the default
+     */
+   public void setParallelism(int parallelism) {
+      ForkJoinPool old = pool;
+      if (parallelism > 1)
+         pool = new ForkJoinPool(parallelism);
+      else
+         pool = null;
+      search.setParallelism(parallelism);
+
+      if (old != null)
+         old.shutdown();
+   }
+
+   /** Helper method running an action for every shard, side by side if there are threads to share and the work is large enough
+     * @param work   the amount of work, compared against GRAIN
+     * @param action   the action, given the number of a shard
+     */
+   private void forEachShard(long work, IntConsumer action) {
+      ForkJoinPool current = pool;
+      if (current == null || work < GRAIN || shards.length == 1) {
+         for (int s = 0; s < shards.length; s++)
+            action.accept(s);
+      }
+      else // A parallel stream started inside the pool runs in the pool
+         current.invoke(ForkJoinTask.adapt(() -> IntStream.range(0, shards.length).parallel().forEach(action)));
+   }
+
+   /** Helper method giving each shard's number of users, read after a version was pinned
+     * @return int[]   the number of users in each shard
+     */
+   private int[] pinnedCounts() {
+      int[] counts = new int[shards.length];
+      for (int s = 0; s < shards.length; s++)
+         counts[s] = shards[s].userCount();
+      return counts;
+   }
+
+   /** Runs a breadth first search from a user, depth by depth and shard by shard. Each depth, every shard checks the links of its own users in the frontier,
+     * putting each user found, if their shard hasn't reached them, in the outbox for that shard. Then every shard takes in the users sent to it,
+     * keeping the ones it hasn't reached as its part of the next frontier. A shard only writes to its own workspace and outboxes, so the shards run side by side in both halves
+     * @param view   the network as of a pinned version
+     * @param start   the global index of the user to search from
+     * @param date    the time in milliseconds for which to check the links
+     * @param distance    the farthest number of links a reached user is away from the start
+     * @return TraversalWorkspace[]   each shard's reached users by local index, reused by the thread's next search
+     */
+   private TraversalWorkspace[] search(ShardedGraph view, int start, long date, int distance) {
+      final int count = shards.length;
+      TraversalWorkspace[] workspaces = WORKSPACES.get();
+      if (workspaces.length < count) {
+         workspaces = new TraversalWorkspace[count];
+         for (int s = 0; s < count; s++)
+            workspaces[s] = new TraversalWorkspace();
+         WORKSPACES.set(workspaces);
+      }
+      final TraversalWorkspace[] reached = workspaces;
+      for (int s = 0; s < count; s++)
+         reached[s].reset(view.counts[s]);
+      reached[start % count].visit(start / count, 0);
+
+      // Each shard's frontier is the run of its reached users from frontierStart to frontierEnd
+      final int[] frontierStart = new int[count];
+      final int[] frontierEnd = new int[count];
+      frontierEnd[start % count] = 1;
+      final int[][] outboxes = new int[count * count][];
+      final int[] mail = new int[count * count];
+      long frontier = 1;
+
+      for (int depth = 1; depth <= distance && frontier > 0; depth++) {
+         final int level = depth;
+         forEachShard(frontier, from -> {
+            for (int to = 0; to < count; to++)
+               mail[from * count + to] = 0;
+            for (int i = frontierStart[from]; i < frontierEnd[from]; i++) {
+               int index = globalIndex(from, reached[from].reached(i));
+               for (int position = 0; position < view.degree(index); position++) {
+                  int friendIndex = view.neighbor(index, position);
+                  int to = friendIndex % count;
+                  if (!reached[to].isVisited(friendIndex / count) && view.isActive(index, position, date))
+                     send(outboxes, mail, from * count + to, friendIndex);
+               }
+            }
+         });
+         forEachShard(frontier, to -> {
+            frontierStart[to] = reached[to].size();
+            for (int from = 0; from < count; from++) {
+               for (int k = 0; k < mail[from * count + to]; k++)
+                  reached[to].visit(outboxes[from * count + to][k] / count, level);
+            }
+            frontierEnd[to] = reached[to].size();
+         });
+
+         frontier = 0;
+         for (int s = 0; s < count; s++)
+            frontier += frontierEnd[s] - frontierStart[s];
+      }
+      return reached;
+   }
+
+   /** Helper method putting a user in an outbox, growing it if it's full
+     * @param outboxes   the outboxes, by sending shard and then receiving shard
+     * @param mail   the number of users in each outbox
+     * @param box   the outbox
+     * @param index   the global index of the user sent
+     */
+   private static void send(int[][] outboxes, int[] mail, int box, int index) {
+      int[] outbox = outboxes[box];
+      if (outbox == null)
+         outbox = outboxes[box] = new int[16];
+      else if (mail[box] == outbox.length)
+         outbox = outboxes[box] = java.util.Arrays.copyOf(outbox, outbox.length * 2);
+      outbox[mail[box]++] = index;
+   }
+
+   /** Verifies that the parameters passed to the neighborhood methods are valid
+     * @param id   the user's ID. Must be a member of the network
+     * @param date    must not be null
+     * @param distance     must be positive or 0
+     * @param status   saves the exit status of the operation
+     * @return boolean    true if the params are all valid. False if not.
+     */
+   private boolean checkNeighborhoodParams(String id, Date date, int distance, SocialNetworkStatus status) {
+      return search.checkNeighborhoodParams(id, date, distance, status);
+   }
+
+   /** Finds all the users to which the user with the given ID is directly and indirectly linked
+     * @param id   the user to find friends of
+     * @param date    the date for which to check the links
+     * @param status   the exit status of the method
+     * @return Set<Friend>    a set of Friends of the user
+     */
+   public Set<Friend> neighborhood(String id, Date date, SocialNetworkStatus status) {
+      return neighborhood(id, date, Integer.MAX_VALUE, status);
+   }
+
+   /** Finds all the users to which the user with the given ID which are less than or equal to the maximum distance links away specified
+     * @param id   the user to find friends of
+     * @param date    the date for which to check the links
+     * @param distance_max    the farthest number of links a friend included in this set is away from the user
+     * @param status   the exit status of the method
+     * @return Set<Friend>    a set of Friends of the user within distance_max. Null if the parameters are invalid
+     */
+   public Set<Friend> neighborhood(String id, Date date, int distance_max, SocialNetworkStatus status) {
+      if (!checkNeighborhoodParams(id, date, distance_max, status))
+         return null;
+      int start = indexOf(id);
+      VersionClock.Pin pin = clock.pin();
+      try {
+         TraversalWorkspace[] reached = search(new ShardedGraph(pin.version(), pinnedCounts()), start, date.getTime(), distance_max);
+         int size = 0;
+         for (int s = 0; s < shards.length; s++)
+            size += reached[s].size();
+
+         HashSet<Friend> friends = new HashSet<Friend>(size * 4 / 3 + 1);
+         for (int s = 0; s < shards.length; s++) {
+            for (int i = 0; i < reached[s].size(); i++) {
+               int local = reached[s].reached(i);
+               Friend friend = new Friend();
+               friend.set(shards[s].user(local), reached[s].distance(local));
+               friends.add(friend);
+            }
+         }
+         return friends;
+      }
+      finally {
+         pin.close();
+      }
+   }
+
+   /** Counts the users within the maximum distance of the user with the given ID, without building the set of Friends
+     * @param id   the user whose neighborhood is counted
+     * @param date    the date for which to check the links
+     * @param distance_max    the farthest number of links a counted user is away from the user
+     * @param status   the exit status of the method
+     * @return int    the number of users in the neighborhood, including the user. -1 if the parameters are invalid
+     */
+   public int neighborhoodSize(String id, Date date, int distance_max, SocialNetworkStatus status) {
+      if (!checkNeighborhoodParams(id, date, distance_max, status))
+         return -1;
+      int start = indexOf(id);
+      VersionClock.Pin pin = clock.pin();
+      try {
+         TraversalWorkspace[] reached = search(new ShardedGraph(pin.version(), pinnedCounts()), start, date.getTime(), distance_max);
+         int size = 0;
+         for (int s = 0; s < shards.length; s++)
+            size += reached[s].size();
+         return size;
+      }
+      finally {
+         pin.close();
+      }
+   }
+
+   /** Returns a map with the dates at which the size of a user's neighborhood changed and the size at those dates.
+     * The trend's sweep keeps one set of users reached as it goes, so it runs over a view of every shard as of one version
+     * @param id  the ID of the user whose neighborhood we wanna look at
+     * @param status   the exit status of the method
+     * @return Map<Date, Integer> the map of dates to neighborhood sizes. Null if the user is not in the network
+     */
+   public Map<Date, Integer> neighborhoodTrend(String id, SocialNetworkStatus status) {
+      SocialNetworkUtility.checkNull(id, "ID");
+      SocialNetworkUtility.checkNull(status, "Status");
+      int start = indexOf(id);
+      if (start < 0) {
+         status.setStatus(SocialNetworkStatus.Status.INVALID_USERS);
+         return null;
+      }
+      VersionClock.Pin pin = clock.pin();
+      try {
+         return search.over(new ShardedGraph(pin.version(), pinnedCounts())).neighborhoodTrend(start);
+      }
+      finally {
+         pin.close();
+      }
+   }
+
+   /** Gives the path a shard is saved to in a directory
+     * @param directory   the directory the network is saved in
+     * @param shard   the number of the shard
+     * @return Path   the path of the shard's snapshot
+     */
+   public static Path shardFile(Path directory, int shard) {
+      return directory.resolve("shard" + shard + ".snapshot");
+   }
+
+   /** Saves one shard's users, and the links it owns, to a snapshot file. A link is owned by the shard of the user with the lower global index.
+     * The file is a NetworkSnapshot whose links name the owning user by their place in the file's user table, and the other user by global index
+     * @param shard   the number of the shard
+     * @param file   the path of the snapshot. An existing file is replaced
+     * @throws IOException  if the file can't be written
+     * @throws NullPointerException  if the path is null
+     */
+   public void saveShard(int shard, Path file) throws IOException {
+      SocialNetworkUtility.checkNull(file, "Path");
+      VersionClock.Pin pin = clock.pin();
+      try {
+         NetworkSnapshot.write(new ShardView(new ShardedGraph(pin.version(), pinnedCounts()), shard), file);
+      }
+      finally {
+         pin.close();
+      }
+   }
+
+   /** Saves every shard to its own file in a directory, side by side if there are threads to share. Every shard is saved as of the same version
+     * @param directory   the directory to save to, which must exist. Files from an earlier save are replaced
+     * @throws IOException  if any file can't be written
+     * @throws NullPointerException  if the directory is null
+     */
+   public void save(final Path directory) throws IOException {
+      SocialNetworkUtility.checkNull(directory, "Path");
+      VersionClock.Pin pin = clock.pin();
+      try {
+         final ShardedGraph view = new ShardedGraph(pin.version(), pinnedCounts());
+         forEachShard(Long.MAX_VALUE, shard -> {
+            try {
+               NetworkSnapshot.write(new ShardView(view, shard), shardFile(directory, shard));
+            }
+            catch (IOException ioe) {
+               throw new UncheckedIOException(ioe);
+            }
+         });
+      }
+      catch (UncheckedIOException uioe) {
+         throw uioe.getCause();
+      }
+      finally {
+         pin.close();
+      }
+   }
+
+   /** Restores a network saved with save. The shard files are read side by side, then every shard's users are added, then every shard's links,
+     * since a link may name a user of any shard
+     * @param directory   the directory the network was saved in
+     * @param shardCount   the number of shards the network was saved with
+     * @param parallelism   the number of threads the shards are read with, which the network keeps for its searches
+     * @return ShardedSocialNetwork   the network saved
+     * @throws IOException  if a file can't be read, is not a snapshot, is corrupt, or the network had another number of shards
+     * @throws NullPointerException  if the directory is null
+     */
+   public static ShardedSocialNetwork load(final Path directory, int shardCount, int parallelism) throws IOException {
+      SocialNetworkUtility.checkNull(directory, "Path");
+      final ShardedSocialNetwork net = new ShardedSocialNetwork(shardCount);
+      net.setParallelism(parallelism);
+      final NetworkSnapshot[] snapshots = new NetworkSnapshot[shardCount];
+      try {
+         net.forEachShard(Long.MAX_VALUE, shard -> {
+            try {
+               snapshots[shard] = NetworkSnapshot.read(shardFile(directory, shard));
+               for (int u = 0; u < snapshots[shard].userCount(); u++) {
+                  User user = snapshots[shard].user(u);
+                  if (net.shardOf(user.getID()) != shard || net.shards[shard].addUser(user) != u)
+                     throw new IOException("Shard " + shard + " holds user " + user.getID() + " it shouldn't.");
+               }
+            }
+            catch (IOException ioe) {
+               throw new UncheckedIOException(ioe);
+            }
+         });
+         net.forEachShard(Long.MAX_VALUE, shard -> {
+            try {
+               net.loadLinks(shard, snapshots[shard]);
+            }
+            catch (IOException ioe) {
+               throw new UncheckedIOException(ioe);
+            }
+         });
+      }
+      catch (UncheckedIOException uioe) {
+         throw uioe.getCause();
+      }
+      return net;
+   }
+
+   /** Helper method adding the links a shard owns, as read from its snapshot. The other users' shards must already hold their users
+     * @param shard   the number of the shard
+     * @param snapshot   the shard's snapshot
+     * @throws IOException  if a link names a user not in the network, or is owned by another shard
+     */
+   private void loadLinks(int shard, NetworkSnapshot snapshot) throws IOException {
+      SocialNetworkStatus status = new SocialNetworkStatus();
+      for (int l = 0; l < snapshot.linkCount(); l++) {
+         int owner = globalIndex(shard, snapshot.low(l));
+         int other = snapshot.high(l);
+         if (snapshot.low(l) < 0 || snapshot.low(l) >= shards[shard].userCount() || other <= owner || other / shards.length >= shards[other % shards.length].userCount())
+            throw new IOException("Corrupt link " + l + " in shard " + shard + ".");
+
+         Link link = new Link();
+         link.setUsers(userAt(owner), userAt(other), status);
+         try {
+            if (!link.setEvents(snapshot.events(l)))
+               throw new IOException("Corrupt events for link " + l + " in shard " + shard + ".");
+         }
+         catch (UninitializedObjectException uoe) { // The link's users were set above
+            assert false;
+         }
+
+         // The other user's list may belong to a shard loading its own links at the same time
+         lockPair(owner, other);
+         try {
+            if (linksOf(owner).get(other) != null)
+               throw new IOException("Link " + l + " in shard " + shard + " is repeated.");
+            addLinkToNetwork(owner, other, link, 0);
+         }
+         finally {
+            unlockPair(owner, other);
+         }
+      }
+   }
+
+   /** A view of every shard's users and links by global index as of one version */
+   private class ShardedGraph implements NetworkGraph {
+
+      /** The version of the network seen. VersionClock.LATEST sees every change */
+      private long version;
+
+      /** The number of users seen in each shard. Null to see every user */
+      private int[] counts;
+
+      /** Creates a view of the network
+        * @param version   the version seen. Must stay pinned while the view is read
+        * @param counts   the number of users seen in each shard, read after the version was pinned. Null to see every user
+        */
+      public ShardedGraph(long version, int[] counts) {
+         this.version = version;
+         this.counts = counts;
+      }
+
+      /** Gives the number of users seen in a shard
+        * @param shard   the number of the shard
+        * @return int   the number of users
+        */
+      private int count(int shard) {
+         return counts == null ? shards[shard].userCount() : counts[shard];
+      }
+
+      public int indexOf(String id) {
+         return ShardedSocialNetwork.this.indexOf(id);
+      }
+
+      public User user(int index) {
+         return userAt(index);
+      }
+
+      // Global indices run up to the largest shard's count times the number of shards. Indices past a smaller shard's count have no user or links
+      public int userCount() {
+         int largest = 0;
+         for (int s = 0; s < shards.length; s++)
+            largest = Math.max(largest, count(s));
+         return largest * shards.length;
+      }
+
+      // Only steers the choice of search direction, so links added after the version may be counted
+      public long totalDegree() {
+         return totalDegree.sum();
+      }
+
+      public int degree(int index) {
+         if (index / shards.length >= count(index % shards.length))
+            return 0;
+         return linksOf(index).size(version);
+      }
+
+      public int neighbor(int index, int position) {
+         return linksOf(index).neighbor(position);
+      }
+
+      public boolean isActive(int index, int position, long date) {
+         try {
+            return linksOf(index).link(position).isActive(date, version);
+         }
+         catch (UninitializedObjectException uoe) { // Only valid links are added to the network
+            assert false;
+         }
+         return false;
+      }
+
+      public long nextEvent(int index, int position, long date) {
+         try {
+            return linksOf(index).link(position).nextEvent(date, version);
+         }
+         catch (UninitializedObjectException uoe) {
+            assert false;
+         }
+         return Link.NO_EVENT;
+      }
+
+      public long previousEvent(int index, int position, long date) {
+         try {
+            return linksOf(index).link(position).previousEvent(date, version);
+         }
+         catch (UninitializedObjectException uoe) {
+            assert false;
+         }
+         return Link.NO_EVENT;
+      }
+
+      public int eventCount(int index, int position) {
+         return linksOf(index).link(position).eventCount(version);
+      }
+
+      public long event(int index, int position, int event) {
+         return linksOf(index).link(position).eventAt(event);
+      }
+   }
+
+   /** A view of one shard for its snapshot. Users are named by local index, and each link the shard owns names the other user by global index.
+     * Links the shard doesn't own give -1 for the other user, which the snapshot passes over as it does the higher end of every link
+     */
+   private class ShardView implements NetworkGraph {
+
+      /** The whole network as of the version saved */
+      private ShardedGraph whole;
+
+      /** The number of the shard */
+      private int shard;
+
+      /** Creates a view of a shard
+        * @param whole   the whole network as of the version saved
+        * @param shard   the number of the shard
+        */
+      public ShardView(ShardedGraph whole, int shard) {
+         this.whole = whole;
+         this.shard = shard;
+      }
+
+      public int indexOf(String id) {
+         return shards[shard].indexOf(id);
+      }
+
+      public User user(int index) {
+         return shards[shard].user(index);
+      }
+
+      public int userCount() {
+         return whole.count(shard);
+      }
+
+      public long totalDegree() {
+         return whole.totalDegree();
+      }
+
+      public int degree(int index) {
+         return whole.degree(globalIndex(shard, index));
+      }
+
+      // A local index is never above its global index, so an owned link's other user is always above the local index too
+      public int neighbor(int index, int position) {
+         int other = whole.neighbor(globalIndex(shard, index), position);
+         return globalIndex(shard, index) < other ? other : -1;
+      }
+
+      public boolean isActive(int index, int position, long date) {
+         return whole.isActive(globalIndex(shard, index), position, date);
+      }
+
+      public long nextEvent(int index, int position, long date) {
+         return whole.nextEvent(globalIndex(shard, index), position, date);
+      }
+
+      public long previousEvent(int index, int position, long date) {
+         return whole.previousEvent(globalIndex(shard, index), position, date);
+      }
+
+      public int eventCount(int index, int position) {
+         return whole.eventCount(globalIndex(shard, index), position);
+      }
+
+      public long event(int index, int position, int event) {
+         return whole.event(globalIndex(shard, index), position, event);
+      }
+   }
+}
@@ -1,32 +1,95 @@
 import java.util.Set;
-import java.util.HashSet;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Date;
 import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.Map.Entry;
-import java.util.Queue;
 import java.util.Map;
-import java.util.Collections;
-
-/** Class representing social network with users and links between pairs of users
+import java.util.Arrays;
+import java.io.IOException;
+import java.lang.ref.Cleaner;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.IntStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/** Class representing social network with users and links between pairs of users.
+  * The network is safe to share between threads. Adding a user takes a short lock, since each user is given the next index.
+  * Changing a link locks only the stripes holding its two users, so changes to links between different users run side by side.
+  * Every change to a link is given a version, published once the change is whole. Searches, trends, saves, freezes and indexes take no lock:
+  * each pins the published version and sees every change up to it and none after, however long it runs and whatever writers do meanwhile.
+  * Only a checkpoint holds every lock, since the snapshot and the start of the new journal must fall at the same change
   * @author Billy Barbaro
   */
 
 public class SocialNetwork {
 
-    /** A hash map mapping IDs to user objects */
-    private HashMap<String, User> users;
+    /** The number of lock stripes users' links are spread over */
+    private static final int STRIPES = 64;
+
+    /** Lets go of the versions held by neighborhood streams that were dropped without being read to the end or closed */
+    private static final Cleaner STREAM_CLEANER = Cleaner.create();
+
+    /** A hash map mapping IDs to the index each user was given when they were added to the network */
+    private ConcurrentHashMap<String, Integer> indices;
+
+    /** The users in the network, in the order they were added. A user's position is their index. Only the first userCount slots are in use */
+    private volatile User[] users;
+
+    /** The links of each user, by the user's index. Each list maps the index of a linked user to the link between them */
+    private volatile AdjacencyList[] links;
+
+    /** The number of users in the network. Written after a new user's slots are filled, so a reader that sees the count sees the users */
+    private volatile int userCount;
+
+    /** The number of link ends in the network, twice the number of links */
+    private LongAdder totalDegree;
+
+    /** The number of events on every link in the network */
+    private LongAdder eventCount;
 
-    /** A hash map mapping IDs to a hash map of IDs linked to the first ID and the link between the two IDs */
-    private HashMap<String, HashMap<String, Link>> links; 
+    /** Held while adding a user */
+    private ReentrantLock registration;
+
+    /** Held while changing the links of the users whose index falls in each stripe */
+    private ReentrantLock[] stripes;
+
+    /** The network seen by index with every change, for checking query parameters and for checkpoints, which hold every lock */
+    private NetworkGraph graph;
+
+    /** Versions the changes to links, so queries can read the network as of one version */
+    private VersionClock clock;
+
+    /** Runs the neighborhood searches over the network */
+    private NeighborhoodSearch search;
+
+    /** Keeps recent neighborhoods so repeated queries skip the search. Null when caching is off, which is the default */
+    private volatile NeighborhoodCache cache;
+
+    /** Logs every change to the network so it can be recovered after a crash. Null when journaling is off, which is the default */
+    private volatile NetworkJournal journal;
+
+    /** Records the latency and outcome of calls. Null when metrics are off, which is the default */
+    private volatile NetworkMetrics metrics;
  
     /** Creates a social network with no users */
     public SocialNetwork() {
         super();
-        users = new HashMap<String, User>();
-        links = new HashMap<String, HashMap<String, Link>>();
+        indices = new ConcurrentHashMap<String, Integer>();
+        users = new User[16];
+        links = new AdjacencyList[16];
+        userCount = 0;
+        totalDegree = new LongAdder();
+        eventCount = new LongAdder();
+        registration = new ReentrantLock();
+        stripes = new ReentrantLock[STRIPES];
+        for (int i = 0; i < STRIPES; i++)
+            stripes[i] = new ReentrantLock();
+        clock = new VersionClock();
+        graph = new LiveGraph(VersionClock.LATEST, -1);
+        search = new NeighborhoodSearch(graph);
     }
 
     /** Adds a user to the social network
@@ -36,13 +99,35 @@ public class SocialNetwork {
     public boolean addUser(User user) {
         if (!user.isValid()) // User can't be added unless its valid
             return false;
-        if (users.get(user.getID()) != null) // User cannot already exist in the network
-            return false;
-        if (users.put(user.getID(), user) != null) // Adds User to list of Users
-            return false;
 
-        // Adds the user into the Links HashMap to be tracked.
-        return links.put(user.getID(), new HashMap<String, Link>()) == null;
+        long sequence = 0;
+        registration.lock();
+        try {
+            if (indices.containsKey(user.getID())) // User cannot already exist in the network
+                return false;
+
+            // The user is given the next free index, and their links are tracked under it. The ID is only found once the count takes the user in
+            int index = userCount;
+            if (index == users.length) {
+                users = Arrays.copyOf(users, index + (index >> 1));
+                links = Arrays.copyOf(links, index + (index >> 1));
+            }
+            users[index] = user;
+            links[index] = new AdjacencyList();
+            userCount = index + 1;
+            indices.put(user.getID(), index);
+
+            // Users are logged in the order they're given indices, so replaying them gives the same indices
+            NetworkJournal current = journal;
+            if (current != null)
+                sequence = current.logUser(user);
+        }
+        finally {
+            registration.unlock();
+        }
+        if (sequence != 0)
+            commitJournal(sequence);
+        return true;
     }
 
     /** Checks if a User is a member of the social network
@@ -50,7 +135,7 @@ public class SocialNetwork {
     * @return boolean  tells if the id matches the of a user in the network
     */
     public boolean isMember(String id) {
-        return users.containsKey(id);
+        return indices.containsKey(id);
     }
 
     /** Returns the user from the network matching the id
@@ -58,47 +143,68 @@ public class SocialNetwork {
     * @return User  the user matching the id.  Null if not present
     */
     public User getUser(String id) {
-        return users.get(id);
+        Integer index = indices.get(id);
+        if (index == null)
+            return null;
+        return users[index];
     }
 
-    /** Gets the two users to be linked by their ids. Adds them to the toAdd set.
-      * @param ids  A set of 2 ids for the users to be linked
-      * @param toAdd A set of users that will be added
-      * @return boolean     Tells if the users can be linked
+    /** Gives the index a user was given when added to the network
+      * @param id  the id of the user
+      * @return int    the user's index. -1 if the user is not in the network
       */
-    private boolean usersFromID(Set<String> ids, Set<User> toAdd) {
-        // A link is exclusive between 2 users
-        if (ids.size() != 2) {
-            return false;
-        }
-
-        // Makes sure the user's we're adding are in the network already and cretes a set from them
-        for (String id : ids) {
-            User toBeAdded = users.get(id);
-            if (toBeAdded == null) {
-                return false;
-            }
-            toAdd.add(toBeAdded);
-        }
-        return true;
+    private int indexOf(String id) {
+        Integer index = indices.get(id);
+        if (index == null)
+            return -1;
+        return index;
     }
 
-   /** Helper method to get the link between two users given their IDs
-     * @param ids  A set of two User ids we're getting the link for
-     * @return Link    the link between the two ids entered. Null if it doesn't exit
+   /** Helper method to get the link between two users given their indices
+     * @param first    the index of one of the users
+     * @param second   the index of the other user
+     * @return Link    the link between the two users. Null if it doesn't exit
      */
-   private Link getLink(Set<String> ids) {
+   private Link getLink(int first, int second) {
+      return links[first].get(second);
+    }
 
-      // Lets us iterate through the input ids
-      Iterator<String> iter = ids.iterator();
-      HashMap<String, Link> selected = links.get(iter.next());
+    /** Helper method locking the stripes of two users, the lower stripe first so two threads can't each hold the lock the other wants
+      * @param first   the index of one of the users
+      * @param second   the index of the other user
+      */
+    private void lockPair(int first, int second) {
+        int firstStripe = first & (STRIPES - 1);
+        int secondStripe = second & (STRIPES - 1);
+        stripes[Math.min(firstStripe, secondStripe)].lock();
+        if (firstStripe != secondStripe)
+            stripes[Math.max(firstStripe, secondStripe)].lock();
+    }
 
-      // This is the case where the link between the two users doesn't exit
-      if (selected == null)
-         return null;
+    /** Helper method unlocking the stripes of two users
+      * @param first   the index of one of the users
+      * @param second   the index of the other user
+      */
+    private void unlockPair(int first, int second) {
+        int firstStripe = first & (STRIPES - 1);
+        int secondStripe = second & (STRIPES - 1);
+        stripes[firstStripe].unlock();
+        if (firstStripe != secondStripe)
+            stripes[secondStripe].unlock();
+    }
 
-      // Because of the way the data is structured, we passe the second id into the returned hashmap to get the link.
-      return selected.get(iter.next());
+    /** Helper method taking every lock, so no user is added and no link changes until unlockAll */
+    private void lockAll() {
+        registration.lock();
+        for (ReentrantLock stripe : stripes)
+            stripe.lock();
+    }
+
+    /** Helper method giving back every lock taken by lockAll */
+    private void unlockAll() {
+        for (int i = STRIPES - 1; i >= 0; i--)
+            stripes[i].unlock();
+        registration.unlock();
     }
 
     /** Helper method to abstract away the try/catch block when changing a link
@@ -108,69 +214,210 @@ public class SocialNetwork {
       * @param call   specifies the caller of the helper method
       */
     private void actionHelper(Link link, Date date, SocialNetworkStatus status, SocialNetworkUtility.Caller call) {
+        actionHelper(link, date.getTime(), status, call);
+    }
+
+    /** Helper method to abstract away the try/catch block when changing a link
+      * @param link     the link to be changed
+      * @param date     the time in milliseconds on which to change the link
+      * @param status   tracks the exit status of the method
+      * @param call   specifies the caller of the helper method
+      */
+    private void actionHelper(Link link, long date, SocialNetworkStatus status, SocialNetworkUtility.Caller call) {
+        actionHelper(link, date, 0, status, call);
+    }
+
+    /** Helper method to abstract away the try/catch block when changing a link as part of a version
+      * @param link     the link to be changed
+      * @param date     the time in milliseconds on which to change the link
+      * @param version  the version making the change. 0 if every reader may see it at once
+      * @param status   tracks the exit status of the method
+      * @param call   specifies the caller of the helper method
+      */
+    private void actionHelper(Link link, long date, long version, SocialNetworkStatus status, SocialNetworkUtility.Caller call) {
+        status.setStatus(actionHelper(link, date, version, call));
+    }
+
+    /** Helper method to abstract away the try/catch block when changing a link as part of a version, without a status variable to fill in
+      * @param link     the link to be changed
+      * @param date     the time in milliseconds on which to change the link
+      * @param version  the version making the change. 0 if every reader may see it at once
+      * @param call   specifies the caller of the helper method
+      * @return SocialNetworkStatus.Status   the exit status of the change
+      */
+    private SocialNetworkStatus.Status actionHelper(Link link, long date, long version, SocialNetworkUtility.Caller call) {
+        SocialNetworkStatus.Status outcome = SocialNetworkStatus.Status.INVALID_USERS;
         try {
             if (call.equals(SocialNetworkUtility.Caller.ESTABLISH))
-                link.establish(date, status);
+                outcome = link.establish(date, version, clock.settled());
             else
-                link.tearDown(date, status);
+                outcome = link.tearDown(date, version, clock.settled());
+            if (outcome == SocialNetworkStatus.Status.SUCCESS)
+                eventCount.increment();
         }
         catch (UninitializedObjectException uoe) { // The link is assure valid whenever this method is called
             assert false;
         }
+        return outcome;
     }
 
-    /** Helper method to establish/teardown a given link
+    /** Helper method to establish/teardown a given link, creating it if it's established for the first time.
+      * Nothing is made on the way unless the link is new, so changes to links that exist leave no garbage behind but the version log their readers need
+      * @param first   the id of one of the users linked
+      * @param second  the id of the other user linked
+      * @param date     the time in milliseconds of the action
+      * @param call   specifies the caller of the helper method
+      * @return SocialNetworkStatus.Status   the exit status of the operation
+      */
+    private SocialNetworkStatus.Status linkHelper(String first, String second, long date, SocialNetworkUtility.Caller call) {
+
+        // Verifies none of the arguments are null
+        SocialNetworkUtility.checkNull(first, "ID");
+        SocialNetworkUtility.checkNull(second, "ID");
+
+        // Tries to find the two users to be linked. A link is exclusive between 2 different users
+        int low = indexOf(first);
+        int high = indexOf(second);
+        if (low < 0 || high < 0 || low == high)
+            return SocialNetworkStatus.Status.INVALID_USERS;
+
+        // The version is taken once the locks are held, and published once they're given back
+        SocialNetworkStatus.Status outcome;
+        long changed = Long.MIN_VALUE; // If the change fails part way, the cache drops everything it might have touched
+        lockPair(low, high);
+        long version = clock.begin();
+        try {
+            // Gets the link from the collection of links and manipulate it
+            Link fromNetwork = getLink(low, high);
+            if (fromNetwork != null) { // In the case that the link already exists
+               outcome = actionHelper(fromNetwork, date, version, call);
+               if (outcome == SocialNetworkStatus.Status.SUCCESS)
+                  logLink(low, high, date, call);
+            }
+            else if (call == SocialNetworkUtility.Caller.ESTABLISH) { // If the link didn't exist, we create, establish it, and add it to the network
+                Link newLink = new Link();
+                newLink.setUsers(users[low], users[high], new SocialNetworkStatus());
+                outcome = actionHelper(newLink, date, 0, call); // No reader sees the link until it's added under the version
+                addLinkToNetwork(low, high, newLink, version);
+                logLink(low, high, date, call);
+            }
+            else { // A link that doesn't exist can't be torn down
+                outcome = SocialNetworkStatus.Status.ALREADY_INACTIVE;
+            }
+            changed = outcome == SocialNetworkStatus.Status.SUCCESS ? date : Long.MAX_VALUE;
+        }
+        finally {
+            // The cache is told outside the locks, so writers to other links don't wait on it, but before readers can see the version
+            unlockPair(low, high);
+            linkChanged(low, high, changed, version);
+            clock.publish(version);
+        }
+
+        // The sync is waited on outside the locks, so other changes can join it
+        if (outcome == SocialNetworkStatus.Status.SUCCESS)
+            commitJournal(0);
+        return outcome;
+    }
+
+    /** Helper method to establish/teardown the link named by a set of ids, filling in the status
       * @param ids  a set of the two ids identifying the Link to manipulate
       * @param date     the date of the action
       * @param status   tells the caller the exit status of their operation
       * @param call   specifies the caller of the helper method
-      * @return Set<User>    If no errors, but unsuccessful, the set of users corresponding to the ids.  Otherwise, null
       */
-    private Set<User> linkHelper(Set<String> ids, Date date, SocialNetworkStatus status, SocialNetworkUtility.Caller call) {
+    private void linkHelper(Set<String> ids, Date date, SocialNetworkStatus status, SocialNetworkUtility.Caller call) {
 
         // Verifies none of the arguments are null
         SocialNetworkUtility.checkNull(ids, "IDs");
         SocialNetworkUtility.checkNull(date, "Date");
         SocialNetworkUtility.checkNull(status, "Status");
 
-        Set<User> toAdd = new HashSet<User>();
-
-        // Tries to create a set of two users to be linked
-        if (!usersFromID(ids, toAdd)) {
+        boolean establish = call == SocialNetworkUtility.Caller.ESTABLISH;
+        if (ids.size() != 2) { // A link is exclusive between 2 users
             status.setStatus(SocialNetworkStatus.Status.INVALID_USERS);
-            return null;
-        }
-        else {
-            // Gets the link from the collection of links and manipulate it
-            Link fromNetwork = getLink(ids);
-            if (fromNetwork != null) { // In the case that the link already exists
-               actionHelper(fromNetwork, date, status, call);
-               return null;
-            }
-            else { // If unsuccessful, we return the users created from the ids for the callers to manipulate
-                return toAdd;
-            }
+            recordRejected(establish ? NetworkMetrics.Operation.ESTABLISH_LINK : NetworkMetrics.Operation.TEAR_DOWN_LINK);
+            return;
         }
+        Iterator<String> iter = ids.iterator();
+        String first = iter.next();
+        String second = iter.next();
+        if (establish)
+            status.setStatus(establishLink(first, second, date.getTime()));
+        else
+            status.setStatus(tearDownLink(first, second, date.getTime()));
+    }
+
+    /** Helper method recording a call turned away before it reached the network, if metrics are on
+      * @param operation   the operation called
+      */
+    private void recordRejected(NetworkMetrics.Operation operation) {
+        NetworkMetrics current = metrics;
+        if (current != null)
+            current.record(operation, System.nanoTime(), SocialNetworkStatus.Status.INVALID_USERS);
+    }
+
+    /** Helper method taking the indices of the users linked together and adding the link to the network
+      * @param first   the index of one of the users linked
+      * @param second  the index of the other user linked
+      * @param toAdd   the link to be added to the network
+      */
+    private void addLinkToNetwork(int first, int second, Link toAdd) {
+        addLinkToNetwork(first, second, toAdd, 0);
     }
 
-    /** Helper method taking the ids of the users linked together and adding the link to the network
-      * @param ids     the ids of the users linked
+    /** Helper method taking the indices of the users linked together and adding the link to the network as part of a version
+      * @param first   the index of one of the users linked
+      * @param second  the index of the other user linked
       * @param toAdd   the link to be added to the network
+      * @param version   the version adding the link. 0 if every reader may see it at once
       */
-    private void addLinkToNetwork(Set<String> ids, Link toAdd) {
+    private void addLinkToNetwork(int first, int second, Link toAdd, long version) {
 
-        // Grab both users
-        Iterator<String> iter = ids.iterator();
-        String id1 = iter.next();
-        String id2 = iter.next();
+        // Saves the link under each user's index in the other's list. Readers pinned before the version see it in neither
+        long settled = clock.settled();
+        links[first].put(second, toAdd, version, settled);
+        links[second].put(first, toAdd, version, settled);
+        totalDegree.add(2);
+    }
 
-        // Saves the link under the id of the second user in the first user's hashmap
-        HashMap<String, Link> entry1 = links.get(id1);
-        entry1.put(id2, toAdd);
+    /** Helper method telling the cache, if there is one, that a link has changed. Called once the link's users are unlocked, before the change's version is published
+      * @param first   the index of one of the users linked
+      * @param second  the index of the other user linked
+      * @param date     the earliest date changed. Long.MAX_VALUE if nothing changed
+      * @param version   the version of the change
+      */
+    private void linkChanged(int first, int second, long date, long version) {
+        NeighborhoodCache current = cache;
+        if (current != null && date != Long.MAX_VALUE)
+            current.linkChanged(first, second, date, version);
+    }
+
+    /** Helper method telling the journal, if there is one, that a link has changed. The change is logged but not committed
+      * @param first   the index of one of the users linked
+      * @param second  the index of the other user linked
+      * @param date     the date of the change
+      * @param call   specifies whether the link was established or torn down
+      */
+    private void logLink(int first, int second, long date, SocialNetworkUtility.Caller call) {
+        NetworkJournal current = journal;
+        if (current != null)
+            current.logLink(Math.min(first, second), Math.max(first, second), date, call == SocialNetworkUtility.Caller.ESTABLISH);
+    }
 
-        // Saves the link under the id of the first user in the second user's hashmap
-        HashMap<String, Link> entry2 = links.get(id2);
-        entry2.put(id1, toAdd);
+    /** Helper method waiting until the journal, if there is one, has synced every change up to the given one
+      * @param sequence   the sequence of the last change to be made durable. 0 for every change logged so far
+      * @throws UncheckedIOException  if the journal can't be written. The change stands in memory, but may not survive a crash
+      */
+    private void commitJournal(long sequence) {
+        NetworkJournal current = journal;
+        if (current == null) // Closing the journal commits everything logged
+            return;
+        try {
+            current.commit(sequence == 0 ? current.sequence() : sequence);
+        }
+        catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
     }
 
     /** Establishes a link between two users in the social network
@@ -180,16 +427,24 @@ public class SocialNetwork {
     * @throws NullPointerExcpetion  occurs if any of the parameters are null
     */
     public void establishLink(Set<String> ids, Date date, SocialNetworkStatus status) {
+        linkHelper(ids, date, status, SocialNetworkUtility.Caller.ESTABLISH);
+    }
 
-        Set<User> createNew = linkHelper(ids, date, status, SocialNetworkUtility.Caller.ESTABLISH);
-
-        // If the link didn't exist, we create, establish it, and add it to the network
-        if (createNew != null) {
-            Link newLink = new Link();
-            newLink.setUsers(createNew, status);
-            actionHelper(newLink, date, status, SocialNetworkUtility.Caller.ESTABLISH);
-            addLinkToNetwork(ids, newLink);
-        }
+    /** Establishes a link between two users in the social network, without making any object unless the link is new
+    * @param first  the Id of one of the Users to have a link established between
+    * @param second  the Id of the other User
+    * @param date  the time in milliseconds since the epoch to establish the link
+    * @return SocialNetworkStatus.Status    the state after completion
+    * @throws NullPointerExcpetion  occurs if either Id is null
+    */
+    public SocialNetworkStatus.Status establishLink(String first, String second, long date) {
+        NetworkMetrics current = metrics;
+        if (current == null)
+            return linkHelper(first, second, date, SocialNetworkUtility.Caller.ESTABLISH);
+        long began = System.nanoTime();
+        SocialNetworkStatus.Status outcome = linkHelper(first, second, date, SocialNetworkUtility.Caller.ESTABLISH);
+        current.record(NetworkMetrics.Operation.ESTABLISH_LINK, began, outcome);
+        return outcome;
     }
 
     /** Tears down a link between two users in the social network
@@ -202,171 +457,236 @@ public class SocialNetwork {
         linkHelper(ids, date, status, SocialNetworkUtility.Caller.TEARDOWN);
     }
 
-    /** Checks if a link between two users in the social network is active on a given date
-    * @param ids  a Set<Strings> of two Users' Ids to have a link checked
-    * @param date  the date to check the link
-    * @return boolean  tells is the link was active at the given date
+    /** Tears down a link between two users in the social network, without making any object
+    * @param first  the Id of one of the Users to have a link torn down
+    * @param second  the Id of the other User
+    * @param date  the time in milliseconds since the epoch to tear down the link
+    * @return SocialNetworkStatus.Status    the state after completion
+    * @throws NullPointerExcpetion  occurs if either Id is null
     */
-    public boolean isActive(Set<String> ids, Date date) {
-        Set<User> toTest = new HashSet<User>();
-
-        // Tries to create a set of two users to be linked
-        if (!usersFromID(ids, toTest))
-            return false;
-
-        // Gets the link from the collection of links and checks if it is active
-        Link active = getLink(ids);
-        if (active != null) {
-            try {
-                return active.isActive(date);
-            }
-            catch(UninitializedObjectException uoe) { // At this point in code the link is assured to be valid
-                assert false;
-            }
-        }
-        return false;
+    public SocialNetworkStatus.Status tearDownLink(String first, String second, long date) {
+        NetworkMetrics current = metrics;
+        if (current == null)
+            return linkHelper(first, second, date, SocialNetworkUtility.Caller.TEARDOWN);
+        long began = System.nanoTime();
+        SocialNetworkStatus.Status outcome = linkHelper(first, second, date, SocialNetworkUtility.Caller.TEARDOWN);
+        current.record(NetworkMetrics.Operation.TEAR_DOWN_LINK, began, outcome);
+        return outcome;
     }
 
-    /** Takes the User associated with friendID and tries to add them to the set of friends
-      * @param friends the set of friends for the current search
-      * @param friendID    the ID of the User we're looking to add to the set of friends
-      * @param nextLevel   the queue to place the user's linked users in
-      * @param link    the link between the friend and another user
-      * @param date    the date to search the links at
-      * @param depth   the current level of depth we're searching
-      * @throws UninitializedObjectException   the link is invalid
+    /** Helper method giving the records of a batch in the order they're applied: grouped by link, and by date within each link.
+      * Records on the same date keep the order they were added in. Every pass is a sort of primitives sized to the batch, so no object is made per record
+      * and a small batch costs the same however many users the network has
+      * @param batch    the batch of records
+      * @param lows     the lower index of the two users of each valid record
+      * @param highs    the higher index of the two users of each valid record
+      * @param valid    the numbers of the records naming two different users in the network
+      * @param count    the number of entries in valid
+      * @return int[]   the valid records in the order to apply them
       */
-    private void addFriendToSetHelper(Set<Friend> friends, String friendID, Queue<String> nextLevel, Link link, Date date, int depth) throws UninitializedObjectException {
-        
-        //  Makes sure the user we're adding isn't the one we started with and the link between the two users is active at the given date
-        if (link.isActive(date)) {
-            Friend newFriend = new Friend();            
-            newFriend.set(this.getUser(friendID), depth);
-            
-            // Try and add the friend to the set. If an equal one is already in it, the if statement is false
-            if (friends.add(newFriend))
-                nextLevel.add(friendID);
-        }
+    private int[] sortBatch(LinkEventBatch batch, int[] lows, int[] highs, int[] valid, int count) {
+        // Dates are ranked so a rank and a record number fit in one long, which sorts by date with ties kept in order
+        long[] ranks = new long[count];
+        for (int i = 0; i < count; i++)
+            ranks[i] = batch.date(valid[i]);
+        Arrays.sort(ranks);
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++)
+            keys[i] = ((long)Arrays.binarySearch(ranks, batch.date(valid[i])) << 32) | valid[i];
+        Arrays.sort(keys);
+
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++)
+            order[i] = (int)keys[i];
+
+        // Grouping keeps each link's records in the order they came in, which is date order
+        return groupByLink(order, lows, highs);
     }
 
-    /** Helper method to abstract away the try/catch block. This will never be called becasue we're assured the helper method will never have an invalid object.
-      * @param friends the set of friends for the current search
-      * @param friendID    the ID of the User we're looking to add to the set of friends
-      * @param nextLevel   the queue to place the user's linked users in
-      * @param link    the link between the friend and another user
-      * @param date    the date to search the links at
-      * @param depth   the current level of depth we're searching
+    /** Helper method grouping record numbers by link, by the lower user and then the higher one, keeping each link's records in the order they came in.
+      * Links are ranked among the ones the records name, so the work grows with the records and not with the number of users
+      * @param order    the record numbers to be grouped
+      * @param lows     the lower user index of each record, by record number
+      * @param highs    the higher user index of each record, by record number
+      * @return int[]   the record numbers grouped by link
       */
-    private void addFriendToSet(Set<Friend> friends, String friendID, Queue<String> nextLevel, Link link, Date date, int depth) {
-        try {
-            addFriendToSetHelper(friends, friendID, nextLevel, link, date, depth);
-        }
-        catch (UninitializedObjectException uoe) {
-            assert false;
-        }
+    private static int[] groupByLink(int[] order, int[] lows, int[] highs) {
+        // A link's two indices fit in one long, which sorts by the lower user and then the higher one
+        long[] links = new long[order.length];
+        for (int i = 0; i < order.length; i++)
+            links[i] = ((long)lows[order[i]] << 32) | highs[order[i]];
+        long[] ranks = links.clone();
+        Arrays.sort(ranks);
+
+        // A link's rank and a record's position fit in one long, which sorts by link with ties kept in order
+        long[] keys = new long[order.length];
+        for (int i = 0; i < order.length; i++)
+            keys[i] = ((long)Arrays.binarySearch(ranks, links[i]) << 32) | i;
+        Arrays.sort(keys);
+
+        int[] grouped = new int[order.length];
+        for (int i = 0; i < order.length; i++)
+            grouped[i] = order[(int)keys[i]];
+        return grouped;
     }
 
-    /** Adds a user to the set of friends and adds the users they're linked to to the queue
-      * @param id  the id of the user to perform the method on
-      * @param nextLevel   the queue to place the user's linked users in
-      * @param friends the set of friends for the current search
-      * @param date    the date to search the links at
-      * @param depth   the current level of depth we're searching
+    /** Applies a batch of link events in one pass. Records are grouped by link and applied in date order within each link,
+      * so a batch doesn't need to be in order, and each link is looked up once no matter how many records name it
+      * @param batch    the records to be applied
+      * @return SocialNetworkStatus.Status[]   the exit status of each record, in the order the records were added. INVALID_USERS if a record
+      *   names a user not in the network or the same user twice, ALREADY_INACTIVE for tearing down a link that was never established, and otherwise as establishLink and tearDownLink would give
+      * @throws NullPointerException  if the batch is null
       */
-    private void checkFriends(String id, Queue<String> nextLevel, Set<Friend> friends, Date date, int depth) {
-
-        // Get the User's linked the the user with id
-        HashMap<String, Link> directFriends = links.get(id);
-
-        // Loop through each friend in the and tries to add them to the set
-        for (Entry<String, Link> entry : directFriends.entrySet()) {
-            String friendID = entry.getKey();
-            Link link = entry.getValue();
-            addFriendToSet(friends, friendID, nextLevel, link, date, depth);
+    public SocialNetworkStatus.Status[] applyEvents(LinkEventBatch batch) {
+        SocialNetworkUtility.checkNull(batch, "Batch");
+        SocialNetworkStatus.Status[] statuses = new SocialNetworkStatus.Status[batch.size()];
+
+        // Finds the users of every record, leaving out the ones that can't be applied
+        int[] lows = new int[batch.size()];
+        int[] highs = new int[batch.size()];
+        int[] valid = new int[batch.size()];
+        int count = 0;
+        for (int record = 0; record < batch.size(); record++) {
+            int first = indexOf(batch.first(record));
+            int second = indexOf(batch.second(record));
+            if (first < 0 || second < 0 || first == second) {
+                statuses[record] = SocialNetworkStatus.Status.INVALID_USERS;
+                continue;
+            }
+            lows[record] = Math.min(first, second);
+            highs[record] = Math.max(first, second);
+            valid[count++] = record;
         }
-    }
-
-    /** Loop over everything currently in the queue for this depth and them to freinds if its not already there.
-      * @param friends the set of friends for the current search
-      * @param date    the date to search the links at
-      * @param currentLevel the current queue of users at this depth
-      * @param depth   the current level of depth we're searching
-      * @return linkedList<String> the next level of user's to be serached.
-      */
-    private Queue<String> addFriends(Set<Friend> friends, Date date, Queue<String> currentLevel, int depth) {
-        Queue<String> nextLevel = new LinkedList<String>();
 
-        // Loop through each user in the level and create a friend from them and add their friends to the queue
-        for (String id : currentLevel)
-            checkFriends(id, nextLevel, friends, date, depth);
+        int[] order = sortBatch(batch, lows, highs, valid, count);
+        int runStart = 0;
+        while (runStart < count) {
+            int low = lows[order[runStart]];
+            int high = highs[order[runStart]];
+            int runEnd = runStart;
+            while (runEnd < count && lows[order[runEnd]] == low && highs[order[runEnd]] == high)
+                runEnd++;
+
+            // Each link's records make one version, so a reader sees all of them or none
+            long changed = Long.MIN_VALUE; // If the run fails part way, the cache drops everything it might have touched
+            lockPair(low, high);
+            long version = clock.begin();
+            try {
+                changed = applyRun(batch, order, runStart, runEnd, low, high, version, statuses);
+            }
+            finally {
+                unlockPair(low, high);
+                linkChanged(low, high, changed, version);
+                clock.publish(version);
+            }
+            runStart = runEnd;
+        }
 
-        return nextLevel;
+        // The whole batch shares one sync of the journal
+        commitJournal(0);
+        return statuses;
     }
 
-    /** Adds a user to their own friend network with distance of 0
-      * @param id  the ID of the user to be added as a friend
-      * @param friends the set of friends to add the user to
+    /** Helper method applying the records of a batch naming one link, with the link's users locked
+      * @param batch    the records being applied
+      * @param order    the records in the order to apply them
+      * @param from     the position in order of the link's first record
+      * @param to       the position in order just past the link's last record
+      * @param low      the lower index of the link's users
+      * @param high     the higher index of the link's users
+      * @param version   the version the records are applied under
+      * @param statuses   the exit status of each record, filled in as they're applied
+      * @return long   the earliest date changed, for the cache to be told once the users are unlocked. Long.MAX_VALUE if nothing changed
       */
-    private void addSelfAsFriend(String id, Set<Friend> friends) {
-        Friend own = new Friend();
-        User self = this.getUser(id);
-        own.set(self, 0);
-        friends.add(own);
-    }
-
-    /** Helper method for checking a User's neighborhood
-      * @param id   the user to find friends of
-      * @param date    the date for which to check the links
-      * @param distance    the farthest number of links a friend included in this set is away from the user
-      * @param status   the exit status of the method
-      * @return Set<Friend>    a set of Friends of the user within distance_max
-      */
-    private Set<Friend> neighborhoodHelper(String id, Date date, int distance, SocialNetworkStatus status) {
-
-      if (!checkNeighborhoodParams(id, date, distance, status))
-         return null;
-
-        HashSet<Friend> friends = new HashSet<Friend>();
-
-        // Adds the starting user as a friend at distance 0
-        addSelfAsFriend(id, friends);
-
-        // A linked List treated as a queue to hold users to be serached in our breadth first graph search
-        Queue<String> toFindFriends = new LinkedList<String>();
-        toFindFriends.add(id);
+    private long applyRun(LinkEventBatch batch, int[] order, int from, int to, int low, int high, long version, SocialNetworkStatus.Status[] statuses) {
+        SocialNetworkStatus status = new SocialNetworkStatus();
+        NetworkJournal current = journal;
+        Link link = getLink(low, high);
+        long firstChange = Long.MAX_VALUE;
+
+        // Applies every record of the link, which sit side by side in date order
+        for (int i = from; i < to; i++) {
+            int record = order[i];
+            SocialNetworkUtility.Caller call = batch.isEstablish(record) ? SocialNetworkUtility.Caller.ESTABLISH : SocialNetworkUtility.Caller.TEARDOWN;
+
+            if (link == null && call == SocialNetworkUtility.Caller.TEARDOWN) { // A link that doesn't exist can't be torn down
+                statuses[record] = SocialNetworkStatus.Status.ALREADY_INACTIVE;
+                continue;
+            }
+            if (link == null) { // The link is created the first time it's established
+                link = new Link();
+                link.setUsers(users[low], users[high], status);
+                addLinkToNetwork(low, high, link, version);
+            }
+            actionHelper(link, batch.date(record), version, status, call);
+            statuses[record] = status.getStatus();
+            if (status.getStatus() == SocialNetworkStatus.Status.SUCCESS) {
+                firstChange = Math.min(firstChange, batch.date(record));
+                if (current != null)
+                    current.logLink(low, high, batch.date(record), call == SocialNetworkUtility.Caller.ESTABLISH);
+            }
+        }
 
-        int currentDepth = 1; // The current number of links from the original user
+        return firstChange;
+    }
 
-        // This loop checks that we have nodes left to search and that we have not exceeded the distance. (Note that if there is no max distance, distance is set to a negative number)
-        while (toFindFriends.size() > 0 && currentDepth <= distance) {
-            toFindFriends = addFriends(friends, date, toFindFriends, currentDepth);
-            currentDepth++;
+    /** Checks if a link between two users in the social network is active on a given date
+    * @param ids  a Set<Strings> of two Users' Ids to have a link checked
+    * @param date  the date to check the link
+    * @return boolean  tells is the link was active at the given date
+    */
+    public boolean isActive(Set<String> ids, Date date) {
+        if (ids.size() != 2) { // A link is exclusive between 2 users
+            recordRejected(NetworkMetrics.Operation.IS_ACTIVE);
+            return false;
         }
+        Iterator<String> iter = ids.iterator();
+        String first = iter.next();
+        return isActive(first, iter.next(), date.getTime());
+    }
 
-        return friends;
+    /** Checks if a link between two users in the social network is active at a given time, without making any object
+    * @param first  the Id of one of the Users to have a link checked
+    * @param second  the Id of the other User
+    * @param date  the time in milliseconds since the epoch to check the link
+    * @return boolean  tells is the link was active at the given time
+    */
+    public boolean isActive(String first, String second, long date) {
+        NetworkMetrics current = metrics;
+        if (current == null)
+            return activeHelper(first, second, date) == SocialNetworkStatus.Status.SUCCESS;
+        long began = System.nanoTime();
+        SocialNetworkStatus.Status outcome = activeHelper(first, second, date);
+        current.record(NetworkMetrics.Operation.IS_ACTIVE, began, outcome);
+        return outcome == SocialNetworkStatus.Status.SUCCESS;
     }
 
-    /** Verifies that the parameters passed to the neighborhood method are valid
-      * @param id   the user's ID. Must be a member of the network
-      * @param date    must not be null
-      * @param distance     must be positive or 0
-      * @param status   saves the exit status of the operation
-      * @return boolean    true if the params are all valid. False if not.
-      */
-    private boolean checkNeighborhoodParams(String id, Date date, int distance, SocialNetworkStatus status) {
-        SocialNetworkUtility.checkNull(id, "ID");
-        SocialNetworkUtility.checkNull(date, "Date");
-        SocialNetworkUtility.checkNull(status, "Status");
+    /** Helper method checking if a link between two users is active at a given time
+    * @param first  the Id of one of the Users to have a link checked
+    * @param second  the Id of the other User
+    * @param date  the time in milliseconds to check the link
+    * @return SocialNetworkStatus.Status  SUCCESS if the link was active, ALREADY_INACTIVE if it wasn't, and INVALID_USERS if the IDs don't name two users in the network
+    */
+    private SocialNetworkStatus.Status activeHelper(String first, String second, long date) {
 
-        if (!this.isMember(id)) { // Make sure the user is in the network
-            status.setStatus(SocialNetworkStatus.Status.INVALID_USERS);
-            return false;
-        }
-        if (distance < 0) { // Make sure the distance is a valid number
-            status.setStatus(SocialNetworkStatus.Status.INVALID_DISTANCE);
-            return false;
+        // Tries to find the two users to be linked
+        int low = indexOf(first);
+        int high = indexOf(second);
+        if (low < 0 || high < 0 || low == high)
+            return SocialNetworkStatus.Status.INVALID_USERS;
+
+        // Gets the link from the collection of links and checks if it is active
+        Link active = getLink(low, high);
+        if (active != null) {
+            try {
+                if (active.isActive(date))
+                    return SocialNetworkStatus.Status.SUCCESS;
+            }
+            catch(UninitializedObjectException uoe) { // At this point in code the link is assured to be valid
+                assert false;
+            }
         }
-        return true;
+        return SocialNetworkStatus.Status.ALREADY_INACTIVE;
     }
 
     /** Finds all the users to which the user with the given ID is directly and indirectly linked
@@ -376,7 +696,7 @@ public class SocialNetwork {
       * @return Set<Friend>    a set of Friends of the user
       */
     public Set<Friend> neighborhood(String id, Date date, SocialNetworkStatus status) {
-      return neighborhoodHelper(id, date, Integer.MAX_VALUE, status);
+      return neighborhood(id, date, Integer.MAX_VALUE, status);
     }
 
     /** Finds all the users to which the user with the given ID which are less than or equal to the maximum distance links away specified
@@ -387,226 +707,585 @@ public class SocialNetwork {
       * @return Set<Friend>    a set of Friends of the user within distance_max
       */
    public Set<Friend> neighborhood(String id, Date date, int distance_max, SocialNetworkStatus status) {
-     return neighborhoodHelper(id, date, distance_max, status);
+     return neighborhood(id, date, distance_max, status, null);
    }
 
-    /** Helper method. Given a link with the event insde our desired interval, checks its activity, and truncates the interal to its active period
-     * @param friendID the id of the friend we're linked to
-     * @param link  the Link betwwen the origianl user and friend
-     * @param currentEvent   the current date of activity we're observing
-     * @param alreadyChecked a set of User's that have already been visited during a given sequence. Prevents infinite loops
-     * @param intervalStart  the opening date to look for activity
-     * @param intervalEnd the close of the window in which we look for activity
-     * @param linkChange  a set keeping track of dates on which the links change
+   /** Finds the users within the maximum distance of the user with the given ID, counting the work the search does into stats.
+     * A search with stats skips the cache, so the stats describe a search over the network
+     * @param id   the user to find friends of
+     * @param date    the date for which to check the links
+     * @param distance_max    the farthest number of links a friend included in this set is away from the user
      * @param status   the exit status of the method
-     * @throws UninitializedObjectExcpetion  should never occur due to construction of the method
-     * @return boolean true if we can find an event
+     * @param stats   the stats the search is counted into. Null to count nothing, as the method without stats does
+     * @return Set<Friend>    a set of Friends of the user within distance_max
      */
-   private boolean eventBetween(Link link, String friendID, Date currentEvent, HashSet<String> alreadyChecked, Date intervalEnd, HashSet<Date> linkChange, SocialNetworkStatus status) throws UninitializedObjectException {
-      
-      // We've hit a potential site of change for the link so we save it
-      linkChange.add(currentEvent);
-      if (link.isActive(currentEvent)) { // If we're active at the time of the link, configure the algoithm to continue to probe deeper.
-         Date finish = new Date();
-         Date nextEvent = link.nextEvent(currentEvent);
-         if (nextEvent == null || nextEvent.after(intervalEnd)) { // If the end of the activity is out of bounds, shorten it and do not move on
-            checkLinksInInterval(friendID, alreadyChecked, currentEvent, intervalEnd, linkChange, status);
-            return true;
-         }
-         else { // Continue probing within the interval
-            checkLinksInInterval(friendID, alreadyChecked, currentEvent, nextEvent, linkChange, status);
-            return false;
-         }
-      }
-      return false;
+   public Set<Friend> neighborhood(String id, Date date, int distance_max, SocialNetworkStatus status, QueryStats stats) {
+     NetworkMetrics current = metrics;
+     if (current == null)
+        return neighborhoodHelper(id, date, distance_max, status, stats);
+     long began = System.nanoTime();
+     Set<Friend> friends = neighborhoodHelper(id, date, distance_max, status, stats);
+     current.record(NetworkMetrics.Operation.NEIGHBORHOOD, began, friends == null ? status.getStatus() : SocialNetworkStatus.Status.SUCCESS);
+     return friends;
    }
 
-   /** Helper method. Given a link with the event outside our desired interval, truncates the interal to its active period
-     * @param friendID the id of the friend we're linked to
-     * @param link  the Link betwwen the origianl user and friend
-     * @param currentEvent   the current date of activity we're observing
-     * @param alreadyChecked a set of User's that have already been visited during a given sequence. Prevents infinite loops
-     * @param intervalStart  the opening date to look for activity
-     * @param intervalEnd the close of the window in which we look for activity
-     * @param linkChange  a set keeping track of dates on which the links change
+   /** Helper method finding the users within the maximum distance of the user with the given ID, from the cache if there is one
+     * @param id   the user to find friends of
+     * @param date    the date for which to check the links
+     * @param distance_max    the farthest number of links a friend included in this set is away from the user
      * @param status   the exit status of the method
-     * @throws UninitializedObjectExcpetion  should never occur due to construction of the method
-     * @return boolean true if we can find an event
+     * @param stats   the stats the search is counted into. Null to count nothing
+     * @return Set<Friend>    a set of Friends of the user within distance_max. Null if the parameters are invalid
      */
-   private void eventOutsideInterval(Link link, String friendID, Date currentEvent, Date intervalStart, Date intervalEnd, HashSet<String> alreadyChecked, HashSet<Date> linkChange, SocialNetworkStatus status) throws UninitializedObjectException{
-      Date lastEvent = link.previousEvent(currentEvent);
-      // Checks that we're not the first event for the link
-      if (lastEvent != null) {
-         if (!currentEvent.after(intervalEnd) && lastEvent.before(intervalStart)) { // If an event occured to make us active in the interval, probe it
-            checkLinksInInterval(friendID, alreadyChecked, intervalStart, currentEvent, linkChange, status);
-         }
-         else { // If the link became active before the interval began, probe it
-            if (!lastEvent.before(intervalStart))
-               checkLinksInInterval(friendID, alreadyChecked, lastEvent, intervalEnd, linkChange, status);
-         }
-      }
+   private Set<Friend> neighborhoodHelper(String id, Date date, int distance_max, SocialNetworkStatus status, QueryStats stats) {
+     if (!search.checkNeighborhoodParams(id, date, distance_max, status))
+        return null;
+     // The user is found before the pin, so the users seen at the pinned version take them in
+     int start = indexOf(id);
+     NeighborhoodCache cached = cache;
+     VersionClock.Pin pin = clock.pin();
+     try {
+        if (stats != null)
+           return pinnedSearch(pin).neighborhood(start, date.getTime(), distance_max, stats);
+        if (cached != null)
+           return cached.neighborhood(pinnedSearch(pin), pin.version(), start, date.getTime(), distance_max);
+        return pinnedSearch(pin).neighborhood(start, date.getTime(), distance_max);
+     }
+     finally {
+        pin.close();
+     }
+   }
+
+   /** Helper method giving a search over the network as of a pinned version, with the users added by then
+     * @param pin   the pinned version
+     * @return NeighborhoodSearch   the search, with the settings of the network's own
+     */
+   private NeighborhoodSearch pinnedSearch(VersionClock.Pin pin) {
+      return search.over(new LiveGraph(pin.version(), userCount));
+   }
+
+   /** Turns on caching of neighborhoods, keeping up to the given number of the most recently used.
+     * Cached neighborhoods are dropped when a link that could change them is established or torn down. While caching is on, the sets returned by neighborhood are read only
+     * @param capacity   the most neighborhoods to keep. 0 turns caching off
+     * @throws IllegalArgumentException  if the capacity is negative
+     */
+   public void setCacheCapacity(int capacity) {
+      if (capacity < 0)
+         throw new IllegalArgumentException("Capacity may not be negative.");
+      if (capacity == 0)
+         cache = null;
+      else
+         cache = new NeighborhoodCache(capacity, clock.published());
+   }
+
+   /** Gives the number of neighborhood queries answered from the cache since it was turned on
+     * @return long   the number of cache hits. 0 if caching is off
+     */
+   public long getCacheHits() {
+      NeighborhoodCache current = cache;
+      return current == null ? 0 : current.getHits();
    }
 
-   /** Helper method. Given an event a link, we check if it's inside or outside our interval and handle it appropriatly
-     * @param friendID the id of the friend we're linked to
-     * @param link  the Link betwwen the origianl user and friend
-     * @param currentEvent   the current date of activity we're observing
-     * @param alreadyChecked a set of User's that have already been visited during a given sequence. Prevents infinite loops
-     * @param intervalStart  the opening date to look for activity
-     * @param intervalEnd the close of the window in which we look for activity
-     * @param linkChange  a set keeping track of dates on which the links change
+   /** Gives the number of neighborhood queries that missed the cache and were searched since it was turned on
+     * @return long   the number of cache misses. 0 if caching is off
+     */
+   public long getCacheMisses() {
+      NeighborhoodCache current = cache;
+      return current == null ? 0 : current.getMisses();
+   }
+
+   /** Gives the number of users in the network
+     * @return int   the number of users
+     */
+   public int getUserCount() {
+      return userCount;
+   }
+
+   /** Gives the number of links in the network, whether active or not
+     * @return long   the number of links
+     */
+   public long getLinkCount() {
+      return totalDegree.sum() / 2;
+   }
+
+   /** Gives the number of establishes and tear downs on every link in the network
+     * @return long   the number of events
+     */
+   public long getEventCount() {
+      return eventCount.sum();
+   }
+
+   /** Turns on metrics, recording the latency and outcome of every call to establishLink, tearDownLink, isActive, neighborhood and neighborhoodTrend,
+     * and registers them with the platform MBean server so they can be read over JMX. Metrics already on are replaced
+     * @param name   the name the metrics are registered under, told apart from other networks' by it
+     * @return NetworkMetrics   the metrics, with nothing recorded
+     * @throws NullPointerException  if the name is null
+     * @throws IllegalArgumentException  if metrics are already registered under the name
+     */
+   public synchronized NetworkMetrics enableMetrics(String name) {
+      SocialNetworkUtility.checkNull(name, "Name");
+      disableMetrics();
+      NetworkMetrics enabled = new NetworkMetrics(this);
+      enabled.register(name);
+      metrics = enabled;
+      return enabled;
+   }
+
+   /** Turns off metrics and takes them off the MBean server. Calls then record nothing, and cost no more than with metrics never turned on */
+   public synchronized void disableMetrics() {
+      NetworkMetrics current = metrics;
+      metrics = null;
+      if (current != null)
+         current.unregister();
+   }
+
+   /** Gives the metrics being recorded
+     * @return NetworkMetrics   the metrics. Null if they're off
+     */
+   public NetworkMetrics getMetrics() {
+      return metrics;
+   }
+
+   /** Streams the users within the maximum distance of the user with the given ID, nearest first.
+     * Links are only checked as the stream is read, so a caller that needs the first few friends doesn't pay for the whole neighborhood.
+     * The stream reads the network as of the call, and holds on to that version until it's read to the end or closed.
+     * A stream dropped before then, as with limit, lets go of the version once it's garbage collected, but should be closed so it lets go at once
+     * @param id   the user to find friends of
+     * @param date    the date for which to check the links
+     * @param distance_max    the farthest number of links a friend in the stream is away from the user
      * @param status   the exit status of the method
-     * @throws UninitializedObjectExcpetion  should never occur due to construction of the method
-     * @return boolean true if we can find an event
+     * @return Stream<Friend>    the Friends of the user in order of distance, the user first. Null if the parameters are invalid
      */
-   private boolean inspectEvent(String friendID, Link link, Date currentEvent, HashSet<String> alreadyChecked, Date intervalStart, Date intervalEnd, HashSet<Date> linkChange, SocialNetworkStatus status) throws UninitializedObjectException {
-      // The current event falls within our interval
-      if (!currentEvent.before(intervalStart) && currentEvent.before(intervalEnd)) {
-         if (eventBetween(link, friendID, currentEvent, alreadyChecked, intervalEnd, linkChange, status)) {
-             return true;
-         }
+   public Stream<Friend> neighborhoodStream(String id, Date date, int distance_max, SocialNetworkStatus status) {
+      if (!search.checkNeighborhoodParams(id, date, distance_max, status))
+         return null;
+      int start = indexOf(id);
+      VersionClock.Pin pin = clock.pin();
+      NeighborhoodIterator friends = new NeighborhoodIterator(new LiveGraph(pin.version(), userCount), start, date.getTime(), distance_max);
+
+      // While a version is held, version logs can't drop entries, so the pin is let go by whichever comes first of the end, a close, or the collector
+      Cleaner.Cleanable release = STREAM_CLEANER.register(friends, pin::close);
+      friends.whenExhausted(release::clean);
+      return friends.stream().onClose(release::clean);
+   }
+
+   /** Gives the number of readers holding on to a version of the network, such as neighborhood streams not yet read to the end or closed
+     * @return int   the number of versions held
+     */
+   public int getPinCount() {
+      return clock.pinCount();
+   }
+
+   /** Counts the users to which the user with the given ID is directly and indirectly linked, without building the set of Friends
+     * @param id   the user whose neighborhood is counted
+     * @param date    the date for which to check the links
+     * @param status   the exit status of the method
+     * @return int    the number of users in the neighborhood, including the user. -1 if the parameters are invalid
+     */
+   public int neighborhoodSize(String id, Date date, SocialNetworkStatus status) {
+      return neighborhoodSize(id, date, Integer.MAX_VALUE, status);
+   }
+
+   /** Counts the users within the maximum distance of the user with the given ID, without building the set of Friends
+     * @param id   the user whose neighborhood is counted
+     * @param date    the date for which to check the links
+     * @param distance_max    the farthest number of links a counted user is away from the user
+     * @param status   the exit status of the method
+     * @return int    the number of users in the neighborhood, including the user. -1 if the parameters are invalid
+     */
+   public int neighborhoodSize(String id, Date date, int distance_max, SocialNetworkStatus status) {
+      if (!search.checkNeighborhoodParams(id, date, distance_max, status))
+         return -1;
+      int start = indexOf(id);
+      VersionClock.Pin pin = clock.pin();
+      try {
+         return pinnedSearch(pin).neighborhoodSize(start, date.getTime(), distance_max);
       }
-      else { // The current event falls outside our interval
-         eventOutsideInterval(link, friendID, currentEvent, intervalStart, intervalEnd, alreadyChecked, linkChange, status);
-         return true;
+      finally {
+         pin.close();
       }
-      return false;
    }
 
-   /** Helper method. Probes the link for activity between the specified intervals
-     * @param friendID the id of the friend we're linked to
-     * @param link  the Link betwwen the origianl user and friend
-     * @param currentEvent   the current date of activity we're observing
-     * @param alreadyChecked a set of User's that have already been visited during a given sequence. Prevents infinite loops
-     * @param intervalEnd the close of the window in which we look for activity
-     * @param linkChange  a set keeping track of dates on which the links change
+   /** Counts the users at each distance from the user with the given ID
+     * @param id   the user whose neighborhood is counted
+     * @param date    the date for which to check the links
+     * @param distance_max    the farthest number of links a counted user is away from the user
      * @param status   the exit status of the method
-     * @throws UninitializedObjectExcpetion  should never occur due to construction of the method
-     * @return boolean true if there are no events after the currentEvent
+     * @return int[]    the number of users at each distance, with the user at distance 0. Null if the parameters are invalid
      */
-   private boolean noMoreEvents(String friendID, Link link, Date currentEvent, HashSet<String> alreadyChecked, Date intervalEnd, HashSet<Date> linkChange, SocialNetworkStatus status) throws UninitializedObjectException {
-      // We first check it this is the last event
-      if (currentEvent == null) {
-         if (link.isActive(link.lastEvent())) { // If the link ended active, we probe from that last event to end of the interval
-            checkLinksInInterval(friendID, alreadyChecked, link.lastEvent(), intervalEnd, linkChange, status);
-         }
-         return true;
+   public int[] distanceHistogram(String id, Date date, int distance_max, SocialNetworkStatus status) {
+      if (!search.checkNeighborhoodParams(id, date, distance_max, status))
+         return null;
+      int start = indexOf(id);
+      VersionClock.Pin pin = clock.pin();
+      try {
+         return pinnedSearch(pin).distanceHistogram(start, date.getTime(), distance_max);
+      }
+      finally {
+         pin.close();
       }
-      return false;
    }
 
-   /** Helper method. Probes the link for activity between the specified intervals
-     * @param originalID the id of the User being explored from
-     * @param entry an entry from the hashMap of events which contains the information on the link we are to explore
-     * @param alreadyChecked a set of User's that have already been visited during a given sequence. Prevents infinite loops
-     * @param intervalStart  the opening date to look for activity
-     * @param intervalEnd the close of the window in which we look for activity
-     * @param linkChange  a set keeping track of dates on which the links change
+   /** Finds the number of links on the shortest path between two users, over the links active on the given date
+     * @param from   the ID of the first user
+     * @param to   the ID of the second user
+     * @param date    the date for which to check the links
      * @param status   the exit status of the method
-     * @throws UninitializedObjectExcpetion  should never occur due to construction of the method
+     * @return int    the number of links between the users. 0 if they're the same user, -1 if they aren't connected or either is not in the network
      */
-   private void getLinkActivity(String friendID, Link link, HashSet<String> alreadyChecked, Date intervalStart, Date intervalEnd, HashSet<Date> linkChange, SocialNetworkStatus status) throws UninitializedObjectException {
-      Date currentEvent = link.nextEvent(intervalStart);
-      EventLoop: while (true) {
-         // If there are no events left in the link, we check it's tail and break out
-         if(noMoreEvents(friendID, link, currentEvent, alreadyChecked, intervalEnd, linkChange, status)) {
-             break EventLoop;
-         }
-         else { // Here we have found an event for the link and we handle it
-            if (inspectEvent(friendID, link, currentEvent, alreadyChecked, intervalStart, intervalEnd, linkChange, status)) {
-               break EventLoop;
-            }
-            // Gets the next event to be tested in the next loop
-            currentEvent = link.nextEvent(currentEvent);
+   public int distance(String from, String to, Date date, SocialNetworkStatus status) {
+      if (!search.checkDistanceParams(from, to, date, status))
+         return -1;
+      status.setStatus(SocialNetworkStatus.Status.SUCCESS);
+      int first = indexOf(from);
+      int second = indexOf(to);
+      VersionClock.Pin pin = clock.pin();
+      try {
+         return pinnedSearch(pin).distance(first, second, date.getTime());
+      }
+      finally {
+         pin.close();
+      }
+   }
+
+   /** Saves the network's users and links to a binary snapshot file, which load reads back
+     * @param file   the path of the snapshot. An existing file is replaced
+     * @throws IOException  if the file can't be written
+     * @throws NullPointerException  if the path is null
+     */
+   public void save(Path file) throws IOException {
+      SocialNetworkUtility.checkNull(file, "Path");
+      VersionClock.Pin pin = clock.pin();
+      try {
+         NetworkSnapshot.write(new LiveGraph(pin.version(), userCount), file);
+      }
+      finally {
+         pin.close();
+      }
+   }
+
+   /** Restores a network from its last snapshot and the journal of changes made since, and keeps journaling changes from then on.
+     * Either file may be missing: a missing snapshot starts from an empty network, and a missing journal is created.
+     * A journal left over from before the snapshot was taken, as a crash during checkpoint leaves, is started over
+     * @param snapshot   the path of the snapshot written by checkpoint
+     * @param journal   the path of the journal
+     * @return SocialNetwork   the network as it stood after the last committed change
+     * @throws IOException  if either file can't be read, or the journal doesn't belong with the snapshot
+     * @throws NullPointerException  if either path is null
+     */
+   public static SocialNetwork recover(Path snapshot, Path journal) throws IOException {
+      SocialNetworkUtility.checkNull(snapshot, "Path");
+      SocialNetworkUtility.checkNull(journal, "Path");
+      boolean hasSnapshot = Files.exists(snapshot);
+      long base = hasSnapshot ? NetworkSnapshot.checksum(snapshot) : 0;
+      SocialNetwork net = hasSnapshot ? load(snapshot) : new SocialNetwork();
+
+      NetworkJournal log = new NetworkJournal(journal, base);
+      if (log.base() != base) {
+         if (!hasSnapshot) {
+            log.close();
+            throw new IOException("Journal follows a snapshot that is missing.");
          }
+         log.reset(base);
+      }
+      try {
+         net.replay(log);
       }
+      catch (IOException ioe) {
+         log.close();
+         throw ioe;
+      }
+      log.clearReplay();
+      net.journal = log;
+      return net;
    }
 
-   /** Helper method. Checks if a given link has been explored. If it hasn't, explores it
-     * @param originalID the id of the User being explored from
-     * @param entry an entry from the hashMap of events which contains the information on the link we are to explore
-     * @param alreadyChecked a set of User's that have already been visited during a given sequence. Prevents infinite loops
-     * @param intervalStart  the opening date to look for activity
-     * @param intervalEnd the close of the window in which we look for activity
-     * @param linkChange  a set keeping track of dates on which the links change
-     * @param status   the exit status of the method
-     * @throws UninitializedObjectExcpetion  should never occur due to construction of the method
+   /** Helper method applying the records read back from a journal. Users are added in the order they were logged, and then the
+     * establishes and tear downs are grouped by link and applied in the order they were logged. No two groups share a link, so they're applied in parallel
+     * @param log   the journal read back
+     * @throws IOException  if a record doesn't apply to the network
      */
-   private void linkBeenExplored(String originalID, Entry<String, Link> entry, HashSet<String> alreadyChecked, Date intervalStart, Date intervalEnd, HashSet<Date> linkChange, SocialNetworkStatus status) throws UninitializedObjectException {
-      
-      // Extracts data from the entry
-      String friendID = entry.getKey();
-      Link link = entry.getValue();
+   private void replay(NetworkJournal log) throws IOException {
+      for (int u = 0; u < log.replayUserCount(); u++) {
+         if (!addUser(log.replayUser(u)))
+            throw new IOException("Journal repeats user " + log.replayUser(u).getID() + ".");
+      }
 
-      // If this user has not already been explored we go on to probe the link
-      if (!alreadyChecked.contains(friendID)) {
-         HashSet<String> newCheck = (HashSet<String>)alreadyChecked.clone();
-         newCheck.add(originalID);
+      int count = log.replayCount();
+      int[] lows = new int[count];
+      int[] highs = new int[count];
+      int[] order = new int[count];
+      for (int record = 0; record < count; record++) {
+         lows[record] = log.replayLow(record);
+         highs[record] = log.replayHigh(record);
+         if (lows[record] < 0 || lows[record] >= highs[record] || highs[record] >= userCount)
+            throw new IOException("Corrupt journal record " + record + ".");
+         order[record] = record;
+      }
+      order = groupByLink(order, lows, highs);
+
+      // Finds or creates the link of each group here, since adding a link to the network touches both users' lists
+      int[] runStarts = new int[count + 1];
+      ArrayList<Link> runLinks = new ArrayList<Link>();
+      SocialNetworkStatus status = new SocialNetworkStatus();
+      int runs = 0;
+      for (int i = 0; i < count; runs++) {
+         int low = lows[order[i]];
+         int high = highs[order[i]];
+         Link link = getLink(low, high);
+         if (link == null) {
+            link = new Link();
+            link.setUsers(users[low], users[high], status);
+            addLinkToNetwork(low, high, link);
+         }
+         runLinks.add(link);
+         runStarts[runs] = i;
+         while (i < count && lows[order[i]] == low && highs[order[i]] == high)
+            i++;
+      }
+      runStarts[runs] = count;
+
+      // Every record was logged after it succeeded, so one that fails now means the journal doesn't belong to the network
+      final int[] sorted = order;
+      boolean failed = IntStream.range(0, runs).parallel().anyMatch(run -> {
+         SocialNetworkStatus runStatus = new SocialNetworkStatus();
+         for (int i = runStarts[run]; i < runStarts[run + 1]; i++) {
+            int record = sorted[i];
+            actionHelper(runLinks.get(run), log.replayDate(record), runStatus, log.replayIsEstablish(record) ? SocialNetworkUtility.Caller.ESTABLISH : SocialNetworkUtility.Caller.TEARDOWN);
+            if (runStatus.getStatus() != SocialNetworkStatus.Status.SUCCESS)
+               return true;
+         }
+         return false;
+      });
+      if (failed)
+         throw new IOException("Journal does not match the snapshot.");
+   }
 
-         getLinkActivity(friendID, link, newCheck, intervalStart, intervalEnd, linkChange, status);       
+   /** Saves a snapshot of the network and starts the journal over, so recovery only replays the changes made after this
+     * @param snapshot   the path of the snapshot. An existing file is replaced
+     * @throws IOException  if the snapshot or the journal can't be written
+     * @throws NullPointerException  if the path is null
+     */
+   public void checkpoint(Path snapshot) throws IOException {
+      SocialNetworkUtility.checkNull(snapshot, "Path");
+      lockAll();
+      try {
+         // The snapshot is on disk, contents and name, before the journal is emptied, so a crash between the two still has one or the other
+         long checksum = NetworkSnapshot.write(graph, snapshot);
+         if (journal != null)
+            journal.reset(checksum);
+      }
+      finally {
+         unlockAll();
       }
    }
 
-   /** Helper method. Called recursively to explore critical dates for a user in the network
-     * @param id the id of the User to have their links probed
-     * @param alreadyChecked a set of User's that have already been visited during a given sequence. Prevents infinite loops
-     * @param intervalStart  the opening date to look for activity
-     * @param intervalEnd the close of the window in which we look for activity
-     * @param linkChange  a set keeping track of dates on which the links change
-     * @param status   the exit status of the method
-     * @throws UninitializedObjectExcpetion  should never occur due to construction of the method
+   /** Commits any changes still in the journal and stops journaling
+     * @throws IOException  if the journal can't be written
      */
-   private void checkLinksInInterval(String id, HashSet<String> alreadyChecked, Date intervalStart, Date intervalEnd, HashSet<Date> linkChange, SocialNetworkStatus status) throws UninitializedObjectException {
-      HashMap<String, Link> currentNode = links.get(id);
-      
-      // Iterates through each of a user's links and attempts to probe them
-      for (Entry<String, Link> entry : currentNode.entrySet()) {
-         linkBeenExplored(id, entry, alreadyChecked, intervalStart, intervalEnd, linkChange, status);
+   public void closeJournal() throws IOException {
+      if (journal != null) {
+         NetworkJournal closing = journal;
+         journal = null;
+         closing.close();
       }
    }
 
-   /** Takes a set of dates of potential change and determines the actual ones using the neighborhood method
-     * @param id the User whose neighborhood we're looking at
-     * @param potentialChanges  the set of Dates in question
-     * @retrn Map<Date, Integer>   the map of trends
+   /** Restores a network saved with save. Users keep the order they were added in, and each link gets its whole history at once
+     * @param file   the path of the snapshot
+     * @return SocialNetwork   the network in the snapshot
+     * @throws IOException  if the file can't be read, is not a snapshot, is of another version, or fails its checksum
+     * @throws NullPointerException  if the path is null
      */
-   private Map<Date, Integer> potentialChangesToTrends(String id, Set<Date> potentialChanges) {
-      // Sets up the return value
-      Map<Date, Integer> trends = new HashMap<Date, Integer>();
-
-      // Makes our set of dates orderable and sorts them in chronological order
-      ArrayList<Date> dateChange = new ArrayList<Date>(potentialChanges);
-      Collections.sort(dateChange);
-
-      int currentSize = -1; // Iterates across the sorted list of dates looking for points at which the size changes so the date can be added to the map
-      for (Date d : dateChange) {
-         int sizeAtd = neighborhood(id, d, new SocialNetworkStatus()).size();
-         if (sizeAtd != currentSize) {
-            trends.put(d, sizeAtd);
-            currentSize = sizeAtd;
+   public static SocialNetwork load(Path file) throws IOException {
+      SocialNetworkUtility.checkNull(file, "Path");
+      NetworkSnapshot snapshot = NetworkSnapshot.read(file);
+      SocialNetwork net = new SocialNetwork();
+      for (int u = 0; u < snapshot.userCount(); u++) {
+         if (!net.addUser(snapshot.user(u)))
+            throw new IOException("Snapshot repeats user " + snapshot.user(u).getID() + ".");
+      }
+
+      SocialNetworkStatus status = new SocialNetworkStatus();
+      for (int l = 0; l < snapshot.linkCount(); l++) {
+         int low = snapshot.low(l);
+         int high = snapshot.high(l);
+         if (low < 0 || low >= high || high >= snapshot.userCount() || net.getLink(low, high) != null)
+            throw new IOException("Corrupt snapshot link " + l + ".");
+
+         Link link = new Link();
+         link.setUsers(net.users[low], net.users[high], status);
+         try {
+            if (!link.setEvents(snapshot.events(l)))
+               throw new IOException("Corrupt snapshot events for link " + l + ".");
+         }
+         catch (UninitializedObjectException uoe) { // The link's users were set above
+            assert false;
          }
+         net.addLinkToNetwork(low, high, link);
+         net.eventCount.add(link.eventCount());
       }
-      return trends;
+      return net;
+   }
+
+   /** Builds an index over every link's history that answers unbounded neighborhood sizes and connectivity at any date without a search.
+     * The index sees the network as it stands. Later changes to this network are not seen by the index
+     * @return ConnectivityIndex   the index of the network
+     */
+   public ConnectivityIndex connectivityIndex() {
+      VersionClock.Pin pin = clock.pin();
+      try {
+         return new ConnectivityIndex(new LiveGraph(pin.version(), userCount));
+      }
+      finally {
+         pin.close();
+      }
+   }
+
+   /** Sets how many threads share the work of large neighborhood searches. Results are the same for any setting
+     * @param parallelism   the number of threads to use. 1 or less searches on the calling thread only, which is the default
+     */
+   public void setParallelism(int parallelism) {
+      search.setParallelism(parallelism);
    }
 
    /** Returns a map with the dates at which the size of a user's neighborhood changed and the size at those dates
      * @param id  the ID of the user whose neighborhood we wanna look at
      * @param status   the exit status of the method
-     * @return HashMap<Date, Integer> the map of dates to neighborhood sizes
+     * @return HashMap<Date, Integer> the map of dates to neighborhood sizes. Null if the user is not in the network
      */
    public Map<Date, Integer> neighborhoodTrend(String id, SocialNetworkStatus status) {
+      return neighborhoodTrend(id, status, null);
+   }
 
-      HashSet<Date> linkChange = new HashSet<Date>();
-      try { // Calls a helper method to discover all dates on which potential changes could've occurred in the network
-         checkLinksInInterval(id, new HashSet<String>(), new Date(0), new Date(Long.MAX_VALUE), linkChange, status);
+   /** Returns a map with the dates at which the size of a user's neighborhood changed and the size at those dates, counting the work the sweep does into stats
+     * @param id  the ID of the user whose neighborhood we wanna look at
+     * @param status   the exit status of the method
+     * @param stats   the stats the sweep is counted into. Null to count nothing, as the method without stats does
+     * @return Map<Date, Integer> the map of dates to neighborhood sizes. Null if the user is not in the network
+     */
+   public Map<Date, Integer> neighborhoodTrend(String id, SocialNetworkStatus status, QueryStats stats) {
+      NetworkMetrics current = metrics;
+      if (current == null)
+         return trendHelper(id, status, stats);
+      long began = System.nanoTime();
+      Map<Date, Integer> trend = trendHelper(id, status, stats);
+      current.record(NetworkMetrics.Operation.NEIGHBORHOOD_TREND, began, trend == null ? status.getStatus() : SocialNetworkStatus.Status.SUCCESS);
+      return trend;
+   }
+
+   /** Helper method sweeping the history of a user's neighborhood as of the published version
+     * @param id  the ID of the user whose neighborhood we wanna look at
+     * @param status   the exit status of the method
+     * @param stats   the stats the sweep is counted into. Null to count nothing
+     * @return Map<Date, Integer> the map of dates to neighborhood sizes. Null if the user is not in the network
+     */
+   private Map<Date, Integer> trendHelper(String id, SocialNetworkStatus status, QueryStats stats) {
+      if (!search.checkTrendParams(id, status))
+         return null;
+      int start = indexOf(id);
+      VersionClock.Pin pin = clock.pin();
+      try {
+         return pinnedSearch(pin).neighborhoodTrend(start, stats);
       }
-      catch (UninitializedObjectException uoe) {
-         assert false;
+      finally {
+         pin.close();
       }
+   }
 
-      // Once we have our map of times of potential change, calculate the size at these times to find the trends.
-      Map<Date, Integer> trends = potentialChangesToTrends(id, linkChange);
-      return trends;
+   /** Compiles the network as it stands into an immutable snapshot laid out for fast reads.
+     * Later changes to this network are not seen by the snapshot.
+     * @return FrozenSocialNetwork  the snapshot of the network
+     */
+   public FrozenSocialNetwork freeze() {
+      VersionClock.Pin pin = clock.pin();
+      try {
+         return new FrozenSocialNetwork(new LiveGraph(pin.version(), userCount));
+      }
+      finally {
+         pin.close();
+      }
    }
 
-}
\ No newline at end of file
+   /** A view of the network's users and links by index as of one version, for the searches to run over */
+   private class LiveGraph implements NetworkGraph {
+
+      /** The version of the network seen. VersionClock.LATEST sees every change */
+      private long version;
+
+      /** The number of users seen. -1 sees every user added so far */
+      private int pinnedCount;
+
+      /** Creates a view of the network
+        * @param version   the version seen. Must stay pinned while the view is read
+        * @param pinnedCount   the number of users seen, read after the version was pinned. -1 to see every user
+        */
+      public LiveGraph(long version, int pinnedCount) {
+         this.version = version;
+         this.pinnedCount = pinnedCount;
+      }
+
+      public int indexOf(String id) {
+         return SocialNetwork.this.indexOf(id);
+      }
+
+      public User user(int index) {
+         return users[index];
+      }
+
+      public int userCount() {
+         return pinnedCount < 0 ? userCount : pinnedCount;
+      }
+
+      // Only steers the choice of search direction, so links added after the version may be counted
+      public long totalDegree() {
+         return totalDegree.sum();
+      }
+
+      public int degree(int index) {
+         return links[index].size(version);
+      }
+
+      public int neighbor(int index, int position) {
+         return links[index].neighbor(position);
+      }
+
+      public boolean isActive(int index, int position, long date) {
+         try {
+            return links[index].link(position).isActive(date, version);
+         }
+         catch (UninitializedObjectException uoe) { // Only valid links are added to the network
+            assert false;
+         }
+         return false;
+      }
+
+      public long nextEvent(int index, int position, long date) {
+         try {
+            return links[index].link(position).nextEvent(date, version);
+         }
+         catch (UninitializedObjectException uoe) {
+            assert false;
+         }
+         return Link.NO_EVENT;
+      }
+
+      public long previousEvent(int index, int position, long date) {
+         try {
+            return links[index].link(position).previousEvent(date, version);
+         }
+         catch (UninitializedObjectException uoe) {
+            assert false;
+         }
+         return Link.NO_EVENT;
+      }
+
+      public int eventCount(int index, int position) {
+         return links[index].link(position).eventCount(version);
+      }
+
+      public long event(int index, int position, int event) {
+         return links[index].link(position).eventAt(event);
+      }
+   }
+}
@@ -1,3 +1,10 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
 /** A collection of methods used by classes making up the Social Network.
   * @author Billy Barbaro
   */
@@ -23,4 +30,117 @@ public class SocialNetworkUtility {
       if (!sno.isValid())
          throw new UninitializedObjectException(objectType + " must be initialized before " + field + " is set.");
    }
-}
\ No newline at end of file
+
+   /** Binary searches a time ordered range of events for the first one strictly after the given time
+    * @param events   the array holding the events, in milliseconds since the epoch
+    * @param from   the position of the first event in the range
+    * @param to   the position just past the last event in the range
+    * @param date   the time in milliseconds we're looking for
+    * @return int  the position of the first event after date. to if there is none
+    */
+   public static int firstEventAfter(long[] events, int from, int to, long date) {
+      int low = from;
+      int high = to;
+
+      // Events are kept in time order, so we can halve the range we're searching each pass
+      while (low < high) {
+         int middle = (low + high) >>> 1;
+         if (events[middle] > date)
+            high = middle;
+         else
+            low = middle + 1;
+      }
+      return low;
+   }
+
+   /** Binary searches a time ordered range of events for the first one not before the given time
+    * @param events   the array holding the events, in milliseconds since the epoch
+    * @param from   the position of the first event in the range
+    * @param to   the position just past the last event in the range
+    * @param date   the time in milliseconds we're looking for
+    * @return int  the position of the first event on or after date. to if there is none
+    */
+   public static int firstEventNotBefore(long[] events, int from, int to, long date) {
+      int low = from;
+      int high = to;
+
+      while (low < high) {
+         int middle = (low + high) >>> 1;
+         if (events[middle] < date)
+            low = middle + 1;
+         else
+            high = middle;
+      }
+      return low;
+   }
+
+   /** Tells if a range of events leaves a link active at the given time.
+    *  Events alternate establish and tear down, so the link is active when an odd number of them have happened.
+    * @param events   the array holding the events, in milliseconds since the epoch
+    * @param from   the position of the first event in the range
+    * @param to   the position just past the last event in the range
+    * @param date   the time in milliseconds to be inspected
+    * @return boolean  tells if the link was active
+    */
+   public static boolean isActive(long[] events, int from, int to, long date) {
+      return (firstEventAfter(events, from, to, date) - from) % 2 == 1;
+   }
+
+   /** Gives the first event in a range after the given time
+    * @param events   the array holding the events, in milliseconds since the epoch
+    * @param from   the position of the first event in the range
+    * @param to   the position just past the last event in the range
+    * @param date   the time in milliseconds at which the inspection begins
+    * @return long  the time of the next event. Link.NO_EVENT if there is none
+    */
+   public static long nextEvent(long[] events, int from, int to, long date) {
+      int after = firstEventAfter(events, from, to, date);
+      if (after == to)
+         return Link.NO_EVENT;
+      return events[after];
+   }
+
+   /** Gives the event in a range right before the given time, skipping any events at exactly that time
+    * @param events   the array holding the events, in milliseconds since the epoch
+    * @param from   the position of the first event in the range
+    * @param to   the position just past the last event in the range
+    * @param date   the time in milliseconds at which the inspection begins
+    * @return long  the time of the previous event. Link.NO_EVENT if there is none
+    */
+   public static long previousEvent(long[] events, int from, int to, long date) {
+      int after = firstEventAfter(events, from, to, date);
+
+      // The date is before every event, so there's nothing before it
+      if (after == from)
+         return Link.NO_EVENT;
+      if (events[after - 1] != date)
+         return events[after - 1];
+
+      // Every event on the requested date is skipped, so we jump to the one right before the first of them. The first event is as far back as we go
+      int previous = firstEventNotBefore(events, from, to, date) - 1;
+      if (previous < from)
+         return events[from];
+      return events[previous];
+   }
+
+   /** Moves a file written beside its target into place, and makes the move durable by syncing the directory that holds it.
+     * The file's contents must already be forced to disk, or a crash could leave the new name on unwritten data
+     * @param temporary   the file written
+     * @param target   the path it's moved to, replacing any file there
+     * @throws IOException  if the file can't be moved or the directory can't be synced
+     */
+   public static void moveDurably(Path temporary, Path target) throws IOException {
+      Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+      FileChannel directory;
+      try {
+         directory = FileChannel.open(target.toAbsolutePath().getParent(), StandardOpenOption.READ);
+      }
+      catch (IOException ioe) { // Some platforms, such as Windows, can't open a directory, and make a move durable without it
+         return;
+      }
+      try (directory) {
+         directory.force(true);
+      }
+   }
+}
@@ -0,0 +1,73 @@
+import org.junit.*;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/** Unit tests the AdjacencyList used by the Social Network.
+  * @author Billy Barbaro
+  */
+
+public class AdjacencyListTester {
+
+   /** Tests adding and finding links while the list is searched directly */
+   @Test
+   public void testSmallList() {
+      AdjacencyList list = new AdjacencyList();
+      Link link1 = new Link();
+      Link link2 = new Link();
+
+      assertEquals("A new list should be empty.", list.size(), 0);
+      assertNull("A new list should have no links.", list.get(3));
+
+      list.put(3, link1);
+      list.put(7, link2);
+      assertEquals("Size incorrect.", list.size(), 2);
+      assertSame("Link not found.", list.get(3), link1);
+      assertSame("Link not found.", list.get(7), link2);
+      assertNull("Missing neighbor should have no link.", list.get(5));
+
+      // Putting the same neighbor again replaces its link
+      list.put(3, link2);
+      assertEquals("Replacing a link should not change the size.", list.size(), 2);
+      assertSame("Link not replaced.", list.get(3), link2);
+      assertEquals("Neighbors kept in order added.", list.neighbor(0), 3);
+      assertSame("Links kept in order added.", list.link(1), link2);
+   }
+
+   /** Tests adding and finding links once the list has a lookup table */
+   @Test
+   public void testLargeList() {
+      AdjacencyList list = new AdjacencyList();
+      Link[] added = new Link[1000];
+
+      for (int i = 0; i < added.length; i++) {
+         added[i] = new Link();
+         list.put(i * 31, added[i]);
+      }
+
+      assertEquals("Size incorrect.", list.size(), 1000);
+      for (int i = 0; i < added.length; i++) {
+         assertSame("Link not found.", list.get(i * 31), added[i]);
+         assertEquals("Neighbors kept in order added.", list.neighbor(i), i * 31);
+      }
+      assertNull("Missing neighbor should have no link.", list.get(30));
+   }
+
+   /** Tests that links added under a version are left out for readers pinned to an earlier one */
+   @Test
+   public void testVersions() {
+      AdjacencyList list = new AdjacencyList();
+      list.put(1, new Link());
+      list.put(2, new Link(), 5, 0);
+      list.put(3, new Link(), 8, 0);
+      assertEquals("Latest reader should see every link.", 3, list.size());
+      assertEquals("Latest reader should see every link.", 3, list.size(VersionClock.LATEST));
+      assertEquals("Reader before both versions sees neither link.", 1, list.size(4));
+      assertEquals("Reader between the versions sees the first link.", 2, list.size(5));
+      assertEquals("Reader after both versions sees both links.", 3, list.size(8));
+
+      // Once every reader sees past a version, its entry is dropped and the links stay in view
+      list.put(4, new Link(), 9, 8);
+      assertEquals("Settled links should stay in view.", 3, list.size(4));
+      assertEquals("Newest link should be left out.", 3, list.size(8));
+   }
+}
@@ -0,0 +1,64 @@
+import org.junit.*;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import java.util.Date;
+
+/** Unit tests the ConnectivityIndex against the neighborhood searches.
+  * @author Billy Barbaro
+  */
+
+public class ConnectivityIndexTester {
+
+   /** Tests the index on the small test network, including the dates around its events */
+   @Test
+   public void testTestNetwork() {
+      SocialNetwork net = FrozenSocialNetworkTester.createTestNetwork();
+      ConnectivityIndex index = net.connectivityIndex();
+      SocialNetworkStatus status = new SocialNetworkStatus();
+
+      for (String id : FrozenSocialNetworkTester.IDS) {
+         for (Date date : FrozenSocialNetworkTester.DATES) {
+            assertEquals("Size differs from the neighborhood.", net.neighborhood(id, date, status).size(), index.neighborhoodSize(id, date, status));
+            assertEquals("Size should succeed", SocialNetworkStatus.Status.SUCCESS, status.getStatus());
+            for (String other : FrozenSocialNetworkTester.IDS)
+               assertEquals("Connectivity differs from the distance.", net.distance(id, other, date, status) >= 0, index.isConnected(id, other, date, status));
+         }
+      }
+
+      assertEquals("Invalid user should return -1", -1, index.neighborhoodSize("Lenny", new Date(), status));
+      assertEquals("Invalid users should change status", SocialNetworkStatus.Status.INVALID_USERS, status.getStatus());
+      assertFalse("Invalid user should not be connected", index.isConnected("Tom", "Lenny", new Date(), status));
+   }
+
+   /** Tests the index on random networks at every millisecond their links change over */
+   @Test
+   public void testRandomNetworks() {
+      for (long seed = 0; seed < 20; seed++) {
+         FrozenSocialNetwork frozen = NeighborhoodSearchTester.createRandomNetwork(200, 150 + (int)seed * 20, seed).freeze();
+         ConnectivityIndex index = frozen.connectivityIndex();
+         NeighborhoodSearch search = new NeighborhoodSearch(frozen);
+
+         for (long date = -1; date < 1500; date += 7) {
+            for (int start = 0; start < 200; start += 13) {
+               assertEquals("Size differs from the neighborhood.", search.neighborhoodSize(start, date, Integer.MAX_VALUE), index.neighborhoodSize(start, date));
+               for (int other = 0; other < 200; other += 17)
+                  assertEquals("Connectivity differs from the distance.", search.distance(start, other, date) >= 0, index.isConnected(start, other, date));
+            }
+         }
+      }
+   }
+
+   /** Tests that users added after the index was built have no links in it */
+   @Test
+   public void testLaterUsers() {
+      SocialNetwork net = FrozenSocialNetworkTester.createTestNetwork();
+      ConnectivityIndex index = net.connectivityIndex();
+      SocialNetworkStatus status = new SocialNetworkStatus();
+
+      User lenny = new User();
+      lenny.setID("Lenny");
+      net.addUser(lenny);
+      assertEquals("Later user should be alone", 1, index.neighborhoodSize("Lenny", new Date(1990, 1, 5), status));
+      assertFalse("Later user should not be connected", index.isConnected("Lenny", "Tom", new Date(1990, 1, 5), status));
+   }
+}
@@ -0,0 +1,202 @@
+import org.junit.*;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.Date;
+
+/** Unit tests the FrozenSocialNetwork snapshot against the live Social Network it was made from.
+  * @author Billy Barbaro
+  */
+
+public class FrozenSocialNetworkTester {
+
+   /** The IDs of the users in the test network */
+   public static final String[] IDS = {"Tom", "Jim", "Tim", "Jon", "Bob", "Edd", "Joe"};
+
+   /** The dates at which the test network is checked */
+   public static final Date[] DATES = {new Date(1989, 1, 1), new Date(1990, 1, 1), new Date(1990, 1, 2), new Date(1990, 1, 3), new Date(1990, 1, 5),
+                                       new Date(1990, 1, 7), new Date(1990, 1, 8), new Date(1990, 1, 9), new Date(2000, 1, 2), new Date(2000, 6, 2)};
+
+   /** Links two users in a network, establishing and tearing the link down in turn on the given dates
+   * @param net   the network holding the users
+   * @param first   the ID of one user
+   * @param second  the ID of the other user
+   * @param dates   the dates of the events on the link
+   */
+   private static void link(SocialNetwork net, String first, String second, Date... dates) {
+      SocialNetworkStatus status = new SocialNetworkStatus();
+      Set<String> ids = new HashSet<String>();
+      ids.add(first);
+      ids.add(second);
+
+      for (int i = 0; i < dates.length; i++) {
+         if (i % 2 == 0)
+            net.establishLink(ids, dates[i], status);
+         else
+            net.tearDownLink(ids, dates[i], status);
+      }
+   }
+
+   /** Creates the Social Network used to test neighborhoods, with links that come and go over time
+   * @return SocialNetwork  a SocialNetwork with the users in IDS
+   */
+   public static SocialNetwork createTestNetwork() {
+      SocialNetwork net = new SocialNetwork();
+      for (String id : IDS) {
+         User user = new User();
+         user.setID(id);
+         net.addUser(user);
+      }
+
+      link(net, "Tim", "Jim", new Date(2000, 1, 1), new Date(2000, 5, 5));
+      link(net, "Tom", "Jon", new Date(1990, 1, 1), new Date(1990, 1, 3), new Date(1990, 1, 4));
+      link(net, "Jon", "Bob", new Date(1990, 1, 1), new Date(1990, 1, 4), new Date(1990, 1, 5));
+      link(net, "Bob", "Edd", new Date(1990, 1, 2), new Date(1990, 1, 8), new Date(1990, 1, 9));
+      link(net, "Bob", "Joe", new Date(1990, 1, 2), new Date(1990, 1, 6));
+      link(net, "Joe", "Tom", new Date(1990, 1, 3), new Date(1990, 1, 7), new Date(1990, 1, 9));
+      return net;
+   }
+
+   /** Tests that the snapshot has the same users as the network */
+   @Test
+   public void testMembers() {
+      SocialNetwork net = createTestNetwork();
+      FrozenSocialNetwork frozen = net.freeze();
+
+      for (String id : IDS) {
+         assertTrue("Member not found in snapshot.", frozen.isMember(id));
+         assertSame("User not gotten.", frozen.getUser(id), net.getUser(id));
+      }
+      assertFalse("Nonexistent member found in snapshot.", frozen.isMember("Lenny"));
+      assertNull("Broke when nonexistent user passed in.", frozen.getUser("Lenny"));
+   }
+
+   /** Tests that links are active in the snapshot exactly when they are in the network */
+   @Test
+   public void testIsActive() {
+      SocialNetwork net = createTestNetwork();
+      FrozenSocialNetwork frozen = net.freeze();
+
+      for (String first : IDS) {
+         for (String second : IDS) {
+            Set<String> ids = new HashSet<String>();
+            ids.add(first);
+            ids.add(second);
+            for (Date date : DATES)
+               assertEquals("isActive differs from the network.", frozen.isActive(ids, date), net.isActive(ids, date));
+         }
+      }
+   }
+
+   /** Tests that the snapshot finds the same neighborhoods and trends as the network */
+   @Test
+   public void testNeighborhood() {
+      SocialNetwork net = createTestNetwork();
+      FrozenSocialNetwork frozen = net.freeze();
+      SocialNetworkStatus status = new SocialNetworkStatus();
+
+      for (String id : IDS) {
+         for (Date date : DATES) {
+            assertEquals("Neighborhood differs from the network.", frozen.neighborhood(id, date, status), net.neighborhood(id, date, status));
+            assertEquals("Neighborhood differs from the network.", frozen.neighborhood(id, date, 2, status), net.neighborhood(id, date, 2, status));
+         }
+         assertEquals("Trends differ from the network.", frozen.neighborhoodTrend(id, status), net.neighborhoodTrend(id, status));
+      }
+      assertNull("Invalid user should have no trend.", frozen.neighborhoodTrend("Lenny", status));
+      assertEquals("Invalid users should change status.", SocialNetworkStatus.Status.INVALID_USERS, status.getStatus());
+
+      // Changes to the network after it was frozen are not seen
+      link(net, "Jim", "Joe", new Date(1980, 1, 1));
+      assertEquals("Snapshot should not change with the network.", frozen.neighborhood("Jim", new Date(1990, 1, 1), status).size(), 1);
+
+      assertNull("Invalid user should return null", frozen.neighborhood("Lenny", new Date(2000, 6, 2), status));
+      assertEquals("Invalid users should change status", status.getStatus(), SocialNetworkStatus.Status.INVALID_USERS);
+   }
+
+   /** Tests that the counts of a neighborhood match the set of Friends, on the network and the snapshot */
+   @Test
+   public void testNeighborhoodSize() throws UninitializedObjectException {
+      SocialNetwork net = createTestNetwork();
+      FrozenSocialNetwork frozen = net.freeze();
+      SocialNetworkStatus status = new SocialNetworkStatus();
+
+      for (String id : IDS) {
+         for (Date date : DATES) {
+            Set<Friend> friends = net.neighborhood(id, date, 2, status);
+            assertEquals("Size differs from the neighborhood.", friends.size(), net.neighborhoodSize(id, date, 2, status));
+            assertEquals("Size differs from the neighborhood.", friends.size(), frozen.neighborhoodSize(id, date, 2, status));
+            assertEquals("Size differs from the neighborhood.", net.neighborhood(id, date, status).size(), net.neighborhoodSize(id, date, status));
+
+            // Each distance in the histogram counts the friends at that distance
+            int[] histogram = net.distanceHistogram(id, date, 2, status);
+            assertArrayEquals("Histogram differs from the snapshot's.", histogram, frozen.distanceHistogram(id, date, 2, status));
+            assertEquals("User should be alone at distance 0.", 1, histogram[0]);
+            int total = 0;
+            for (int distance = 0; distance < histogram.length; distance++) {
+               int count = 0;
+               for (Friend friend : friends) {
+                  if (friend.getDistance() == distance)
+                     count++;
+               }
+               assertEquals("Histogram count differs from the neighborhood.", count, histogram[distance]);
+               total += histogram[distance];
+            }
+            assertEquals("Histogram should count every friend.", friends.size(), total);
+         }
+      }
+
+      assertEquals("Invalid user should return -1", -1, net.neighborhoodSize("Lenny", new Date(2000, 6, 2), status));
+      assertEquals("Invalid users should change status", SocialNetworkStatus.Status.INVALID_USERS, status.getStatus());
+      assertNull("Invalid distance should return null", frozen.distanceHistogram("Tom", new Date(2000, 6, 2), -1, status));
+      assertEquals("Invalid distance should change status", SocialNetworkStatus.Status.INVALID_DISTANCE, status.getStatus());
+   }
+
+   /** A graph of three users, the first linked to the other two, claiming more links or events than it holds */
+   private static class HugeGraph implements NetworkGraph {
+
+      /** The links each user claims */
+      private int degree;
+
+      /** The events each link claims */
+      private int eventCount;
+
+      public HugeGraph(int degree, int eventCount) {
+         this.degree = degree;
+         this.eventCount = eventCount;
+      }
+
+      public int indexOf(String id) { return Integer.parseInt(id); }
+      public User user(int index) {
+         User user = new User();
+         user.setID(Integer.toString(index));
+         return user;
+      }
+      public int userCount() { return 3; }
+      public long totalDegree() { return 3L * degree; }
+      public int degree(int index) { return degree; }
+      public int neighbor(int index, int position) { return index == 0 ? position + 1 : 0; }
+      public boolean isActive(int index, int position, long date) { return false; }
+      public long nextEvent(int index, int position, long date) { return Link.NO_EVENT; }
+      public long previousEvent(int index, int position, long date) { return Link.NO_EVENT; }
+      public int eventCount(int index, int position) { return eventCount; }
+      public long event(int index, int position, int event) { return event; }
+   }
+
+   /** Tests that a graph with more link ends or events than an array holds is turned away up front, rather than wrapping around */
+   @Test
+   public void testTooLarge() {
+      try {
+         new FrozenSocialNetwork(new HugeGraph(1 << 30, 1));
+         fail("Too many links should throw");
+      }
+      catch (IllegalArgumentException iae) {
+      }
+      try {
+         new FrozenSocialNetwork(new HugeGraph(2, 1 << 30));
+         fail("Too many events should throw");
+      }
+      catch (IllegalArgumentException iae) {
+      }
+   }
+}
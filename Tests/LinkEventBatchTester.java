@@ -0,0 +1,122 @@
+import org.junit.*;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.Date;
+import java.util.Random;
+import java.util.Arrays;
+
+/** Unit tests the LinkEventBatch and applying it to the Social Network.
+  * @author Billy Barbaro
+  */
+
+public class LinkEventBatchTester {
+
+   /** Tests that records are kept as added */
+   @Test
+   public void testRecords() {
+      LinkEventBatch batch = new LinkEventBatch(1);
+      for (int i = 0; i < 100; i++) {
+         if (i % 2 == 0)
+            batch.establish("a" + i, "b" + i, i);
+         else
+            batch.tearDown("a" + i, "b" + i, i);
+      }
+      assertEquals("Batch should hold every record", 100, batch.size());
+      for (int i = 0; i < 100; i++) {
+         assertEquals("First user not kept", "a" + i, batch.first(i));
+         assertEquals("Second user not kept", "b" + i, batch.second(i));
+         assertEquals("Date not kept", i, batch.date(i));
+         assertEquals("Kind of event not kept", i % 2 == 0, batch.isEstablish(i));
+      }
+   }
+
+   /** Tests the status of each kind of record */
+   @Test
+   public void testStatuses() {
+      SocialNetwork net = FrozenSocialNetworkTester.createTestNetwork();
+      LinkEventBatch batch = new LinkEventBatch();
+
+      // Out of order records for one link are applied in date order
+      batch.tearDown("Tim", "Tom", 300);
+      batch.establish("Tom", "Tim", 100);
+      batch.establish("Tom", "Tim", 200);
+      batch.establish("Tom", "Lenny", 100);
+      batch.establish("Tom", "Tom", 100);
+      batch.tearDown("Jim", "Joe", 100);
+      batch.establish("Jim", "Tim", 100);
+
+      SocialNetworkStatus.Status[] statuses = net.applyEvents(batch);
+      assertEquals("Last tear down should succeed", SocialNetworkStatus.Status.SUCCESS, statuses[0]);
+      assertEquals("Earliest establish should succeed", SocialNetworkStatus.Status.SUCCESS, statuses[1]);
+      assertEquals("Establishing an active link should fail", SocialNetworkStatus.Status.ALREADY_ACTIVE, statuses[2]);
+      assertEquals("Unknown user should be invalid", SocialNetworkStatus.Status.INVALID_USERS, statuses[3]);
+      assertEquals("Linking a user to themselves should be invalid", SocialNetworkStatus.Status.INVALID_USERS, statuses[4]);
+      assertEquals("Tearing down a missing link should fail", SocialNetworkStatus.Status.ALREADY_INACTIVE, statuses[5]);
+      assertEquals("Events before a link's last one should fail", SocialNetworkStatus.Status.INVALID_DATE, statuses[6]);
+
+      Set<String> ids = new HashSet<String>();
+      ids.add("Tom");
+      ids.add("Tim");
+      assertTrue("Link should be active between its events", net.isActive(ids, new Date(250)));
+      assertFalse("Link should be torn down", net.isActive(ids, new Date(300)));
+      ids.clear();
+      ids.add("Jim");
+      ids.add("Joe");
+      assertFalse("Failed tear down should not make a link", net.isActive(ids, new Date(300)));
+   }
+
+   /** Tests that a batch leaves the network as the single calls would, applied in date order */
+   @Test
+   public void testAgainstSingleCalls() {
+      SocialNetwork batched = NeighborhoodSearchTester.createRandomNetwork(100, 100, 7);
+      SocialNetwork single = NeighborhoodSearchTester.createRandomNetwork(100, 100, 7);
+      batched.setCacheCapacity(20);
+      Random random = new Random(8);
+      LinkEventBatch batch = new LinkEventBatch();
+      for (int i = 0; i < 5000; i++) {
+         String first = "user" + random.nextInt(110);
+         String second = "user" + random.nextInt(110);
+         long date = 400 + random.nextInt(2000);
+         if (random.nextBoolean())
+            batch.establish(first, second, date);
+         else
+            batch.tearDown(first, second, date);
+      }
+
+      // Fills the cache, so the batch has to drop what it changes
+      SocialNetworkStatus status = new SocialNetworkStatus();
+      for (int i = 0; i < 20; i++)
+         batched.neighborhood("user" + i, new Date(3000), status);
+
+      SocialNetworkStatus.Status[] statuses = batched.applyEvents(batch);
+
+      // Applies the records one at a time by date, keeping the order of records on the same date
+      Integer[] order = new Integer[batch.size()];
+      for (int i = 0; i < order.length; i++)
+         order[i] = i;
+      Arrays.sort(order, (a, b) -> Long.compare(batch.date(a), batch.date(b)));
+      for (int record : order) {
+         Set<String> ids = new HashSet<String>();
+         ids.add(batch.first(record));
+         ids.add(batch.second(record));
+         status.setStatus(null);
+         if (batch.isEstablish(record))
+            single.establishLink(ids, new Date(batch.date(record)), status);
+         else
+            single.tearDownLink(ids, new Date(batch.date(record)), status);
+
+         // A single tear down of a link that was never made leaves the status alone
+         SocialNetworkStatus.Status expected = status.getStatus() == null ? SocialNetworkStatus.Status.ALREADY_INACTIVE : status.getStatus();
+         if (ids.size() == 1)
+            expected = SocialNetworkStatus.Status.INVALID_USERS;
+         assertEquals("Record status differs from a single call", expected, statuses[record]);
+      }
+
+      for (int i = 0; i < 100; i++) {
+         for (long date = 0; date < 2600; date += 200)
+            assertEquals("Networks differ after the batch", single.neighborhood("user" + i, new Date(date), status), batched.neighborhood("user" + i, new Date(date), status));
+      }
+   }
+}
@@ -6,6 +6,7 @@ import org.junit.rules.ExpectedException;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.Date;
+import java.util.Arrays;
 
 /** Unit tests the Link object in the Social Network.
   * @author Billy Barbaro
@@ -132,6 +133,15 @@ public class LinkTester {
       link1.setUsers(testGrp6, status);
       assertEquals("Can't set new users to a link.", status.getStatus(), SocialNetworkStatus.Status.ALREADY_VALID);
 
+      // Users can also be given as a pair
+      Link link2 = new Link();
+      link2.setUsers(test1, test1, status);
+      assertEquals("A link can't be between a user and themself.", status.getStatus(), SocialNetworkStatus.Status.INVALID_USERS);
+      link2.setUsers(test3, test1, status);
+      assertEquals("Set users failed.", status.getStatus(), SocialNetworkStatus.Status.SUCCESS);
+      assertEquals("Links between the same users should be equal.", link2, link1);
+      assertEquals("Links between the same users should have the same hash.", link2.hashCode(), link1.hashCode());
+
       // This should throw an exception
       setUserNull.expect(NullPointerException.class);
       setUserNull.expectMessage("Users may not be null.");
@@ -386,6 +396,121 @@ public class LinkTester {
       assertEquals(link2.previousEvent(new Date(2000, 2, 2)), new Date(2000, 1, 1));
    }
 
+   /** Tests the event lookups on a link that has been established and torn down many times */
+   @Test
+   public void testLongHistory() throws UninitializedObjectException {
+
+      Link link1 = createTestLink();
+      Link link2 = createTestLink();
+      SocialNetworkStatus status = new SocialNetworkStatus();
+
+      // A link that is up for 5 milliseconds out of every 10
+      for (int i = 0; i < 500; i++) {
+         link1.establish(new Date(i * 10), status);
+         link1.tearDown(new Date(i * 10 + 5), status);
+      }
+
+      // A link that is torn down and re-established on the same date every time
+      link2.establish(new Date(0), status);
+      for (int i = 1; i < 500; i++) {
+         link2.tearDown(new Date(i * 10), status);
+         link2.establish(new Date(i * 10), status);
+      }
+
+      assertTrue("Link should be active.", link1.isActive(new Date(2503)));
+      assertFalse("Link should be inactive.", link1.isActive(new Date(2507)));
+      assertTrue("Link should be active on the day it is established.", link1.isActive(new Date(4990)));
+      assertFalse("Link should be inactive after the last tear down.", link1.isActive(new Date(10000)));
+
+      assertEquals("Next event incorrect.", link1.nextEvent(new Date(2503)), new Date(2505));
+      assertEquals("Next event incorrect when on the same date as an event.", link1.nextEvent(new Date(2500)), new Date(2505));
+      assertEquals("Next event incorrect when input before original date.", link1.nextEvent(new Date(-1)), new Date(0));
+      assertNull("Next event incorrect when after all events.", link1.nextEvent(new Date(4995)));
+
+      assertEquals(link1.previousEvent(new Date(2500)), new Date(2495));
+      assertEquals(link1.previousEvent(new Date(2503)), new Date(2500));
+      assertEquals(link1.previousEvent(new Date(0)), new Date(0));
+
+      // Events on the same date as the one asked for are skipped over
+      assertTrue("Link should be active.", link2.isActive(new Date(2500)));
+      assertEquals(link2.previousEvent(new Date(2500)), new Date(2490));
+      assertEquals(link2.previousEvent(new Date(10)), new Date(0));
+      assertEquals(link2.nextEvent(new Date(2500)), new Date(2510));
+      assertEquals(link2.previousEvent(new Date(6000)), new Date(4990));
+   }
+
+   /** Tests the millisecond versions of the event methods */
+   @Test
+   public void testMillisecondEvents() throws UninitializedObjectException {
+
+      Link link1 = createTestLink();
+      SocialNetworkStatus status = new SocialNetworkStatus();
+
+      link1.tearDown(100L, status);
+      assertEquals("Inactive link cannot be torn down.", status.getStatus(), SocialNetworkStatus.Status.ALREADY_INACTIVE);
+      link1.establish(100L, status);
+      assertEquals("Link was not established.", status.getStatus(), SocialNetworkStatus.Status.SUCCESS);
+      link1.tearDown(50L, status);
+      assertEquals("Link cannot be torn down before it was established.", status.getStatus(), SocialNetworkStatus.Status.INVALID_DATE);
+      link1.tearDown(200L, status);
+      link1.establish(300L, status);
+
+      assertTrue("Link should be active.", link1.isActive(150L));
+      assertFalse("Link should be inactive.", link1.isActive(250L));
+      assertEquals("Next event incorrect.", link1.nextEvent(150L), 200L);
+      assertEquals("Next event incorrect when after all events.", link1.nextEvent(300L), Link.NO_EVENT);
+      assertEquals("Previous event incorrect.", link1.previousEvent(250L), 200L);
+      assertEquals("Previous event incorrect when before all events.", link1.previousEvent(50L), Link.NO_EVENT);
+
+      // The Date methods see the same history
+      assertEquals("Last Event is incorrect.", link1.lastEvent(), new Date(300L));
+      assertTrue("Link should be active.", link1.isActive(new Date(150L)));
+   }
+
+   /** Tests giving a link its whole history at once */
+   @Rule
+   public ExpectedException setEventsUninitialized = ExpectedException.none();
+   @Test
+   public void testSetEvents() throws UninitializedObjectException {
+
+      long[] history = {5L, 100L, 200L, 300L, 7L};
+      Link link1 = createTestLink();
+      SocialNetworkStatus status = new SocialNetworkStatus();
+
+      assertFalse("Out of order events should be refused.", link1.setEvents(Arrays.copyOfRange(history, 2, 5)));
+      assertTrue("Events were not set.", link1.setEvents(Arrays.copyOfRange(history, 1, 4)));
+      assertTrue("Link should be active.", link1.isActive(150L));
+      assertFalse("Link should be inactive.", link1.isActive(250L));
+      assertTrue("Link should be active.", link1.isActive(350L));
+      link1.tearDown(400L, status);
+      assertEquals("Set link should keep taking events.", status.getStatus(), SocialNetworkStatus.Status.SUCCESS);
+      assertFalse("Link with events should refuse a new history.", link1.setEvents(Arrays.copyOfRange(history, 1, 4)));
+
+      // This should throw an exception
+      setEventsUninitialized.expect(UninitializedObjectException.class);
+      new Link().setEvents(Arrays.copyOfRange(history, 0, 1));
+   }
+
+   /** Tests that events added under a version are left out for readers pinned to an earlier one */
+   @Test
+   public void testVersions() throws UninitializedObjectException {
+      Link link1 = createTestLink();
+      SocialNetworkStatus status = new SocialNetworkStatus();
+      link1.establish(100L, status);
+      link1.tearDown(200L, 3, 0, status);
+      assertEquals("Versioned tear down failed.", status.getStatus(), SocialNetworkStatus.Status.SUCCESS);
+      link1.establish(300L, 6, 0, status);
+
+      assertEquals("Latest reader should see every event.", 3, link1.eventCount(VersionClock.LATEST));
+      assertEquals("Reader before the versions sees the first event only.", 1, link1.eventCount(2));
+      assertTrue("Tear down after the pinned version should be left out.", link1.isActive(250L, 2));
+      assertFalse("Tear down at the pinned version should be seen.", link1.isActive(250L, 3));
+      assertEquals("Next event after the pinned version should be left out.", Link.NO_EVENT, link1.nextEvent(150L, 2));
+      assertEquals("Next event at the pinned version should be seen.", 200L, link1.nextEvent(150L, 3));
+      assertEquals("Previous event after the pinned version should be left out.", 100L, link1.previousEvent(350L, 2));
+      assertEquals("Previous event should be seen by the latest reader.", 300L, link1.previousEvent(350L));
+   }
+
    /** Tests the toString method */
    @Test
    public void testToString() {
@@ -0,0 +1,196 @@
+import org.junit.*;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.Date;
+import java.util.Random;
+
+/** Unit tests the NeighborhoodCache through the Social Network.
+  * @author Billy Barbaro
+  */
+
+public class NeighborhoodCacheTester {
+
+   /** Tests that repeated queries hit the cache and different ones miss */
+   @Test
+   public void testHitsAndMisses() {
+      SocialNetwork net = FrozenSocialNetworkTester.createTestNetwork();
+      SocialNetworkStatus status = new SocialNetworkStatus();
+      assertEquals("Caching should be off by default", 0, net.getCacheMisses());
+
+      net.setCacheCapacity(2);
+      Set<Friend> first = net.neighborhood("Tom", new Date(1990, 1, 5), status);
+      assertEquals("First query should miss", 1, net.getCacheMisses());
+      assertSame("Repeated query should come from the cache", first, net.neighborhood("Tom", new Date(1990, 1, 5), status));
+      assertEquals("Repeated query should hit", 1, net.getCacheHits());
+
+      // A different date or distance is a different query
+      net.neighborhood("Tom", new Date(1990, 1, 6), status);
+      net.neighborhood("Tom", new Date(1990, 1, 5), 1, status);
+      assertEquals("New queries should miss", 3, net.getCacheMisses());
+
+      // The first query is now the least recently used of three, so it was evicted
+      net.neighborhood("Tom", new Date(1990, 1, 5), status);
+      assertEquals("Evicted query should miss", 4, net.getCacheMisses());
+
+      try {
+         first.clear();
+         fail("Cached neighborhoods should be read only");
+      }
+      catch (UnsupportedOperationException e) {
+      }
+
+      net.setCacheCapacity(0);
+      assertEquals("Turning caching off should reset the counters", 0, net.getCacheHits());
+   }
+
+   /** Tests that changes to links drop exactly the neighborhoods they could change */
+   @Test
+   public void testInvalidation() {
+      SocialNetwork net = FrozenSocialNetworkTester.createTestNetwork();
+      SocialNetworkStatus status = new SocialNetworkStatus();
+      net.setCacheCapacity(100);
+
+      Set<Friend> jim = net.neighborhood("Jim", new Date(1990, 1, 5), status);
+      Set<Friend> tom = net.neighborhood("Tom", new Date(1990, 1, 5), status);
+      Set<Friend> tomBefore = net.neighborhood("Tom", new Date(1990, 1, 1), status);
+
+      // Linking Tom to Tim on the 3rd changes Tom's neighborhood on the 5th, but not on the 1st, and not Jim's, which reached neither of them
+      HashSet<String> ids = new HashSet<String>();
+      ids.add("Tom");
+      ids.add("Tim");
+      net.establishLink(ids, new Date(1990, 1, 3), status);
+
+      assertNotSame("Neighborhood reaching the link should be dropped", tom, net.neighborhood("Tom", new Date(1990, 1, 5), status));
+      assertSame("Neighborhood before the change should be kept", tomBefore, net.neighborhood("Tom", new Date(1990, 1, 1), status));
+      assertSame("Neighborhood reaching neither user should be kept", jim, net.neighborhood("Jim", new Date(1990, 1, 5), status));
+
+      // A failed change drops nothing
+      long misses = net.getCacheMisses();
+      net.establishLink(ids, new Date(1990, 1, 4), status);
+      assertEquals("Link should already be active", SocialNetworkStatus.Status.ALREADY_ACTIVE, status.getStatus());
+      net.neighborhood("Tom", new Date(1990, 1, 5), status);
+      assertEquals("Failed change should keep the cache", misses, net.getCacheMisses());
+   }
+
+   /** Tests that evicted neighborhoods leave nothing behind for later changes to trip over */
+   @Test
+   public void testEvictedThenChanged() {
+      SocialNetwork net = FrozenSocialNetworkTester.createTestNetwork();
+      SocialNetworkStatus status = new SocialNetworkStatus();
+      net.setCacheCapacity(1);
+
+      // Jim's query evicts Tom's, so the change reaching Tom has nothing to drop
+      net.neighborhood("Tom", new Date(1990, 1, 5), status);
+      Set<Friend> jim = net.neighborhood("Jim", new Date(1990, 1, 5), status);
+      HashSet<String> ids = new HashSet<String>();
+      ids.add("Tom");
+      ids.add("Tim");
+      net.establishLink(ids, new Date(1990, 1, 3), status);
+      assertEquals("Link should be made", SocialNetworkStatus.Status.SUCCESS, status.getStatus());
+      assertSame("Neighborhood reaching neither user should be kept", jim, net.neighborhood("Jim", new Date(1990, 1, 5), status));
+
+      // Tom's neighborhood is cached again, and a batch changing its link drops it
+      Set<Friend> tom = net.neighborhood("Tom", new Date(1990, 1, 5), status);
+      LinkEventBatch batch = new LinkEventBatch();
+      batch.tearDown("Tom", "Tim", new Date(1990, 1, 4).getTime());
+      net.applyEvents(batch);
+      assertNotSame("Neighborhood reaching the batch's link should be dropped", tom, net.neighborhood("Tom", new Date(1990, 1, 5), status));
+   }
+
+   /** A graph that runs an action the first time one of its links is checked, standing in for a write made while a search runs */
+   private static class InterruptedGraph implements NetworkGraph {
+
+      /** The graph being searched */
+      private NetworkGraph graph;
+
+      /** The action still to run. Null once it has run */
+      private Runnable action;
+
+      public InterruptedGraph(NetworkGraph graph) {
+         this.graph = graph;
+      }
+
+      public int indexOf(String id) { return graph.indexOf(id); }
+      public User user(int index) { return graph.user(index); }
+      public int userCount() { return graph.userCount(); }
+      public long totalDegree() { return graph.totalDegree(); }
+      public int degree(int index) { return graph.degree(index); }
+      public int neighbor(int index, int position) { return graph.neighbor(index, position); }
+      public long nextEvent(int index, int position, long date) { return graph.nextEvent(index, position, date); }
+      public long previousEvent(int index, int position, long date) { return graph.previousEvent(index, position, date); }
+      public int eventCount(int index, int position) { return graph.eventCount(index, position); }
+      public long event(int index, int position, int event) { return graph.event(index, position, event); }
+
+      public boolean isActive(int index, int position, long date) {
+         Runnable run = action;
+         action = null;
+         if (run != null)
+            run.run();
+         return graph.isActive(index, position, date);
+      }
+   }
+
+   /** Tests that a change made while a search runs only keeps the result out of the cache if it could have reached it */
+   @Test
+   public void testChangesDuringSearch() {
+      final FrozenSocialNetwork frozen = FrozenSocialNetworkTester.createTestNetwork().freeze();
+      final int tom = frozen.indexOf("Tom");
+      final int tim = frozen.indexOf("Tim");
+      final int jim = frozen.indexOf("Jim");
+      final long date = new Date(1990, 1, 5).getTime();
+      final NeighborhoodCache cache = new NeighborhoodCache(10, 0);
+      InterruptedGraph graph = new InterruptedGraph(frozen);
+      NeighborhoodSearch search = new NeighborhoodSearch(graph);
+
+      // Tim and Jim are linked only to each other, so changing their link can't change Tom's neighborhood
+      graph.action = () -> cache.linkChanged(tim, jim, 0, 1);
+      cache.neighborhood(search, 0, tom, date, Integer.MAX_VALUE);
+      cache.neighborhood(search, 1, tom, date, Integer.MAX_VALUE);
+      assertEquals("A change reaching neither user should leave the result cached", 1, cache.getHits());
+
+      // A change to Tom's links, seen by another reader before the search ends, keeps the search's result out. Jim's lookup is the third miss
+      graph.action = () -> {
+         cache.linkChanged(tom, tim, 0, 2);
+         cache.neighborhood(new NeighborhoodSearch(frozen), 2, jim, date, Integer.MAX_VALUE);
+      };
+      long misses = cache.getMisses();
+      cache.neighborhood(search, 1, tom, date, 2);
+      cache.neighborhood(search, 2, tom, date, 2);
+      assertEquals("A result that missed a change reaching it should not be cached", misses + 3, cache.getMisses());
+   }
+
+   /** Tests that a cached network answers the same as an uncached one through random changes */
+   @Test
+   public void testAgainstUncached() {
+      SocialNetwork cached = NeighborhoodSearchTester.createRandomNetwork(300, 300, 5);
+      SocialNetwork plain = NeighborhoodSearchTester.createRandomNetwork(300, 300, 5);
+      SocialNetworkStatus status = new SocialNetworkStatus();
+      cached.setCacheCapacity(50);
+      Random random = new Random(6);
+      long now = 1000;
+
+      for (int step = 0; step < 2000; step++) {
+         String id = "user" + random.nextInt(20);
+         Date date = new Date(now - random.nextInt(200));
+         assertEquals("Cached neighborhood differs", plain.neighborhood(id, date, status), cached.neighborhood(id, date, status));
+
+         if (step % 5 == 0) {
+            HashSet<String> ids = new HashSet<String>();
+            ids.add("user" + random.nextInt(300));
+            ids.add("user" + random.nextInt(300));
+            now += random.nextInt(10);
+            if (random.nextBoolean()) {
+               plain.establishLink(ids, new Date(now), status);
+               cached.establishLink(ids, new Date(now), status);
+            }
+            else {
+               plain.tearDownLink(ids, new Date(now), status);
+               cached.tearDownLink(ids, new Date(now), status);
+            }
+         }
+      }
+      assertTrue("Test should hit the cache", cached.getCacheHits() > 0);
+   }
+}
@@ -0,0 +1,150 @@
+import org.junit.*;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.Date;
+import java.util.NoSuchElementException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/** Unit tests the NeighborhoodIterator and the neighborhood streams built on it.
+  * @author Billy Barbaro
+  */
+
+public class NeighborhoodIteratorTester {
+
+   /** A graph that counts the users whose links have been looked at */
+   private static class CountingGraph implements NetworkGraph {
+
+      /** The graph being counted */
+      private NetworkGraph graph;
+
+      /** The number of calls to degree */
+      private int expanded;
+
+      public CountingGraph(NetworkGraph graph) {
+         this.graph = graph;
+      }
+
+      public int indexOf(String id) { return graph.indexOf(id); }
+      public User user(int index) { return graph.user(index); }
+      public int userCount() { return graph.userCount(); }
+      public long totalDegree() { return graph.totalDegree(); }
+      public int degree(int index) { expanded++; return graph.degree(index); }
+      public int neighbor(int index, int position) { return graph.neighbor(index, position); }
+      public boolean isActive(int index, int position, long date) { return graph.isActive(index, position, date); }
+      public long nextEvent(int index, int position, long date) { return graph.nextEvent(index, position, date); }
+      public long previousEvent(int index, int position, long date) { return graph.previousEvent(index, position, date); }
+      public int eventCount(int index, int position) { return graph.eventCount(index, position); }
+      public long event(int index, int position, int event) { return graph.event(index, position, event); }
+   }
+
+   /** Tests that the stream holds the same friends as the neighborhood, nearest first */
+   @Test
+   public void testStream() throws UninitializedObjectException {
+      SocialNetwork net = FrozenSocialNetworkTester.createTestNetwork();
+      FrozenSocialNetwork frozen = net.freeze();
+      SocialNetworkStatus status = new SocialNetworkStatus();
+
+      for (String id : FrozenSocialNetworkTester.IDS) {
+         for (Date date : FrozenSocialNetworkTester.DATES) {
+            assertEquals("Stream differs from the neighborhood.", net.neighborhood(id, date, status), net.neighborhoodStream(id, date, Integer.MAX_VALUE, status).collect(Collectors.toSet()));
+            assertEquals("Stream differs from the neighborhood.", frozen.neighborhood(id, date, 1, status), frozen.neighborhoodStream(id, date, 1, status).collect(Collectors.toSet()));
+         }
+      }
+
+      // Friends come out in order of distance
+      SocialNetwork random = NeighborhoodSearchTester.createRandomNetwork(2000, 6000, 4);
+      int lastDistance = 0;
+      for (Friend friend : (Iterable<Friend>)random.neighborhoodStream("user0", new Date(50), Integer.MAX_VALUE, status)::iterator) {
+         assertTrue("Friends should come nearest first.", friend.getDistance() >= lastDistance);
+         lastDistance = friend.getDistance();
+      }
+      assertTrue("Test network should reach past the user's links.", lastDistance > 2);
+
+      assertNull("Invalid user should return null", net.neighborhoodStream("Lenny", new Date(), 1, status));
+      assertEquals("Invalid users should change status", SocialNetworkStatus.Status.INVALID_USERS, status.getStatus());
+   }
+
+   /** Tests that a stream lets go of the version it reads once it's read to the end, closed, or dropped */
+   @Test
+   public void testStreamVersion() throws InterruptedException {
+      SocialNetwork net = NeighborhoodSearchTester.createRandomNetwork(2000, 6000, 4);
+      SocialNetworkStatus status = new SocialNetworkStatus();
+
+      net.neighborhoodStream("user0", new Date(50), Integer.MAX_VALUE, status).count();
+      assertEquals("A stream read to the end should let go of its version.", 0, net.getPinCount());
+
+      Stream<Friend> closed = net.neighborhoodStream("user0", new Date(50), Integer.MAX_VALUE, status);
+      assertEquals("An open stream should hold its version.", 1, net.getPinCount());
+      closed.limit(1).count();
+      closed.close();
+      assertEquals("A closed stream should let go of its version.", 0, net.getPinCount());
+
+      // A stream cut short and never closed lets go once it's collected
+      assertEquals("Stream should give the friend asked for.", 1, net.neighborhoodStream("user0", new Date(50), Integer.MAX_VALUE, status).limit(1).count());
+      for (int tries = 0; tries < 100 && net.getPinCount() > 0; tries++) {
+         System.gc();
+         Thread.sleep(10);
+      }
+      assertEquals("A dropped stream should let go of its version.", 0, net.getPinCount());
+   }
+
+   /** Tests that only the links needed for the friends taken are checked */
+   @Test
+   public void testLaziness() {
+      CountingGraph graph = new CountingGraph(NeighborhoodSearchTester.createRandomNetwork(2000, 6000, 4).freeze());
+      NeighborhoodSearch search = new NeighborhoodSearch(graph);
+
+      assertEquals("Stream should give the friends asked for.", 5, search.neighborhoodStream(0, 50, Integer.MAX_VALUE).limit(5).count());
+      assertTrue("Taking a few friends should not check the whole network.", graph.expanded < 20);
+
+      graph.expanded = 0;
+      long total = search.neighborhoodStream(0, 50, Integer.MAX_VALUE).count();
+      assertEquals("Stream should hold the whole neighborhood.", search.neighborhoodSize(0, 50, Integer.MAX_VALUE), total);
+   }
+
+   /** Tests that an iterator's memory grows with the users it reaches, not with the size of the network */
+   @Test
+   public void testMemory() {
+      // The graph claims fifty million users, though only the first 2000 have links
+      FrozenSocialNetwork frozen = NeighborhoodSearchTester.createRandomNetwork(2000, 6000, 4).freeze();
+      CountingGraph graph = new CountingGraph(frozen) {
+         public int userCount() { return 50000000; }
+      };
+      com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)java.lang.management.ManagementFactory.getThreadMXBean();
+      long thread = Thread.currentThread().getId();
+
+      long before = threads.getThreadAllocatedBytes(thread);
+      NeighborhoodIterator iter = new NeighborhoodIterator(graph, 0, 50, Integer.MAX_VALUE);
+      for (int i = 0; i < 5 && iter.hasNext(); i++)
+         iter.next();
+      long allocated = threads.getThreadAllocatedBytes(thread) - before;
+      assertTrue("Taking a few friends should not cost memory for the whole network, took " + allocated + " bytes.", allocated < 100000);
+
+      // Reaching the whole neighborhood grows the set well past its first size
+      Set<Friend> friends = new HashSet<Friend>();
+      NeighborhoodIterator all = new NeighborhoodIterator(graph, 0, 50, Integer.MAX_VALUE);
+      while (all.hasNext())
+         assertTrue("Each friend should come once.", friends.add(all.next()));
+      assertEquals("Iterator should reach the whole neighborhood.", new NeighborhoodSearch(frozen).neighborhoodSize(0, 50, Integer.MAX_VALUE), friends.size());
+      assertTrue("Test network should reach more users than the set first holds.", friends.size() > 100);
+   }
+
+   /** Tests the iterator once the neighborhood runs out */
+   @Test
+   public void testExhausted() throws UninitializedObjectException {
+      NeighborhoodIterator iter = new NeighborhoodIterator(FrozenSocialNetworkTester.createTestNetwork().freeze(), 0, 0, 0);
+      assertTrue("The user should be in their own neighborhood.", iter.hasNext());
+      assertEquals("The user should be at distance 0.", 0, iter.next().getDistance());
+      assertFalse("Distance 0 should hold only the user.", iter.hasNext());
+
+      try {
+         iter.next();
+         fail("Iterator past the end should throw.");
+      }
+      catch (NoSuchElementException e) {
+      }
+   }
+}
@@ -0,0 +1,251 @@
+import org.junit.*;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.Date;
+import java.util.Random;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Unit tests the NeighborhoodSearch over larger networks than the Social Network tests use.
+  * @author Billy Barbaro
+  */
+
+public class NeighborhoodSearchTester {
+
+   /** Creates a network of users linked at random, with links that are torn down and re-established over time
+   * @param userCount   the number of users in the network
+   * @param linkCount   the number of links to try to create
+   * @param seed    seeds the random links so every run sees the same network
+   * @return SocialNetwork  the network, with users named "user0", "user1" and so on
+   */
+   public static SocialNetwork createRandomNetwork(int userCount, int linkCount, long seed) {
+      SocialNetwork net = new SocialNetwork();
+      SocialNetworkStatus status = new SocialNetworkStatus();
+      Random random = new Random(seed);
+
+      for (int i = 0; i < userCount; i++) {
+         User user = new User();
+         user.setID("user" + i);
+         net.addUser(user);
+      }
+
+      for (int i = 0; i < linkCount; i++) {
+         Set<String> ids = new HashSet<String>();
+         ids.add("user" + random.nextInt(userCount));
+         ids.add("user" + random.nextInt(userCount));
+
+         long date = random.nextInt(100);
+         for (int event = random.nextInt(4); event >= 0; event--) {
+            net.establishLink(ids, new Date(date), status);
+            date += 1 + random.nextInt(100);
+            net.tearDownLink(ids, new Date(date), status);
+            date += random.nextInt(100);
+         }
+      }
+      return net;
+   }
+
+   /** Copies the users reached by the current thread's search and their distances
+   * @param workspace   the workspace of the search
+   * @param userCount   the number of users in the network
+   * @return int[]  the distance of each user, -1 for users not reached
+   */
+   private static int[] distances(TraversalWorkspace workspace, int userCount) {
+      int[] distances = new int[userCount];
+      for (int i = 0; i < userCount; i++)
+         distances[i] = workspace.isVisited(i) ? workspace.distance(i) : -1;
+      return distances;
+   }
+
+   /** Tests that scanning unreached users finds the same distances as checking links depth by depth */
+   @Test
+   public void testDirectionOptimizing() {
+      SocialNetwork net = createRandomNetwork(2000, 6000, 1);
+      FrozenSocialNetwork frozen = net.freeze();
+
+      NeighborhoodSearch adaptive = new NeighborhoodSearch(frozen);
+      NeighborhoodSearch topDown = new NeighborhoodSearch(frozen);
+      topDown.setDirectionOptimizing(false);
+
+      for (int start = 0; start < 2000; start += 97) {
+         for (long date = 0; date < 400; date += 50) {
+            int[] expected = distances(topDown.search(start, date, Integer.MAX_VALUE), 2000);
+            assertArrayEquals("Distances differ when scanning unreached users.", expected, distances(adaptive.search(start, date, Integer.MAX_VALUE), 2000));
+
+            expected = distances(topDown.search(start, date, 3), 2000);
+            assertArrayEquals("Distances differ when scanning unreached users.", expected, distances(adaptive.search(start, date, 3), 2000));
+         }
+      }
+   }
+
+   /** Tests that searches sharing large depths across threads find the same distances as searches on one thread */
+   @Test
+   public void testParallel() {
+      SocialNetwork net = createRandomNetwork(20000, 60000, 2);
+      FrozenSocialNetwork frozen = net.freeze();
+
+      NeighborhoodSearch sequential = new NeighborhoodSearch(frozen);
+      NeighborhoodSearch parallel = new NeighborhoodSearch(frozen);
+      parallel.setParallelism(4);
+      NeighborhoodSearch parallelTopDown = new NeighborhoodSearch(frozen);
+      parallelTopDown.setParallelism(4);
+      parallelTopDown.setDirectionOptimizing(false);
+
+      for (int start = 0; start < 20000; start += 1999) {
+         for (long date = 50; date < 400; date += 100) {
+            int[] expected = distances(sequential.search(start, date, Integer.MAX_VALUE), 20000);
+            int reached = sequential.search(start, date, Integer.MAX_VALUE).size();
+
+            TraversalWorkspace workspace = parallel.search(start, date, Integer.MAX_VALUE);
+            assertEquals("Parallel search reached a different number of users.", reached, workspace.size());
+            assertArrayEquals("Distances differ when searching in parallel.", expected, distances(workspace, 20000));
+
+            workspace = parallelTopDown.search(start, date, Integer.MAX_VALUE);
+            assertEquals("Parallel search reached a different number of users.", reached, workspace.size());
+            assertArrayEquals("Distances differ when searching in parallel.", expected, distances(workspace, 20000));
+         }
+      }
+      parallel.setParallelism(1);
+      parallelTopDown.setParallelism(1);
+   }
+
+   /** A graph whose link checks fail on the pool's threads once a number of them have been made */
+   private static class FailingGraph implements NetworkGraph {
+
+      /** The graph being searched */
+      private NetworkGraph graph;
+
+      /** The number of checks the pool's threads may still make before they fail. Negative never fails */
+      private AtomicInteger remaining;
+
+      public FailingGraph(NetworkGraph graph) {
+         this.graph = graph;
+         this.remaining = new AtomicInteger(-1);
+      }
+
+      public int indexOf(String id) { return graph.indexOf(id); }
+      public User user(int index) { return graph.user(index); }
+      public int userCount() { return graph.userCount(); }
+      public long totalDegree() { return graph.totalDegree(); }
+      public int degree(int index) { return graph.degree(index); }
+      public int neighbor(int index, int position) { return graph.neighbor(index, position); }
+      public long nextEvent(int index, int position, long date) { return graph.nextEvent(index, position, date); }
+      public long previousEvent(int index, int position, long date) { return graph.previousEvent(index, position, date); }
+      public int eventCount(int index, int position) { return graph.eventCount(index, position); }
+      public long event(int index, int position, int event) { return graph.event(index, position, event); }
+
+      public boolean isActive(int index, int position, long date) {
+         if (Thread.currentThread() instanceof ForkJoinWorkerThread && remaining.get() >= 0 && remaining.getAndDecrement() == 0)
+            throw new IllegalStateException("Failed check.");
+         return graph.isActive(index, position, date);
+      }
+   }
+
+   /** Tests that a parallel search that fails part way through leaves the thread's workspace fit for the next search */
+   @Test
+   public void testParallelFailure() {
+      FrozenSocialNetwork frozen = createRandomNetwork(20000, 60000, 2).freeze();
+      FailingGraph graph = new FailingGraph(frozen);
+      NeighborhoodSearch parallel = new NeighborhoodSearch(graph);
+      parallel.setParallelism(4);
+      parallel.setDirectionOptimizing(false);
+      int[] expected = distances(new NeighborhoodSearch(frozen).search(0, 50, Integer.MAX_VALUE), 20000);
+
+      try {
+         graph.remaining.set(3000);
+         try {
+            parallel.search(0, 50, Integer.MAX_VALUE);
+            fail("Failed check should be thrown.");
+         }
+         catch (IllegalStateException ise) {
+         }
+
+         // Users claimed before the failure must not stay marked as reached
+         graph.remaining.set(-1);
+         assertArrayEquals("Search after a failure differs.", expected, distances(parallel.search(0, 50, Integer.MAX_VALUE), 20000));
+      }
+      finally {
+         parallel.setParallelism(1);
+      }
+   }
+
+   /** Tests that searching from both users finds the same distances as searching out from one */
+   @Test
+   public void testDistance() {
+      SocialNetwork net = createRandomNetwork(2000, 3000, 3);
+      FrozenSocialNetwork frozen = net.freeze();
+      NeighborhoodSearch search = new NeighborhoodSearch(frozen);
+
+      for (int start = 0; start < 2000; start += 331) {
+         for (long date = 0; date < 400; date += 50) {
+            int[] expected = distances(search.search(start, date, Integer.MAX_VALUE), 2000);
+            for (int target = 0; target < 2000; target += 7)
+               assertEquals("Distance differs from the neighborhood search.", expected[target], search.distance(start, target, date));
+         }
+      }
+   }
+
+   /** Tests that the trend sweep finds the same changes as searching the neighborhood at every millisecond the links were changing */
+   @Test
+   public void testNeighborhoodTrend() {
+      for (long seed = 0; seed < 200; seed++) {
+         int userCount = 4 + (int)(seed % 6);
+         FrozenSocialNetwork frozen = createRandomNetwork(userCount, userCount + (int)(seed % 7), seed).freeze();
+         NeighborhoodSearch search = new NeighborhoodSearch(frozen);
+
+         for (int start = 0; start < userCount; start++) {
+            // The trend starts at the first event on one of the user's own links, whose size is recorded whatever it is
+            long firstOwnEvent = Long.MAX_VALUE;
+            for (int p = 0; p < frozen.degree(start); p++)
+               firstOwnEvent = Math.min(firstOwnEvent, frozen.event(start, p, 0));
+
+            // The random links all change within the first 2000 milliseconds
+            Map<Date, Integer> expected = new HashMap<Date, Integer>();
+            int currentSize = -1;
+            for (long date = firstOwnEvent; date < 2000; date++) {
+               int size = search.search(start, date, Integer.MAX_VALUE).size();
+               if (size != currentSize) {
+                  expected.put(new Date(date), size);
+                  currentSize = size;
+               }
+            }
+            assertEquals("Trend misses a change in the neighborhood.", expected, search.neighborhoodTrend(start));
+         }
+      }
+   }
+
+   /** Tests that the trend starts at the first event on the user's own links, as it always has, whatever the size there */
+   @Test
+   public void testTrendStart() {
+      SocialNetwork net = new SocialNetwork();
+      for (String id : new String[] {"a", "b", "c"}) {
+         User user = new User();
+         user.setID(id);
+         net.addUser(user);
+      }
+      SocialNetworkStatus status = new SocialNetworkStatus();
+
+      // A link between others before the user's own first event doesn't start the trend
+      net.establishLink("b", "c", 5);
+      net.tearDownLink("b", "c", 6);
+      // A link established and torn down at once still starts the trend, at a size of 1
+      net.establishLink("a", "b", 10);
+      net.tearDownLink("a", "b", 10);
+      net.establishLink("a", "b", 40);
+
+      Map<Date, Integer> expected = new HashMap<Date, Integer>();
+      expected.put(new Date(10), 1);
+      expected.put(new Date(40), 2);
+      assertEquals("Trend should start at the user's first event.", expected, net.neighborhoodTrend("a", status));
+      assertEquals("Frozen trend should start at the user's first event.", expected, net.freeze().neighborhoodTrend("a", status));
+
+      Map<Date, Integer> other = new HashMap<Date, Integer>();
+      other.put(new Date(5), 2);
+      other.put(new Date(6), 1);
+      assertEquals("A user's own first link should start their trend.", other, net.neighborhoodTrend("c", status));
+   }
+}
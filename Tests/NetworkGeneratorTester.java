@@ -0,0 +1,195 @@
+import org.junit.*;
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Unit tests the NetworkGenerator.
+  * @author Billy Barbaro
+  */
+
+public class NetworkGeneratorTester {
+
+   @Rule
+   public TemporaryFolder folder = new TemporaryFolder();
+
+   /** Counts the events of each link in an events file, checking that each link's events are in date order within the horizon
+     * @param events   the path of the events file
+     * @param start   the start of the horizon
+     * @param length   the length of the horizon
+     * @return Map<String, Integer>   the number of events of each link, by its two IDs
+     */
+   private static Map<String, Integer> eventsPerLink(Path events, long start, long length) throws IOException {
+      Map<String, Integer> counts = new HashMap<String, Integer>();
+      Map<String, Long> lastDates = new HashMap<String, Long>();
+      for (String line : Files.readAllLines(events)) {
+         String[] fields = line.split("\t");
+         String link = fields[0] + "\t" + fields[1];
+         long date = Long.parseLong(fields[2]);
+         int count = counts.getOrDefault(link, 0);
+         assertEquals("Events should take turns establishing and tearing down", count % 2 == 0 ? "E" : "T", fields[3]);
+         assertTrue("Event outside the horizon", date >= start && date < start + length);
+         assertTrue("Events out of order", date > lastDates.getOrDefault(link, Long.MIN_VALUE));
+         counts.put(link, count + 1);
+         lastDates.put(link, date);
+      }
+      return counts;
+   }
+
+   /** Tests that the same settings give the same files, and another seed gives others */
+   @Test
+   public void testDeterministic() throws IOException {
+      for (NetworkGenerator.Model model : NetworkGenerator.Model.values()) {
+         Path first = folder.newFile().toPath();
+         Path second = folder.newFile().toPath();
+         Path other = folder.newFile().toPath();
+         new NetworkGenerator(model, 500, 6, 3).writeEvents(first);
+         new NetworkGenerator(model, 500, 6, 3).writeEvents(second);
+         new NetworkGenerator(model, 500, 6, 4).writeEvents(other);
+         assertArrayEquals("Same seed should give the same events", Files.readAllBytes(first), Files.readAllBytes(second));
+         assertFalse("Another seed should give other events", Files.readAllLines(first).equals(Files.readAllLines(other)));
+      }
+   }
+
+   /** Tests that populating a network gives the network the files load into */
+   @Test
+   public void testPopulateMatchesFiles() throws IOException {
+      for (NetworkGenerator.Model model : NetworkGenerator.Model.values()) {
+         NetworkGenerator generator = new NetworkGenerator(model, 800, 8, 11);
+         generator.setHorizon(1000, 100000);
+         Path users = folder.newFile().toPath();
+         Path events = folder.newFile().toPath();
+         assertEquals("Every user should be written", 800, generator.writeUsers(users));
+         long written = generator.writeEvents(events);
+
+         SocialNetwork loaded = new SocialNetwork();
+         NetworkLoader loader = new NetworkLoader(loaded);
+         loader.loadUsers(users);
+         for (SocialNetworkStatus.Status status : loader.loadEvents(events))
+            assertEquals("Generated events should all apply", SocialNetworkStatus.Status.SUCCESS, status);
+
+         SocialNetwork populated = new SocialNetwork();
+         assertEquals("Every event should apply", written, generator.populate(populated));
+
+         SocialNetworkStatus status = new SocialNetworkStatus();
+         for (int user = 0; user < 800; user += 41) {
+            for (long date = 1000; date < 101000; date += 9000) {
+               String id = NetworkGenerator.userID(user);
+               assertEquals("Networks differ", loaded.neighborhood(id, new Date(date), status), populated.neighborhood(id, new Date(date), status));
+            }
+         }
+      }
+   }
+
+   /** Tests the number of links each model draws, and that no pair is linked twice */
+   @Test
+   public void testModels() throws IOException {
+      int[] degrees = new int[2000];
+      NetworkGenerator.Model[] models = NetworkGenerator.Model.values();
+      for (NetworkGenerator.Model model : models) {
+         Path events = folder.newFile().toPath();
+         NetworkGenerator generator = new NetworkGenerator(model, 2000, 10, 5);
+         generator.writeEvents(events);
+         Map<String, Integer> links = eventsPerLink(events, 0, 365L * 24 * 60 * 60 * 1000);
+
+         Arrays.fill(degrees, 0);
+         for (String link : links.keySet()) {
+            String[] ids = link.split("\t");
+            assertFalse("A user should not be linked to themselves", ids[0].equals(ids[1]));
+            assertFalse("No pair should be linked twice", links.containsKey(ids[1] + "\t" + ids[0]));
+            degrees[Integer.parseInt(ids[0].substring(4))]++;
+            degrees[Integer.parseInt(ids[1].substring(4))]++;
+         }
+
+         int most = 0;
+         for (int degree : degrees)
+            most = Math.max(most, degree);
+         if (model == NetworkGenerator.Model.ERDOS_RENYI) {
+            assertTrue("Erdos-Renyi should average about the degree", Math.abs(links.size() - 10000) < 500);
+         }
+         else if (model == NetworkGenerator.Model.BARABASI_ALBERT) {
+            assertEquals("Each user should link to five before them", 5 * 1999 - 10, links.size());
+            assertTrue("Preferential attachment should make hubs", most > 50);
+         }
+         else {
+            assertEquals("The ring should keep its links through rewiring", 10000, links.size());
+            assertTrue("A small world should have no hubs", most < 20);
+         }
+
+         // A degree that rounds down to nothing gives no links
+         for (int degree = 0; degree < 2; degree++) {
+            if (degree == 1 && model == NetworkGenerator.Model.ERDOS_RENYI) // Erdos-Renyi doesn't round the degree
+               continue;
+            Path none = folder.newFile().toPath();
+            new NetworkGenerator(model, 2000, degree, 5).writeEvents(none);
+            assertEquals("A degree of " + degree + " should give no links", 0, eventsPerLink(none, 0, 365L * 24 * 60 * 60 * 1000).size());
+         }
+      }
+   }
+
+   /** Tests the histories of each kind of link */
+   @Test
+   public void testChurn() throws IOException {
+      NetworkGenerator generator = new NetworkGenerator(NetworkGenerator.Model.ERDOS_RENYI, 300, 6, 8);
+      generator.setHorizon(-50000, 200000);
+
+      Path events = folder.newFile().toPath();
+      generator.setChurn(1, 0, 0);
+      generator.writeEvents(events);
+      for (int count : eventsPerLink(events, -50000, 200000).values())
+         assertTrue("Long lived links should have one or two events", count == 1 || count == 2);
+
+      generator.setChurn(0, 2, 0);
+      generator.writeEvents(events);
+      for (int count : eventsPerLink(events, -50000, 200000).values())
+         assertTrue("Bursty links should end each session torn down", count % 2 == 0 && count >= 2 && count <= 24);
+
+      generator.setChurn(0, 0, 0.5);
+      generator.writeEvents(events);
+      for (int count : eventsPerLink(events, -50000, 200000).values())
+         assertTrue("Flapping links should go up and down many times", count >= 8 && count <= 32);
+   }
+
+   /** Tests that bad settings are turned away */
+   @Test
+   public void testInvalidSettings() {
+      try {
+         new NetworkGenerator(NetworkGenerator.Model.SMALL_WORLD, 0, 4, 1);
+         fail("Network without users should throw");
+      }
+      catch (IllegalArgumentException iae) {
+      }
+      try {
+         new NetworkGenerator(NetworkGenerator.Model.SMALL_WORLD, 10, -1, 1);
+         fail("Negative degree should throw");
+      }
+      catch (IllegalArgumentException iae) {
+      }
+      NetworkGenerator generator = new NetworkGenerator(NetworkGenerator.Model.SMALL_WORLD, 10, 4, 1);
+      try {
+         generator.setHorizon(0, 10);
+         fail("Short horizon should throw");
+      }
+      catch (IllegalArgumentException iae) {
+      }
+      try {
+         generator.setChurn(0, 0, 0);
+         fail("Churn without shares should throw");
+      }
+      catch (IllegalArgumentException iae) {
+      }
+      try {
+         generator.setRewiring(1.5);
+         fail("Rewiring above 1 should throw");
+      }
+      catch (IllegalArgumentException iae) {
+      }
+   }
+}
@@ -0,0 +1,208 @@
+import org.junit.*;
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+
+/** Unit tests journaling a Social Network and recovering it with NetworkJournal.
+  * @author Billy Barbaro
+  */
+
+public class NetworkJournalTester {
+
+   @Rule
+   public TemporaryFolder folder = new TemporaryFolder();
+
+   /** Makes a set of two IDs
+     * @param first   one of the IDs
+     * @param second   the other ID
+     * @return Set<String>   the set of the two IDs
+     */
+   private static Set<String> pair(String first, String second) {
+      return new HashSet<String>(Arrays.asList(first, second));
+   }
+
+   /** Makes a user with the given ID
+     * @param id   the ID of the user
+     * @return User   the user
+     */
+   private static User user(String id) {
+      User user = new User();
+      user.setID(id);
+      return user;
+   }
+
+   /** Makes changes of every kind to a network
+     * @param net   the network to be changed
+     */
+   private static void change(SocialNetwork net) throws UninitializedObjectException {
+      SocialNetworkStatus status = new SocialNetworkStatus();
+      net.addUser(user("Ann").setFirstName("Annabel"));
+      net.addUser(user("Bob"));
+      net.addUser(user("Cat"));
+      net.addUser(user("Ann")); // Not added, so not logged
+      net.establishLink(pair("Ann", "Bob"), new Date(10L), status);
+      net.establishLink(pair("Bob", "Cat"), new Date(20L), status);
+      net.tearDownLink(pair("Ann", "Bob"), new Date(30L), status);
+      net.tearDownLink(pair("Ann", "Cat"), new Date(30L), status); // Fails, so not logged
+
+      LinkEventBatch batch = new LinkEventBatch();
+      batch.establish("Ann", "Bob", 40L);
+      batch.tearDown("Bob", "Cat", 50L);
+      batch.establish("Ann", "Cat", 60L);
+      net.applyEvents(batch);
+   }
+
+   /** Checks that two networks have the same users and links
+     * @param expected   the network changes were made to
+     * @param actual   the recovered network
+     * @param ids   the IDs of the users to be compared
+     */
+   private static void assertSameNetwork(SocialNetwork expected, SocialNetwork actual, String... ids) {
+      SocialNetworkStatus status = new SocialNetworkStatus();
+      for (String id : ids) {
+         assertEquals("User not recovered", expected.getUser(id), actual.getUser(id));
+         assertEquals("Trend differs after recovery", expected.neighborhoodTrend(id, status), actual.neighborhoodTrend(id, status));
+         for (long date = 0; date <= 70; date += 5)
+            assertEquals("Neighborhood differs after recovery", expected.neighborhood(id, new Date(date), status), actual.neighborhood(id, new Date(date), status));
+      }
+   }
+
+   /** Tests that changes survive without closing the journal, as after a crash */
+   @Test
+   public void testRecover() throws IOException, UninitializedObjectException {
+      Path snapshot = folder.getRoot().toPath().resolve("network.snapshot");
+      Path journal = folder.getRoot().toPath().resolve("network.journal");
+
+      SocialNetwork net = SocialNetwork.recover(snapshot, journal);
+      change(net);
+      SocialNetwork recovered = SocialNetwork.recover(snapshot, journal);
+      assertSameNetwork(net, recovered, "Ann", "Bob", "Cat");
+      assertEquals("User fields not recovered", "Annabel", recovered.getUser("Ann").getFirstName());
+
+      // The recovered network carries on journaling
+      SocialNetworkStatus status = new SocialNetworkStatus();
+      recovered.tearDownLink(pair("Ann", "Cat"), new Date(70L), status);
+      net.tearDownLink(pair("Ann", "Cat"), new Date(70L), status);
+      assertSameNetwork(net, SocialNetwork.recover(snapshot, journal), "Ann", "Bob", "Cat");
+   }
+
+   /** Tests that a checkpoint starts the journal over, and that a journal left from before a checkpoint is not replayed twice */
+   @Test
+   public void testCheckpoint() throws IOException, UninitializedObjectException {
+      Path snapshot = folder.getRoot().toPath().resolve("network.snapshot");
+      Path journal = folder.getRoot().toPath().resolve("network.journal");
+      Path stale = folder.getRoot().toPath().resolve("stale.journal");
+
+      SocialNetwork net = SocialNetwork.recover(snapshot, journal);
+      change(net);
+      Files.copy(journal, stale);
+      net.checkpoint(snapshot);
+      assertEquals("Checkpoint should empty the journal", 16, Files.size(journal));
+
+      SocialNetworkStatus status = new SocialNetworkStatus();
+      net.addUser(user("Dan"));
+      net.establishLink(pair("Cat", "Dan"), new Date(65L), status);
+      assertSameNetwork(net, SocialNetwork.recover(snapshot, journal), "Ann", "Bob", "Cat", "Dan");
+      net.closeJournal();
+
+      // A crash after the snapshot was written but before the journal started over leaves the old journal
+      Files.copy(stale, journal, StandardCopyOption.REPLACE_EXISTING);
+      SocialNetwork recovered = SocialNetwork.recover(snapshot, journal);
+      assertFalse("Changes after the checkpoint were in the lost journal", recovered.isMember("Dan"));
+      assertSameNetwork(SocialNetwork.load(snapshot), recovered, "Ann", "Bob", "Cat");
+   }
+
+   /** Tests that a frame cut short by a crash is dropped, and the journal carries on after the last whole frame */
+   @Test
+   public void testTornWrite() throws IOException, UninitializedObjectException {
+      Path snapshot = folder.getRoot().toPath().resolve("network.snapshot");
+      Path journal = folder.getRoot().toPath().resolve("network.journal");
+
+      SocialNetwork net = SocialNetwork.recover(snapshot, journal);
+      change(net);
+      long whole = Files.size(journal);
+      SocialNetworkStatus status = new SocialNetworkStatus();
+      net.establishLink(pair("Bob", "Cat"), new Date(70L), status);
+      net.closeJournal();
+
+      // Cuts the last frame in half
+      byte[] bytes = Files.readAllBytes(journal);
+      Files.write(journal, Arrays.copyOf(bytes, (int)(whole + bytes.length) / 2));
+      SocialNetwork recovered = SocialNetwork.recover(snapshot, journal);
+      assertEquals("Torn frame should be cut from the journal", whole, Files.size(journal));
+      assertFalse("Torn change should be lost", recovered.isActive(pair("Bob", "Cat"), new Date(75L)));
+      assertTrue("Earlier changes should be kept", recovered.isActive(pair("Ann", "Cat"), new Date(65L)));
+
+      // A damaged frame ends the journal the same way
+      recovered.establishLink(pair("Bob", "Cat"), new Date(80L), status);
+      recovered.closeJournal();
+      bytes = Files.readAllBytes(journal);
+      bytes[bytes.length - 1] ^= 1;
+      Files.write(journal, bytes);
+      assertFalse("Damaged change should be lost", SocialNetwork.recover(snapshot, journal).isActive(pair("Bob", "Cat"), new Date(85L)));
+   }
+
+   /** Tests that records logged by many threads at once are all committed and read back */
+   @Test
+   public void testGroupCommit() throws Exception {
+      Path file = folder.getRoot().toPath().resolve("threads.journal");
+      final NetworkJournal journal = new NetworkJournal(file, 0);
+      final int threads = 4;
+      final int records = 500;
+
+      Thread[] writers = new Thread[threads];
+      final Exception[] errors = new Exception[threads];
+      for (int t = 0; t < threads; t++) {
+         final int thread = t;
+         writers[t] = new Thread(() -> {
+            try {
+               for (int r = 0; r < records; r++)
+                  journal.commit(journal.logLink(thread, threads + r, r, r % 2 == 0));
+            }
+            catch (Exception e) {
+               errors[thread] = e;
+            }
+         });
+         writers[t].start();
+      }
+      for (Thread writer : writers)
+         writer.join();
+      for (Exception error : errors)
+         assertNull("Commit failed", error);
+      journal.close();
+
+      NetworkJournal reopened = new NetworkJournal(file, 0);
+      assertEquals("Every record should be read back", threads * records, reopened.replayCount());
+      int[] seen = new int[threads];
+      for (int r = 0; r < reopened.replayCount(); r++) {
+         int thread = reopened.replayLow(r);
+         assertEquals("Each thread's records should keep their order", threads + seen[thread], reopened.replayHigh(r));
+         assertEquals("Establish read back wrong", seen[thread] % 2 == 0, reopened.replayIsEstablish(r));
+         seen[thread]++;
+      }
+      reopened.close();
+   }
+
+   /** Tests that other files are turned away */
+   @Test
+   public void testNotAJournal() throws IOException {
+      Path snapshot = folder.getRoot().toPath().resolve("network.snapshot");
+      Path journal = folder.getRoot().toPath().resolve("network.journal");
+      Files.write(journal, "not a journal at all, just some text".getBytes());
+      try {
+         SocialNetwork.recover(snapshot, journal);
+         fail("Other files should be rejected");
+      }
+      catch (IOException e) {
+      }
+   }
+}
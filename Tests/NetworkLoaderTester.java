@@ -0,0 +1,120 @@
+import org.junit.*;
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.Random;
+
+/** Unit tests the NetworkLoader.
+  * @author Billy Barbaro
+  */
+
+public class NetworkLoaderTester {
+
+   @Rule
+   public TemporaryFolder folder = new TemporaryFolder();
+
+   /** Writes text to a new file in the temporary folder
+     * @param name   the name of the file
+     * @param text   the contents
+     * @return Path   the path of the file
+     */
+   private Path write(String name, String text) throws IOException {
+      Path file = folder.newFile(name).toPath();
+      Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+      return file;
+   }
+
+   /** Tests loading users with and without their other fields */
+   @Test
+   public void testLoadUsers() throws IOException {
+      SocialNetwork net = new SocialNetwork();
+      NetworkLoader loader = new NetworkLoader(net);
+      Path users = write("users.txt", "abc123\tAbe\tB\tCee\tabe@example.com\t555-1234\r\n\nxyz456\n\u00e9l\u00e8ve\t\t\tLast\nabc123\tDuplicate\n");
+
+      assertEquals("Duplicate user should be skipped", 3, loader.loadUsers(users));
+      User abe = net.getUser("abc123");
+      assertEquals("First name not loaded", "Abe", abe.getFirstName());
+      assertEquals("Middle name not loaded", "B", abe.getMiddleName());
+      assertEquals("Last name not loaded", "Cee", abe.getLastName());
+      assertEquals("Email not loaded", "abe@example.com", abe.getEmail());
+      assertEquals("Phone number not loaded", "555-1234", abe.getPhoneNumber());
+      assertNull("Missing fields should be left unset", net.getUser("xyz456").getFirstName());
+      assertEquals("Empty fields should be skipped", "Last", net.getUser("\u00e9l\u00e8ve").getLastName());
+      assertNull("Empty fields should be left unset", net.getUser("\u00e9l\u00e8ve").getFirstName());
+   }
+
+   /** Tests loading events, out of order and naming unknown users */
+   @Test
+   public void testLoadEvents() throws IOException {
+      SocialNetwork net = new SocialNetwork();
+      NetworkLoader loader = new NetworkLoader(net);
+      loader.loadUsers(write("users.txt", "Tom\nJim\nTim\n"));
+      SocialNetworkStatus.Status[] statuses = loader.loadEvents(write("events.txt", "Tom\tJim\t300\tT\nJim\tTom\t100\tE\nTom\tLenny\t100\tE\r\nTim\tJim\t-5\tE\n"));
+
+      assertEquals("Tear down should succeed", SocialNetworkStatus.Status.SUCCESS, statuses[0]);
+      assertEquals("Establish should succeed", SocialNetworkStatus.Status.SUCCESS, statuses[1]);
+      assertEquals("Unknown user should be invalid", SocialNetworkStatus.Status.INVALID_USERS, statuses[2]);
+      assertEquals("Negative dates should load", SocialNetworkStatus.Status.SUCCESS, statuses[3]);
+
+      SocialNetworkStatus status = new SocialNetworkStatus();
+      assertEquals("Link should be active between its events", 3, net.neighborhoodSize("Tom", new Date(200), status));
+      assertEquals("Link should be torn down", 1, net.neighborhoodSize("Tom", new Date(300), status));
+   }
+
+   /** Tests that a file split into chunks parsed in parallel loads as the same events */
+   @Test
+   public void testLargeFile() throws IOException {
+      Random random = new Random(9);
+      StringBuilder users = new StringBuilder();
+      for (int i = 0; i < 1000; i++)
+         users.append("user").append(i).append('\n');
+
+      StringBuilder events = new StringBuilder();
+      LinkEventBatch expected = new LinkEventBatch();
+      for (int i = 0; i < 150000; i++) {
+         String first = "user" + random.nextInt(1000);
+         String second = "user" + random.nextInt(1000);
+         long date = random.nextInt(100000);
+         boolean establish = random.nextBoolean();
+         events.append(first).append('\t').append(second).append('\t').append(date).append('\t').append(establish ? 'E' : 'T').append('\n');
+         if (establish)
+            expected.establish(first, second, date);
+         else
+            expected.tearDown(first, second, date);
+      }
+
+      SocialNetwork loaded = new SocialNetwork();
+      NetworkLoader loader = new NetworkLoader(loaded, (byte)'\t', 4);
+      assertEquals("Every user should load", 1000, loader.loadUsers(write("users.txt", users.toString())));
+      SocialNetworkStatus.Status[] statuses = loader.loadEvents(write("events.txt", events.toString()));
+
+      SocialNetwork built = NeighborhoodSearchTester.createRandomNetwork(1000, 0, 0);
+      assertArrayEquals("Statuses differ from the batch", built.applyEvents(expected), statuses);
+
+      SocialNetworkStatus status = new SocialNetworkStatus();
+      for (int i = 0; i < 1000; i += 37)
+         assertEquals("Networks differ", built.neighborhood("user" + i, new Date(50000), status), loaded.neighborhood("user" + i, new Date(50000), status));
+   }
+
+   /** Tests that malformed events are reported */
+   @Test
+   public void testMalformed() throws IOException {
+      SocialNetwork net = new SocialNetwork();
+      NetworkLoader loader = new NetworkLoader(net);
+      String[] lines = {"Tom\tJim\t100\n", "Tom\tJim\t1x0\tE\n", "Tom\tJim\t100\tX\n", "Tom\tJim\t\tE\n", "Tom\tJim\t100\tET\n", "Tom\tJim\t9223372036854775808\tE\n", "Tom\tJim\t-99999999999999999999\tE\n"};
+      for (int i = 0; i < lines.length; i++) {
+         try {
+            loader.loadEvents(write("bad" + i + ".txt", lines[i]));
+            fail("Malformed line should throw: " + lines[i]);
+         }
+         catch (IOException e) {
+         }
+      }
+   }
+}
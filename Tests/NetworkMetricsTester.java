@@ -0,0 +1,169 @@
+import org.junit.*;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import java.lang.management.ManagementFactory;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+/** Unit tests the LatencyHistogram and the NetworkMetrics of the Social Network.
+  * @author Billy Barbaro
+  */
+
+public class NetworkMetricsTester {
+
+   /** Makes the set of IDs naming a link
+     * @param first   the ID of one user
+     * @param second  the ID of the other user
+     * @return Set<String>   the IDs of the two users
+     */
+   private static Set<String> pair(String first, String second) {
+      Set<String> ids = new HashSet<String>();
+      ids.add(first);
+      ids.add(second);
+      return ids;
+   }
+
+   /** Reads one entry of a map read over JMX
+     * @param table   the map, as JMX gives it
+     * @param key   the key of the entry
+     * @return long   the value of the entry
+     */
+   private static long entry(TabularData table, String key) {
+      CompositeData row = table.get(new Object[] {key});
+      return (Long)row.get("value");
+   }
+
+   /** Tests the percentiles of a histogram are within an eighth of the latencies recorded */
+   @Test
+   public void testHistogram() {
+      LatencyHistogram histogram = new LatencyHistogram();
+      assertEquals("Empty histogram should give 0", 0, histogram.percentile(0.5));
+      for (long nanos = 1; nanos <= 100000; nanos++)
+         histogram.record(nanos);
+      histogram.record(-5);
+
+      assertEquals("Every latency should be counted", 100001, histogram.count());
+      assertEquals("Max not kept", 100000, histogram.max());
+      assertEquals("Mean is off", 50000, histogram.mean(), 1);
+      assertEquals("Smallest latency should be exact", 0, histogram.percentile(0));
+      for (double fraction : new double[] {0.25, 0.5, 0.9, 0.99, 0.999}) {
+         long expected = (long)(fraction * 100000);
+         long found = histogram.percentile(fraction);
+         assertTrue("Percentile " + fraction + " is " + found, found >= expected && found <= expected * 9 / 8);
+      }
+      assertEquals("Top percentile should be the max", 100000, histogram.percentile(1));
+
+      histogram.reset();
+      assertEquals("Reset should forget every latency", 0, histogram.count());
+      assertEquals("Reset should forget the max", 0, histogram.max());
+   }
+
+   /** Tests that each operation's calls and outcomes are counted while metrics are on, and not once they're off */
+   @Test
+   public void testRecording() {
+      SocialNetwork net = FrozenSocialNetworkTester.createTestNetwork();
+      assertNull("Metrics should be off by default", net.getMetrics());
+      NetworkMetrics metrics = net.enableMetrics("testRecording");
+      try {
+         SocialNetworkStatus status = new SocialNetworkStatus();
+         net.establishLink(pair("Tom", "Tim"), new Date(5000), status);
+         net.establishLink(pair("Tom", "Tim"), new Date(6000), status);
+         net.establishLink(pair("Tom", "Nobody"), new Date(6000), status);
+         net.tearDownLink(pair("Tom", "Tim"), new Date(7000), status);
+         net.isActive(pair("Tom", "Tim"), new Date(5500));
+         net.isActive(pair("Tom", "Tim"), new Date(8000));
+         net.neighborhood("Tom", new Date(5500), status);
+         net.neighborhood("Tom", new Date(5500), -1, status);
+         net.neighborhoodTrend("Tom", status);
+         net.neighborhoodTrend("Nobody", status);
+
+         assertEquals("Establish should succeed once", 1, metrics.outcomes(NetworkMetrics.Operation.ESTABLISH_LINK, SocialNetworkStatus.Status.SUCCESS));
+         assertEquals("Second establish is already active", 1, metrics.outcomes(NetworkMetrics.Operation.ESTABLISH_LINK, SocialNetworkStatus.Status.ALREADY_ACTIVE));
+         assertEquals("Unknown user is invalid", 1, metrics.outcomes(NetworkMetrics.Operation.ESTABLISH_LINK, SocialNetworkStatus.Status.INVALID_USERS));
+         assertEquals("Every establish should be timed", 3, metrics.latency(NetworkMetrics.Operation.ESTABLISH_LINK).count());
+         assertEquals("Tear down should succeed", 1, metrics.outcomes(NetworkMetrics.Operation.TEAR_DOWN_LINK, SocialNetworkStatus.Status.SUCCESS));
+         assertEquals("Active link not counted", 1, metrics.outcomes(NetworkMetrics.Operation.IS_ACTIVE, SocialNetworkStatus.Status.SUCCESS));
+         assertEquals("Inactive link not counted", 1, metrics.outcomes(NetworkMetrics.Operation.IS_ACTIVE, SocialNetworkStatus.Status.ALREADY_INACTIVE));
+         assertEquals("Neighborhood should succeed", 1, metrics.outcomes(NetworkMetrics.Operation.NEIGHBORHOOD, SocialNetworkStatus.Status.SUCCESS));
+         assertEquals("Negative distance is invalid", 1, metrics.outcomes(NetworkMetrics.Operation.NEIGHBORHOOD, SocialNetworkStatus.Status.INVALID_DISTANCE));
+         assertEquals("Trend not timed", 2, metrics.latency(NetworkMetrics.Operation.NEIGHBORHOOD_TREND).count());
+         assertEquals("Trend should succeed once", 1, metrics.outcomes(NetworkMetrics.Operation.NEIGHBORHOOD_TREND, SocialNetworkStatus.Status.SUCCESS));
+         assertEquals("Unknown user's trend is invalid", 1, metrics.outcomes(NetworkMetrics.Operation.NEIGHBORHOOD_TREND, SocialNetworkStatus.Status.INVALID_USERS));
+         assertTrue("Latency should be measured", metrics.latency(NetworkMetrics.Operation.NEIGHBORHOOD).max() > 0);
+
+         metrics.reset();
+         assertEquals("Reset should forget outcomes", 0, metrics.outcomes(NetworkMetrics.Operation.ESTABLISH_LINK, SocialNetworkStatus.Status.SUCCESS));
+      }
+      finally {
+         net.disableMetrics();
+      }
+
+      net.isActive(pair("Tom", "Tim"), new Date(5500));
+      assertNull("Metrics should be off", net.getMetrics());
+      assertEquals("Nothing should be recorded once metrics are off", 0, metrics.latency(NetworkMetrics.Operation.IS_ACTIVE).count());
+   }
+
+   /** Tests the counts of users, links and events */
+   @Test
+   public void testGauges() {
+      SocialNetwork net = new SocialNetwork();
+      for (String id : new String[] {"a", "b", "c"}) {
+         User user = new User();
+         user.setID(id);
+         net.addUser(user);
+      }
+      SocialNetworkStatus status = new SocialNetworkStatus();
+      net.establishLink(pair("a", "b"), new Date(10), status);
+      net.tearDownLink(pair("a", "b"), new Date(20), status);
+      net.tearDownLink(pair("a", "b"), new Date(30), status);
+      net.establishLink(pair("b", "c"), new Date(10), status);
+
+      assertEquals("Users not counted", 3, net.getUserCount());
+      assertEquals("Links not counted", 2, net.getLinkCount());
+      assertEquals("Only events that succeed should count", 3, net.getEventCount());
+
+      LinkEventBatch batch = new LinkEventBatch();
+      batch.tearDown("b", "c", 40);
+      batch.establish("a", "c", 50);
+      net.applyEvents(batch);
+      assertEquals("Batch links not counted", 3, net.getLinkCount());
+      assertEquals("Batch events not counted", 5, net.getEventCount());
+   }
+
+   /** Tests that the metrics can be read over JMX, and are taken off once turned off */
+   @Test
+   public void testJMX() throws Exception {
+      SocialNetwork net = FrozenSocialNetworkTester.createTestNetwork();
+      NetworkMetrics metrics = net.enableMetrics("test,JMX");
+      ObjectName name = metrics.getObjectName();
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      try {
+         assertTrue("Metrics should be registered", server.isRegistered(name));
+         try {
+            new SocialNetwork().enableMetrics("test,JMX");
+            fail("Name already registered should throw");
+         }
+         catch (IllegalArgumentException iae) {
+         }
+
+         SocialNetworkStatus status = new SocialNetworkStatus();
+         net.neighborhood("Tom", new Date(5500), status);
+         assertEquals("User count not exposed", net.getUserCount(), server.getAttribute(name, "UserCount"));
+         assertEquals("Event count not exposed", net.getEventCount(), server.getAttribute(name, "EventCount"));
+         TabularData latency = (TabularData)server.getAttribute(name, "NeighborhoodLatency");
+         assertEquals("Latency count not exposed", 1, entry(latency, "count"));
+         assertTrue("Percentiles not exposed", entry(latency, "p99Nanos") > 0);
+         TabularData outcomes = (TabularData)server.getAttribute(name, "NeighborhoodOutcomes");
+         assertEquals("Outcomes not exposed", 1, entry(outcomes, "SUCCESS"));
+      }
+      finally {
+         net.disableMetrics();
+      }
+      assertFalse("Metrics should be taken off", server.isRegistered(name));
+   }
+}
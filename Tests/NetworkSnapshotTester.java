@@ -0,0 +1,113 @@
+import org.junit.*;
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+
+/** Unit tests saving and loading Social Networks with NetworkSnapshot.
+  * @author Billy Barbaro
+  */
+
+public class NetworkSnapshotTester {
+
+   @Rule
+   public TemporaryFolder folder = new TemporaryFolder();
+
+   /** Tests that a loaded network has the users and links that were saved */
+   @Test
+   public void testRoundTrip() throws IOException, UninitializedObjectException {
+      SocialNetwork net = FrozenSocialNetworkTester.createTestNetwork();
+      net.getUser("Tom").setFirstName("Thomas").setLastName("T\u00f6m").setEmail("tom@example.com");
+      net.getUser("Jim").setPhoneNumber("555-1234");
+      Path file = folder.getRoot().toPath().resolve("network.snapshot");
+      net.save(file);
+
+      SocialNetwork loaded = SocialNetwork.load(file);
+      SocialNetworkStatus status = new SocialNetworkStatus();
+      for (String id : FrozenSocialNetworkTester.IDS) {
+         assertEquals("User not restored", net.getUser(id), loaded.getUser(id));
+         for (Date date : FrozenSocialNetworkTester.DATES)
+            assertEquals("Neighborhood differs after loading", net.neighborhood(id, date, status), loaded.neighborhood(id, date, status));
+         assertEquals("Trends differ after loading", net.neighborhoodTrend(id, status), loaded.neighborhoodTrend(id, status));
+      }
+
+      User tom = loaded.getUser("Tom");
+      assertEquals("First name not restored", "Thomas", tom.getFirstName());
+      assertNull("Unset middle name should stay unset", tom.getMiddleName());
+      assertEquals("Last name not restored", "T\u00f6m", tom.getLastName());
+      assertEquals("Email not restored", "tom@example.com", tom.getEmail());
+      assertEquals("Phone number not restored", "555-1234", loaded.getUser("Jim").getPhoneNumber());
+
+      // A loaded network keeps working like any other
+      java.util.HashSet<String> ids = new java.util.HashSet<String>();
+      ids.add("Tom");
+      ids.add("Jim");
+      loaded.establishLink(ids, new Date(2010, 1, 1), status);
+      assertEquals("Loaded network should take new links", SocialNetworkStatus.Status.SUCCESS, status.getStatus());
+      ids.remove("Jim");
+      ids.add("Jon");
+      loaded.establishLink(ids, new Date(1990, 1, 5), status);
+      assertEquals("Loaded links should keep their history", SocialNetworkStatus.Status.ALREADY_ACTIVE, status.getStatus());
+   }
+
+   /** Tests a larger network and an empty one */
+   @Test
+   public void testSizes() throws IOException {
+      Path file = folder.getRoot().toPath().resolve("random.snapshot");
+      SocialNetwork net = NeighborhoodSearchTester.createRandomNetwork(3000, 9000, 10);
+      net.save(file);
+      SocialNetwork loaded = SocialNetwork.load(file);
+
+      SocialNetworkStatus status = new SocialNetworkStatus();
+      for (int i = 0; i < 3000; i += 101) {
+         for (long date = 0; date < 400; date += 80)
+            assertEquals("Neighborhood differs after loading", net.neighborhood("user" + i, new Date(date), status), loaded.neighborhood("user" + i, new Date(date), status));
+      }
+
+      new SocialNetwork().save(file);
+      assertFalse("Empty network should load empty", SocialNetwork.load(file).isMember("user0"));
+   }
+
+   /** Tests that damaged and foreign files are turned away */
+   @Test
+   public void testCorruption() throws IOException {
+      Path file = folder.getRoot().toPath().resolve("network.snapshot");
+      FrozenSocialNetworkTester.createTestNetwork().save(file);
+      byte[] bytes = Files.readAllBytes(file);
+
+      // Flips a bit in the events
+      bytes[bytes.length - 12] ^= 1;
+      Files.write(file, bytes);
+      try {
+         SocialNetwork.load(file);
+         fail("Damaged snapshot should be rejected");
+      }
+      catch (IOException e) {
+         assertTrue("Damage should fail the checksum", e.getMessage().contains("checksum"));
+      }
+
+      // A newer version of the format
+      bytes[bytes.length - 12] ^= 1;
+      bytes[7] = 2;
+      Files.write(file, bytes);
+      try {
+         SocialNetwork.load(file);
+         fail("Unknown version should be rejected");
+      }
+      catch (IOException e) {
+         assertTrue("Version should be reported", e.getMessage().contains("version"));
+      }
+
+      Files.write(file, "not a snapshot at all, just some text".getBytes());
+      try {
+         SocialNetwork.load(file);
+         fail("Other files should be rejected");
+      }
+      catch (IOException e) {
+      }
+   }
+}
@@ -0,0 +1,100 @@
+import org.junit.*;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+
+/** Unit tests the QueryStats counted by neighborhood and neighborhood trend queries.
+  * @author Billy Barbaro
+  */
+
+public class QueryStatsTester {
+
+   /** Tests that a neighborhood counted into stats is the same, with the depths, links and Friends of its search */
+   @Test
+   public void testNeighborhood() {
+      SocialNetwork net = NeighborhoodSearchTester.createRandomNetwork(500, 1500, 4);
+      SocialNetworkStatus status = new SocialNetworkStatus();
+      for (int user = 0; user < 500; user += 53) {
+         String id = "user" + user;
+         QueryStats stats = new QueryStats();
+         Set<Friend> friends = net.neighborhood(id, new Date(150), Integer.MAX_VALUE, status, stats);
+         assertEquals("Stats should not change the neighborhood", net.neighborhood(id, new Date(150), status), friends);
+
+         assertArrayEquals("Frontiers should be the users at each depth", net.distanceHistogram(id, new Date(150), Integer.MAX_VALUE, status), stats.getFrontierSizes());
+         assertEquals("Every user reached should be visited", friends.size(), stats.getVerticesVisited());
+         assertEquals("A Friend should be made per user reached", friends.size(), stats.getFriendsCreated());
+         assertTrue("Probes can't outnumber links looked at", stats.getActiveProbes() <= stats.getLinksInspected());
+         assertTrue("Every link probed has an event", stats.getEventsScanned() >= stats.getActiveProbes());
+         assertTrue("Search not timed", stats.getPhaseNanos().containsKey("search"));
+         assertTrue("Making Friends not timed", stats.getPhaseNanos().containsKey("friends"));
+      }
+   }
+
+   /** Tests that a lone user's search inspects every one of their links and no more */
+   @Test
+   public void testCounts() {
+      FrozenSocialNetwork frozen = FrozenSocialNetworkTester.createTestNetwork().freeze();
+      NeighborhoodSearch search = new NeighborhoodSearch(frozen);
+      search.setDirectionOptimizing(false);
+      long date = new Date(1990, 1, 2).getTime();
+
+      // Bob has three links and each has two or three events
+      QueryStats stats = new QueryStats();
+      search.neighborhood(frozen.indexOf("Bob"), date, 1, stats);
+      assertEquals("Bob's links should each be inspected once", 3, stats.getLinksInspected());
+      assertEquals("Bob's links should each be probed once", 3, stats.getActiveProbes());
+      assertEquals("A binary search of two or three events should look at two", 6, stats.getEventsScanned());
+      assertArrayEquals("Bob reaches every friend on the date", new int[] {1, 3}, stats.getFrontierSizes());
+
+      // Counts add up over queries until reset
+      search.neighborhood(frozen.indexOf("Bob"), date, 1, stats);
+      assertEquals("Counts should add up", 6, stats.getLinksInspected());
+      stats.reset();
+      assertEquals("Reset should forget the counts", 0, stats.getLinksInspected());
+      assertEquals("Reset should forget the depths", 0, stats.getFrontierSizes().length);
+   }
+
+   /** Tests that a trend counted into stats is the same, with the dates it swept */
+   @Test
+   public void testTrend() {
+      SocialNetwork net = FrozenSocialNetworkTester.createTestNetwork();
+      SocialNetworkStatus status = new SocialNetworkStatus();
+      QueryStats stats = new QueryStats();
+      Map<Date, Integer> trend = net.neighborhoodTrend("Tom", status, stats);
+      assertEquals("Stats should not change the trend", net.neighborhoodTrend("Tom", status), trend);
+
+      // Tom's component holds five users and links with events on nine distinct dates
+      assertEquals("Component not counted", 5, stats.getVerticesVisited());
+      assertEquals("Every distinct date should be a candidate", 9, stats.getCandidateDates());
+      assertTrue("Torn down links between reached users should rebuild", stats.getRebuilds() > 0);
+      assertTrue("Events not counted", stats.getEventsScanned() > 0);
+      assertArrayEquals("Phases not timed in order", new Object[] {"component", "gather", "sweep"}, stats.getPhaseNanos().keySet().toArray());
+   }
+
+   /** Tests that queries with stats skip the cache, and that searches spread over threads are counted whole */
+   @Test
+   public void testCacheAndParallel() {
+      SocialNetwork net = NeighborhoodSearchTester.createRandomNetwork(20000, 60000, 6);
+      SocialNetworkStatus status = new SocialNetworkStatus();
+      net.setCacheCapacity(10);
+      net.neighborhood("user1", new Date(150), status);
+
+      QueryStats sequential = new QueryStats();
+      Set<Friend> friends = net.neighborhood("user1", new Date(150), Integer.MAX_VALUE, status, sequential);
+      assertEquals("Stats should not hit the cache", 0, net.getCacheHits());
+      assertEquals("Every user reached should be visited", friends.size(), sequential.getVerticesVisited());
+
+      net.setParallelism(4);
+      try {
+         QueryStats parallel = new QueryStats();
+         assertEquals("Parallel search differs", friends, net.neighborhood("user1", new Date(150), Integer.MAX_VALUE, status, parallel));
+         assertArrayEquals("Parallel depths differ", sequential.getFrontierSizes(), parallel.getFrontierSizes());
+         assertTrue("Parallel links not counted", parallel.getLinksInspected() > 0);
+      }
+      finally {
+         net.setParallelism(1);
+      }
+   }
+}
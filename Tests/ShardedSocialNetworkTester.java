@@ -0,0 +1,199 @@
+import org.junit.*;
+import static org.junit.Assert.*;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/** Unit tests the ShardedSocialNetwork against a Social Network holding the same users and links.
+  * @author Billy Barbaro
+  */
+
+public class ShardedSocialNetworkTester {
+
+   @Rule
+   public TemporaryFolder folder = new TemporaryFolder();
+
+   /** Creates a sharded network with the same users and links as NeighborhoodSearchTester.createRandomNetwork for the same seed
+   * @param shardCount   the number of shards
+   * @param userCount   the number of users, named user0 on up
+   * @param linkCount   the number of links tried
+   * @param seed   seeds the choice of users and dates
+   * @return ShardedSocialNetwork   the network
+   */
+   public static ShardedSocialNetwork createRandomNetwork(int shardCount, int userCount, int linkCount, long seed) {
+      ShardedSocialNetwork net = new ShardedSocialNetwork(shardCount);
+      SocialNetworkStatus status = new SocialNetworkStatus();
+      Random random = new Random(seed);
+
+      for (int i = 0; i < userCount; i++) {
+         User user = new User();
+         user.setID("user" + i);
+         net.addUser(user);
+      }
+
+      for (int i = 0; i < linkCount; i++) {
+         Set<String> ids = new HashSet<String>();
+         ids.add("user" + random.nextInt(userCount));
+         ids.add("user" + random.nextInt(userCount));
+
+         long date = random.nextInt(100);
+         for (int event = random.nextInt(4); event >= 0; event--) {
+            net.establishLink(ids, new Date(date), status);
+            date += 1 + random.nextInt(100);
+            net.tearDownLink(ids, new Date(date), status);
+            date += random.nextInt(100);
+         }
+      }
+      return net;
+   }
+
+   /** Tests that users are spread over the shards and found again */
+   @Test
+   public void testMembers() {
+      ShardedSocialNetwork net = createRandomNetwork(4, 400, 0, 1);
+      int total = 0;
+      for (int s = 0; s < net.shardCount(); s++) {
+         assertTrue("Shard left empty", net.userCount(s) > 0);
+         total += net.userCount(s);
+      }
+      assertEquals("Users lost among the shards", 400, total);
+
+      for (int i = 0; i < 400; i++)
+         assertEquals("User not gotten", "user" + i, net.getUser("user" + i).getID());
+      assertFalse("Nonexistent member found", net.isMember("Lenny"));
+      assertNull("Broke when nonexistent user passed in", net.getUser("Lenny"));
+
+      User repeat = new User();
+      repeat.setID("user7");
+      assertFalse("Repeated user added", net.addUser(repeat));
+      assertFalse("Invalid user added", net.addUser(new User()));
+   }
+
+   /** Tests that links across and within shards come and go as in a Social Network */
+   @Test
+   public void testLinks() {
+      ShardedSocialNetwork net = new ShardedSocialNetwork(3);
+      SocialNetworkStatus status = new SocialNetworkStatus();
+      for (String id : FrozenSocialNetworkTester.IDS) {
+         User user = new User();
+         user.setID(id);
+         net.addUser(user);
+      }
+
+      Set<String> ids = new HashSet<String>();
+      ids.add("Tom");
+      ids.add("Jim");
+      net.tearDownLink(ids, new Date(10), status);
+      assertEquals("Missing link torn down", SocialNetworkStatus.Status.ALREADY_INACTIVE, status.getStatus());
+      net.establishLink(ids, new Date(10), status);
+      assertEquals("Link not established", SocialNetworkStatus.Status.SUCCESS, status.getStatus());
+      net.establishLink(ids, new Date(20), status);
+      assertEquals("Link established twice", SocialNetworkStatus.Status.ALREADY_ACTIVE, status.getStatus());
+      net.tearDownLink(ids, new Date(30), status);
+      assertTrue("Link not active", net.isActive(ids, new Date(15)));
+      assertFalse("Link active after teardown", net.isActive(ids, new Date(30)));
+
+      ids.add("Lenny");
+      net.establishLink(ids, new Date(40), status);
+      assertEquals("Three users linked", SocialNetworkStatus.Status.INVALID_USERS, status.getStatus());
+   }
+
+   /** Tests that neighborhoods found by exchanging frontiers between shards match a Social Network's, at any number of shards and threads */
+   @Test
+   public void testNeighborhoods() {
+      SocialNetwork expected = NeighborhoodSearchTester.createRandomNetwork(2000, 5000, 3);
+      SocialNetworkStatus status = new SocialNetworkStatus();
+      for (int shardCount : new int[] {1, 3, 8}) {
+         ShardedSocialNetwork net = createRandomNetwork(shardCount, 2000, 5000, 3);
+         for (int parallelism : new int[] {1, 4}) {
+            net.setParallelism(parallelism);
+            for (int i = 0; i < 2000; i += 97) {
+               String id = "user" + i;
+               for (long date = 0; date < 400; date += 70) {
+                  assertEquals("Neighborhood differs", expected.neighborhood(id, new Date(date), status), net.neighborhood(id, new Date(date), status));
+                  assertEquals("Near neighborhood differs", expected.neighborhood(id, new Date(date), 2, status), net.neighborhood(id, new Date(date), 2, status));
+                  assertEquals("Size differs", expected.neighborhoodSize(id, new Date(date), 3, status), net.neighborhoodSize(id, new Date(date), 3, status));
+               }
+            }
+         }
+         net.setParallelism(1);
+      }
+
+      ShardedSocialNetwork net = createRandomNetwork(3, 10, 0, 3);
+      assertNull("Neighborhood of nonexistent user", net.neighborhood("Lenny", new Date(0), status));
+      assertEquals("Nonexistent user not reported", SocialNetworkStatus.Status.INVALID_USERS, status.getStatus());
+      assertEquals("Negative distance accepted", -1, net.neighborhoodSize("user1", new Date(0), -1, status));
+   }
+
+   /** Tests that neighborhood trends over every shard match a Social Network's */
+   @Test
+   public void testTrend() {
+      SocialNetwork expected = NeighborhoodSearchTester.createRandomNetwork(500, 800, 5);
+      ShardedSocialNetwork net = createRandomNetwork(4, 500, 800, 5);
+      SocialNetworkStatus status = new SocialNetworkStatus();
+      for (int i = 0; i < 500; i += 41)
+         assertEquals("Trend differs", expected.neighborhoodTrend("user" + i, status), net.neighborhoodTrend("user" + i, status));
+      assertNull("Trend of nonexistent user", net.neighborhoodTrend("Lenny", status));
+   }
+
+   /** Tests that a network saved shard by shard loads with the same users and links */
+   @Test
+   public void testSaveLoad() throws IOException {
+      Path directory = folder.getRoot().toPath();
+      ShardedSocialNetwork net = createRandomNetwork(4, 1500, 4000, 7);
+      net.setParallelism(4);
+      net.save(directory);
+      for (int s = 0; s < 4; s++)
+         assertTrue("Shard file not written", Files.exists(ShardedSocialNetwork.shardFile(directory, s)));
+
+      SocialNetworkStatus status = new SocialNetworkStatus();
+      for (int parallelism : new int[] {1, 4}) {
+         ShardedSocialNetwork loaded = ShardedSocialNetwork.load(directory, 4, parallelism);
+         for (int i = 0; i < 1500; i += 89) {
+            for (long date = 0; date < 400; date += 80)
+               assertEquals("Neighborhood differs after loading", net.neighborhood("user" + i, new Date(date), status), loaded.neighborhood("user" + i, new Date(date), status));
+         }
+         loaded.setParallelism(1);
+      }
+      net.setParallelism(1);
+
+      // The users hash to other shards when the count differs
+      try {
+         ShardedSocialNetwork.load(directory, 3, 1);
+         fail("Load with the wrong shard count should fail");
+      }
+      catch (IOException e) {
+         assertTrue("Wrong shard count not caught", e.getMessage().contains("shouldn't"));
+      }
+   }
+
+   /** Tests that a missing shard file fails the load */
+   @Rule
+   public ExpectedException missingShard = ExpectedException.none();
+   @Test
+   public void testMissingShard() throws IOException {
+      Path directory = folder.getRoot().toPath();
+      createRandomNetwork(2, 50, 100, 9).save(directory);
+      Files.delete(ShardedSocialNetwork.shardFile(directory, 1));
+
+      missingShard.expect(IOException.class);
+      ShardedSocialNetwork.load(directory, 2, 1);
+   }
+
+   /** Tests that a network can't have no shards */
+   @Rule
+   public ExpectedException noShards = ExpectedException.none();
+   @Test
+   public void testNoShards() {
+      noShards.expect(IllegalArgumentException.class);
+      new ShardedSocialNetwork(0);
+   }
+}
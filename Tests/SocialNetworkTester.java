@@ -7,6 +7,8 @@ import java.util.Set;
 import java.util.HashSet;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /** Unit tests the Social Network.
   * @author Billy Barbaro
@@ -168,6 +170,106 @@ public class SocialNetworkTester {
       net.tearDownLink(null, null, null);
    }
 
+   /** Tests the establishLink, tearDownLink and isActive methods taking two IDs */
+   @Test
+   public void testTwoIDLinks() {
+
+      SocialNetwork net = createNetwork();
+      SocialNetworkStatus.Status status;
+
+      status = net.establishLink("abc123", "xyz456", 1000);
+      assertEquals("Link was not established.", SocialNetworkStatus.Status.SUCCESS, status);
+      status = net.establishLink("xyz456", "abc123", 2000);
+      assertEquals("Link cannot be established twice, from either end.", SocialNetworkStatus.Status.ALREADY_ACTIVE, status);
+      status = net.tearDownLink("abc123", "xyz456", 500);
+      assertEquals("Link cannot be set when date is invalid.", SocialNetworkStatus.Status.INVALID_DATE, status);
+      status = net.tearDownLink("abc123", "xyz456", 3000);
+      assertEquals("Link was not successfully torn down.", SocialNetworkStatus.Status.SUCCESS, status);
+      status = net.tearDownLink("abc123", "lmn789", 3000);
+      assertEquals("A link that doesn't exist is inactive.", SocialNetworkStatus.Status.ALREADY_INACTIVE, status);
+
+      assertEquals("A user can't be linked to themselves.", SocialNetworkStatus.Status.INVALID_USERS, net.establishLink("abc123", "abc123", 4000));
+      assertEquals("A user not in the network can't be linked.", SocialNetworkStatus.Status.INVALID_USERS, net.establishLink("abc123", "xxx777", 4000));
+
+      assertTrue("isActive failed on an active link.", net.isActive("xyz456", "abc123", 2000));
+      assertFalse("isActive after tear down failed.", net.isActive("abc123", "xyz456", 3000));
+      assertFalse("isActive failed on an invalid user.", net.isActive("abc123", "xxx777", 2000));
+
+      // Changes made with either kind of call are seen by the other
+      Set<String> users = new HashSet<String>();
+      users.add("abc123");
+      users.add("xyz456");
+      assertTrue("Sets should see changes made by ID.", net.isActive(users, new Date(2000)));
+      SocialNetworkStatus setStatus = new SocialNetworkStatus();
+      net.establishLink(users, new Date(5000), setStatus);
+      assertEquals("Link was not re-established.", SocialNetworkStatus.Status.SUCCESS, setStatus.getStatus());
+      assertTrue("IDs should see changes made by set.", net.isActive("abc123", "xyz456", 5000));
+
+      try {
+         net.establishLink(null, "abc123", 1000);
+         fail("Null ID should throw.");
+      }
+      catch (NullPointerException npe) {
+      }
+   }
+
+   /** Tests that changes and checks of links that exist make no garbage */
+   @Test
+   public void testTwoIDAllocation() {
+
+      SocialNetwork net = createNetwork();
+      net.establishLink("abc123", "xyz456", 1000);
+      com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)java.lang.management.ManagementFactory.getThreadMXBean();
+      long thread = Thread.currentThread().getId();
+
+      // Runs the calls first so the bytes counted aren't the JVM's first use of them
+      int calls = 0;
+      long before = 0;
+      for (int round = 0; round < 2; round++) {
+         before = threads.getThreadAllocatedBytes(thread);
+         for (long date = 2000; date < 22000; date++) {
+            calls += net.isActive("abc123", "xyz456", date) ? 1 : 0;
+            calls += net.establishLink("xyz456", "abc123", date) == SocialNetworkStatus.Status.ALREADY_ACTIVE ? 1 : 0;
+            calls += net.tearDownLink("abc123", "lmn789", date) == SocialNetworkStatus.Status.ALREADY_INACTIVE ? 1 : 0;
+            calls += net.tearDownLink("abc123", "xxx777", date) == SocialNetworkStatus.Status.INVALID_USERS ? 1 : 0;
+         }
+      }
+      long allocated = threads.getThreadAllocatedBytes(thread) - before;
+      assertEquals("Every call should give the status expected.", 160000, calls);
+      assertTrue("Calls should make no garbage, made " + allocated + " bytes.", allocated < 20000);
+   }
+
+   /** Tests the distance method */
+   @Test
+   public void testDistance() {
+      SocialNetwork net = createNetwork();
+      SocialNetworkStatus status = new SocialNetworkStatus();
+
+      HashSet<String> first = new HashSet<String>();
+      first.add("abc123");
+      first.add("xyz456");
+      net.establishLink(first, new Date(1990, 1, 1), status);
+
+      HashSet<String> second = new HashSet<String>();
+      second.add("xyz456");
+      second.add("lmn789");
+      net.establishLink(second, new Date(1990, 1, 2), status);
+      net.tearDownLink(second, new Date(1990, 1, 5), status);
+
+      assertEquals("Users two links apart should be at distance 2", 2, net.distance("abc123", "lmn789", new Date(1990, 1, 3), status));
+      assertEquals("Distance should succeed", SocialNetworkStatus.Status.SUCCESS, status.getStatus());
+      assertEquals("Distance should be the same both ways", 2, net.distance("lmn789", "abc123", new Date(1990, 1, 3), status));
+      assertEquals("Linked users should be at distance 1", 1, net.distance("abc123", "xyz456", new Date(1990, 1, 3), status));
+      assertEquals("A user should be at distance 0 from themselves", 0, net.distance("abc123", "abc123", new Date(1990, 1, 3), status));
+
+      // Links that aren't active yet or have been torn down don't connect users
+      assertEquals("Users linked later should not be connected", -1, net.distance("abc123", "lmn789", new Date(1990, 1, 1), status));
+      assertEquals("Users whose link was torn down should not be connected", -1, net.distance("abc123", "lmn789", new Date(1990, 1, 6), status));
+
+      assertEquals("Invalid user should return -1", -1, net.distance("abc123", "Lenny", new Date(1990, 1, 3), status));
+      assertEquals("Invalid users should change status", SocialNetworkStatus.Status.INVALID_USERS, status.getStatus());
+   }
+
    /** Tests the neighborhood methods.  
      * Code is pretty linear and not reused
      */
@@ -467,10 +569,162 @@ public class SocialNetworkTester {
       assertEquals("Trends incorrect for Bob.", bobTrends, net.neighborhoodTrend("Bob", status));
       assertEquals("Trends incorrect for Joe.", joeTrends, net.neighborhoodTrend("Joe", status));
       assertEquals("Trends incorrect for Edd.", eddTrends, net.neighborhoodTrend("Edd", status));
+
+      assertNull("Invalid user should have no trend.", net.neighborhoodTrend("Lenny", status));
+      assertEquals("Invalid users should change status.", SocialNetworkStatus.Status.INVALID_USERS, status.getStatus());
       
       neighborhoodNull.expect(NullPointerException.class);
       neighborhoodNull.expectMessage("Date may not be null.");
       net.neighborhood("Tom", null, status);
 
    }
-}
\ No newline at end of file
+
+   /** Tests that threads changing links between different users don't disturb each other, while other threads read the network */
+   @Test
+   public void testConcurrentChanges() throws Exception {
+      final SocialNetwork net = new SocialNetwork();
+      final int threads = 4;
+      final int usersPerThread = 50;
+      final SocialNetwork[] alone = new SocialNetwork[threads];
+      final Throwable[] errors = new Throwable[threads + 1];
+      final AtomicBoolean done = new AtomicBoolean();
+
+      // Each writer adds its own users and links them at random, making the same changes to a network of its own
+      Thread[] writers = new Thread[threads];
+      for (int t = 0; t < threads; t++) {
+         final int thread = t;
+         alone[t] = new SocialNetwork();
+         writers[t] = new Thread(() -> {
+            try {
+               Random random = new Random(thread);
+               SocialNetworkStatus status = new SocialNetworkStatus();
+               SocialNetworkStatus aloneStatus = new SocialNetworkStatus();
+               for (int u = 0; u < usersPerThread; u++) {
+                  User user = new User();
+                  user.setID("t" + thread + "u" + u);
+                  assertTrue("User should be added", net.addUser(user));
+                  alone[thread].addUser(user);
+               }
+               for (int c = 0; c < 2000; c++) {
+                  Set<String> ids = new HashSet<String>();
+                  ids.add("t" + thread + "u" + random.nextInt(usersPerThread));
+                  ids.add("t" + thread + "u" + random.nextInt(usersPerThread));
+                  Date date = new Date(c);
+                  if (random.nextBoolean()) {
+                     net.establishLink(ids, date, status);
+                     alone[thread].establishLink(ids, date, aloneStatus);
+                  }
+                  else {
+                     net.tearDownLink(ids, date, status);
+                     alone[thread].tearDownLink(ids, date, aloneStatus);
+                  }
+                  assertEquals("Change should go the same as on its own", aloneStatus.getStatus(), status.getStatus());
+               }
+            }
+            catch (Throwable e) {
+               errors[thread] = e;
+            }
+         });
+      }
+
+      // The reader searches the whole time the writers run
+      Thread reader = new Thread(() -> {
+         try {
+            SocialNetworkStatus status = new SocialNetworkStatus();
+            while (!done.get()) {
+               for (int t = 0; t < threads; t++) {
+                  if (net.isMember("t" + t + "u0")) {
+                     assertTrue("User should reach themself", net.neighborhoodSize("t" + t + "u0", new Date(1000), status) >= 1);
+                     net.neighborhood("t" + t + "u0", new Date(1500), 3, status);
+                  }
+               }
+            }
+         }
+         catch (Throwable e) {
+            errors[threads] = e;
+         }
+      });
+
+      reader.start();
+      for (Thread writer : writers)
+         writer.start();
+      for (Thread writer : writers)
+         writer.join();
+      done.set(true);
+      reader.join();
+      for (Throwable error : errors) {
+         if (error != null)
+            throw new AssertionError("Thread failed", error);
+      }
+
+      SocialNetworkStatus status = new SocialNetworkStatus();
+      for (int t = 0; t < threads; t++) {
+         for (int u = 0; u < usersPerThread; u += 7) {
+            String id = "t" + t + "u" + u;
+            assertEquals("Trend should be as if the thread ran alone", alone[t].neighborhoodTrend(id, status), net.neighborhoodTrend(id, status));
+         }
+      }
+   }
+
+   /** Tests that a search never sees part of a batch's changes to a link while the batch is applied */
+   @Test
+   public void testPinnedReads() throws Exception {
+      final SocialNetwork net = new SocialNetwork();
+      final int userCount = 40;
+      final Throwable[] errors = new Throwable[2];
+      final AtomicBoolean done = new AtomicBoolean();
+      for (int u = 0; u < userCount; u++) {
+         User user = new User();
+         user.setID("u" + u);
+         net.addUser(user);
+      }
+
+      // Every round establishes and tears down links in one batch, so after each link's changes no one is linked
+      Thread writer = new Thread(() -> {
+         try {
+            Random random = new Random(7);
+            for (int round = 0; round < 60; round++) {
+               LinkEventBatch batch = new LinkEventBatch();
+               for (int l = 0; l < 4; l++) {
+                  String first = "u" + random.nextInt(userCount);
+                  String second = "u" + random.nextInt(userCount);
+                  for (int e = 0; e < 500; e++) {
+                     batch.establish(first, second, round * 10000L + e * 10);
+                     batch.tearDown(first, second, round * 10000L + e * 10 + 5);
+                  }
+               }
+               net.applyEvents(batch);
+            }
+         }
+         catch (Throwable e) {
+            errors[0] = e;
+         }
+      });
+
+      Thread reader = new Thread(() -> {
+         try {
+            SocialNetworkStatus status = new SocialNetworkStatus();
+            Date later = new Date(3000000L);
+            while (!done.get()) {
+               for (int u = 0; u < userCount; u += 3) {
+                  assertEquals("Search saw a link established but not yet torn down", 1, net.neighborhoodSize("u" + u, later, status));
+                  assertEquals("Frozen network saw a link established but not yet torn down", 1, net.freeze().neighborhood("u" + u, later, status).size());
+               }
+            }
+         }
+         catch (Throwable e) {
+            errors[1] = e;
+         }
+      });
+
+      reader.start();
+      writer.start();
+      writer.join();
+      done.set(true);
+      reader.join();
+      for (Throwable error : errors) {
+         if (error != null)
+            throw new AssertionError("Thread failed", error);
+      }
+   }
+}
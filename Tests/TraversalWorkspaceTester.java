@@ -0,0 +1,47 @@
+import org.junit.*;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/** Unit tests the TraversalWorkspace used by the neighborhood searches.
+  * @author Billy Barbaro
+  */
+
+public class TraversalWorkspaceTester {
+
+   /** Tests visiting users and reading back the order and distances */
+   @Test
+   public void testVisit() {
+      TraversalWorkspace workspace = new TraversalWorkspace();
+      workspace.reset(200);
+
+      assertTrue("User should not have been reached.", workspace.visit(5, 0));
+      assertTrue("User should not have been reached.", workspace.visit(130, 1));
+      assertFalse("User cannot be reached twice.", workspace.visit(5, 2));
+
+      assertEquals("Size incorrect.", workspace.size(), 2);
+      assertEquals("Order incorrect.", workspace.reached(0), 5);
+      assertEquals("Order incorrect.", workspace.reached(1), 130);
+      assertEquals("Distance incorrect.", workspace.distance(5), 0);
+      assertEquals("Distance incorrect.", workspace.distance(130), 1);
+      assertTrue("User should be reached.", workspace.isVisited(130));
+      assertFalse("User should not be reached.", workspace.isVisited(66));
+   }
+
+   /** Tests that a reset clears the last search and makes room for larger networks */
+   @Test
+   public void testReset() {
+      TraversalWorkspace workspace = new TraversalWorkspace();
+      workspace.reset(10);
+      workspace.visit(3, 0);
+      workspace.visit(9, 1);
+
+      workspace.reset(1000);
+      assertEquals("Reset should clear the search.", workspace.size(), 0);
+      assertFalse("Reset should clear the search.", workspace.isVisited(3));
+      assertFalse("Reset should clear the search.", workspace.isVisited(9));
+
+      assertTrue("User should not have been reached.", workspace.visit(999, 0));
+      assertTrue("User should not have been reached.", workspace.visit(3, 1));
+      assertEquals("Distance incorrect.", workspace.distance(3), 1);
+   }
+}
@@ -0,0 +1,79 @@
+import org.junit.*;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/** Unit tests the VersionClock that lets readers of a Social Network pin a version.
+  * @author Billy Barbaro
+  */
+
+public class VersionClockTester {
+
+   /** Tests that a version is only published once every version before it is done, and that a thread's pins see its own changes */
+   @Test
+   public void testPublishOrder() throws InterruptedException {
+      final VersionClock clock = new VersionClock();
+      final long first = clock.begin();
+      long second = clock.begin();
+      assertEquals("Versions should count up from 1", 1, first);
+      assertEquals("Nothing should be published yet", 0, clock.published());
+
+      // The later version is done first, but waits for the earlier one to be published
+      clock.publish(second);
+      assertEquals("Version published before the ones below it", 0, clock.published());
+      final long[] pinned = new long[1];
+      Thread reader = new Thread(() -> {
+         VersionClock.Pin pin = clock.pin();
+         pinned[0] = pin.version();
+         pin.close();
+      });
+      reader.start();
+      reader.join();
+      assertEquals("Another thread should see only whole versions", 0, pinned[0]);
+
+      Thread earlier = new Thread(() -> clock.publish(first));
+      earlier.start();
+      earlier.join();
+      assertEquals("Both versions should be published", 2, clock.published());
+      VersionClock.Pin pin = clock.pin();
+      assertEquals("Pin should see the thread's own change", 2, pin.version());
+      pin.close();
+   }
+
+   /** Tests that a pin keeps the settled version from passing it until closed */
+   @Test
+   public void testPins() {
+      VersionClock clock = new VersionClock();
+      clock.publish(clock.begin());
+      VersionClock.Pin pin = clock.pin();
+      assertEquals("Pin should see the published version", 1, pin.version());
+      assertEquals("Pin not counted", 1, clock.pinCount());
+
+      for (int i = 0; i < 128; i++)
+         clock.publish(clock.begin());
+      assertTrue("Settled past a pinned version", clock.settled() <= 1);
+
+      pin.close();
+      pin.close(); // Closing twice does nothing more
+      assertEquals("Pin not let go", 0, clock.pinCount());
+      assertEquals("Settled version should catch up once no reader is pinned", 129, clock.settled());
+   }
+
+   /** Tests recording changes in a version log and reading counts back as of a version */
+   @Test
+   public void testLog() {
+      long[] log = VersionClock.record(null, 5, 3, 0);
+      log = VersionClock.record(log, 7, 4, 0);
+      assertEquals("Reader at the latest version sees every change", 5, VersionClock.visible(log, 5, VersionClock.LATEST));
+      assertEquals("Reader before both changes sees neither", 3, VersionClock.visible(log, 5, 4));
+      assertEquals("Reader between the changes sees the first", 4, VersionClock.visible(log, 5, 6));
+      assertEquals("Count read before a change stands", 3, VersionClock.visible(log, 3, 6));
+      assertSame("Second change in a version needs no entry", log, VersionClock.record(log, 7, 5, 0));
+      assertEquals("An empty log leaves the count", 2, VersionClock.visible(null, 2, 1));
+
+      // Entries every reader sees past are dropped, leaving the log as it was
+      long[] trimmed = VersionClock.record(log, 9, 5, 5);
+      assertEquals("Settled entry not dropped", 4, trimmed.length);
+      assertEquals("Log changed in place", 4, log.length);
+      assertNull("Settled changes need no log", VersionClock.record(trimmed, 0, 6, 9));
+   }
+}
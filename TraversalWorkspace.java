@@ -0,0 +1,138 @@
+import java.util.Arrays;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/** The scratch space for one breadth first search of a social network: a bitset of the users reached,
+  * each reached user's distance, and the users in the order they were reached, which doubles as the search's queue.
+  * A workspace is reused from search to search, and only the bits set by the last search are cleared, so a search costs nothing
+  * for the parts of the network it doesn't reach.
+  * Users past the size the workspace was reset to, as a network that's still growing may link to during a search, are never reached.
+  * @author Billy Barbaro
+  */
+public class TraversalWorkspace {
+
+   /** Gives atomic access to the words of the visited bitset, so parallel searches can claim users */
+   private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+   /** One bit per user, set once the user has been reached */
+   private long[] visited;
+
+   /** The distance of each reached user from the start. Only meaningful for users whose visited bit is set */
+   private int[] distances;
+
+   /** The indices of the reached users, in the order they were reached. Users at the same distance are side by side */
+   private int[] order;
+
+   /** The number of users reached */
+   private int size;
+
+   /** Creates an empty workspace. It grows to fit the networks it's used on */
+   public TraversalWorkspace() {
+      super();
+      visited = new long[0];
+      distances = new int[0];
+      order = new int[0];
+      size = 0;
+   }
+
+   /** Clears the last search and makes sure there's room for a network of the given size
+     * @param userCount   the number of users in the network to be searched
+     */
+   public void reset(int userCount) {
+      // Only the users the last search reached have their bits cleared
+      for (int i = 0; i < size; i++)
+         visited[order[i] >>> 6] &= ~(1L << order[i]);
+      size = 0;
+
+      if (distances.length < userCount) {
+         visited = Arrays.copyOf(visited, (userCount + 63) >>> 6);
+         distances = new int[userCount];
+         order = new int[userCount];
+      }
+   }
+
+   /** Tells if a user has been reached
+     * @param index   the index of the user
+     * @return boolean   true if the user has been reached by this search
+     */
+   public boolean isVisited(int index) {
+      if (index >= distances.length)
+         return false;
+      return (visited[index >>> 6] & (1L << index)) != 0;
+   }
+
+   /** Marks a user as reached at the given distance and places them at the back of the queue, unless they have already been reached
+     * @param index   the index of the user
+     * @param distance   the number of links between the start and the user
+     * @return boolean   true if the user had not been reached before. False for a user past the size the workspace was reset to
+     */
+   public boolean visit(int index, int distance) {
+      if (index >= distances.length)
+         return false;
+      long bit = 1L << index;
+      if ((visited[index >>> 6] & bit) != 0)
+         return false;
+
+      visited[index >>> 6] |= bit;
+      distances[index] = distance;
+      order[size++] = index;
+      return true;
+   }
+
+   /** Marks a user as reached at the given distance, safely against other threads claiming users at the same time.
+     * Unlike visit, the user is not placed in the queue. The thread that wins the claim should add them with append once the threads are done.
+     * @param index   the index of the user
+     * @param distance   the number of links between the start and the user
+     * @return boolean   true if this call reached the user first
+     */
+   public boolean claim(int index, int distance) {
+      if (index >= distances.length)
+         return false;
+      int word = index >>> 6;
+      long bit = 1L << index;
+      long current = (long)WORDS.getVolatile(visited, word);
+
+      // Keeps trying to set our bit until we set it or see that someone else has
+      while ((current & bit) == 0) {
+         long witness = (long)WORDS.compareAndExchange(visited, word, current, current | bit);
+         if (witness == current) {
+            distances[index] = distance;
+            return true;
+         }
+         current = witness;
+      }
+      return false;
+   }
+
+   /** Places claimed users at the back of the queue. Must not be called by more than one thread at a time
+     * @param indices   an array holding the indices of the users
+     * @param count   the number of users at the front of indices to be added
+     */
+   public void append(int[] indices, int count) {
+      System.arraycopy(indices, 0, order, size, count);
+      size += count;
+   }
+
+   /** Gives the number of users reached
+     * @return int   the number of users reached by this search
+     */
+   public int size() {
+      return size;
+   }
+
+   /** Gives a reached user by the order they were reached in
+     * @param position   a position between 0 and size() - 1
+     * @return int   the index of the user
+     */
+   public int reached(int position) {
+      return order[position];
+   }
+
+   /** Gives the distance of a reached user
+     * @param index   the index of a user that has been reached
+     * @return int   the number of links between the start and the user
+     */
+   public int distance(int index) {
+      return distances[index];
+   }
+}
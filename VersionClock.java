@@ -0,0 +1,218 @@
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/** Gives the changes to a social network versions, so a reader can see the network as it stood at one version while writers carry on.
+  * A writer takes the next version once it holds its locks, and marks it done once its change is made. The published version moves up past each run of
+  * versions done, moved by whichever writer finishes the run, so writers never wait on each other and every change at or below the published version is whole.
+  * A reader pins the published version and ignores any change above it. A thread's pin waits for its own last change, so a thread always sees what it wrote.
+  * Links and lists of links only ever grow, so a change is recorded in a version log: the version and the count before it, kept as pairs in a long[].
+  * Entries are dropped once every reader, pinned or to come, sees past them, so a log only holds the changes a pinned reader could still miss.
+  * @author Billy Barbaro
+  */
+public class VersionClock {
+
+   /** The version that sees every change, for reads that need no pin */
+   public static final long LATEST = Long.MAX_VALUE;
+
+   /** How many versions are published between checks for log entries every reader sees */
+   private static final int SETTLE_INTERVAL = 64;
+
+   /** The most versions that may be handed out and not yet published. A power of two */
+   private static final int WINDOW = 1024;
+
+   /** How many times a wait checks before it starts yielding */
+   private static final int SPINS = 64;
+
+   /** The last version handed out */
+   private AtomicLong issued;
+
+   /** The last version published. Every change at or below it is whole */
+   private AtomicLong published;
+
+   /** Each version done, in the slot of its low bits, until the slot is reused WINDOW versions on */
+   private AtomicLongArray done;
+
+   /** The last version each thread published, which its pins wait for */
+   private ThreadLocal<long[]> written;
+
+   /** Every change at or below this version is seen by every reader, pinned or to come */
+   private AtomicLong settled;
+
+   /** The pins held by readers */
+   private Set<Pin> pins;
+
+   /** A reader's hold on a version, kept until closed */
+   public class Pin implements AutoCloseable {
+
+      /** The version the reader sees */
+      private long version;
+
+      /** A version no later than the reader's, read before the pin was registered. Log entries above it are kept */
+      private long floor;
+
+      /** Pins the published version */
+      private Pin() {
+         // Writers settling while the pin is registered may not have seen it, but never settle past a version published after the floor was read
+         floor = published.get();
+         pins.add(this);
+         version = published.get();
+      }
+
+      /** Gives the version the reader sees
+        * @return long   the pinned version
+        */
+      public long version() {
+         return version;
+      }
+
+      /** Lets go of the version, so log entries kept for it can be dropped */
+      public void close() {
+         if (pins.remove(this))
+            settle();
+      }
+   }
+
+   /** Creates a clock at version 0, which every reader sees */
+   public VersionClock() {
+      super();
+      issued = new AtomicLong();
+      published = new AtomicLong();
+      done = new AtomicLongArray(WINDOW);
+      written = ThreadLocal.withInitial(() -> new long[1]);
+      settled = new AtomicLong();
+      pins = ConcurrentHashMap.newKeySet();
+   }
+
+   /** Hands out the next version. Must be followed by publish, even if the change fails
+     * @return long   the version of the change
+     */
+   public long begin() {
+      long version = issued.incrementAndGet();
+      // The version's slot is free once the version WINDOW before it is published, which only waits with more than WINDOW writers at once
+      awaitPublished(version - WINDOW);
+      return version;
+   }
+
+   /** Marks a version done once the change made under it is whole, and publishes it along with any later versions done, once every version before it is done
+     * @param version   the version given by begin
+     */
+   public void publish(long version) {
+      done.set((int)version & (WINDOW - 1), version);
+      written.get()[0] = version;
+
+      // Whichever writer marks the last version of a run done sees the whole run, since each marks before it looks
+      long current = published.get();
+      while (done.get((int)(current + 1) & (WINDOW - 1)) == current + 1) {
+         published.compareAndSet(current, current + 1);
+         current = published.get();
+      }
+      if (version % SETTLE_INTERVAL == 0)
+         settle();
+   }
+
+   /** Waits until a version is published
+     * @param version   the version waited for
+     */
+   private void awaitPublished(long version) {
+      for (int spins = 0; published.get() < version; spins++) {
+         if (spins < SPINS)
+            Thread.onSpinWait();
+         else
+            Thread.yield();
+      }
+   }
+
+   /** Gives the last version published
+     * @return long   the published version
+     */
+   public long published() {
+      return published.get();
+   }
+
+   /** Gives the version every reader sees past
+     * @return long   every log entry at or below this version can be dropped
+     */
+   public long settled() {
+      return settled.get();
+   }
+
+   /** Pins the published version. The pin must be closed once the read is done
+     * @return Pin   the reader's hold on the version
+     */
+   public Pin pin() {
+      awaitPublished(written.get()[0]);
+      return new Pin();
+   }
+
+   /** Gives the number of pins held
+     * @return int   the number of readers pinned
+     */
+   public int pinCount() {
+      return pins.size();
+   }
+
+   /** Moves the settled version up to the oldest pin, or to the published version if no reader is pinned */
+   private void settle() {
+      // The published version is read before the pins, so a pin registered meanwhile has a version at least as late
+      long floor = published.get();
+      if (!pins.isEmpty()) // Skips making an iterator when no reader is pinned, as writers settle every SETTLE_INTERVAL versions
+         for (Pin pin : pins)
+            floor = Math.min(floor, pin.floor);
+      settled.accumulateAndGet(floor, Math::max);
+   }
+
+   /** Records a change in a version log, dropping the entries every reader sees past
+     * @param log   the log, as version and count pairs. Null if empty
+     * @param version   the version of the change
+     * @param countBefore   the count before the change
+     * @param settled   every entry at or below this version is dropped
+     * @return long[]   the new log. The old one is left as it was, for readers still looking at it
+     */
+   public static long[] record(long[] log, long version, int countBefore, long settled) {
+      int kept = 0;
+      int length = log == null ? 0 : log.length;
+      while (kept < length && log[kept] <= settled)
+         kept += 2;
+      // A reader that doesn't see the version stops at the first change it made, so later changes in the same version need no entry
+      if (version <= settled || (length > kept && log[length - 2] == version))
+         return kept == 0 ? log : trimmed(log, kept);
+
+      long[] recorded = new long[length - kept + 2];
+      if (length > kept)
+         System.arraycopy(log, kept, recorded, 0, length - kept);
+      recorded[recorded.length - 2] = version;
+      recorded[recorded.length - 1] = countBefore;
+      return recorded;
+   }
+
+   /** Copies the entries of a log from the given position on
+     * @param log   the log
+     * @param from   the position of the first entry kept
+     * @return long[]   the entries kept. Null if none are
+     */
+   private static long[] trimmed(long[] log, int from) {
+      if (from == log.length)
+         return null;
+      long[] kept = new long[log.length - from];
+      System.arraycopy(log, from, kept, 0, kept.length);
+      return kept;
+   }
+
+   /** Gives the count a reader at a version sees
+     * @param log   the version log, read after the count
+     * @param count   the count read
+     * @param version   the reader's version
+     * @return int   the count before the first change above the version, if it's below the count read
+     */
+   public static int visible(long[] log, int count, long version) {
+      if (log == null)
+         return count;
+      for (int i = 0; i < log.length; i += 2) {
+         if (log[i] > version)
+            return (int)Math.min(count, log[i + 1]);
+      }
+      return count;
+   }
+}